@@ -46,6 +46,14 @@ public class Constants {
             "/scoreboard/config/config.xml";
     public static final String DEFAULT_HORN_FILE =
             "/scoreboard/util/sounds/BUZZER.mp3";
+    /*
+     * Horn playback: PCM is written to the audio line in chunks of
+     * HORN_CHUNK_MILLIS, so a stop takes effect that quickly, and the
+     * line buffers HORN_LINE_BUFFER_MILLIS, which bounds the delay before
+     * the first sample is heard.
+     */
+    public static final int HORN_CHUNK_MILLIS = 5;
+    public static final int HORN_LINE_BUFFER_MILLIS = 40;
     
     public static final int DEFAULT_DIGIT_HEIGHT = 100;
     public static final int BLANK_DIGIT = 10;
@@ -90,12 +98,124 @@ public class Constants {
      * larger than the constant specified below.
      */
     public static final int MAX_DATAGRAM_MSG_SIZE = 1000;
+    /*
+     * Most bytes of messages packed into one datagram (see DatagramPacker),
+     * leaving room for forward error correction numbering and parity
+     * headers, and a channel tag (see ChannelSocket).
+     */
+    public static final int MAX_PACKED_SIZE = MAX_DATAGRAM_MSG_SIZE - 96;
     /*
      * Multicast Socket constants
      */
     public final static int DEFAULT_PORT = 2011;
+    /*
+     * Games sharing one master port are told apart by channel (see
+     * Subscription).  A slave that doesn't pick one gets DEFAULT_CHANNEL.
+     * Channel names are at most MAX_CHANNEL_NAME_LENGTH letters, digits,
+     * '-' or '_', short enough to tag a multicast datagram without eating
+     * into MAX_PACKED_SIZE.
+     */
+    public final static String DEFAULT_CHANNEL = "default";
+    public final static int MAX_CHANNEL_NAME_LENGTH = 16;
     public final static String DEFAULT_SESSION_ADDR = "227.27.27.27";
     public final static String DEFAULT_HOST = "localhost";
+    /*
+     * Acknowledged multicast delivery (see AckedMulticastSender): an
+     * unacknowledged update is retransmitted after
+     * RETRANSMIT_INITIAL_INTERVAL msec, the interval doubling each time up
+     * to RETRANSMIT_MAX_INTERVAL, and given up on after MAX_RETRANSMITS.
+     * Slaves ack within a random ACK_INTERVAL msec, up to
+     * MAX_ACKS_PER_DATAGRAM updates at a time, and answer the master's
+     * beacon, sent every ACK_HEARTBEAT_INTERVAL msec, within a random
+     * ACK_BEACON_SPREAD msec.  A slave not heard from in ACK_SLAVE_TIMEOUT
+     * msec is no longer waited for.
+     */
+    public static final int RETRANSMIT_INITIAL_INTERVAL = 50;
+    public static final int RETRANSMIT_MAX_INTERVAL = 800;
+    public static final int MAX_RETRANSMITS = 6;
+    public static final int ACK_INTERVAL = 20;
+    public static final int MAX_ACKS_PER_DATAGRAM = 64;
+    public static final int ACK_HEARTBEAT_INTERVAL = 2000;
+    public static final int ACK_BEACON_SPREAD = 250;
+    public static final int ACK_SLAVE_TIMEOUT = 6000;
+    /*
+     * Forward error correction (see FecEncoder): a parity group not filled
+     * within FEC_MAX_DELAY msec has its parity sent anyway, and slaves keep
+     * the last FEC_WINDOW datagrams to rebuild a lost one from.
+     */
+    public static final int FEC_MAX_DELAY = 50;
+    public static final int FEC_WINDOW = 256;
+    /*
+     * Number of recent updates a dual transport slave remembers the
+     * arrival of, to time the winning transport's lead (see
+     * DuplicateFilter)
+     */
+    public static final int DEDUP_WINDOW = 1024;
+    /*
+     * Number of updates that can be waiting to be written to one
+     * MultipleSocketWriter listener.  A listener that falls further behind
+     * than this is disconnected.
+     */
+    public static final int WRITE_QUEUE_SIZE = 1024;
+    /*
+     * Socket send buffer size, in bytes, of a MultipleSocketWriter
+     * listener.  Ample for 10 updates a second, but small enough that a
+     * backlog waits in the listener's queue, where it can be prioritized.
+     */
+    public static final int WRITE_SOCKET_BUFFER_SIZE = 4096;
+    /*
+     * Update priority classes, most urgent first.  The master's socket
+     * writers and the slaves' apply queues keep a queue per class (see
+     * UpdateQueue), and anything queued in a more urgent class goes first:
+     * the horn, then scores, period, shots and player numbers, then the
+     * clock and penalty timers ticking away.
+     */
+    public static final int PRIORITY_CRITICAL = 0;
+    public static final int PRIORITY_EVENT = 1;
+    public static final int PRIORITY_CLOCK = 2;
+    public static final int NUM_PRIORITIES = 3;
+    public static final String[] PRIORITY_NAMES =
+            { "critical", "event", "clock" };
+    /*
+     * Number of updates of each priority a slave can have waiting for the
+     * FX thread, and the most it applies in one go before letting the FX
+     * thread get on with other work.
+     */
+    public static final int APPLY_QUEUE_SIZE = 1024;
+    public static final int APPLY_BATCH_SIZE = 32;
+    /*
+     * Clock synchronization between a slave and its master (see
+     * ClockSync): the first CLOCK_SYNC_FAST_PINGS pings go out every
+     * CLOCK_SYNC_FAST_INTERVAL msec, then one every CLOCK_SYNC_INTERVAL
+     * msec.  The offset is taken from the best of the last
+     * CLOCK_SYNC_SAMPLES answers.
+     */
+    public static final int CLOCK_SYNC_FAST_PINGS = 8;
+    public static final int CLOCK_SYNC_FAST_INTERVAL = 100;
+    public static final int CLOCK_SYNC_INTERVAL = 2000;
+    public static final int CLOCK_SYNC_SAMPLES = 8;
+    /*
+     * Number of updates a slave's JitterBuffer can hold, and the longest,
+     * in msec, it will hold one before deciding its presentation time
+     * must be bogus.
+     */
+    public static final int JITTER_BUFFER_SIZE = 256;
+    public static final int JITTER_BUFFER_MAX_HOLD = 1000;
+    /*
+     * Shared memory transport (see SharedMemoryWriter): the file holds the
+     * latest update to each of up to SHM_STATE_SLOTS variables, and a ring
+     * of the last SHM_RING_SLOTS updates (a power of 2).  Each slot is
+     * SHM_SLOT_SIZE bytes, with variable names of up to SHM_NAME_SIZE.
+     */
+    public static final int SHM_STATE_SLOTS = 64;
+    public static final int SHM_RING_SLOTS = 4096;
+    public static final int SHM_SLOT_SIZE = 256;
+    public static final int SHM_NAME_SIZE = 32;
+    /*
+     * Update journal (see JournalWriter): the file is mapped, and grows,
+     * JOURNAL_REGION_SIZE bytes at a time.  No record spans two regions.
+     */
+    public static final int JOURNAL_REGION_SIZE = 8 * 1024 * 1024;
     /*
      * Debug flags are a multiple of 2
      */
@@ -107,6 +227,16 @@ public class Constants {
     public static final int DEBUG_STATUS = 0x8;
     public static final int DEBUG_ALL =
             DEBUG_IO | DEBUG_EXCEPTIONS | DEBUG_STATUS;
+    /*
+     * Number of entries DebugLog can hold before it starts dropping them.
+     * Must be a power of 2.
+     */
+    public static final int DEBUG_LOG_SIZE = 4096;
+    /*
+     * How often, in seconds, update trace histograms are printed when
+     * tracing is enabled with the -Trace command-line switch
+     */
+    public static final int TRACE_DUMP_INTERVAL = 10;
     /*
      * Horn on/off
      */
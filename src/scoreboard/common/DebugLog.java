@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import static scoreboard.common.Constants.DEBUG_LOG_SIZE;
+
+/*
+ * Asynchronous debug log.  Networking code logs what it sends, receives
+ * and its connection status when the corresponding debug flags are set;
+ * printing that synchronously puts console I/O on every tick of a busy
+ * master and perturbs the very timing being debugged.  Instead, log calls
+ * claim a slot in a preallocated ring and return, and a background
+ * daemon thread formats and prints the entries.
+ *
+ * Logging is lock-free, may be done from any thread, and doesn't
+ * allocate.  Formatting, including picking the variable and value out of
+ * an update message, happens on the drain thread.  When the ring is full
+ * entries are dropped rather than blocking the caller; drops are counted
+ * and reported in the log, in line, where they happened.  Every entry
+ * carries a sequence number giving the order in which it was logged.
+ *
+ * An entry is printed as one line, e.g.
+ *
+ *   12:31:05.412 seq=7 send peer=10.0.0.7:2011 variable=clock value=42 <up...
+ */
+public class DebugLog {
+
+    public static final int SEND = 0;
+    public static final int RECV = 1;
+    public static final int STATUS = 2;
+    public static final int EXCEPTION = 3;
+    private static final String[] KIND_NAMES = {
+        "send", "recv", "status", "exception"
+    };
+
+    private static final long DRAIN_INTERVAL_MILLIS = 10;
+
+    /*
+     * Must match XMLSpec.START_NAME, END_NAME, START_OVERALLVALUE and
+     * END_OVERALLVALUE
+     */
+    private static final String NAME_START = "<name>";
+    private static final String NAME_END = "</name>";
+    private static final String VALUE_START = "<overallValue>";
+    private static final String VALUE_END = "</overallValue>";
+
+    private static class Entry {
+        long time;
+        int kind;
+        String peer;
+        String text;
+        Throwable throwable;
+    }
+
+    private static final int MASK = DEBUG_LOG_SIZE - 1;
+    private static final Entry[] entries = new Entry[DEBUG_LOG_SIZE];
+    /*
+     * published[i] is the sequence number of the entry last completely
+     * written into entries[i]
+     */
+    private static final AtomicLongArray published =
+            new AtomicLongArray(DEBUG_LOG_SIZE);
+    private static final AtomicLong claimed = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    /*
+     * Next sequence number to be printed, only written by the drain thread
+     */
+    private static volatile long drained = 0;
+    private static long droppedReported = 0;
+
+    static {
+        for (int i = 0; i < DEBUG_LOG_SIZE; i++) {
+            entries[i] = new Entry();
+            published.set(i, -1);
+        }
+        Thread drainThread = new Thread("DebugLog") {
+            @Override
+            public void run() {
+                while (true) {
+                    if (!drain()) {
+                        try {
+                            Thread.sleep(DRAIN_INTERVAL_MILLIS);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }
+        };
+        drainThread.setDaemon(true);
+        drainThread.start();
+        /*
+         * Print whatever is left when the JVM exits
+         */
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    public static void send(String peer, String msg) {
+        log(SEND, peer, msg, null);
+    }
+
+    public static void recv(String peer, String msg) {
+        log(RECV, peer, msg, null);
+    }
+
+    public static void status(String peer, String text) {
+        log(STATUS, peer, text, null);
+    }
+
+    public static void exception(String peer, Throwable throwable) {
+        log(EXCEPTION, peer, null, throwable);
+    }
+
+    public static void log(int kind, String peer, String text,
+            Throwable throwable) {
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - drained >= DEBUG_LOG_SIZE) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        int index = (int) (seq & MASK);
+        Entry entry = entries[index];
+        entry.time = System.currentTimeMillis();
+        entry.kind = kind;
+        entry.peer = peer;
+        entry.text = text;
+        entry.throwable = throwable;
+        published.set(index, seq);
+    }
+
+    /*
+     * Entries logged, including those dropped
+     */
+    public static long getLogged() {
+        return claimed.get() + dropped.get();
+    }
+
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    /*
+     * Prints all completely written entries, returns false if there were
+     * none.  Called by the drain thread, and by the shutdown hook once
+     * the drain thread has been stopped by the JVM.
+     */
+    private static synchronized boolean drain() {
+        boolean printed = false;
+        long droppedNow = dropped.get();
+        if (droppedNow != droppedReported) {
+            System.out.println("DebugLog: " + (droppedNow - droppedReported) +
+                    " entries dropped, log ring full");
+            droppedReported = droppedNow;
+            printed = true;
+        }
+        while (true) {
+            long seq = drained;
+            int index = (int) (seq & MASK);
+            if (published.get(index) != seq) {
+                return printed;
+            }
+            Entry entry = entries[index];
+            print(seq, entry);
+            entry.peer = null;
+            entry.text = null;
+            entry.throwable = null;
+            drained = seq + 1;
+            printed = true;
+        }
+    }
+
+    private static final SimpleDateFormat timeFormat =
+            new SimpleDateFormat("HH:mm:ss.SSS");
+    private static final StringBuilder line = new StringBuilder(256);
+    private static final Date date = new Date();
+
+    private static void print(long seq, Entry entry) {
+        date.setTime(entry.time);
+        line.setLength(0);
+        line.append(timeFormat.format(date));
+        line.append(" seq=").append(seq);
+        line.append(' ').append(KIND_NAMES[entry.kind]);
+        if (entry.peer != null) {
+            line.append(" peer=").append(entry.peer);
+        }
+        if (entry.kind == SEND || entry.kind == RECV) {
+            appendUpdateFields(entry.text);
+        }
+        if (entry.text != null) {
+            line.append(' ').append(entry.text);
+        }
+        PrintStream out = entry.throwable == null ? System.out : System.err;
+        out.println(line);
+        if (entry.throwable != null) {
+            entry.throwable.printStackTrace();
+        }
+    }
+
+    /*
+     * Adds variable= and value= for update messages
+     */
+    private static void appendUpdateFields(String msg) {
+        if (msg == null) {
+            return;
+        }
+        int nameStart = msg.indexOf(NAME_START);
+        int nameEnd = msg.indexOf(NAME_END);
+        if (nameStart < 0 || nameEnd < nameStart) {
+            return;
+        }
+        line.append(" variable=").append(msg, nameStart + NAME_START.length(),
+                nameEnd);
+        int valueStart = msg.indexOf(VALUE_START, nameEnd);
+        int valueEnd = msg.indexOf(VALUE_END, nameEnd);
+        if (valueStart >= 0 && valueEnd > valueStart) {
+            line.append(" value=").append(msg,
+                    valueStart + VALUE_START.length(), valueEnd);
+        }
+    }
+}
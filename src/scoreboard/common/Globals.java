@@ -31,19 +31,20 @@
 
 package scoreboard.common;
 
-import scoreboard.fx2.networking.FxSocketReader;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import scoreboard.fx2.framework.FocusableParent;
-import scoreboard.fx2.framework.hockey.HockeyScoreboard;
+import java.util.ArrayList;
+import java.util.List;
+import static scoreboard.common.Constants.DEFAULT_CHANNEL;
 import static scoreboard.common.Constants.DEFAULT_SESSION_ADDR;
 import static scoreboard.common.Constants.DEFAULT_PORT;
 import static scoreboard.common.Constants.DEFAULT_HOST;
 import static scoreboard.common.Constants.DEFAULT_UNLIT_OPACITY;
 import static scoreboard.common.Constants.DEBUG_NONE;
-import scoreboard.fx2.networking.FxMulticastReader;
-import scoreboard.fx2.networking.FxMulticastWriter;
-import scoreboard.fx2.networking.FxMultipleSocketWriter;
+import static scoreboard.common.Constants.MAX_CHANNEL_NAME_LENGTH;
+import scoreboard.common.metrics.PipelineEvents;
+import scoreboard.common.metrics.UpdateTracer;
+import scoreboard.common.networking.Subscription;
 
 public class Globals {
     /*
@@ -59,33 +60,12 @@ public class Globals {
      * URL resource pointing to horn sound
      */
     public static String hornURL;
-    /*
-     * Reference to HockeyScoreboard instance
-     */
-    public static HockeyScoreboard hockeyScoreboardRef;
-    /*
-     * Kludge needed to prevent multiple nodes handling the same keyboard
-     * input more than once.
-     */
-    public static boolean keyEventAlreadyProcessed = false;
-
-    /*
-     * With respect to keyboard focus, this points to the last focused
-     * node.
-     */
-    public static FocusableParent lastFocused = null;
-    
     /*
      * Command-line switch determines whether to use Single IP Socket
      * to send XML updates over.
      */
     public static boolean useIPSocket = true;
     
-    /*
-     * Closed staus flag for simpleIPSocket, updated as status changes
-     */
-    public static boolean socketClosed = true;
-    
     /*
      * IP Address of simpleIPSocket
      */
@@ -112,6 +92,121 @@ public class Globals {
      */
     public static boolean displaySocket = false;
     
+    /*
+     * Command-line flag used to determine whether or not to display
+     * the pulse/frame-time performance overlay on the UI.
+     */
+    public static boolean perfOverlay = false;
+    
+    /*
+     * Command-line flag used to enable end-to-end update latency tracing.
+     */
+    public static boolean trace = false;
+    
+    /*
+     * Update latency tracer, only non-null when tracing is enabled
+     */
+    public static UpdateTracer updateTracer;
+    
+    /*
+     * Command-line flag used to emit Flight Recorder events for each stage
+     * of the update pipeline (see PipelineEvents).
+     */
+    public static boolean jfr = false;
+    
+    /*
+     * Command-line flag used to register the JMX MBeans (transport, codec
+     * and scoreboard metrics) with the platform MBeanServer.
+     */
+    public static boolean jmx = true;
+    
+    /*
+     * Command-line flag used to serve metrics over HTTP, in Prometheus
+     * format, on the given port.  0 means no metrics endpoint.
+     */
+    public static int metricsPort = 0;
+    
+    /*
+     * Command-line flag used by a master to stamp each update with a
+     * presentation time this many msec ahead, so that socket connected
+     * slaves all apply it at the same instant.  0 means updates are applied
+     * as soon as they arrive.
+     */
+    public static int syncDelay = 0;
+
+    /*
+     * Command-line flag used to publish updates to local processes
+     * through a memory mapped file (see SharedMemoryWriter), or null
+     */
+    public static String sharedMemoryFile = null;
+
+    /*
+     * Command-line flag used to journal updates sent or applied (see
+     * JournalWriter), or to name the journal JournalReplayer replays
+     */
+    public static String journalFile = null;
+
+    /*
+     * Command-line flag used to set how many times faster than recorded
+     * JournalReplayer replays, 0 being as fast as possible
+     */
+    public static double replaySpeed = 1;
+    
+    /*
+     * Command-line flag used to have multicast slaves acknowledge score,
+     * period and other event updates, and the master retransmit them until
+     * they do.  Clock ticks are always sent best-effort.
+     */
+    public static boolean ackedMulticast = true;
+    
+    /*
+     * Command-line flags used to have a multicast master send a parity
+     * datagram after every fecGroupSize datagrams, the groups interleaved
+     * fecDepth deep, so that slaves can rebuild lost updates without a
+     * retransmission (see FecEncoder).  0 means no forward error correction.
+     */
+    public static int fecGroupSize = 0;
+    public static int fecDepth = 1;
+    
+    /*
+     * Command-line flag used to have a multicast master hold each update
+     * up to this many msec, packing any that follow into the same datagram
+     * (see DatagramPacker).  0 means every update is sent straight away.
+     */
+    public static int multicastLinger = 0;
+    
+    /*
+     * Command-line flag used to have a master send every update over both
+     * IP sockets and multicast, and a slave receive both, applying
+     * whichever copy arrives first (see DuplicateFilter).
+     */
+    public static boolean dualTransport = false;
+    
+    /*
+     * Command-line flag used to have a socket slave tell its master which
+     * variables its config displays, so it is only sent updates to those
+     * (see Subscription).
+     */
+    public static boolean subscribe = true;
+    
+    /*
+     * Command-line flag used to pick which game, of those sharing a master
+     * port, a slave follows or a master sends (see Subscription)
+     */
+    public static String channel = DEFAULT_CHANNEL;
+    
+    /*
+     * Command-line flag used to have one master host a game on each of
+     * these channels, or null for the one game on channel
+     */
+    public static String[] channels = null;
+
+    /*
+     * Command-line flag, given once per screen, used to have a video wall
+     * (see MainVideoWall) show each screen with its own layout
+     */
+    public static List<String> wallConfigURLs = new ArrayList<String>();
+    
     /*
      * Command-line flag used to specify a port number.
      */
@@ -129,6 +224,22 @@ public class Globals {
      */
     public static boolean isTV = false;
     
+    /*
+     * Command-line flag used to build a slave display without any of the
+     * input machinery (KeyPads, focus transitions, mouse/key handlers,
+     * tooltips).  A slave never accepts input, so by default only what is
+     * actually drawn gets created.  Has no effect on a master.
+     */
+    public static boolean displayOnly = true;
+    
+    /*
+     * Components consult this at construction time to decide whether to
+     * allocate their input related nodes and handlers.
+     */
+    public static boolean isDisplayOnly() {
+        return isSlave && displayOnly;
+    }
+    
     /*
      * Determines the opacity of unlit scoreboard bulbs (range: 0-1).
      * Depending upon the display (e.g. TV) the DEFAULT_UNLIT_OPACITY value
@@ -142,28 +253,64 @@ public class Globals {
      */
     private static String[] helpMsg = {
         "Command-line options:\n",
+        "  -AckedMulticast:[true or false] (default true)",
+        "\t\tRetransmit multicast score and event updates until slaves ack",
+        "  -Channel:NAME (default: default)",
+        "\t\tFollow or send the game on channel NAME of the master's port",
+        "  -Channels:NAME,NAME,... (default: none)",
+        "\t\tHost a game on each channel, one window each",
         "  -configURL:URL (default: /scoreboard/config/config.xml in Scoreboard.jar)",
         "\t\tURL pointing to XML file describing remote client configuration",
         "  -debug:value ",
         "\t\tset debug flags (for values see scoreboard.common.Constants.java)",
         "  -DisplaySocket",
         "\t\tShow socket connection info at bottom of scoreboard display",
+        "  -DisplayOnly:[true or false] (default true)",
+        "\t\tBuild slave display without keypads, focus or mouse handlers",
+        "  -PerfOverlay:[true or false] (default false)",
+        "\t\tShow FX pulse, frame and update timing overlay on the display",
+        "  -DualTransport:[true or false] (default false)",
+        "\t\tSend updates over both IP and multicast sockets, first copy wins",
         "  -DumpConfig:[true or false] (default false)",
         "\t\tDump layout of scoreboard in XML (for client customization)",
+        "  -FEC:GROUP_SIZE (default: none)",
+        "\t\tSend multicast parity every GROUP_SIZE packets to repair losses",
+        "  -FECDepth:DEPTH (default 1)",
+        "\t\tInterleave DEPTH parity groups to ride out burst losses",
         "  -help or --help",
         "\t\tPrint this screen for command-line argument options and exit",
         "  -hornURL:URL (default: /scoreboard/util/sounds/BUZZER.mp3 in Scoreboard.jar)",
         "\t\tURL pointer to alternate media file representing horn sound",
         "  -host:IP_ADDRESS (default: localhost)",
         "\t\tSpecify IP Address of socket",
+        "  -Journal:PATH (default: none)",
+        "\t\tJournal updates sent or applied to PATH, or replay from PATH",
+        "  -JFR:[true or false] (default false)",
+        "\t\tEmit Flight Recorder events for every update pipeline stage",
+        "  -JMX:[true or false] (default true)",
+        "\t\tRegister transport and scoreboard metrics MBeans for JConsole",
         "  -master (default)",
         "\t\tRun as a scoreboard controller (server)",
+        "  -metricsPort:PORT_NUMBER (default: none)",
+        "\t\tServe Prometheus metrics at http://host:PORT_NUMBER/metrics",
         "  -MulticastAddr:IP_ADDRESS (default: 227.27.27.27)",
         "\t\tUse multicast socket and specify its IP address",
+        "  -MulticastLinger:MSEC (default: none)",
+        "\t\tPack multicast updates sent within MSEC into one packet",
         "  -port:PORT_NUMBER (default 2011)",
         "\t\tSpecify port for socket connection",
+        "  -SharedMemory:PATH (default: none)",
+        "\t\tPublish state and updates to local processes in mapped file PATH",
+        "  -ReplaySpeed:N or max (default 1)",
+        "\t\tReplay a journal N times faster than recorded, or flat out",
+        "  -Subscribe:[true or false] (default true)",
+        "\t\tHave slaves only receive updates to the variables they display",
+        "  -syncDelay:MSEC (default: none)",
+        "\t\tHave slaves apply each update MSEC after the master sends it",
         "  -slave\t\t",
         "\t\tRun as a remote scoreboard client",
+        "  -Trace:[true or false] (default false)",
+        "\t\tTrace and periodically print update latency, master to slave",
         "  -tv",
         "\t\tRun in full screen mode for a TV (with padding for overscan)",
         "  -unlitOpacity:[0-100] (default 10)",
@@ -172,9 +319,20 @@ public class Globals {
         "\t\tUse IP sockets (with defaults) for scoreboard updates",
         "  -UseMulticastSocket",
         "\t\tUse multicast sockets (with defaults) for scoreboard updates",
+        "  -wallConfigURL:URL (default: one -configURL screen per monitor)",
+        "\t\tAdd a video wall screen laid out by URL, once per screen",
         ""
     };
     
+    private static boolean checkChannel(String name) {
+        if (!Subscription.isValidChannel(name)) {
+            DebugLog.status(null, "Ignoring channel " + name + ": use up to " +
+                    MAX_CHANNEL_NAME_LENGTH + " letters, digits, '-' or '_'");
+            return false;
+        }
+        return true;
+    }
+
     public static void printCmdLineHelpMsg() {
         for (String str : helpMsg) {
             System.out.println(str);    
@@ -236,7 +394,7 @@ public class Globals {
                                     InetAddress.getByName(subarg[1]);
                             sessionAddr = subarg[1];
                         } catch (UnknownHostException e) {
-                            System.out.println("Bad Multicast IP address: " +
+                            DebugLog.status(null, "Bad Multicast IP address: " +
                                     subarg[1] + " supplied by command-line.");
                         }
                     }
@@ -247,7 +405,7 @@ public class Globals {
                         InetAddress address = InetAddress.getByName(subarg[1]);
                         host = subarg[1];
                     } catch (UnknownHostException e) {
-                        System.out.println("Bad IP address: " +
+                        DebugLog.status(null, "Bad IP address: " +
                                 subarg[1] + " supplied by command-line.");
                     }
                 }
@@ -271,17 +429,97 @@ public class Globals {
                         displaySocket = true;    
                     }
                 }   
+            } else if (subarg[0].equals("-PerfOverlay")) {
+                if (subarg.length > 1) {
+                    if (subarg[1].equals("true")) {
+                        perfOverlay = true;
+                    }
+                }
+            } else if (subarg[0].equals("-Trace")) {
+                if (subarg.length > 1) {
+                    if (subarg[1].equals("true")) {
+                        trace = true;
+                    }
+                }
+            } else if (subarg[0].equals("-JFR")) {
+                if (subarg.length > 1) {
+                    jfr = subarg[1].equals("true") &&
+                            PipelineEvents.isAvailable();
+                }
+            } else if (subarg[0].equals("-JMX")) {
+                if (subarg.length > 1) {
+                    jmx = subarg[1].equals("true");
+                }
+            } else if (subarg[0].equals("-metricsPort")) {
+                if (subarg.length > 1) {
+                    metricsPort = Integer.parseInt(subarg[1]);
+                }
+            } else if (subarg[0].equals("-ReplaySpeed")) {
+                if (subarg.length > 1) {
+                    replaySpeed = subarg[1].equals("max") ? 0 :
+                            Double.parseDouble(subarg[1]);
+                }
+            } else if (subarg[0].equals("-syncDelay")) {
+                if (subarg.length > 1) {
+                    syncDelay = Integer.parseInt(subarg[1]);
+                }
+            } else if (subarg[0].equals("-AckedMulticast")) {
+                if (subarg.length > 1) {
+                    ackedMulticast = subarg[1].equals("true");
+                }
+            } else if (subarg[0].equals("-FEC")) {
+                if (subarg.length > 1) {
+                    fecGroupSize = Integer.parseInt(subarg[1]);
+                }
+            } else if (subarg[0].equals("-FECDepth")) {
+                if (subarg.length > 1) {
+                    fecDepth = Math.max(1, Integer.parseInt(subarg[1]));
+                }
+            } else if (subarg[0].equals("-MulticastLinger")) {
+                if (subarg.length > 1) {
+                    multicastLinger = Integer.parseInt(subarg[1]);
+                }
+            } else if (subarg[0].equals("-DualTransport")) {
+                if (subarg.length > 1) {
+                    dualTransport = subarg[1].equals("true");
+                }
+            } else if (subarg[0].equals("-Channel")) {
+                if (subarg.length > 1 &&
+                        checkChannel(subarg[1])) {
+                    channel = subarg[1];
+                }
+            } else if (subarg[0].equals("-Channels")) {
+                if (subarg.length > 1) {
+                    channels = subarg[1].split(",");
+                    for (String c : channels) {
+                        if (!checkChannel(c)) {
+                            channels = null;
+                            break;
+                        }
+                    }
+                }
+            } else if (subarg[0].equals("-Subscribe")) {
+                if (subarg.length > 1) {
+                    subscribe = subarg[1].equals("true");
+                }
+            } else if (subarg[0].equals("-DisplayOnly")) {
+                if (subarg.length > 1) {
+                    displayOnly = subarg[1].equals("true");
+                }
             } else if (subarg[0].equals("-UseIPSocket")) {               
                 useIPSocket = true;
                 socketAddr = localAddr.getHostAddress();
             } else if (subarg[0].equals("-UseMulticastSocket")) {               
                 useIPSocket = false;
             } else if (subarg[0].equals("-configURL")
-                    || (subarg[0].equals("-hornURL"))) {
+                    || subarg[0].equals("-hornURL")
+                    || subarg[0].equals("-wallConfigURL")
+                    || subarg[0].equals("-SharedMemory")
+                    || subarg[0].equals("-Journal")) {
                 /*
                  * A little bit of kludgery here, the original separator chosen
                  * for command-line arguments was ":", which happens to
-                 * conflict with URL syntax.  For historical reasons, don't
+                 * conflict with URL (and Windows path) syntax.  For historical reasons, don't
                  * want to change.  Just append all the substrings together
                  * and insert a ":" in between (except for the last)
                  */
@@ -293,23 +531,29 @@ public class Globals {
                     }
                     if (subarg[0].equals("-configURL")) {
                         configURL = sb.toString();
-                    } else {
+                    } else if (subarg[0].equals("-hornURL")) {
                         hornURL = sb.toString();
                     }
                 }
+                if (subarg[0].equals("-wallConfigURL")) {
+                    wallConfigURLs.add(sb.toString());
+                } else if (subarg[0].equals("-SharedMemory")) {
+                    sharedMemoryFile = sb.toString();
+                } else if (subarg[0].equals("-Journal")) {
+                    journalFile = sb.toString();
+                }
             } else if (subarg[0].equals("-unlitOpacity")) {
                 if (subarg.length > 1) {
                     int value = Integer.parseInt(subarg[1]);
                     if (value >= 0 && value <= 100) {
                         unlitOpacity = (double) value / 100.0d;
-                        System.out.println("unlitOpacity changed to " +
+                        DebugLog.status(null, "unlitOpacity changed to " +
                                 unlitOpacity);
                     }
                 }   
             }
         }
         
-        System.out.println();
         if (useIPSocket) {
             /*
              * If host was specifically set by command-line, set 
@@ -320,9 +564,9 @@ public class Globals {
              * can confuse Java as to which is the proper network interface.
              */
             socketAddr = host;
-            System.out.println("Socket - " + socketAddr + ":" + port);
+            DebugLog.status(socketAddr + ":" + port, "Socket");
         } else {
-            System.out.println("IP Multicast - " + sessionAddr + ":" + port);
+            DebugLog.status(sessionAddr + ":" + port, "IP Multicast");
         }
     }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A fixed size, lock-free histogram of non-negative long values (typically
+ * microseconds).  Values 0-15 get their own bucket; above that each power
+ * of two is split into 8 sub-buckets, so any reported percentile is within
+ * 12.5% of the real value.  record() may be called concurrently from any
+ * number of threads and never allocates.
+ */
+public class Histogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS =
+            LINEAR_BUCKETS + (63 - 4) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    public Histogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+                & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    /*
+     * Largest value which maps to the given bucket index
+     */
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) * width) + width - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value < (current = min.get())) {
+            if (min.compareAndSet(current, value)) {
+                break;
+            }
+        }
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMin() {
+        return count.get() == 0 ? 0 : min.get();
+    }
+
+    public long getMax() {
+        return count.get() == 0 ? 0 : max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /*
+     * Returns the value at the given percentile (0-100).  The value returned
+     * is the upper bound of the bucket the percentile falls into, clamped to
+     * the maximum value recorded.
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil((percentile / 100.0d) * n);
+        if (target < 1) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /*
+     * Number of values recorded between from and to inclusive, which
+     * should fall on bucket boundaries (e.g. from a power of two up to one
+     * less than the next) for the count to be exact.
+     */
+    public long getCountBetween(long from, long to) {
+        long n = 0;
+        for (int i = bucketIndex(Math.max(0, from));
+                i < NUM_BUCKETS && bucketUpperBound(i) <= to; i++) {
+            n += buckets.get(i);
+        }
+        return n;
+    }
+
+    /*
+     * Adds all values recorded by another Histogram to this one
+     */
+    public void add(Histogram other) {
+        if (other.getCount() == 0) {
+            return;
+        }
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long n = other.buckets.get(i);
+            if (n != 0) {
+                buckets.addAndGet(i, n);
+            }
+        }
+        count.addAndGet(other.getCount());
+        sum.addAndGet(other.getSum());
+        long current;
+        long otherMin = other.getMin();
+        while (otherMin < (current = min.get())) {
+            if (min.compareAndSet(current, otherMin)) {
+                break;
+            }
+        }
+        long otherMax = other.getMax();
+        while (otherMax > (current = max.get())) {
+            if (max.compareAndSet(current, otherMax)) {
+                break;
+            }
+        }
+    }
+
+    /*
+     * Clears all recorded values.  Values recorded concurrently with a
+     * reset may be partially lost, which is acceptable for monitoring.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    /*
+     * Short one line summary, e.g. "pulse min 16012 p50 16638 p99 17401"
+     */
+    public String summary() {
+        return name + " min " + getMin() + " p50 " + getPercentile(50) +
+                " p99 " + getPercentile(99) + " max " + getMax();
+    }
+
+    @Override
+    public String toString() {
+        return summary() + " (n=" + getCount() + ")";
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.metrics;
+
+import java.lang.management.ManagementFactory;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import scoreboard.common.Globals;
+
+/*
+ * Registers the scoreboard's MBeans with the platform MBeanServer under
+ * the "scoreboard" domain, e.g. scoreboard:type=SocketWriter,port=2011, so
+ * they can be watched from JConsole or any JMX collector.  Nothing is
+ * registered when JMX has been turned off with -JMX:false.
+ *
+ * Registration never throws; a monitoring problem must not keep a
+ * display from running.
+ */
+public class MBeans {
+
+    public static final String DOMAIN = "scoreboard";
+
+    /*
+     * Registers mbean as DOMAIN:type=type[,keys].  If that name is already
+     * taken (e.g. several readers in one JVM) an instance key is added.
+     * Returns the name registered, or null if nothing was registered.
+     */
+    public static ObjectName register(Object mbean, String type,
+            String keys) {
+        if (!Globals.jmx) {
+            return null;
+        }
+        String base = DOMAIN + ":type=" + type +
+                (keys == null ? "" : "," + keys);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int instance = 1; ; instance++) {
+                ObjectName name = new ObjectName(instance == 1 ? base :
+                        base + ",instance=" + instance);
+                try {
+                    server.registerMBean(mbean, name);
+                    return name;
+                } catch (InstanceAlreadyExistsException e) {
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (Exception e) {
+        }
+    }
+}
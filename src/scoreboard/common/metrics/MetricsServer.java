@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.CopyOnWriteArrayList;
+import scoreboard.common.Globals;
+
+/*
+ * A tiny embedded HTTP server which serves the metrics of every registered
+ * MetricsSource at http://host:port/metrics in the Prometheus text format.
+ * Started with -metricsPort:PORT_NUMBER; when it isn't, registration is a
+ * no-op.
+ *
+ * A scrape only reads atomics, volatiles and Histograms through the
+ * sources, on the server's own thread; it takes no locks and never touches
+ * the FX thread, so a slow or stuck scraper can't stall a display.
+ */
+public class MetricsServer {
+
+    public static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE =
+            "text/plain; version=0.0.4; charset=utf-8";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /*
+     * A source and the labels added to each of its samples
+     */
+    private static class Registration {
+        final MetricsSource source;
+        final String labels;
+
+        Registration(MetricsSource source, String labels) {
+            this.source = source;
+            this.labels = labels;
+        }
+    }
+
+    private static final CopyOnWriteArrayList<Registration> registrations =
+            new CopyOnWriteArrayList<Registration>();
+    private static HttpServer server;
+
+    /*
+     * Registers source, labelling its samples with the given name/value
+     * pairs, e.g. register(this, "port", "2011").
+     */
+    public static void register(MetricsSource source, String... labels) {
+        if (Globals.metricsPort == 0) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(MetricsWriter.label(labels[i], labels[i + 1]));
+        }
+        registrations.add(new Registration(source, sb.toString()));
+    }
+
+    public static void unregister(MetricsSource source) {
+        for (Registration registration : registrations) {
+            if (registration.source == source) {
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    /*
+     * The current metrics of all registered sources
+     */
+    public static String scrape() {
+        MetricsWriter out = new MetricsWriter();
+        for (Registration registration : registrations) {
+            out.setSourceLabels(registration.labels);
+            registration.source.writeMetrics(out);
+        }
+        return out.toString();
+    }
+
+    /*
+     * Starts serving on the given port, returning once the server is up.
+     * The server's threads are created from a daemon thread, and so are
+     * daemons themselves, as a metrics endpoint must not keep the JVM
+     * alive once the display exits.
+     */
+    public static synchronized void start(final int port) {
+        if (server != null) {
+            return;
+        }
+        Thread starter = new Thread("MetricsServer") {
+            @Override
+            public void run() {
+                try {
+                    HttpServer httpServer = HttpServer.create(
+                            new InetSocketAddress(port), 0);
+                    httpServer.createContext(PATH, new HttpHandler() {
+                        public void handle(HttpExchange exchange)
+                                throws IOException {
+                            byte[] body = scrape().getBytes(UTF8);
+                            exchange.getResponseHeaders().set(
+                                    "Content-Type", CONTENT_TYPE);
+                            exchange.sendResponseHeaders(200, body.length);
+                            OutputStream os = exchange.getResponseBody();
+                            os.write(body);
+                            os.close();
+                        }
+                    });
+                    httpServer.start();
+                    server = httpServer;
+                } catch (IOException e) {
+                    System.err.println("Metrics endpoint not started on port "
+                            + port + ": " + e);
+                }
+            }
+        };
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (InterruptedException e) {
+        }
+    }
+
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
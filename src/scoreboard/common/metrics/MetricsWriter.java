@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Formats metrics in the Prometheus text exposition format (version
+ * 0.0.4).  Samples are grouped by metric family, with one HELP and TYPE
+ * line each, no matter how many sources or label sets write to the
+ * family.  The labels of the source being written (e.g. port="2011") are
+ * prepended to every sample.  A MetricsWriter is used for a single
+ * scrape on a single thread.
+ */
+public class MetricsWriter {
+
+    /*
+     * Upper bounds, in microseconds, of the buckets exported for a
+     * Histogram: powers of two from 16 usec to about 4 seconds.  These
+     * coincide with Histogram bucket boundaries, but as Histogram buckets
+     * hold values below a power of two, a value exactly on a bound is
+     * counted in the next bucket up.
+     */
+    private static final int MIN_BOUND_BITS = 4;
+    private static final int MAX_BOUND_BITS = 22;
+
+    private final Map<String, StringBuilder> families =
+            new LinkedHashMap<String, StringBuilder>();
+    private String sourceLabels = "";
+
+    /*
+     * Formats a label pair, escaping the value as Prometheus requires
+     */
+    public static String label(String name, String value) {
+        StringBuilder sb = new StringBuilder(name);
+        sb.append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    void setSourceLabels(String labels) {
+        sourceLabels = labels == null ? "" : labels;
+    }
+
+    public void counter(String name, String help, long value) {
+        counter(name, help, null, value);
+    }
+
+    public void counter(String name, String help, String labels,
+            long value) {
+        sample(family(name, help, "counter"), name, labels, null,
+                Long.toString(value));
+    }
+
+    public void gauge(String name, String help, long value) {
+        gauge(name, help, null, value);
+    }
+
+    public void gauge(String name, String help, String labels, long value) {
+        sample(family(name, help, "gauge"), name, labels, null,
+                Long.toString(value));
+    }
+
+    public void gauge(String name, String help, double value) {
+        sample(family(name, help, "gauge"), name, null, null,
+                Double.toString(value));
+    }
+
+    public void histogram(String name, String help, Histogram histogram) {
+        histogram(name, help, null, histogram);
+    }
+
+    /*
+     * _count is taken from the bucket counts read here rather than from
+     * Histogram.getCount(), so the +Inf bucket always equals _count even
+     * while values are being recorded concurrently.
+     */
+    public void histogram(String name, String help, String labels,
+            Histogram histogram) {
+        StringBuilder sb = family(name, help, "histogram");
+        long cumulative = 0;
+        long below = 0;
+        for (int bits = MIN_BOUND_BITS; bits <= MAX_BOUND_BITS; bits++) {
+            long bound = 1L << bits;
+            cumulative += histogram.getCountBetween(below, bound - 1);
+            below = bound;
+            sample(sb, name + "_bucket", labels, Long.toString(bound),
+                    Long.toString(cumulative));
+        }
+        cumulative += histogram.getCountBetween(below, Long.MAX_VALUE);
+        sample(sb, name + "_bucket", labels, "+Inf",
+                Long.toString(cumulative));
+        sample(sb, name + "_sum", labels, null,
+                Long.toString(histogram.getSum()));
+        sample(sb, name + "_count", labels, null, Long.toString(cumulative));
+    }
+
+    private StringBuilder family(String name, String help, String type) {
+        StringBuilder sb = families.get(name);
+        if (sb == null) {
+            sb = new StringBuilder();
+            sb.append("# HELP ").append(name).append(' ').append(help);
+            sb.append("\n# TYPE ").append(name).append(' ').append(type);
+            sb.append('\n');
+            families.put(name, sb);
+        }
+        return sb;
+    }
+
+    private void sample(StringBuilder sb, String name, String labels,
+            String le, String value) {
+        sb.append(name);
+        boolean hasLabels = sourceLabels.length() > 0 ||
+                (labels != null && labels.length() > 0) || le != null;
+        if (hasLabels) {
+            String separator = "{";
+            if (sourceLabels.length() > 0) {
+                sb.append(separator).append(sourceLabels);
+                separator = ",";
+            }
+            if (labels != null && labels.length() > 0) {
+                sb.append(separator).append(labels);
+                separator = ",";
+            }
+            if (le != null) {
+                sb.append(separator).append("le=\"").append(le).append('"');
+            }
+            sb.append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (StringBuilder family : families.values()) {
+            sb.append(family);
+        }
+        return sb.toString();
+    }
+}
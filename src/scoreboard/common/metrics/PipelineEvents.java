@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * Java Flight Recorder events for each stage an update goes through, from
+ * the operator changing a value on the master to the slave applying it:
+ *
+ *   master:  ValueChange - DisplayableWithDigits.setOverallValue()
+ *            Encode      - XMLSpec.updateStr()
+ *            Enqueue     - update queued for a socket subscriber
+ *            Write       - update written to a socket subscriber
+ *            MulticastSend
+ *   slave:   MulticastReceive
+ *            Dispatch    - update run on the FX thread after runLater()
+ *            Decode      - XMLInput.readUpdateStr(), which includes the
+ *                          nested Apply
+ *            Apply       - update applied to the scene graph
+ *
+ * The events are compiled in but only emitted with -JFR:true, so there is
+ * no cost otherwise; every hook checks Globals.jfr first.  To record a
+ * game, e.g.
+ *
+ *     java -XX:StartFlightRecording=filename=game.jfr ... -JFR:true
+ *
+ * and open game.jfr in JDK Mission Control, under Scoreboard.
+ *
+ * The jdk.jfr API is part of JDK 11 and later, and of OpenJDK 8 from
+ * update 262; isAvailable() guards against older runtimes.  None of
+ * these classes is loaded unless events are enabled.
+ */
+public class PipelineEvents {
+
+    private static final String CATEGORY = "Scoreboard";
+    private static final String PIPELINE = "Update Pipeline";
+
+    /*
+     * Returns true if this runtime supports Flight Recorder events
+     */
+    public static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException e) {
+            System.err.println("Flight Recorder events are not supported " +
+                    "by this Java runtime, -JFR ignored");
+            return false;
+        }
+    }
+
+    @Name("scoreboard.ValueChange")
+    @Label("Value Change")
+    @Description("A scoreboard variable was set, including notifying its listeners")
+    @Category({CATEGORY, PIPELINE})
+    @StackTrace(false)
+    public static class ValueChange extends Event {
+        @Label("Variable")
+        public String name;
+        @Label("Previous Value")
+        public int previous;
+        @Label("Value")
+        public int value;
+    }
+
+    @Name("scoreboard.Encode")
+    @Label("Encode")
+    @Description("An update message was built")
+    @Category({CATEGORY, PIPELINE})
+    @StackTrace(false)
+    public static class Encode extends Event {
+        @Label("Variable")
+        public String name;
+        @Label("Length")
+        public int length;
+    }
+
+    @Name("scoreboard.Enqueue")
+    @Label("Enqueue")
+    @Description("An update was queued for a socket subscriber")
+    @Category({CATEGORY, PIPELINE})
+    @StackTrace(false)
+    public static class Enqueue extends Event {
+        @Label("Subscriber")
+        public String subscriber;
+        @Label("Queue Depth")
+        public int queued;
+    }
+
+    @Name("scoreboard.Write")
+    @Label("Write")
+    @Description("An update was written to a socket subscriber")
+    @Category({CATEGORY, PIPELINE})
+    @StackTrace(false)
+    public static class Write extends Event {
+        @Label("Subscriber")
+        public String subscriber;
+        @Label("Length")
+        public int length;
+        @Label("Queued (usec)")
+        @Description("Time the update waited in the subscriber's queue")
+        public long queuedMicros;
+        @Label("Queue Depth")
+        public int queued;
+    }
+
+    @Name("scoreboard.MulticastSend")
+    @Label("Multicast Send")
+    @Category({CATEGORY, PIPELINE})
+    @StackTrace(false)
+    public static class MulticastSend extends Event {
+        @Label("Length")
+        public int length;
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    @Name("scoreboard.MulticastReceive")
+    @Label("Multicast Receive")
+    @Category({CATEGORY, PIPELINE})
+    @StackTrace(false)
+    public static class MulticastReceive extends Event {
+        @Label("Length")
+        public int length;
+        @Label("Truncated")
+        public boolean truncated;
+    }
+
+    @Name("scoreboard.Dispatch")
+    @Label("Dispatch")
+    @Description("An update received off the network was run on the FX thread")
+    @Category({CATEGORY, PIPELINE})
+    @StackTrace(false)
+    public static class Dispatch extends Event {
+        @Label("Queued (usec)")
+        @Description("Time between Platform.runLater() and running")
+        public long queuedMicros;
+    }
+
+    @Name("scoreboard.Decode")
+    @Label("Decode")
+    @Description("An update message was parsed and applied")
+    @Category({CATEGORY, PIPELINE})
+    @StackTrace(false)
+    public static class Decode extends Event {
+        @Label("Length")
+        public int length;
+        @Label("Fast Path")
+        public boolean fastPath;
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    @Name("scoreboard.Apply")
+    @Label("Apply")
+    @Description("A decoded update was applied to the scene graph")
+    @Category({CATEGORY, PIPELINE})
+    @StackTrace(false)
+    public static class Apply extends Event {
+        @Label("Variable")
+        public String name;
+        @Label("Value")
+        public String value;
+    }
+}
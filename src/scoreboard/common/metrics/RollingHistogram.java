@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.metrics;
+
+/*
+ * A Histogram covering a rolling time window.  Values are recorded into
+ * the active Histogram; every time roll() is called the active Histogram
+ * becomes the completed window (available via getWindow()) and recording
+ * continues into a freshly cleared one.  Every value is also recorded
+ * into a cumulative Histogram which is never rolled (available via
+ * getTotal()), for exporters which expect ever increasing counts.  Like
+ * Histogram, record() is lock-free and allocation free.
+ */
+public class RollingHistogram {
+
+    private final Histogram[] histograms = new Histogram[2];
+    private volatile int active = 0;
+    private final Histogram total;
+
+    public RollingHistogram(String name) {
+        histograms[0] = new Histogram(name);
+        histograms[1] = new Histogram(name);
+        total = new Histogram(name);
+    }
+
+    public String getName() {
+        return histograms[0].getName();
+    }
+
+    public void record(long value) {
+        histograms[active].record(value);
+        total.record(value);
+    }
+
+    /*
+     * Should be called from a single thread (e.g. a periodic timer).
+     */
+    public void roll() {
+        int next = 1 - active;
+        histograms[next].reset();
+        active = next;
+    }
+
+    /*
+     * The most recently completed window
+     */
+    public Histogram getWindow() {
+        return histograms[1 - active];
+    }
+
+    /*
+     * The window currently being recorded into
+     */
+    public Histogram getCurrent() {
+        return histograms[active];
+    }
+
+    /*
+     * Everything recorded since creation
+     */
+    public Histogram getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.metrics;
+
+/*
+ * End-to-end latency tracing of scoreboard updates, from the moment a
+ * master's DisplayableWithDigits.setOverallValue() is called until the
+ * slave has painted the change.
+ *
+ * A master stamps each update with now() and sends the stamp along in the
+ * update message (see XMLSpec.TAG_TRACE).  Stages recorded, in microseconds:
+ *
+ *   master:  post     - setOverallValue() until handed to the writer
+ *            write    - handed to the writer until written to the socket
+ *   slave:   network  - master stamp until read off the socket
+ *            dispatch - read off the socket until run on the FX thread
+ *            decode   - XML parsing
+ *            apply    - updating the scene graph
+ *            paint    - applied until the next FX pulse
+ *            total    - master stamp until the next FX pulse
+ *
+ * now() is the wall clock at startup advanced by System.nanoTime(), so
+ * intervals measured on one host are monotonic.  The network and total
+ * stages compare timestamps from two hosts and are only as good as the
+ * hosts' clock synchronization (e.g. NTP).
+ *
+ * Recording is lock-free and allocation free.  The slave side methods
+ * updateDispatched() through pulse() must be called on the FX thread.
+ * When tracing is not enabled Globals.updateTracer is null and callers
+ * skip every hook.  With a metrics endpoint (see MetricsServer) the
+ * stages are also served, cumulatively, as histograms.
+ */
+public class UpdateTracer implements MetricsSource {
+
+    private static final long ANCHOR_MICROS =
+            System.currentTimeMillis() * 1000;
+    private static final long ANCHOR_NANOS = System.nanoTime();
+
+    /*
+     * Number of applied updates that can be awaiting the next pulse
+     */
+    private static final int MAX_PENDING = 256;
+
+    private final RollingHistogram postHistogram =
+            new RollingHistogram("post");
+    private final RollingHistogram writeHistogram =
+            new RollingHistogram("write");
+    private final RollingHistogram networkHistogram =
+            new RollingHistogram("network");
+    private final RollingHistogram dispatchHistogram =
+            new RollingHistogram("dispatch");
+    private final RollingHistogram decodeHistogram =
+            new RollingHistogram("decode");
+    private final RollingHistogram applyHistogram =
+            new RollingHistogram("apply");
+    private final RollingHistogram paintHistogram =
+            new RollingHistogram("paint");
+    private final RollingHistogram totalHistogram =
+            new RollingHistogram("total");
+    private final RollingHistogram[] histograms = {
+        postHistogram, writeHistogram, networkHistogram, dispatchHistogram,
+        decodeHistogram, applyHistogram, paintHistogram, totalHistogram
+    };
+
+    /*
+     * Slave side state for the update currently being handled; only
+     * touched on the FX thread.
+     */
+    private long receiveTime;
+    private long dispatchTime;
+    private long traceStamp;
+    private long decodedTime;
+    private final long[] pendingStamps = new long[MAX_PENDING];
+    private final long[] pendingApplied = new long[MAX_PENDING];
+    private int numPending = 0;
+
+    private final int dumpIntervalSeconds;
+
+    /*
+     * Must match XMLSpec.START_TRACE and XMLSpec.END_TRACE
+     */
+    private static final String TRACE_START = "<trace>";
+    private static final String TRACE_END = "</trace>";
+
+    /*
+     * Wall clock time in microseconds, advanced monotonically
+     */
+    public static long now() {
+        return ANCHOR_MICROS + (System.nanoTime() - ANCHOR_NANOS) / 1000;
+    }
+
+    /*
+     * Extracts the trace stamp from an update message without parsing the
+     * XML, for tools that time updates outside the FX thread.  Returns -1
+     * if the update carries no stamp.
+     */
+    public static long parseTraceStamp(String update) {
+        int start = update.indexOf(TRACE_START);
+        if (start < 0) {
+            return -1;
+        }
+        start += TRACE_START.length();
+        int end = update.indexOf(TRACE_END, start);
+        if (end <= start) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = update.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    public UpdateTracer(int dumpIntervalSeconds) {
+        this.dumpIntervalSeconds = dumpIntervalSeconds;
+    }
+
+    /*
+     * Starts a daemon thread which prints, and then clears, all non-empty
+     * stage histograms every dumpIntervalSeconds.
+     */
+    public void start() {
+        Thread dumpThread = new Thread("UpdateTracer") {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(dumpIntervalSeconds * 1000L);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    dump();
+                }
+            }
+        };
+        dumpThread.setDaemon(true);
+        dumpThread.start();
+    }
+
+    public void dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Update trace (usec, last ");
+        sb.append(dumpIntervalSeconds);
+        sb.append(" sec):");
+        for (RollingHistogram rh : histograms) {
+            rh.roll();
+            Histogram h = rh.getWindow();
+            if (h.getCount() > 0) {
+                sb.append("\n  ");
+                sb.append(h.toString());
+            }
+        }
+        System.out.println(sb.toString());
+    }
+
+    /*
+     * Master side
+     */
+    public void updatePosted(long traceStamp) {
+        postHistogram.record(now() - traceStamp);
+    }
+
+    public void updateWritten(long postTime) {
+        writeHistogram.record(now() - postTime);
+    }
+
+    /*
+     * Slave side, in the order in which they are called for an update
+     */
+    public void updateDispatched(long receiveTime) {
+        this.receiveTime = receiveTime;
+        dispatchTime = now();
+        traceStamp = 0;
+    }
+
+    public void updateDecoded(long traceStamp) {
+        this.traceStamp = traceStamp;
+        decodedTime = now();
+        if (receiveTime != 0) {
+            networkHistogram.record(receiveTime - traceStamp);
+            dispatchHistogram.record(dispatchTime - receiveTime);
+            decodeHistogram.record(decodedTime - dispatchTime);
+        }
+    }
+
+    public void updateApplied() {
+        if (traceStamp == 0) {
+            return;
+        }
+        long appliedTime = now();
+        applyHistogram.record(appliedTime - decodedTime);
+        if (numPending < MAX_PENDING) {
+            pendingStamps[numPending] = traceStamp;
+            pendingApplied[numPending] = appliedTime;
+            numPending++;
+        }
+        traceStamp = 0;
+        receiveTime = 0;
+    }
+
+    /*
+     * Called once per FX pulse
+     */
+    public void pulse() {
+        if (numPending == 0) {
+            return;
+        }
+        long pulseTime = now();
+        for (int i = 0; i < numPending; i++) {
+            paintHistogram.record(pulseTime - pendingApplied[i]);
+            totalHistogram.record(pulseTime - pendingStamps[i]);
+        }
+        numPending = 0;
+    }
+
+    public RollingHistogram[] getHistograms() {
+        return histograms;
+    }
+
+    /*
+     * MetricsSource implementation, one histogram per stage
+     */
+    public void writeMetrics(MetricsWriter out) {
+        for (RollingHistogram rh : histograms) {
+            Histogram h = rh.getTotal();
+            if (h.getCount() > 0) {
+                out.histogram("scoreboard_update_stage_microseconds",
+                        "Update latency by pipeline stage",
+                        MetricsWriter.label("stage", rh.getName()), h);
+            }
+        }
+    }
+}
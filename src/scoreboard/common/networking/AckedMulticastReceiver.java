@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.Random;
+import scoreboard.common.DebugLog;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import static scoreboard.common.Constants.ACK_BEACON_SPREAD;
+import static scoreboard.common.Constants.ACK_INTERVAL;
+import static scoreboard.common.Constants.MAX_ACKS_PER_DATAGRAM;
+import static scoreboard.common.networking.AckedMulticastSender.END_ACK;
+import static scoreboard.common.networking.AckedMulticastSender.END_BEACON;
+import static scoreboard.common.networking.AckedMulticastSender.END_SEQ;
+import static scoreboard.common.networking.AckedMulticastSender.MID_ACK;
+import static scoreboard.common.networking.AckedMulticastSender.START_ACK;
+import static scoreboard.common.networking.AckedMulticastSender.START_BEACON;
+import static scoreboard.common.networking.AckedMulticastSender.START_SEQ;
+
+/*
+ * Slave side of acknowledged multicast delivery (see AckedMulticastSender).
+ * Every datagram read goes through received(), which strips the sequence
+ * number from an acknowledged update, drops it if it was already applied,
+ * and notes that it needs acking.
+ *
+ * With hundreds of slaves, acking each update as it arrives would have
+ * them all answer at once.  Instead a slave waits a random time of up to
+ * ACK_INTERVAL msec after the first update needing an ack, and acks
+ * everything received meanwhile in one datagram.  Beacons are answered
+ * the same way, spread over ACK_BEACON_SPREAD msec.  Updates are rare next
+ * to clock ticks, so the master sees about one ack per slave per update
+ * burst, and one per slave per beacon, and never more than one per slave
+ * per ACK_INTERVAL.
+ *
+ * Acks go out from a socket of the receiver's own, so that slaves sharing
+ * a host, which share the multicast port, are still told apart.
+ */
+public class AckedMulticastReceiver implements MetricsSource {
+
+    private final DatagramSocket socket;
+    private final String peer;
+    private final Random random = new Random();
+    private SocketAddress master;
+    private long epoch = -1;
+    /*
+     * Highest sequence number seen, and a bit for each of the 64 up to it,
+     * set if that one was seen too
+     */
+    private long top = 0;
+    private long window = 0;
+    /*
+     * Sequence numbers to ack, and when to send them
+     */
+    private final long[] acks = new long[MAX_ACKS_PER_DATAGRAM];
+    private int numAcks = 0;
+    private long ackDue = Long.MAX_VALUE;
+    private long lastAck = 0;
+    private volatile boolean closed = false;
+    /*
+     * Statistics
+     */
+    private volatile long framesReceived = 0;
+    private volatile long duplicates = 0;
+    private volatile long acksSent = 0;
+
+    /**
+     * @param peer address:port of the group, for the DebugLog
+     * @throws SocketException if the socket for acks cannot be created
+     */
+    public AckedMulticastReceiver(String peer) throws SocketException {
+        this.socket = new DatagramSocket();
+        this.peer = peer;
+        Thread acker = new Thread("AckedMulticastReceiver acks") {
+            @Override
+            public void run() {
+                sendAcks();
+            }
+        };
+        acker.setDaemon(true);
+        acker.start();
+    }
+
+    /**
+     * Handle a datagram read from the multicast group.
+     * @param msg datagram contents
+     * @param source where the datagram came from, or null if it was
+     *               rebuilt rather than read
+     * @return the update to apply, or null if there is nothing to apply
+     */
+    public String received(String msg, SocketAddress source) {
+        if (msg.startsWith(START_BEACON)) {
+            int end = msg.indexOf(END_BEACON);
+            if (end > 0) {
+                synchronized (this) {
+                    newEpoch(parse(msg, START_BEACON.length(), end), source);
+                    scheduleAck(ACK_BEACON_SPREAD);
+                }
+            }
+            return null;
+        }
+        int start = msg.lastIndexOf(START_SEQ);
+        if (start < 0) {
+            return msg;
+        }
+        int dot = msg.indexOf('.', start);
+        int end = msg.indexOf(END_SEQ, start);
+        if (dot < 0 || end < dot) {
+            return msg;
+        }
+        long frameEpoch = parse(msg, start + START_SEQ.length(), dot);
+        long seq = parse(msg, dot + 1, end);
+        boolean isNew;
+        synchronized (this) {
+            newEpoch(frameEpoch, source);
+            isNew = isNew(seq);
+            if (numAcks < acks.length) {
+                acks[numAcks++] = seq;
+            }
+            scheduleAck(numAcks == acks.length ? 0 : ACK_INTERVAL);
+        }
+        framesReceived++;
+        if (!isNew) {
+            duplicates++;
+            return null;
+        }
+        return msg.substring(0, start) +
+                msg.substring(end + END_SEQ.length());
+    }
+
+    private static long parse(String msg, int from, int to) {
+        try {
+            return Long.parseLong(msg.substring(from, to));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /*
+     * A new epoch means a restarted master, counting from 1 again
+     */
+    private void newEpoch(long newEpoch, SocketAddress source) {
+        if (source != null) {
+            master = source;
+        }
+        if (newEpoch != epoch) {
+            epoch = newEpoch;
+            top = 0;
+            window = 0;
+            numAcks = 0;
+        }
+    }
+
+    private boolean isNew(long seq) {
+        if (seq > top) {
+            long shift = seq - top;
+            window = shift >= 64 ? 1 : (window << shift) | 1;
+            top = seq;
+            return true;
+        }
+        long age = top - seq;
+        if (age >= 64 || (window & (1L << age)) != 0) {
+            return false;
+        }
+        window |= 1L << age;
+        return true;
+    }
+
+    private void scheduleAck(int spread) {
+        long due = Math.max(lastAck + ACK_INTERVAL,
+                System.currentTimeMillis() +
+                (spread == 0 ? 0 : random.nextInt(spread)));
+        if (due < ackDue) {
+            ackDue = due;
+            notifyAll();
+        }
+    }
+
+    private synchronized void sendAcks() {
+        while (!closed) {
+            try {
+                long now = System.currentTimeMillis();
+                if (now < ackDue) {
+                    wait(ackDue == Long.MAX_VALUE ? 0 : ackDue - now);
+                    continue;
+                }
+                StringBuilder sb = new StringBuilder(START_ACK);
+                sb.append(epoch).append(MID_ACK);
+                for (int i = 0; i < numAcks; i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    sb.append(acks[i]);
+                }
+                sb.append(END_ACK);
+                numAcks = 0;
+                ackDue = Long.MAX_VALUE;
+                if (master != null) {
+                    byte[] data = sb.toString().getBytes();
+                    socket.send(new DatagramPacket(data, data.length,
+                            master));
+                    lastAck = now;
+                    acksSent++;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                DebugLog.exception(peer, e);
+            }
+        }
+    }
+
+    /**
+     * Stop sending acks and close the socket.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+        socket.close();
+    }
+
+    public long getFramesReceived() {
+        return framesReceived;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getAcksSent() {
+        return acksSent;
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        out.counter("scoreboard_acked_multicast_frames_received_total",
+                "Acknowledged updates received, including duplicates",
+                framesReceived);
+        out.counter("scoreboard_acked_multicast_duplicates_total",
+                "Retransmitted updates already applied", duplicates);
+        out.counter("scoreboard_acked_multicast_acks_sent_total",
+                "Ack datagrams sent", acksSent);
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import scoreboard.common.DebugLog;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import static scoreboard.common.Constants.ACK_HEARTBEAT_INTERVAL;
+import static scoreboard.common.Constants.ACK_SLAVE_TIMEOUT;
+import static scoreboard.common.Constants.DEFAULT_CHANNEL;
+import static scoreboard.common.Constants.MAX_DATAGRAM_MSG_SIZE;
+import static scoreboard.common.Constants.MAX_RETRANSMITS;
+import static scoreboard.common.Constants.PRIORITY_CRITICAL;
+import static scoreboard.common.Constants.PRIORITY_EVENT;
+import static scoreboard.common.Constants.RETRANSMIT_INITIAL_INTERVAL;
+import static scoreboard.common.Constants.RETRANSMIT_MAX_INTERVAL;
+
+/*
+ * Master side of acknowledged multicast delivery.  Clock ticks are sent
+ * best-effort, the next tick puts right a lost one, but a lost score or
+ * period update would stay wrong until the next change.  Those go through
+ * send() instead, which tags the update with a sequence number,
+ *
+ *     <update>...<seq>EPOCH.N</seq></update>
+ *
+ * and keeps retransmitting it, with exponential backoff, until every known
+ * slave has acknowledged it, or it has been retransmitted MAX_RETRANSMITS
+ * times.  EPOCH is the master's start time, so that slaves notice a
+ * restarted master numbering from 1 again.
+ *
+ * Frames go out from a socket of their own, so slaves can send their acks
+ * straight back to the source of the frame (see AckedMulticastReceiver).
+ * Slaves are only known by their acks, so a beacon,
+ *
+ *     <beacon><epoch>EPOCH</epoch></beacon>
+ *
+ * is multicast every ACK_HEARTBEAT_INTERVAL msec for them to answer.  A
+ * slave not heard from in ACK_SLAVE_TIMEOUT msec is forgotten, and nothing
+ * more is waited for on its behalf.
+ *
+ * A newer update of the same variable supersedes one still being
+ * retransmitted: it is only the latest value that needs to get through.
+ * PRIORITY_CRITICAL updates are the exception, each being an event (the
+ * horn going on, then off) which every slave must see.
+ *
+ * Frames and beacons are packed by a DatagramPacker of their own, and with
+ * forward error correction on, numbered into the same FecEncoder stream as
+ * everything else the master sends.
+ */
+public class AckedMulticastSender implements MetricsSource {
+
+    /*
+     * Must match XMLSpec.END_UPDATE
+     */
+    static final String END_UPDATE = "</update>";
+    static final String START_SEQ = "<seq>";
+    static final String END_SEQ = "</seq>";
+    static final String START_BEACON = "<beacon><epoch>";
+    static final String END_BEACON = "</epoch></beacon>";
+    static final String START_ACK = "<ack><epoch>";
+    static final String MID_ACK = "</epoch><seq>";
+    static final String END_ACK = "</seq></ack>";
+
+    /*
+     * An update waiting for acks
+     */
+    private static class Frame {
+        long seq;
+        String key;
+        boolean critical;
+        byte[] data;
+        long firstSent;
+        long nextSend;
+        int interval;
+        int retransmits;
+        Set<SocketAddress> outstanding;
+    }
+
+    private final MulticastSocket socket;
+    private final String peer;
+    private final DatagramPacker packer;
+    private final long epoch = System.currentTimeMillis();
+    private long nextSeq = 1;
+    private long nextBeacon = 0;
+    private volatile boolean closed = false;
+    /*
+     * Last time, in msec, each known slave was heard from
+     */
+    private final Map<SocketAddress, Long> slaves =
+            new HashMap<SocketAddress, Long>();
+    private final List<Frame> pending = new ArrayList<Frame>();
+    /*
+     * Statistics
+     */
+    private volatile long framesSent = 0;
+    private volatile long retransmissions = 0;
+    private volatile long acksReceived = 0;
+    private volatile long framesAcked = 0;
+    private volatile long framesSuperseded = 0;
+    private volatile long framesAbandoned = 0;
+    private volatile long slavesTimedOut = 0;
+    /*
+     * Time, in usec, from a frame's first transmission to its last ack
+     */
+    private final Histogram ackLatency = new Histogram("ack latency");
+
+    /**
+     * Start sending acknowledged updates to a multicast group.
+     * @param group multicast group address
+     * @param port multicast group port
+     * @param fecEncoder forward error correction to send through, or null
+     * @param linger msec to hold a frame for others to join its datagram
+     * @throws IOException if the socket cannot be created
+     */
+    public AckedMulticastSender(InetAddress group, int port,
+            FecEncoder fecEncoder, int linger) throws IOException {
+        this(group, port, fecEncoder, linger, DEFAULT_CHANNEL);
+    }
+
+    /**
+     * Start sending acknowledged updates to one channel of a multicast
+     * group (see ChannelSocket).
+     * @param group multicast group address
+     * @param port multicast group port
+     * @param fecEncoder forward error correction to send through, or null
+     * @param linger msec to hold a frame for others to join its datagram
+     * @param channel channel name
+     * @throws IOException if the socket cannot be created
+     */
+    public AckedMulticastSender(InetAddress group, int port,
+            FecEncoder fecEncoder, int linger, String channel)
+            throws IOException {
+        this.peer = group.getHostAddress() + ":" + port;
+        socket = new ChannelSocket(channel);
+        packer = new DatagramPacker(socket, group, port, fecEncoder,
+                linger) {
+            @Override
+            protected void sent(int len) {
+                AckedMulticastSender.this.sent(len);
+            }
+        };
+        Thread ackReader = new Thread("AckedMulticastSender acks") {
+            @Override
+            public void run() {
+                readAcks();
+            }
+        };
+        ackReader.setDaemon(true);
+        ackReader.start();
+        Thread retransmitter = new Thread("AckedMulticastSender retransmit") {
+            @Override
+            public void run() {
+                retransmit();
+            }
+        };
+        retransmitter.setDaemon(true);
+        retransmitter.start();
+    }
+
+    /**
+     * Multicast an update and see it acknowledged.
+     * @param update XML update, ending with </update>
+     * @param key name of the variable updated; a later update with the
+     *            same key supersedes this one
+     * @return number of bytes sent
+     * @throws IOException if the update could not be sent
+     */
+    public int send(String update, String key) throws IOException {
+        return send(update, PRIORITY_EVENT, key);
+    }
+
+    /**
+     * Multicast an update and see it acknowledged.
+     * @param update XML update, ending with </update>
+     * @param priority priority class of the update (see
+     *            scoreboard.common.Constants); PRIORITY_CRITICAL updates
+     *            are neither superseded nor supersede others
+     * @param key name of the variable updated; a later update with the
+     *            same key supersedes this one
+     * @return number of bytes sent
+     * @throws IOException if the update could not be sent
+     */
+    public int send(String update, int priority, String key)
+            throws IOException {
+        Frame frame = new Frame();
+        synchronized (this) {
+            frame.seq = nextSeq++;
+            frame.key = key;
+            frame.critical = priority == PRIORITY_CRITICAL;
+            int end = update.lastIndexOf(END_UPDATE);
+            if (end < 0) {
+                end = update.length();
+            }
+            frame.data = (update.substring(0, end) + START_SEQ + epoch +
+                    "." + frame.seq + END_SEQ + update.substring(end))
+                    .getBytes();
+            frame.firstSent = System.currentTimeMillis();
+            frame.interval = RETRANSMIT_INITIAL_INTERVAL;
+            frame.nextSend = frame.firstSent + frame.interval;
+            if (!frame.critical) {
+                for (Iterator<Frame> it = pending.iterator();
+                        it.hasNext(); ) {
+                    Frame older = it.next();
+                    if (!older.critical && older.key.equals(key)) {
+                        it.remove();
+                        framesSuperseded++;
+                    }
+                }
+            }
+            if (!slaves.isEmpty()) {
+                frame.outstanding =
+                        new HashSet<SocketAddress>(slaves.keySet());
+                pending.add(frame);
+                notifyAll();
+            }
+        }
+        sendFrame(frame.data);
+        framesSent++;
+        return frame.data.length;
+    }
+
+    private void sendFrame(byte[] data) throws IOException {
+        packer.add(data);
+    }
+
+    /**
+     * Called after each datagram is sent, whether it packs new frames,
+     * retransmissions or a beacon.  Overridden to keep statistics.
+     * @param len number of bytes packed into it
+     */
+    protected void sent(int len) {
+    }
+
+    /**
+     * Send any frames still held for packing.
+     * @throws IOException if the datagram could not be sent
+     */
+    public void flush() throws IOException {
+        packer.flush();
+    }
+
+    /*
+     * Retransmits frames as they come due, sends beacons and forgets
+     * slaves that have gone quiet.
+     */
+    private synchronized void retransmit() {
+        while (!closed) {
+            long now = System.currentTimeMillis();
+            expireSlaves(now);
+            try {
+                if (now >= nextBeacon) {
+                    sendFrame((START_BEACON + epoch + END_BEACON).getBytes());
+                    nextBeacon = now + ACK_HEARTBEAT_INTERVAL;
+                }
+                long wake = nextBeacon;
+                for (Iterator<Frame> it = pending.iterator(); it.hasNext(); ) {
+                    Frame frame = it.next();
+                    if (now >= frame.nextSend) {
+                        if (frame.retransmits == MAX_RETRANSMITS) {
+                            it.remove();
+                            framesAbandoned++;
+                            continue;
+                        }
+                        sendFrame(frame.data);
+                        frame.retransmits++;
+                        retransmissions++;
+                        frame.interval = Math.min(frame.interval * 2,
+                                RETRANSMIT_MAX_INTERVAL);
+                        frame.nextSend = now + frame.interval;
+                    }
+                    wake = Math.min(wake, frame.nextSend);
+                }
+                wait(Math.max(1, wake - now));
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                DebugLog.exception(peer, e);
+                try {
+                    wait(RETRANSMIT_INITIAL_INTERVAL);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void expireSlaves(long now) {
+        for (Iterator<Map.Entry<SocketAddress, Long>> it =
+                slaves.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<SocketAddress, Long> entry = it.next();
+            if (now - entry.getValue() > ACK_SLAVE_TIMEOUT) {
+                it.remove();
+                slavesTimedOut++;
+                for (Iterator<Frame> fit = pending.iterator();
+                        fit.hasNext(); ) {
+                    Frame frame = fit.next();
+                    frame.outstanding.remove(entry.getKey());
+                    if (frame.outstanding.isEmpty()) {
+                        fit.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private void readAcks() {
+        byte[] readBuf = new byte[MAX_DATAGRAM_MSG_SIZE];
+        DatagramPacket readPacket = new DatagramPacket(readBuf,
+                readBuf.length);
+        while (!closed) {
+            try {
+                socket.receive(readPacket);
+                String msg = new String(readPacket.getData(), 0,
+                        readPacket.getLength());
+                ackReceived(msg, readPacket.getSocketAddress());
+            } catch (IOException e) {
+                if (!closed) {
+                    DebugLog.exception(peer, e);
+                }
+                return;
+            }
+        }
+    }
+
+    /*
+     * <ack><epoch>EPOCH</epoch><seq>N,N,...</seq></ack>
+     */
+    private void ackReceived(String msg, SocketAddress slave) {
+        int mid = msg.indexOf(MID_ACK);
+        int end = msg.lastIndexOf(END_ACK);
+        if (!msg.startsWith(START_ACK) || mid < 0 || end < mid) {
+            return;
+        }
+        acksReceived++;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            slaves.put(slave, now);
+            long ackEpoch;
+            try {
+                ackEpoch = Long.parseLong(
+                        msg.substring(START_ACK.length(), mid));
+            } catch (NumberFormatException e) {
+                return;
+            }
+            if (ackEpoch != epoch) {
+                return;
+            }
+            int from = mid + MID_ACK.length();
+            while (from < end) {
+                int comma = msg.indexOf(',', from);
+                int to = comma < 0 || comma > end ? end : comma;
+                try {
+                    acked(Long.parseLong(msg.substring(from, to)), slave,
+                            now);
+                } catch (NumberFormatException e) {
+                }
+                from = to + 1;
+            }
+        }
+    }
+
+    private void acked(long seq, SocketAddress slave, long now) {
+        for (Iterator<Frame> it = pending.iterator(); it.hasNext(); ) {
+            Frame frame = it.next();
+            if (frame.seq == seq) {
+                frame.outstanding.remove(slave);
+                if (frame.outstanding.isEmpty()) {
+                    it.remove();
+                    framesAcked++;
+                    ackLatency.record((now - frame.firstSent) * 1000);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stop retransmitting and close the socket.
+     */
+    public void close() {
+        closed = true;
+        packer.close();
+        synchronized (this) {
+            notifyAll();
+        }
+        socket.close();
+    }
+
+    /**
+     * @return number of slaves currently known
+     */
+    public synchronized int getKnownSlaves() {
+        return slaves.size();
+    }
+
+    /**
+     * @return number of frames still waiting for acks
+     */
+    public synchronized int getPendingFrames() {
+        return pending.size();
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getRetransmissions() {
+        return retransmissions;
+    }
+
+    public long getAcksReceived() {
+        return acksReceived;
+    }
+
+    public long getFramesAcked() {
+        return framesAcked;
+    }
+
+    public long getFramesAbandoned() {
+        return framesAbandoned;
+    }
+
+    public long getSlavesTimedOut() {
+        return slavesTimedOut;
+    }
+
+    public Histogram getAckLatency() {
+        return ackLatency;
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        out.gauge("scoreboard_acked_multicast_slaves",
+                "Slaves acknowledging multicast updates", getKnownSlaves());
+        out.gauge("scoreboard_acked_multicast_pending",
+                "Updates waiting to be acknowledged", getPendingFrames());
+        out.counter("scoreboard_acked_multicast_frames_total",
+                "Updates sent for acknowledgement", framesSent);
+        out.counter("scoreboard_acked_multicast_retransmissions_total",
+                "Updates retransmitted for want of an ack", retransmissions);
+        out.counter("scoreboard_acked_multicast_acks_total",
+                "Ack datagrams received", acksReceived);
+        out.counter("scoreboard_acked_multicast_acked_total",
+                "Updates acknowledged by every slave", framesAcked);
+        out.counter("scoreboard_acked_multicast_superseded_total",
+                "Updates replaced by a newer value before every ack came in",
+                framesSuperseded);
+        out.counter("scoreboard_acked_multicast_abandoned_total",
+                "Updates given up on after the last retransmission",
+                framesAbandoned);
+        out.counter("scoreboard_acked_multicast_slave_timeouts_total",
+                "Slaves forgotten after going quiet", slavesTimedOut);
+        out.histogram("scoreboard_acked_multicast_ack_latency_microseconds",
+                "Time from sending an update to its last ack", ackLatency);
+    }
+}
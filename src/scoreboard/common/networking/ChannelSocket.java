@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.MulticastSocket;
+import static scoreboard.common.Constants.DEFAULT_CHANNEL;
+import static scoreboard.common.Constants.MAX_DATAGRAM_MSG_SIZE;
+
+/*
+ * A MulticastSocket for one channel (see Subscription) of a multicast
+ * group.  Every datagram sent is prefixed <ch>NAME</ch>, outside any
+ * forward error correction or acknowledgement framing, so that masters of
+ * several games can share one group and port: a slave drops other
+ * channels' datagrams, parity and beacons included, before they reach its
+ * FecDecoder or AckedMulticastReceiver.  The default channel is sent
+ * untagged, as it always was.
+ */
+public class ChannelSocket extends MulticastSocket {
+
+    private static final String START_CH = "<ch>";
+    private static final String END_CH = "</ch>";
+
+    private final String channel;
+    /*
+     * Prefix of this channel's datagrams, or null for the default channel
+     */
+    private final byte[] tag;
+    private final byte[] sendBuf;
+    private final DatagramPacket sendPacket;
+
+    public ChannelSocket(String channel) throws IOException {
+        super();
+        this.channel = channel;
+        tag = tag(channel);
+        sendBuf = tag == null ? null :
+                new byte[tag.length + MAX_DATAGRAM_MSG_SIZE];
+        sendPacket = tag == null ? null : new DatagramPacket(sendBuf, 0);
+    }
+
+    public ChannelSocket(int port, String channel) throws IOException {
+        super(port);
+        this.channel = channel;
+        tag = tag(channel);
+        sendBuf = tag == null ? null :
+                new byte[tag.length + MAX_DATAGRAM_MSG_SIZE];
+        sendPacket = tag == null ? null : new DatagramPacket(sendBuf, 0);
+    }
+
+    private static byte[] tag(String channel) {
+        return channel.equals(DEFAULT_CHANNEL) ? null :
+                (START_CH + channel + END_CH).getBytes();
+    }
+
+    public String getChannelName() {
+        return channel;
+    }
+
+    @Override
+    public void send(DatagramPacket p) throws IOException {
+        if (tag == null) {
+            super.send(p);
+            return;
+        }
+        synchronized (sendPacket) {
+            System.arraycopy(p.getData(), p.getOffset(), sendBuf, tag.length,
+                    p.getLength());
+            System.arraycopy(tag, 0, sendBuf, 0, tag.length);
+            sendPacket.setData(sendBuf, 0, tag.length + p.getLength());
+            sendPacket.setSocketAddress(p.getSocketAddress());
+            super.send(sendPacket);
+        }
+    }
+
+    /**
+     * Strip the channel tag from a datagram read, moving what follows it
+     * to the start of data.
+     * @param data datagram contents
+     * @param length datagram length
+     * @return length left, or -1 if the datagram is for another channel
+     */
+    public int strip(byte[] data, int length) {
+        boolean tagged = startsWith(data, length, START_CH);
+        if (tag == null) {
+            return tagged ? -1 : length;
+        }
+        if (!tagged || length < tag.length) {
+            return -1;
+        }
+        for (int i = 0; i < tag.length; i++) {
+            if (data[i] != tag[i]) {
+                return -1;
+            }
+        }
+        System.arraycopy(data, tag.length, data, 0, length - tag.length);
+        return length - tag.length;
+    }
+
+    private static boolean startsWith(byte[] data, int length, String s) {
+        if (length < s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (data[i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import static scoreboard.common.Constants.CLOCK_SYNC_FAST_INTERVAL;
+import static scoreboard.common.Constants.CLOCK_SYNC_FAST_PINGS;
+import static scoreboard.common.Constants.CLOCK_SYNC_INTERVAL;
+import static scoreboard.common.Constants.CLOCK_SYNC_SAMPLES;
+
+/*
+ * Estimates the offset between a slave's clock and its master's, so that
+ * an update the master stamps with a presentation time (see
+ * XMLSpec.TAG_AT) can be applied at the same instant on every slave.
+ *
+ * The slave periodically sends <ping><t0>T0</t0></ping> over its socket,
+ * where T0 is its own now().  The master answers straight away with
+ * <pong><t0>T0</t0><t1>T1</t1></pong>, T1 being the master's now() when
+ * the ping was read.  When the pong is read at T3,
+ *
+ *     round trip = T3 - T0
+ *     offset     = T1 - (T0 + T3) / 2       (master clock - slave clock)
+ *
+ * which is exact if the two directions take equally long.  Queueing on
+ * either side only ever makes the round trip longer, so of the last
+ * CLOCK_SYNC_SAMPLES samples the one with the shortest round trip is
+ * used.  Its error is at most half its round trip.
+ *
+ * Times are in microseconds from System.nanoTime(), so they are monotonic
+ * on each host but unrelated between hosts until the offset is known.
+ */
+public class ClockSync implements MetricsSource {
+
+    private static final String START_PING = "<ping><t0>";
+    private static final String END_PING = "</t0></ping>";
+    private static final String START_PONG = "<pong><t0>";
+    private static final String MID_PONG = "</t0><t1>";
+    private static final String END_PONG = "</t1></pong>";
+
+    private final long[] sampleOffsets = new long[CLOCK_SYNC_SAMPLES];
+    private final long[] sampleRoundTrips = new long[CLOCK_SYNC_SAMPLES];
+    private int numSamples = 0;
+    private int nextSlot = 0;
+    private long samplesTaken = 0;
+    private volatile long offset;
+    private volatile long roundTrip;
+    private volatile boolean synced = false;
+    private Thread pinger;
+
+    /*
+     * Monotonic time in microseconds
+     */
+    public static long now() {
+        return System.nanoTime() / 1000;
+    }
+
+    public static boolean isPing(String line) {
+        return line.startsWith(START_PING);
+    }
+
+    public static boolean isPong(String line) {
+        return line.startsWith(START_PONG);
+    }
+
+    public static String pingStr(long t0) {
+        return START_PING + t0 + END_PING;
+    }
+
+    /*
+     * The master's answer to a ping read at t1.  Returns null if the ping
+     * is malformed.
+     */
+    public static String pongStr(String ping, long t1) {
+        if (!ping.endsWith(END_PING)) {
+            return null;
+        }
+        String t0 = ping.substring(START_PING.length(),
+                ping.length() - END_PING.length());
+        return START_PONG + t0 + MID_PONG + t1 + END_PONG;
+    }
+
+    /*
+     * Folds in the sample carried by a pong read at t3.  Malformed pongs
+     * are ignored.
+     */
+    public void pongReceived(String pong, long t3) {
+        int mid = pong.indexOf(MID_PONG);
+        if (mid < 0 || !pong.endsWith(END_PONG)) {
+            return;
+        }
+        long t0, t1;
+        try {
+            t0 = Long.parseLong(pong.substring(START_PONG.length(), mid));
+            t1 = Long.parseLong(pong.substring(mid + MID_PONG.length(),
+                    pong.length() - END_PONG.length()));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (t3 < t0) {
+            return;
+        }
+        addSample(t1 - (t0 + t3) / 2, t3 - t0);
+    }
+
+    synchronized void addSample(long sampleOffset, long sampleRoundTrip) {
+        samplesTaken++;
+        sampleOffsets[nextSlot] = sampleOffset;
+        sampleRoundTrips[nextSlot] = sampleRoundTrip;
+        nextSlot = (nextSlot + 1) % CLOCK_SYNC_SAMPLES;
+        if (numSamples < CLOCK_SYNC_SAMPLES) {
+            numSamples++;
+        }
+        int best = 0;
+        for (int i = 1; i < numSamples; i++) {
+            if (sampleRoundTrips[i] < sampleRoundTrips[best]) {
+                best = i;
+            }
+        }
+        offset = sampleOffsets[best];
+        roundTrip = sampleRoundTrips[best];
+        synced = true;
+    }
+
+    /*
+     * True once at least one ping has been answered
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /*
+     * Converts a time on the master's clock to this host's clock
+     */
+    public long toLocal(long masterMicros) {
+        return masterMicros - offset;
+    }
+
+    /*
+     * Master clock - local clock, in microseconds
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /*
+     * Round trip of the sample the offset is taken from, in microseconds
+     */
+    public long getRoundTrip() {
+        return roundTrip;
+    }
+
+    public synchronized long getSamplesTaken() {
+        return samplesTaken;
+    }
+
+    /*
+     * Forgets the samples taken so far.  A new connection may be to a
+     * restarted master, or take another route, so neither its clock nor
+     * its round trips can be compared with the old ones.
+     */
+    public synchronized void reset() {
+        numSamples = 0;
+        nextSlot = 0;
+        synced = false;
+    }
+
+    /*
+     * Pings the master over socket until stop() is called: quickly at
+     * first, to be synchronized within a second of connecting, then every
+     * CLOCK_SYNC_INTERVAL to follow drift between the two clocks.  Called
+     * on every (re)connection, it starts again from no samples.
+     */
+    public synchronized void start(final GenericSocket socket) {
+        stop();
+        reset();
+        pinger = new Thread("ClockSync") {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; !isInterrupted(); i++) {
+                        socket.sendMessage(pingStr(now()));
+                        Thread.sleep(i < CLOCK_SYNC_FAST_PINGS ?
+                                CLOCK_SYNC_FAST_INTERVAL :
+                                CLOCK_SYNC_INTERVAL);
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        pinger.setDaemon(true);
+        pinger.start();
+    }
+
+    public synchronized void stop() {
+        if (pinger != null) {
+            pinger.interrupt();
+            pinger = null;
+        }
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        out.gauge("scoreboard_clock_sync_synced",
+                "1 once the master's clock offset is known, otherwise 0",
+                synced ? 1 : 0);
+        out.gauge("scoreboard_clock_sync_offset_microseconds",
+                "Master clock minus local clock", offset);
+        out.gauge("scoreboard_clock_sync_round_trip_microseconds",
+                "Round trip of the ping the offset is taken from", roundTrip);
+        out.counter("scoreboard_clock_sync_samples_total",
+                "Pings answered by the master", getSamplesTaken());
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.List;
+import scoreboard.common.DebugLog;
+import static scoreboard.common.Constants.MAX_PACKED_SIZE;
+
+/*
+ * Packs multicast messages into as few datagrams as they fit, rather than
+ * paying a packet, and on Wi-Fi a slot of airtime, for each ~70 byte
+ * update.  Messages are joined by newlines, which no message contains, up
+ * to MAX_PACKED_SIZE bytes, leaving room in MAX_DATAGRAM_MSG_SIZE for
+ * forward error correction numbering (see FecEncoder).
+ *
+ * A message is held for up to linger msec in case more follow, as they do
+ * in a burst like a period reset.  With a linger of 0 each message goes
+ * out straight away, as it always has.  flush() sends whatever is held
+ * right now, e.g. ahead of the horn.
+ *
+ * A reader splits what it reads with unpack().
+ */
+public class DatagramPacker {
+
+    static final byte SEPARATOR = '\n';
+
+    private final DatagramSocket socket;
+    private final InetAddress group;
+    private final int port;
+    private final FecEncoder fecEncoder;
+    private final int linger;
+    private final byte[] buf = new byte[MAX_PACKED_SIZE];
+    private int length = 0;
+    private int count = 0;
+    private long due = Long.MAX_VALUE;
+    private volatile boolean closed = false;
+    /*
+     * Statistics
+     */
+    private volatile long messagesPacked = 0;
+    private volatile long datagramsSent = 0;
+
+    /**
+     * @param socket socket to send from
+     * @param group multicast group address
+     * @param port multicast group port
+     * @param fecEncoder forward error correction to send through, or null
+     * @param linger msec to hold a message for others to join it
+     */
+    public DatagramPacker(DatagramSocket socket, InetAddress group, int port,
+            FecEncoder fecEncoder, int linger) {
+        this.socket = socket;
+        this.group = group;
+        this.port = port;
+        this.fecEncoder = fecEncoder;
+        this.linger = linger;
+        if (linger > 0) {
+            Thread flusher = new Thread("DatagramPacker flush") {
+                @Override
+                public void run() {
+                    flushLoop();
+                }
+            };
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Add a message to the next datagram, sending what is already packed
+     * first if it would not fit.
+     * @param msg message to send
+     * @throws IOException if a datagram could not be sent
+     */
+    public synchronized void add(byte[] msg) throws IOException {
+        if (length > 0 && length + 1 + msg.length > buf.length) {
+            flush();
+        }
+        if (msg.length > buf.length) {
+            transmit(msg, msg.length);
+            messagesPacked++;
+            return;
+        }
+        if (length > 0) {
+            buf[length++] = SEPARATOR;
+        }
+        System.arraycopy(msg, 0, buf, length, msg.length);
+        length += msg.length;
+        count++;
+        messagesPacked++;
+        if (linger == 0) {
+            flush();
+        } else if (count == 1) {
+            due = System.currentTimeMillis() + linger;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Send whatever is packed.
+     * @throws IOException if the datagram could not be sent
+     */
+    public synchronized void flush() throws IOException {
+        if (length == 0) {
+            return;
+        }
+        int len = length;
+        length = 0;
+        count = 0;
+        due = Long.MAX_VALUE;
+        transmit(buf, len);
+    }
+
+    private void transmit(byte[] data, int len) throws IOException {
+        if (fecEncoder != null) {
+            byte[] payload = new byte[len];
+            System.arraycopy(data, 0, payload, 0, len);
+            fecEncoder.send(socket, payload);
+        } else {
+            socket.send(new DatagramPacket(data, len, group, port));
+        }
+        datagramsSent++;
+        sent(len);
+    }
+
+    /**
+     * Called after each datagram is sent.  Overridden to keep statistics.
+     * @param len number of bytes packed into it
+     */
+    protected void sent(int len) {
+    }
+
+    private synchronized void flushLoop() {
+        while (!closed) {
+            try {
+                long now = System.currentTimeMillis();
+                if (now < due) {
+                    wait(due == Long.MAX_VALUE ? 0 : due - now);
+                    continue;
+                }
+                flush();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed) {
+                    DebugLog.exception(null, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the linger timer.  Anything still packed is dropped.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    public long getMessagesPacked() {
+        return messagesPacked;
+    }
+
+    public long getDatagramsSent() {
+        return datagramsSent;
+    }
+
+    /**
+     * Split a datagram read into the messages packed in it.
+     * @param datagram datagram contents
+     * @param messages list the messages are added to
+     */
+    public static void unpack(String datagram, List<String> messages) {
+        int from = 0;
+        int to;
+        while ((to = datagram.indexOf(SEPARATOR, from)) >= 0) {
+            if (to > from) {
+                messages.add(datagram.substring(from, to));
+            }
+            from = to + 1;
+        }
+        if (from == 0) {
+            messages.add(datagram);
+        } else if (from < datagram.length()) {
+            messages.add(datagram.substring(from));
+        }
+    }
+}
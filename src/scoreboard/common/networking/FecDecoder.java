@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import static scoreboard.common.Constants.FEC_WINDOW;
+import static scoreboard.common.networking.FecEncoder.END_DATA;
+import static scoreboard.common.networking.FecEncoder.END_PARITY;
+import static scoreboard.common.networking.FecEncoder.START_DATA;
+import static scoreboard.common.networking.FecEncoder.START_PARITY;
+
+/*
+ * Slave side of forward error correction (see FecEncoder).  Keeps the last
+ * FEC_WINDOW numbered datagrams, and when a parity datagram arrives for a
+ * group missing just one of them, rebuilds it.  Datagrams without FEC
+ * numbering are passed through untouched, so a slave copes with a master
+ * either way.  A datagram from a master with a new epoch, i.e. one that
+ * has restarted and numbers from 0 again, empties the window.
+ *
+ * A rebuilt update arrives late, possibly after a newer update of the same
+ * variable, which it must not overwrite.  So each message packed in a
+ * rebuilt datagram (see DatagramPacker) is dropped if every variable it
+ * names has been updated by a later datagram.
+ *
+ * Not thread-safe: meant to be called only by the multicast reader thread.
+ */
+public class FecDecoder implements MetricsSource {
+
+    /*
+     * Must match XMLSpec.START_NAME and XMLSpec.END_NAME
+     */
+    private static final String START_NAME = "<name>";
+    private static final String END_NAME = "</name>";
+
+    private final long[] seqs = new long[FEC_WINDOW];
+    private final byte[][] payloads = new byte[FEC_WINDOW][];
+    private long epoch = -1;
+    private long top = -1;
+    private final List<String> recovered = new ArrayList<String>();
+    private int nextRecovered = 0;
+    /*
+     * Statistics
+     */
+    private volatile long dataReceived = 0;
+    private volatile long parityReceived = 0;
+    private volatile long framesRecovered = 0;
+    private volatile long framesStale = 0;
+    private volatile long groupsUnrecoverable = 0;
+
+    public FecDecoder() {
+        Arrays.fill(seqs, -1);
+    }
+
+    /**
+     * Handle a datagram read from the multicast group.
+     * @param buf datagram contents
+     * @param length datagram length
+     * @return the payload to pass on, or null if there is none; any
+     * updates rebuilt are then available from pollRecovered()
+     */
+    public String received(byte[] buf, int length) {
+        if (startsWith(buf, length, START_DATA)) {
+            int end = indexOf(buf, length, END_DATA);
+            int dot = indexOf(buf, end, ".", START_DATA.length());
+            long frameEpoch = parse(buf, START_DATA.length(), dot);
+            long seq = parse(buf, dot + 1, end);
+            if (frameEpoch < 0 || seq < 0) {
+                return null;
+            }
+            int from = end + END_DATA.length();
+            newEpoch(frameEpoch);
+            dataReceived++;
+            if (has(seq)) {
+                return null;
+            }
+            store(seq, Arrays.copyOfRange(buf, from, length));
+            return new String(buf, from, length - from);
+        } else if (startsWith(buf, length, START_PARITY)) {
+            parityReceived++;
+            int end = indexOf(buf, length, END_PARITY);
+            if (end > 0) {
+                recover(buf, START_PARITY.length(), end, length);
+            }
+            return null;
+        }
+        return new String(buf, 0, length);
+    }
+
+    /*
+     * A new epoch means a restarted master, numbering from 0 again
+     */
+    private void newEpoch(long newEpoch) {
+        if (newEpoch != epoch) {
+            epoch = newEpoch;
+            Arrays.fill(seqs, -1);
+            Arrays.fill(payloads, null);
+            top = -1;
+        }
+    }
+
+    /**
+     * @return the next message rebuilt from parity, or null if there are
+     * no more
+     */
+    public String pollRecovered() {
+        if (nextRecovered == recovered.size()) {
+            if (nextRecovered > 0) {
+                recovered.clear();
+                nextRecovered = 0;
+            }
+            return null;
+        }
+        return recovered.get(nextRecovered++);
+    }
+
+    private boolean has(long seq) {
+        return seq >= 0 && seqs[(int) (seq % FEC_WINDOW)] == seq;
+    }
+
+    private void store(long seq, byte[] payload) {
+        int i = (int) (seq % FEC_WINDOW);
+        seqs[i] = seq;
+        payloads[i] = payload;
+        top = Math.max(top, seq);
+    }
+
+    /*
+     * <fecp>EPOCH.FIRST.COUNT.STRIDE</fecp>PARITY
+     */
+    private void recover(byte[] buf, int from, int end, int length) {
+        int dot0 = indexOf(buf, end, ".", from);
+        int dot1 = indexOf(buf, end, ".", dot0 + 1);
+        int dot2 = indexOf(buf, end, ".", dot1 + 1);
+        long parityEpoch = parse(buf, from, dot0);
+        long first = parse(buf, dot0 + 1, dot1);
+        long count = parse(buf, dot1 + 1, dot2);
+        long stride = parse(buf, dot2 + 1, end);
+        if (parityEpoch < 0 || first < 0 || count <= 0 || stride <= 0) {
+            return;
+        }
+        if (parityEpoch != epoch) {
+            /*
+             * Parity for datagrams of another master run, none of which
+             * are in the window
+             */
+            return;
+        }
+        long missing = -1;
+        for (long seq = first; seq < first + count * stride; seq += stride) {
+            if (!has(seq)) {
+                if (missing >= 0) {
+                    groupsUnrecoverable++;
+                    return;
+                }
+                missing = seq;
+            }
+        }
+        if (missing < 0 || missing < top - FEC_WINDOW) {
+            return;
+        }
+        int parityStart = end + END_PARITY.length();
+        byte[] parity = Arrays.copyOfRange(buf, parityStart, length);
+        for (long seq = first; seq < first + count * stride; seq += stride) {
+            if (seq != missing) {
+                byte[] payload = payloads[(int) (seq % FEC_WINDOW)];
+                if (payload.length + 2 > parity.length) {
+                    return;
+                }
+                FecEncoder.xorInto(parity, 0, payload, payload.length);
+            }
+        }
+        int payloadLength = ((parity[0] & 0xff) << 8) | (parity[1] & 0xff);
+        if (payloadLength > parity.length - 2) {
+            return;
+        }
+        byte[] payload = Arrays.copyOfRange(parity, 2, 2 + payloadLength);
+        store(missing, payload);
+        framesRecovered++;
+        int unpacked = recovered.size();
+        DatagramPacker.unpack(new String(payload), recovered);
+        for (int i = recovered.size() - 1; i >= unpacked; i--) {
+            if (isStale(recovered.get(i), missing)) {
+                recovered.remove(i);
+                framesStale++;
+            }
+        }
+    }
+
+    /*
+     * True if every variable named in msg has been updated since
+     */
+    private boolean isStale(String msg, long seq) {
+        int from = msg.indexOf(START_NAME);
+        if (from < 0) {
+            return false;
+        }
+        while (from >= 0) {
+            int end = msg.indexOf(END_NAME, from);
+            if (end < 0) {
+                return false;
+            }
+            String name = msg.substring(from, end + END_NAME.length());
+            if (!updatedSince(name, seq)) {
+                return false;
+            }
+            from = msg.indexOf(START_NAME, end);
+        }
+        return true;
+    }
+
+    private boolean updatedSince(String name, long seq) {
+        byte[] pattern = name.getBytes();
+        for (long s = seq + 1; s <= top; s++) {
+            if (has(s)) {
+                byte[] payload = payloads[(int) (s % FEC_WINDOW)];
+                if (indexOf(payload, payload.length, pattern, 0) >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] buf, int length, String s) {
+        if (length < s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (buf[i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] buf, int length, String s) {
+        return indexOf(buf, length, s.getBytes(), 0);
+    }
+
+    private static int indexOf(byte[] buf, int length, String s, int from) {
+        return indexOf(buf, length, s.getBytes(), from);
+    }
+
+    private static int indexOf(byte[] buf, int length, byte[] s, int from) {
+        outer:
+        for (int i = Math.max(from, 0); i <= length - s.length; i++) {
+            for (int j = 0; j < s.length; j++) {
+                if (buf[i + j] != s[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /*
+     * Parses the decimal digits buf[from..to), -1 if there are none
+     */
+    private static long parse(byte[] buf, int from, int to) {
+        if (from < 0 || to <= from) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    public long getFramesRecovered() {
+        return framesRecovered;
+    }
+
+    public long getFramesStale() {
+        return framesStale;
+    }
+
+    public long getGroupsUnrecoverable() {
+        return groupsUnrecoverable;
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        out.counter("scoreboard_fec_data_received_total",
+                "Numbered datagrams received", dataReceived);
+        out.counter("scoreboard_fec_parity_received_total",
+                "Parity datagrams received", parityReceived);
+        out.counter("scoreboard_fec_recovered_total",
+                "Lost datagrams rebuilt from parity", framesRecovered);
+        out.counter("scoreboard_fec_stale_total",
+                "Rebuilt messages dropped as already superseded", framesStale);
+        out.counter("scoreboard_fec_unrecoverable_total",
+                "Parity groups missing more than one datagram",
+                groupsUnrecoverable);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Arrays;
+import scoreboard.common.DebugLog;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import static scoreboard.common.Constants.FEC_MAX_DELAY;
+import static scoreboard.common.Constants.MAX_DATAGRAM_MSG_SIZE;
+
+/*
+ * Forward error correction for the multicast stream, for slaves on links,
+ * such as Wi-Fi, that lose packets often enough that waiting for a
+ * retransmission costs too much.  Every datagram is numbered,
+ *
+ *     <fec>EPOCH.N</fec>PAYLOAD
+ *
+ * and after every groupSize of them a parity datagram is sent,
+ *
+ *     <fecp>EPOCH.FIRST.COUNT.STRIDE</fecp>PARITY
+ *
+ * EPOCH is the master's start time, as for AckedMulticastSender, so that
+ * slaves notice a restarted master numbering from 0 again.
+ * PARITY being the XOR of the group's payloads, each preceded by its
+ * length in two bytes and zero padded to the longest.  A slave missing any
+ * one datagram of the group rebuilds it from the parity and the others,
+ * without a round trip (see FecDecoder).
+ *
+ * Losses on Wi-Fi come in bursts, which would take out several datagrams
+ * of one group.  With a depth greater than 1 the groups are interleaved:
+ * datagram N belongs to group N % depth, so a burst of up to depth
+ * datagrams costs each group at most one.
+ *
+ * The cost is one parity datagram per groupSize, i.e. 1/groupSize extra
+ * traffic, against recovering one loss in groupSize * depth datagrams.  A
+ * group not filled within FEC_MAX_DELAY msec gets its parity sent anyway,
+ * so that a lost update is never waited on for long when the scoreboard
+ * is quiet.
+ */
+public class FecEncoder implements MetricsSource {
+
+    static final String START_DATA = "<fec>";
+    static final String END_DATA = "</fec>";
+    static final String START_PARITY = "<fecp>";
+    static final String END_PARITY = "</fecp>";
+
+    /*
+     * Parity of one (interleaved) group being filled
+     */
+    private static class Group {
+        final byte[] parity = new byte[MAX_DATAGRAM_MSG_SIZE + 2];
+        int length;
+        long first;
+        int count;
+        long started;
+    }
+
+    private final DatagramSocket socket;
+    private final InetAddress group;
+    private final int port;
+    private final int groupSize;
+    private final int depth;
+    private final Group[] groups;
+    private final long epoch = System.currentTimeMillis();
+    private long nextSeq = 0;
+    private volatile boolean closed = false;
+    /*
+     * Statistics
+     */
+    private volatile long dataSent = 0;
+    private volatile long paritySent = 0;
+    private volatile long parityBytesSent = 0;
+
+    /**
+     * @param socket socket to send parity from when flushing a group
+     * @param group multicast group address
+     * @param port multicast group port
+     * @param groupSize datagrams covered by each parity datagram
+     * @param depth number of groups interleaved
+     */
+    public FecEncoder(DatagramSocket socket, InetAddress group, int port,
+            int groupSize, int depth) {
+        this.socket = socket;
+        this.group = group;
+        this.port = port;
+        this.groupSize = groupSize;
+        this.depth = depth;
+        groups = new Group[depth];
+        for (int i = 0; i < depth; i++) {
+            groups[i] = new Group();
+        }
+        Thread flusher = new Thread("FecEncoder flush") {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        };
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Send a datagram, and the parity of its group if that completes it.
+     * @param from socket to send from
+     * @param payload datagram contents
+     * @return number of bytes sent, parity included
+     * @throws IOException if the datagram could not be sent
+     */
+    public synchronized int send(DatagramSocket from, byte[] payload)
+            throws IOException {
+        long seq = nextSeq++;
+        byte[] header = (START_DATA + epoch + "." + seq + END_DATA).
+                getBytes();
+        byte[] data = new byte[header.length + payload.length];
+        System.arraycopy(header, 0, data, 0, header.length);
+        System.arraycopy(payload, 0, data, header.length, payload.length);
+        Group g = groups[(int) (seq % depth)];
+        if (g.count == 0) {
+            g.first = seq;
+            g.started = System.currentTimeMillis();
+        }
+        g.length = xorInto(g.parity, g.length, payload, payload.length);
+        g.count++;
+        transmit(from, data, data.length);
+        dataSent++;
+        int sent = data.length;
+        if (g.count == groupSize) {
+            sent += sendParity(from, g);
+        }
+        return sent;
+    }
+
+    /*
+     * XOR length (2 bytes) followed by payload into parity, returning the
+     * new parity length
+     */
+    static int xorInto(byte[] parity, int parityLength, byte[] payload,
+            int length) {
+        parity[0] ^= (byte) (length >> 8);
+        parity[1] ^= (byte) length;
+        for (int i = 0; i < length; i++) {
+            parity[i + 2] ^= payload[i];
+        }
+        return Math.max(parityLength, length + 2);
+    }
+
+    private int sendParity(DatagramSocket from, Group g) throws IOException {
+        byte[] header = (START_PARITY + epoch + "." + g.first + "." +
+                g.count + "." + depth + END_PARITY).getBytes();
+        byte[] data = new byte[header.length + g.length];
+        System.arraycopy(header, 0, data, 0, header.length);
+        System.arraycopy(g.parity, 0, data, header.length, g.length);
+        Arrays.fill(g.parity, 0, g.length, (byte) 0);
+        g.length = 0;
+        g.count = 0;
+        transmit(from, data, data.length);
+        paritySent++;
+        parityBytesSent += data.length;
+        return data.length;
+    }
+
+    /**
+     * Send the parity of every group not yet complete.
+     */
+    public synchronized void flush() {
+        flush(Long.MAX_VALUE);
+    }
+
+    private synchronized void flush(long before) {
+        for (Group g : groups) {
+            if (g.count > 0 && g.started <= before) {
+                try {
+                    sendParity(socket, g);
+                } catch (IOException e) {
+                    if (!closed) {
+                        DebugLog.exception(null, e);
+                    }
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(FEC_MAX_DELAY / 2);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (closed) {
+                return;
+            }
+            flush(System.currentTimeMillis() - FEC_MAX_DELAY);
+        }
+    }
+
+    /**
+     * Put a datagram on the wire.  Overridden to simulate a lossy link.
+     * @param from socket to send from
+     * @param data datagram
+     * @param length datagram length
+     * @throws IOException if the datagram could not be sent
+     */
+    protected void transmit(DatagramSocket from, byte[] data, int length)
+            throws IOException {
+        from.send(new DatagramPacket(data, length, group, port));
+    }
+
+    /**
+     * Stop flushing partial groups.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    public long getDataSent() {
+        return dataSent;
+    }
+
+    public long getParitySent() {
+        return paritySent;
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        out.counter("scoreboard_fec_data_total",
+                "Datagrams sent with forward error correction", dataSent);
+        out.counter("scoreboard_fec_parity_total",
+                "Parity datagrams sent", paritySent);
+        out.counter("scoreboard_fec_parity_bytes_total",
+                "Bytes of parity sent", parityBytesSent);
+    }
+}
@@ -31,6 +31,7 @@
 
 package scoreboard.common.networking;
 
+import scoreboard.common.DebugLog;
 import java.io.*;
 import java.net.*;
 import scoreboard.common.networking.SocketListener;
@@ -46,6 +47,10 @@ public abstract class GenericSocket extends SocketBase
 
     public int port;
     protected Socket socketConnection = null;
+    /*
+     * host:port at the other end, once connected, for the DebugLog
+     */
+    protected String peer;
     private BufferedWriter output = null;
     private BufferedReader input = null;
     private boolean ready = false;
@@ -73,7 +78,7 @@ public abstract class GenericSocket extends SocketBase
             socketReaderThread.start();
         } catch (Exception e) {
             if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                e.printStackTrace();
+                DebugLog.exception(peer, e);
             }
         }  
     }
@@ -111,7 +116,7 @@ public abstract class GenericSocket extends SocketBase
              */
             closeAdditionalSockets();
             if (debugFlagIsSet(DEBUG_STATUS)) {
-                System.out.println("Connection closed");
+                DebugLog.status(peer, "Connection closed");
             }
             /*
              * The onClosedStatus() method has to be implemented by
@@ -122,7 +127,7 @@ public abstract class GenericSocket extends SocketBase
             onClosedStatus(true);
         } catch (Exception e) {
             if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                e.printStackTrace();
+                DebugLog.exception(peer, e);
             }
         }
     }
@@ -179,11 +184,11 @@ public abstract class GenericSocket extends SocketBase
             output.newLine();
             output.flush();
             if (debugFlagIsSet(DEBUG_SEND)) {
-                System.out.println("send> " + msg);
+                DebugLog.send(peer, msg);
             }
         } catch (IOException ioException) {
             if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                ioException.printStackTrace();
+                DebugLog.exception(peer, ioException);
             }
         }
     }
@@ -195,6 +200,8 @@ public abstract class GenericSocket extends SocketBase
             try {
                 initSocketConnection();
                 if (socketConnection != null && !socketConnection.isClosed()) {
+                    peer = socketConnection.getInetAddress().getHostAddress()
+                            + ":" + socketConnection.getPort();
                     /*
                      * Get input and output streams
                      */
@@ -210,7 +217,7 @@ public abstract class GenericSocket extends SocketBase
                 notifyReady();
             } catch (Exception e) {
                 if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                    e.printStackTrace();
+                    DebugLog.exception(peer, e);
                 }
                 /*
                  * This will notify the SocketReaderThread that it should exit.
@@ -246,7 +253,7 @@ public abstract class GenericSocket extends SocketBase
                     String line;
                     while ((line = input.readLine()) != null) {
                         if (debugFlagIsSet(DEBUG_RECV)) {
-                            System.out.println("recv> " + line);
+                            DebugLog.recv(peer, line);
                         }
                         /*
                          * The onMessage() method has to be implemented by
@@ -259,7 +266,7 @@ public abstract class GenericSocket extends SocketBase
                 }
             } catch (Exception e) {
                 if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                    e.printStackTrace();
+                    DebugLog.exception(peer, e);
                 }
             } finally {
                 close();
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.util.concurrent.locks.LockSupport;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import static scoreboard.common.Constants.JITTER_BUFFER_MAX_HOLD;
+import static scoreboard.common.Constants.JITTER_BUFFER_SIZE;
+
+/*
+ * Holds updates until their presentation time, then hands them, in the
+ * order they were posted, to present() on the buffer's own thread.  With
+ * every slave presenting an update at the same instant on the master's
+ * clock (see ClockSync), digits change and the horn sounds together
+ * across all the displays, however unevenly the updates arrive.
+ *
+ * Presentation times are in ClockSync.now() microseconds.  An update due
+ * in the past is presented at once and counted as late; one due further
+ * ahead than JITTER_BUFFER_MAX_HOLD milliseconds is assumed to carry a
+ * bad stamp and is presented at once as well.  Updates are presented in
+ * order, so one without a presentation time (due 0) waits behind those
+ * already held.
+ *
+ * This class is abstract and requires implementation of present().
+ */
+public abstract class JitterBuffer implements MetricsSource {
+
+    private final String[] lines = new String[JITTER_BUFFER_SIZE];
+    private final long[] dueTimes = new long[JITTER_BUFFER_SIZE];
+    private int head = 0;
+    private int count = 0;
+    private Thread presenter;
+    /*
+     * Statistics, only written by the presenter thread
+     */
+    private volatile long presented = 0;
+    private volatile long held = 0;
+    private volatile long late = 0;
+    private volatile long lateMicros = 0;
+
+    /*
+     * Called on the buffer's thread when line is due
+     */
+    abstract public void present(String line);
+
+    /*
+     * Queues line to be presented at dueMicros (0 for as soon as the
+     * updates ahead of it have been).  Waits if the buffer is full, which
+     * can only last as long as the oldest update is held.
+     */
+    public synchronized void post(String line, long dueMicros) {
+        while (count == lines.length) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        int tail = (head + count) % lines.length;
+        lines[tail] = line;
+        dueTimes[tail] = dueMicros;
+        count++;
+        if (presenter == null) {
+            presenter = new PresenterThread();
+            presenter.start();
+        } else if (count == 1) {
+            LockSupport.unpark(presenter);
+        }
+    }
+
+    /*
+     * Number of updates waiting to be presented
+     */
+    public synchronized int getDepth() {
+        return count;
+    }
+
+    public long getPresented() {
+        return presented;
+    }
+
+    public long getHeld() {
+        return held;
+    }
+
+    public long getLate() {
+        return late;
+    }
+
+    /*
+     * Sleeps until each update is due.  parkNanos() rather than wait() so
+     * that the wakeup isn't rounded to a millisecond.
+     */
+    class PresenterThread extends Thread {
+
+        PresenterThread() {
+            super("JitterBuffer");
+            setDaemon(true);
+            setPriority(MAX_PRIORITY);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                String line;
+                long due;
+                synchronized (JitterBuffer.this) {
+                    if (count == 0) {
+                        line = null;
+                        due = 0;
+                    } else {
+                        line = lines[head];
+                        due = dueTimes[head];
+                    }
+                }
+                if (line == null) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                if (due != 0) {
+                    long wait = due - ClockSync.now();
+                    if (wait > JITTER_BUFFER_MAX_HOLD * 1000L) {
+                        due = 0;
+                    } else if (wait > 0) {
+                        LockSupport.parkNanos(this, wait * 1000);
+                        if (due - ClockSync.now() > 0) {
+                            continue;
+                        }
+                        held++;
+                    } else {
+                        late++;
+                        lateMicros -= wait;
+                    }
+                }
+                synchronized (JitterBuffer.this) {
+                    lines[head] = null;
+                    head = (head + 1) % lines.length;
+                    count--;
+                    JitterBuffer.this.notify();
+                }
+                presented++;
+                present(line);
+            }
+        }
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        out.gauge("scoreboard_jitter_buffer_depth",
+                "Updates waiting for their presentation time", getDepth());
+        out.counter("scoreboard_jitter_buffer_presented_total",
+                "Updates presented", presented);
+        out.counter("scoreboard_jitter_buffer_held_total",
+                "Updates held until their presentation time", held);
+        out.counter("scoreboard_jitter_buffer_late_total",
+                "Updates which arrived after their presentation time", late);
+        out.counter("scoreboard_jitter_buffer_late_microseconds_total",
+                "Sum of how late the late updates were", lateMicros);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import static scoreboard.common.networking.JournalWriter.*;
+
+/*
+ * Reads back a journal recorded by a JournalWriter, one record at a time:
+ *
+ *     JournalReader reader = new JournalReader(path);
+ *     while (reader.next()) {
+ *         ... reader.getTime(), getPriority(), getName(), getLine() ...
+ *     }
+ *     reader.close();
+ *
+ * A journal still being written can be read too, next() returning false
+ * at the last record written so far.
+ */
+public class JournalReader {
+
+    private final RandomAccessFile file;
+    private final int regionSize;
+    private final long startMillis;
+    private MappedByteBuffer region;
+    private long regionStart = 0;
+    private final byte[] buf;
+
+    private long time;
+    private int priority;
+    private String name;
+    private String line;
+
+    public JournalReader(String path) throws IOException {
+        file = new RandomAccessFile(new File(path), "r");
+        if (file.length() < HEADER_SIZE || file.readInt() != MAGIC ||
+                file.readInt() != VERSION) {
+            file.close();
+            throw new IOException(path + ": not a scoreboard journal");
+        }
+        file.seek(REGION_SIZE_OFFSET);
+        regionSize = file.readInt();
+        file.seek(START_MILLIS_OFFSET);
+        startMillis = file.readLong();
+        buf = new byte[regionSize];
+        region = map(0);
+        region.position(HEADER_SIZE);
+    }
+
+    /*
+     * Maps the region starting at start, or as much of it as has been
+     * written
+     */
+    private MappedByteBuffer map(long start) throws IOException {
+        long size = Math.min(regionSize, file.length() - start);
+        return file.getChannel().map(FileChannel.MapMode.READ_ONLY, start,
+                Math.max(size, 0));
+    }
+
+    /*
+     * Moves on to the next record.  Returns false at the end of the
+     * journal.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (region.remaining() < 4) {
+                if (region.capacity() == regionSize) {
+                    return false;
+                }
+                // The file may have grown since it was mapped
+                int position = region.position();
+                region = map(regionStart);
+                region.position(position);
+                if (region.remaining() < 4) {
+                    return false;
+                }
+            }
+            int length = region.getInt(region.position());
+            if (length == SKIP_TO_NEXT_REGION) {
+                regionStart += regionSize;
+                if (regionStart >= file.length()) {
+                    return false;
+                }
+                region = map(regionStart);
+                continue;
+            }
+            if (length <= 0 || length > region.remaining() - 4) {
+                return false;
+            }
+            region.position(region.position() + 4);
+            time = region.getLong();
+            priority = region.get();
+            int nameLength = region.get();
+            name = nameLength == 0 ? null : readAscii(nameLength);
+            line = readAscii(length - (RECORD_HEADER_SIZE - 4) - nameLength);
+            return true;
+        }
+    }
+
+    private String readAscii(int length) {
+        region.get(buf, 0, length);
+        return new String(buf, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /*
+     * Wall clock time, in msec, recording started
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /*
+     * Time of the current record, in nsec since recording started
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /*
+     * Variable the current record updates, or null
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+import scoreboard.common.Globals;
+import static scoreboard.common.Constants.PRIORITY_CLOCK;
+import static scoreboard.common.Constants.PRIORITY_CRITICAL;
+
+/*
+ * Sends the updates in a journal (see JournalWriter) again, to slaves of
+ * a MultipleSocketWriter or a multicast writer, at the pace they were
+ * recorded, speed times faster, or, with a speed of 0, as fast as they
+ * go.  A recorded game so becomes a repeatable load test, or a way to
+ * reproduce what a display did.  Updates are sent as a master sends them
+ * now: any id, trace or presentation time stamp recorded with one, which
+ * would refer to the clock and numbering of the run that recorded it, is
+ * dropped, and with -syncDelay a fresh presentation time is stamped.
+ *
+ *     java scoreboard.common.networking.JournalReplayer -Journal:PATH
+ *         [-ReplaySpeed:N or max] [-port:N] [-Channel:NAME]
+ *         [-UseMulticastSocket] ...
+ *
+ * takes the usual command-line switches for the transport to replay on.
+ */
+public class JournalReplayer {
+
+    /*
+     * Must match XMLSpec.END_OVERALLVALUE, END_UPDATE, START_AT and END_AT
+     */
+    static final String END_OVERALLVALUE = "</overallValue>";
+    static final String END_UPDATE = "</update>";
+    static final String START_AT = "<at>";
+    static final String END_AT = "</at>";
+
+    private final JournalReader reader;
+    private final double speed;
+    private long replayed = 0;
+
+    /*
+     * speed is relative to the recording, 0 for as fast as possible
+     */
+    public JournalReplayer(JournalReader reader, double speed) {
+        this.reader = reader;
+        this.speed = speed;
+    }
+
+    /*
+     * Replays the rest of the journal on channel of socketWriter, returning
+     * the number of updates sent
+     */
+    public long replay(MultipleSocketWriter socketWriter, String channel)
+            throws IOException {
+        return replay(socketWriter, channel, null);
+    }
+
+    /*
+     * Replays the rest of the journal on multicastWriter, returning the
+     * number of updates sent
+     */
+    public long replay(MulticastConnection multicastWriter)
+            throws IOException {
+        return replay(null, null, multicastWriter);
+    }
+
+    private long replay(MultipleSocketWriter socketWriter, String channel,
+            MulticastConnection multicastWriter) throws IOException {
+        long firstTime = -1;
+        long startNanos = 0;
+        while (reader.next()) {
+            if (firstTime < 0) {
+                firstTime = reader.getTime();
+                startNanos = System.nanoTime();
+            }
+            if (speed > 0) {
+                long due = startNanos +
+                        (long) ((reader.getTime() - firstTime) / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            String name = reader.getName();
+            String line = restamp(reader.getLine());
+            int priority = reader.getPriority();
+            if (socketWriter != null) {
+                socketWriter.postUpdate(line, priority, name, channel);
+            } else if (priority == PRIORITY_CLOCK || name == null) {
+                multicastWriter.sendMessage(line);
+            } else {
+                /*
+                 * As sent by DisplayableWithDigits
+                 */
+                multicastWriter.sendMessage(line, priority, name);
+                if (priority == PRIORITY_CRITICAL) {
+                    multicastWriter.flush();
+                }
+            }
+            replayed++;
+        }
+        if (multicastWriter != null) {
+            multicastWriter.flush();
+        }
+        return replayed;
+    }
+
+    /*
+     * Strips the stamps line was recorded with, and with -syncDelay ends it
+     * with the time slaves should apply it, as XMLSpec does for a master
+     */
+    private String restamp(String line) {
+        int end = line.indexOf(END_OVERALLVALUE);
+        if (end < 0 || !line.endsWith(END_UPDATE)) {
+            return line;
+        }
+        end += END_OVERALLVALUE.length();
+        if (Globals.syncDelay > 0) {
+            return line.substring(0, end) + START_AT +
+                    (ClockSync.now() + Globals.syncDelay * 1000L) + END_AT +
+                    END_UPDATE;
+        }
+        if (line.length() == end + END_UPDATE.length()) {
+            return line;
+        }
+        return line.substring(0, end) + END_UPDATE;
+    }
+
+    public long getReplayed() {
+        return replayed;
+    }
+
+    private static class Writer extends MulticastConnection {
+        Writer() {
+            super(Globals.sessionAddr, Globals.port, Globals.debugFlags);
+            setChannel(Globals.channel);
+        }
+
+        @Override
+        protected boolean isWriter() {
+            return true;
+        }
+
+        @Override
+        public void onMessage(String msg) {
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Globals.parseArgs(args);
+        if (Globals.journalFile == null) {
+            System.out.println("Usage: JournalReplayer -Journal:PATH " +
+                    "[-ReplaySpeed:N or max] [transport switches]");
+            System.exit(1);
+        }
+        JournalReader reader = new JournalReader(Globals.journalFile);
+        JournalReplayer replayer = new JournalReplayer(reader,
+                Globals.replaySpeed);
+        long start = System.currentTimeMillis();
+        long sent;
+        if (Globals.useIPSocket) {
+            MultipleSocketWriter socketWriter =
+                    new MultipleSocketWriter(Globals.port,
+                    Globals.debugFlags) {
+                @Override
+                public void onMessage(String msg) {
+                }
+
+                @Override
+                public void onClosedStatus(boolean isClosed) {
+                }
+            };
+            new Thread(socketWriter).start();
+            /*
+             * Give slaves the chance to connect before the game starts
+             */
+            System.out.println("Waiting 5 seconds for slaves on port " +
+                    Globals.port);
+            Thread.sleep(5000);
+            start = System.currentTimeMillis();
+            sent = replayer.replay(socketWriter, Globals.channel);
+            socketWriter.shutdown();
+        } else {
+            Writer multicastWriter = new Writer();
+            new Thread(multicastWriter).start();
+            Thread.sleep(500);
+            start = System.currentTimeMillis();
+            sent = replayer.replay(multicastWriter);
+            Thread.sleep(500);
+        }
+        reader.close();
+        System.out.println("Replayed " + sent + " updates in " +
+                (System.currentTimeMillis() - start) + " msec");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import scoreboard.common.DebugLog;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import static scoreboard.common.Constants.JOURNAL_REGION_SIZE;
+
+/*
+ * Records updates, with the time they were sent or applied, to an append
+ * only journal file, which a JournalReader reads back and a
+ * JournalReplayer sends again, to reproduce a game.  The file is written
+ * through a memory mapping, so appending an update is a copy into memory,
+ * and what is journaled survives the process dying.
+ *
+ * The file starts with a header: MAGIC, VERSION, region size, then the
+ * wall clock time, in msec, recording started.  After it come records:
+ *
+ *   int    length of the record after this field
+ *   long   nsec since recording started, from System.nanoTime()
+ *   byte   priority (one of the PRIORITY_ classes in Constants)
+ *   byte   length of the variable name, 0 for none
+ *   bytes  name, then the update, in ASCII
+ *
+ * The file is mapped a region at a time.  A record that doesn't fit in
+ * what is left of one goes at the start of the next, a length of -1
+ * marking the jump.  A length of 0 marks the end, so a journal cut short
+ * by a crash reads back up to its last whole record.
+ *
+ * There is one writer, e.g. the FX thread of a master posting or a slave
+ * applying updates.
+ */
+public class JournalWriter implements MetricsSource {
+
+    static final int MAGIC = 0x53434a31;   // "SCJ1"
+    static final int VERSION = 1;
+    static final int REGION_SIZE_OFFSET = 8;
+    static final int START_MILLIS_OFFSET = 16;
+    static final int HEADER_SIZE = 64;
+    /*
+     * Record fields after the length
+     */
+    static final int RECORD_HEADER_SIZE = 4 + 8 + 1 + 1;
+    static final int SKIP_TO_NEXT_REGION = -1;
+
+    private final String path;
+    private final int regionSize;
+    private final long startNanos = System.nanoTime();
+    private RandomAccessFile file;
+    private MappedByteBuffer region;
+    private long regionStart = 0;
+    private volatile long records = 0;
+    private volatile long bytes = HEADER_SIZE;
+    private volatile long recordsTooLong = 0;
+
+    /*
+     * Creates, or overwrites, the journal at path
+     */
+    public JournalWriter(String path) throws IOException {
+        this(path, JOURNAL_REGION_SIZE);
+    }
+
+    /*
+     * Same as above, mapping regionSize bytes at a time
+     */
+    public JournalWriter(String path, int regionSize) throws IOException {
+        this.path = path;
+        this.regionSize = regionSize;
+        file = new RandomAccessFile(new File(path), "rw");
+        file.setLength(0);
+        region = map(0);
+        region.putInt(4, VERSION);
+        region.putInt(REGION_SIZE_OFFSET, regionSize);
+        region.putLong(START_MILLIS_OFFSET, System.currentTimeMillis());
+        region.putInt(0, MAGIC);
+        region.position(HEADER_SIZE);
+    }
+
+    private MappedByteBuffer map(long start) throws IOException {
+        return file.getChannel().map(FileChannel.MapMode.READ_WRITE, start,
+                regionSize);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /*
+     * Journal an update, timed now, to the variable called name, or null.
+     * Must only be called by one thread.  Doesn't allocate, other than
+     * when mapping the next region.
+     */
+    public void append(String name, int priority, String line) {
+        if (region == null) {
+            return;
+        }
+        int nameLength = name == null ? 0 : name.length();
+        int length = RECORD_HEADER_SIZE + nameLength + line.length();
+        /*
+         * Room is left for the end marker after every record
+         */
+        if (length + 4 > regionSize || nameLength > Byte.MAX_VALUE) {
+            recordsTooLong++;
+            return;
+        }
+        if (region.remaining() < length + 4) {
+            try {
+                region.putInt(region.position(), SKIP_TO_NEXT_REGION);
+                regionStart += regionSize;
+                region = map(regionStart);
+            } catch (IOException e) {
+                DebugLog.exception(path, e);
+                region = null;
+                return;
+            }
+        }
+        int start = region.position();
+        region.position(start + 4);
+        region.putLong(System.nanoTime() - startNanos);
+        region.put((byte) priority);
+        region.put((byte) nameLength);
+        putAscii(name);
+        putAscii(line);
+        /*
+         * The length goes in last, so a reader never sees half a record
+         */
+        region.putInt(region.position(), 0);
+        region.putInt(start, length - 4);
+        records++;
+        bytes = regionStart + region.position();
+    }
+
+    private void putAscii(String s) {
+        if (s == null) {
+            return;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            region.put((byte) s.charAt(i));
+        }
+    }
+
+    /*
+     * Stop journaling, trimming the file to what was written
+     */
+    public void close() {
+        if (file == null) {
+            return;
+        }
+        region = null;
+        try {
+            file.setLength(bytes);
+        } catch (IOException e) {
+            /*
+             * Some platforms won't shrink a file still mapped, which does
+             * no harm: the end marker is there
+             */
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+        }
+        file = null;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public void writeMetrics(MetricsWriter out) {
+        String labels = MetricsWriter.label("path", path);
+        out.counter("scoreboard_journal_records_total",
+                "Updates journaled", labels, records);
+        out.counter("scoreboard_journal_bytes_total",
+                "Bytes of journal written", labels, bytes);
+        out.counter("scoreboard_journal_records_too_long_total",
+                "Updates too long to journal", labels, recordsTooLong);
+    }
+}
@@ -31,10 +31,22 @@
 
 package scoreboard.common.networking;
 
+import scoreboard.common.DebugLog;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
-import java.net.MulticastSocket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ObjectName;
+import scoreboard.common.Globals;
+import scoreboard.common.metrics.MBeans;
+import scoreboard.common.metrics.MetricsServer;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import scoreboard.common.metrics.PipelineEvents;
+import scoreboard.common.metrics.UpdateTracer;
 import scoreboard.common.networking.SocketListener;
 import static scoreboard.common.Constants.MAX_DATAGRAM_MSG_SIZE;
 import static scoreboard.common.Constants.DEBUG_NONE;
@@ -42,8 +54,10 @@ import static scoreboard.common.Constants.DEBUG_SEND;
 import static scoreboard.common.Constants.DEBUG_RECV;
 import static scoreboard.common.Constants.DEBUG_EXCEPTIONS;
 import static scoreboard.common.Constants.DEBUG_STATUS;
+import static scoreboard.common.Constants.DEFAULT_CHANNEL;
 import static scoreboard.common.Constants.DEFAULT_PORT;
 import static scoreboard.common.Constants.DEFAULT_SESSION_ADDR;
+import static scoreboard.common.Constants.PRIORITY_EVENT;
 import scoreboard.common.networking.SocketBase;
 
 
@@ -56,13 +70,49 @@ import scoreboard.common.networking.SocketBase;
  * and onClosedStatus() methods.
  */
 public abstract class MulticastConnection extends SocketBase implements
-        SocketListener, Runnable {
+        SocketListener, Runnable, MulticastMXBean, MetricsSource {
     
-    private MulticastSocket multicastSocket = null;
+    private ChannelSocket multicastSocket = null;
+    /*
+     * Channel of the group this connection sends and reads (see
+     * ChannelSocket)
+     */
+    private volatile String channel = DEFAULT_CHANNEL;
     private int portNum;
     private String addr;
     private InetAddress inetAddress;
     private int debugFlags = DEBUG_NONE;
+    /*
+     * address:port of the group, for the DebugLog
+     */
+    private String peer;
+    /*
+     * Statistics for MulticastMXBean
+     */
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong sendErrors = new AtomicLong();
+    private volatile long packetsReceived = 0;
+    private volatile long bytesReceived = 0;
+    private volatile long packetsTruncated = 0;
+    private ObjectName mbeanName;
+    /*
+     * Acknowledged delivery of designated updates (see
+     * AckedMulticastSender), set up on connect() if enabled
+     */
+    private volatile AckedMulticastSender ackedSender;
+    private volatile AckedMulticastReceiver ackedReceiver;
+    /*
+     * Forward error correction (see FecEncoder): a writer encodes if
+     * enabled, a reader always decodes
+     */
+    private volatile FecEncoder fecEncoder;
+    private volatile FecDecoder fecDecoder;
+    /*
+     * Packs messages sent into as few datagrams as they fit (see
+     * DatagramPacker)
+     */
+    private volatile DatagramPacker packer;
         
     /**
      * Close down the MulticastSocket.  As per the Java Socket
@@ -75,8 +125,27 @@ public abstract class MulticastConnection extends SocketBase implements
             if (multicastSocket != null && !multicastSocket.isClosed()) {
                 multicastSocket.close();
             }
+            if (ackedSender != null) {
+                ackedSender.close();
+                ackedSender = null;
+            }
+            if (fecEncoder != null) {
+                fecEncoder.close();
+                fecEncoder = null;
+            }
+            if (packer != null) {
+                packer.close();
+                packer = null;
+            }
+            if (ackedReceiver != null) {
+                ackedReceiver.close();
+                ackedReceiver = null;
+            }
+            MBeans.unregister(mbeanName);
+            mbeanName = null;
+            MetricsServer.unregister(this);
             if (debugFlagIsSet(DEBUG_STATUS)) {
-                System.out.println("Multicast Connection closed");
+                DebugLog.status(peer, "Multicast Connection closed");
             }
             /*
              * The onClosedStatus() method has to be implemented by
@@ -87,7 +156,7 @@ public abstract class MulticastConnection extends SocketBase implements
             onClosedStatus(true);
         } catch (Exception e) {
             if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                e.printStackTrace();
+                DebugLog.exception(peer, e);
             }
         }
     }
@@ -103,16 +172,51 @@ public abstract class MulticastConnection extends SocketBase implements
             /*
              * Create the MulticastSocket instance
              */
-            multicastSocket = new MulticastSocket(portNum);
+            peer = addr + ":" + portNum;
+            multicastSocket = new ChannelSocket(portNum, channel);
             inetAddress = InetAddress.getByName(addr);
             multicastSocket.joinGroup(inetAddress);
+            if (isWriter() && Globals.fecGroupSize > 0) {
+                fecEncoder = new FecEncoder(multicastSocket, inetAddress,
+                        portNum, Globals.fecGroupSize, Globals.fecDepth);
+            } else if (!isWriter()) {
+                fecDecoder = new FecDecoder();
+            }
+            packer = new DatagramPacker(multicastSocket, inetAddress,
+                    portNum, fecEncoder, isWriter() ?
+                    Globals.multicastLinger : 0) {
+                @Override
+                protected void sent(int length) {
+                    packetsSent.incrementAndGet();
+                    bytesSent.addAndGet(length);
+                }
+            };
+            if (Globals.ackedMulticast) {
+                if (isWriter()) {
+                    ackedSender = new AckedMulticastSender(inetAddress,
+                            portNum, fecEncoder, Globals.multicastLinger,
+                            channel) {
+                        @Override
+                        protected void sent(int length) {
+                            packetsSent.incrementAndGet();
+                            bytesSent.addAndGet(length);
+                        }
+                    };
+                } else {
+                    ackedReceiver = new AckedMulticastReceiver(peer);
+                }
+            }
+            mbeanName = MBeans.register(this, "Multicast",
+                    "address=" + addr + ",port=" + portNum);
+            MetricsServer.register(this, "address", addr,
+                    "port", Integer.toString(portNum), "channel", channel);
             /*
              * Background thread to continuously read from the input stream.
              */
             new ReaderThread().start();
         } catch (Exception e) {
             if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                e.printStackTrace();
+                DebugLog.exception(peer, e);
             }
         }
     }
@@ -137,6 +241,7 @@ public abstract class MulticastConnection extends SocketBase implements
                     throw new Exception("ReaderThread socket not bound");
                 }
                 byte[] readBuf = new byte[MAX_DATAGRAM_MSG_SIZE];
+                List<String> batch = new ArrayList<String>();
                 DatagramPacket readPacket = new DatagramPacket(readBuf,
                         readBuf.length);
                 /*
@@ -146,19 +251,47 @@ public abstract class MulticastConnection extends SocketBase implements
                  */
                 while (true) {
                     multicastSocket.receive(readPacket);
-                    String msg = new String(readPacket.getData(),
-                            0, readPacket.getLength());
-                    if (debugFlagIsSet(DEBUG_RECV)) {
-                        System.out.println("recv> " + msg);
+                    int length = multicastSocket.strip(readBuf,
+                            readPacket.getLength());
+                    if (length < 0) {
+                        continue;
+                    }
+                    String msg = fecDecoder == null ?
+                            new String(readBuf, 0, length) :
+                            fecDecoder.received(readBuf, length);
+                    packetsReceived++;
+                    bytesReceived += readPacket.getLength();
+                    boolean truncated =
+                            readPacket.getLength() == readBuf.length;
+                    if (truncated) {
+                        packetsTruncated++;
+                    }
+                    if (Globals.jfr) {
+                        PipelineEvents.MulticastReceive event =
+                                new PipelineEvents.MulticastReceive();
+                        event.length = readPacket.getLength();
+                        event.truncated = truncated;
+                        event.commit();
+                    }
+                    if (msg != null) {
+                        deliver(msg, readPacket.getSocketAddress(), batch);
+                    }
+                    if (fecDecoder != null) {
+                        while ((msg = fecDecoder.pollRecovered()) != null) {
+                            deliver(msg, null, batch);
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        /*
+                         * onMessages() may be overridden by a sublclass.
+                         */
+                        onMessages(batch);
+                        batch.clear();
                     }
-                    /*
-                     * onMessage() method to be implemented by a sublclass.
-                     */
-                    onMessage(msg);
                 }
             } catch (Exception e) {
                 if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                    e.printStackTrace();
+                    DebugLog.exception(peer, e);
                 }
             } finally {
                 close();
@@ -166,25 +299,182 @@ public abstract class MulticastConnection extends SocketBase implements
         }
     }
         
+    /*
+     * Unpack a datagram read, or rebuilt by the FecDecoder, into batch
+     */
+    private void deliver(String datagram, SocketAddress source,
+            List<String> batch) {
+        int first = batch.size();
+        DatagramPacker.unpack(datagram, batch);
+        for (int i = first; i < batch.size(); i++) {
+            String msg = batch.get(i);
+            if (debugFlagIsSet(DEBUG_RECV)) {
+                DebugLog.recv(peer, msg);
+            }
+            if (ackedReceiver != null) {
+                msg = ackedReceiver.received(msg, source);
+                if (msg == null) {
+                    batch.remove(i--);
+                } else {
+                    batch.set(i, msg);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called with all the messages read in one datagram, in order.  By
+     * default they are passed to onMessage() one by one; a subclass may
+     * override this to handle them as a batch.
+     * @param msgs the messages read
+     */
+    public void onMessages(List<String> msgs) {
+        for (int i = 0; i < msgs.size(); i++) {
+            /*
+             * onMessage() method to be implemented by a sublclass.
+             */
+            onMessage(msgs.get(i));
+        }
+    }
+
     /**
      * Send a message in String format to the MulticastSocket instance.
      *
      * @param msg The String message to send
      */
     public void sendMessage(String msg) {
-        byte[] sendMsgBuf = msg.getBytes();
-        DatagramPacket packet = new DatagramPacket(sendMsgBuf,
-            sendMsgBuf.length, inetAddress, portNum);
+        send(msg, PRIORITY_EVENT, null);
+    }
+
+    /**
+     * Send an XML update which every slave must get, retransmitting it
+     * until they acknowledge it.  Sent like any other message if
+     * acknowledged delivery is disabled.
+     *
+     * @param msg The XML update to send
+     * @param key Name of the variable updated; a later update with the
+     *            same key supersedes this one
+     */
+    public void sendMessage(String msg, String key) {
+        sendMessage(msg, PRIORITY_EVENT, key);
+    }
+
+    /**
+     * Send an XML update which every slave must get, retransmitting it
+     * until they acknowledge it.  Sent like any other message if
+     * acknowledged delivery is disabled.
+     *
+     * @param msg The XML update to send
+     * @param priority Priority class of the update (see
+     *            scoreboard.common.Constants); PRIORITY_CRITICAL updates
+     *            are never superseded
+     * @param key Name of the variable updated; a later update with the
+     *            same key supersedes this one
+     */
+    public void sendMessage(String msg, int priority, String key) {
+        send(msg, priority, key);
+    }
+
+    private void send(String msg, int priority, String key) {
+        AckedMulticastSender sender = key == null ? null : ackedSender;
+        UpdateTracer updateTracer = Globals.updateTracer;
+        long postTime = updateTracer == null ? 0 : UpdateTracer.now();
         if (debugFlagIsSet(DEBUG_SEND)) {
-            System.out.println("send> " + msg);
+            DebugLog.send(peer, msg);
+        }
+        PipelineEvents.MulticastSend event = null;
+        if (Globals.jfr) {
+            event = new PipelineEvents.MulticastSend();
+            event.begin();
+        }
+        try {
+            if (sender != null) {
+                /*
+                 * Its datagrams are counted as the sender sends them
+                 */
+                int length = sender.send(msg, priority, key);
+                if (event != null) {
+                    event.length = length;
+                }
+            } else {
+                byte[] sendMsgBuf = msg.getBytes();
+                packer.add(sendMsgBuf);
+                if (event != null) {
+                    event.length = sendMsgBuf.length;
+                }
+            }
+            if (updateTracer != null) {
+                updateTracer.updateWritten(postTime);
+            }
+        } catch (IOException e) {
+            sendErrors.incrementAndGet();
+            if (event != null) {
+                event.failed = true;
+            }
+            DebugLog.exception(peer, e);
+        }
+        if (event != null) {
+            event.commit();
         }
+    }
+
+    /**
+     * Send any messages still held for packing, e.g. right after the horn.
+     */
+    public void flush() {
         try {
-            multicastSocket.send(packet);
+            DatagramPacker p = packer;
+            if (p != null) {
+                p.flush();
+            }
+            AckedMulticastSender sender = ackedSender;
+            if (sender != null) {
+                sender.flush();
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            sendErrors.incrementAndGet();
+            DebugLog.exception(peer, e);
         }
     }
 
+    /**
+     * Send and read only the given channel of the group, rather than the
+     * default.  Must be called before the connection is run.
+     * @param channel channel name
+     */
+    public void setChannel(String channel) {
+        this.channel = channel;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * A writer sends acknowledged updates, anything else acknowledges
+     * them.  Overridden by writers.
+     * @return true if this connection only sends
+     */
+    protected boolean isWriter() {
+        return false;
+    }
+
+    /**
+     * @return the sender of acknowledged updates, or null if this is not
+     * a writer or acknowledged delivery is disabled
+     */
+    public AckedMulticastSender getAckedSender() {
+        return ackedSender;
+    }
+
+    /**
+     * @return the receiver of acknowledged updates, or null if this is a
+     * writer or acknowledged delivery is disabled
+     */
+    public AckedMulticastReceiver getAckedReceiver() {
+        return ackedReceiver;
+    }
+
     /**
      * Determines if the socket is connected.
      * @return true if the socket is connected, false if not.
@@ -221,6 +511,79 @@ public abstract class MulticastConnection extends SocketBase implements
         debugFlags = DEBUG_NONE;
     }
     
+    /*
+     * MulticastMXBean implementation
+     */
+    public String getAddress() {
+        return addr;
+    }
+
+    public int getPort() {
+        return portNum;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getSendErrors() {
+        return sendErrors.get();
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getPacketsTruncated() {
+        return packetsTruncated;
+    }
+
+    public int getAckedSlaves() {
+        AckedMulticastSender sender = ackedSender;
+        return sender == null ? 0 : sender.getKnownSlaves();
+    }
+
+    public long getRetransmissions() {
+        AckedMulticastSender sender = ackedSender;
+        return sender == null ? 0 : sender.getRetransmissions();
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        out.counter("scoreboard_multicast_packets_sent_total",
+                "Multicast packets sent", packetsSent.get());
+        out.counter("scoreboard_multicast_bytes_sent_total",
+                "Multicast bytes sent", bytesSent.get());
+        out.counter("scoreboard_multicast_send_errors_total",
+                "Multicast packets which failed to send", sendErrors.get());
+        out.counter("scoreboard_multicast_packets_received_total",
+                "Multicast packets received", packetsReceived);
+        out.counter("scoreboard_multicast_bytes_received_total",
+                "Multicast bytes received", bytesReceived);
+        out.counter("scoreboard_multicast_packets_truncated_total",
+                "Multicast packets larger than the receive buffer",
+                packetsTruncated);
+        MetricsSource acked = ackedSender != null ? ackedSender :
+                ackedReceiver;
+        if (acked != null) {
+            acked.writeMetrics(out);
+        }
+        MetricsSource fec = fecEncoder != null ? fecEncoder : fecDecoder;
+        if (fec != null) {
+            fec.writeMetrics(out);
+        }
+    }
+
     @Override
     public void run() { 
         connect();   
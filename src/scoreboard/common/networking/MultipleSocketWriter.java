@@ -31,38 +31,92 @@
 
 package scoreboard.common.networking;
 
+import scoreboard.common.DebugLog;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ObjectName;
+import scoreboard.common.Globals;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.metrics.MBeans;
+import scoreboard.common.metrics.MetricsServer;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import scoreboard.common.metrics.PipelineEvents;
+import scoreboard.common.metrics.UpdateTracer;
+import static scoreboard.common.Constants.DEFAULT_CHANNEL;
 import static scoreboard.common.Constants.DEFAULT_PORT;
 import static scoreboard.common.Constants.DEBUG_RECV;
 import static scoreboard.common.Constants.DEBUG_SEND;
 import static scoreboard.common.Constants.DEBUG_EXCEPTIONS;
 import static scoreboard.common.Constants.DEBUG_STATUS;
 import static scoreboard.common.Constants.DEBUG_NONE;
+import static scoreboard.common.Constants.NUM_PRIORITIES;
+import static scoreboard.common.Constants.PRIORITY_CRITICAL;
+import static scoreboard.common.Constants.PRIORITY_EVENT;
+import static scoreboard.common.Constants.PRIORITY_NAMES;
+import static scoreboard.common.Constants.WRITE_QUEUE_SIZE;
+import static scoreboard.common.Constants.WRITE_SOCKET_BUFFER_SIZE;
 
 
 /**
  * This class provides the framework for a ServerSocket connection with
  * multiple listeners.  When an update message is to be posted, all listeners
  * will receive the message on their socket connection.
+ *
+ * Several games can share the port, each on its own channel (see
+ * Subscription): an update is posted to one channel, and only reaches
+ * the listeners which have joined it.  Each channel has its own array of
+ * listeners, so posting to one never touches another's.
  * 
  * This class is abstract and requires implementation of the onMessage()
  * and onClosedStatus() methods.
  */
 public abstract class MultipleSocketWriter extends SocketBase
-        implements Runnable {
+        implements Runnable, SocketWriterMXBean, MetricsSource {
     
     private int listenerPort;
+    private static final int LINE_SEPARATOR_LENGTH =
+            System.getProperty("line.separator").length();
     private ServerSocket serverSocket;
     protected MultipleSocketWriter multipleSocketWriterRef;
     private int debugFlags = DEBUG_NONE;
     protected List<MultipleSocketWriterListener> updateListeners =
             new ArrayList<MultipleSocketWriterListener>();
+    /*
+     * Copy of updateListeners, replaced whenever a listener is added or
+     * removed, so postUpdate() can walk it without locking or copying.
+     */
+    private volatile MultipleSocketWriterListener[] listenerSnapshot =
+            new MultipleSocketWriterListener[0];
+    /*
+     * The same split by channel, replaced along with it and whenever a
+     * listener changes channel
+     */
+    private volatile Map<String, MultipleSocketWriterListener[]>
+            channelSnapshot =
+            new HashMap<String, MultipleSocketWriterListener[]>();
+    private static final MultipleSocketWriterListener[] NO_LISTENERS =
+            new MultipleSocketWriterListener[0];
+    /*
+     * Statistics for SocketWriterMXBean.  The per subscriber counts of
+     * disconnected subscribers are added in to the totals here.
+     */
+    private final AtomicLong updatesPosted = new AtomicLong();
+    private final AtomicLong closedUpdatesFiltered = new AtomicLong();
+    private final AtomicLong closedMessagesSent = new AtomicLong();
+    private final AtomicLong closedBytesSent = new AtomicLong();
+    private final AtomicLong subscribersDisconnected = new AtomicLong();
+    /*
+     * Microseconds from postUpdate() until written, for each priority
+     */
+    private final Histogram[] writeLatency = new Histogram[NUM_PRIORITIES];
+    private ObjectName mbeanName;
     
     abstract public void onMessage(String msg);
         
@@ -73,6 +127,37 @@ public abstract class MultipleSocketWriter extends SocketBase
         private PrintWriter writer;
         private BufferedReader reader;
         private Socket socket;
+        /*
+         * host:port of the subscriber
+         */
+        private String address;
+        /*
+         * Updates waiting to be written, each with the time it was posted.
+         * Written most urgent priority first, and in order within a
+         * priority, by this listener's WriterThread, so a slow listener
+         * delays neither postUpdate() nor the others.
+         */
+        private final UpdateQueue queue = new UpdateQueue(WRITE_QUEUE_SIZE);
+        private boolean closed = false;
+        /*
+         * Variables the subscriber displays, or null until it says, in
+         * which case it is sent everything
+         */
+        private volatile Subscription subscription;
+        /*
+         * Only written under the listener's lock
+         */
+        private volatile String channel = DEFAULT_CHANNEL;
+        /*
+         * Only written by post(), under the listener's lock
+         */
+        private volatile long messagesPosted = 0;
+        private volatile long updatesFiltered = 0;
+        /*
+         * Only written by the WriterThread
+         */
+        private volatile long messagesSent = 0;
+        private volatile long bytesSent = 0;
         
         public void onMessage(String msg) {
             multipleSocketWriterRef.onMessage(msg);        
@@ -94,12 +179,12 @@ public abstract class MultipleSocketWriter extends SocketBase
                     socket.close();
                 }
                 if (debugFlagIsSet(DEBUG_STATUS)) {
-                    System.out.println("Connection closed");
+                    DebugLog.status(address, "Connection closed");
                 }
                 removeListener(this);
             } catch (Exception e) {
                 if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                    e.printStackTrace();
+                    DebugLog.exception(address, e);
                 }
             }
         }
@@ -107,7 +192,10 @@ public abstract class MultipleSocketWriter extends SocketBase
         /*
          * Even if we don't read anything from the socket, set up a
          * ReaderThread because it will unable us to detect when a
-         * socket connection has been closed.
+         * socket connection has been closed.  A slave sends its
+         * Subscription on connecting, and then ClockSync pings, which are
+         * answered here, ahead of any updates but the horn still queued
+         * for this listener.
          */
         class ReaderThread extends Thread {
             @Override
@@ -120,15 +208,28 @@ public abstract class MultipleSocketWriter extends SocketBase
                     if (reader != null) {
                         String line;
                         while ((line = reader.readLine()) != null) {
+                            long readTime = ClockSync.now();
                             if (debugFlagIsSet(DEBUG_RECV)) {
-                                System.out.println("recv> " + line);
+                                DebugLog.recv(address, line);
+                            }
+                            if (ClockSync.isPing(line)) {
+                                pong(line, readTime);
+                                continue;
+                            }
+                            if (Subscription.isSubscribe(line)) {
+                                subscription = Subscription.parse(line);
+                                continue;
+                            }
+                            if (Subscription.isChannel(line)) {
+                                joinChannel(Subscription.parseChannel(line));
+                                continue;
                             }
                             onMessage(line);
                         }
                     }
                 } catch (Exception e) {
                     if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                        e.printStackTrace();
+                        DebugLog.exception(address, e);
                     }
                 } finally {
                     close();
@@ -136,20 +237,148 @@ public abstract class MultipleSocketWriter extends SocketBase
             }
         }
         
-        public void sendMessage(String line) {
-            try {
-                if (debugFlagIsSet(DEBUG_SEND)) {
-                    System.out.println("send> " + line);
-                }
-                writer.println(line);
-                if (writer.checkError()) {
-                    multipleSocketWriterRef.removeListener(this);
+        /*
+         * Writes queued updates until the listener is closed.  The socket
+         * is flushed whenever the queue runs empty, so a burst of updates
+         * goes out together.
+         */
+        class WriterThread extends Thread {
+            @Override
+            public void run() {
+                while (true) {
+                    String line;
+                    int priority;
+                    long postTime;
+                    boolean more;
+                    synchronized (MultipleSocketWriterListener.this) {
+                        while (queue.size() == 0 && !closed) {
+                            try {
+                                MultipleSocketWriterListener.this.wait();
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                        if (closed) {
+                            return;
+                        }
+                        line = queue.poll();
+                        priority = queue.getPolledPriority();
+                        postTime = queue.getPolledStamp();
+                        more = queue.size() > 0;
+                    }
+                    if (debugFlagIsSet(DEBUG_SEND)) {
+                        DebugLog.send(address, line);
+                    }
+                    PipelineEvents.Write event = null;
+                    if (Globals.jfr) {
+                        event = new PipelineEvents.Write();
+                        if (postTime != 0) {
+                            event.queuedMicros = UpdateTracer.now() - postTime;
+                        }
+                        event.begin();
+                    }
+                    writer.println(line);
+                    messagesSent++;
+                    bytesSent += line.length() + LINE_SEPARATOR_LENGTH;
+                    if (event != null) {
+                        event.subscriber = address;
+                        event.length = line.length();
+                        event.queued = getQueued();
+                        event.commit();
+                    }
+                    if (!more && writer.checkError()) {
+                        multipleSocketWriterRef.removeListener(
+                                MultipleSocketWriterListener.this);
+                        return;
+                    }
+                    if (postTime != 0) {
+                        writeLatency[priority].record(
+                                UpdateTracer.now() - postTime);
+                        UpdateTracer updateTracer = Globals.updateTracer;
+                        if (updateTracer != null) {
+                            updateTracer.updateWritten(postTime);
+                        }
+                    }
                 }
-            } catch (Exception ex) {
-                multipleSocketWriterRef.removeListener(this);
             }
         }
-        
+
+        /*
+         * Queues an update for the WriterThread.  Returns false if the
+         * queue for its priority is full.
+         */
+        synchronized boolean post(String line, int priority, long postTime,
+                String name, String channel) {
+            if (closed || !channel.equals(this.channel)) {
+                return true;
+            }
+            Subscription s = subscription;
+            if (s != null && !s.includes(name)) {
+                updatesFiltered++;
+                return true;
+            }
+            if (!queue.offer(line, priority, postTime)) {
+                return false;
+            }
+            messagesPosted++;
+            notify();
+            return true;
+        }
+
+        /*
+         * Answers a ClockSync ping as a critical update, so that the round
+         * trip doesn't include waiting behind queued clock ticks.
+         */
+        private void pong(String ping, long readTime) {
+            String pong = ClockSync.pongStr(ping, readTime);
+            if (pong != null) {
+                post(pong, PRIORITY_CRITICAL, 0, null, channel);
+            }
+        }
+
+        /*
+         * Moves this listener onto another channel.  Anything still queued
+         * from the old one is dropped, and the echo tells the slave that
+         * everything after it is from the new one.  Posts to the old
+         * channel that were already under way are refused by post().
+         */
+        private void joinChannel(String newChannel) {
+            if (newChannel == null) {
+                return;
+            }
+            synchronized (this) {
+                messagesPosted -= queue.size();
+                queue.clear();
+                channel = newChannel;
+                post(Subscription.channelStr(newChannel), PRIORITY_CRITICAL,
+                        0, null, newChannel);
+            }
+            updateSnapshots();
+            // Connection counts per channel have changed
+            onClosedStatus(false);
+        }
+
+        /*
+         * Lock-free, so that monitoring never contends with posting.  May
+         * be off by the one update the WriterThread is writing.
+         */
+        int getQueued() {
+            return (int) (messagesPosted - messagesSent);
+        }
+
+        /*
+         * Returns false if the queue had already been closed
+         */
+        synchronized boolean closeQueue() {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            queue.clear();
+            notify();
+            return true;
+        }
+
         private void setup(Socket socket) throws IOException {
             this.socket = socket;
             /* 
@@ -158,11 +387,22 @@ public abstract class MultipleSocketWriter extends SocketBase
              * print out the connection status line.
              */
             if (socket != null) {
+                address = socket.getInetAddress().getHostAddress() + ":" +
+                        socket.getPort();
+                /*
+                 * Keep any backlog in the priority queues rather than in
+                 * the kernel, where the horn couldn't jump it.  Updates are
+                 * small and flushed as soon as the queue is empty, so
+                 * don't let Nagle's algorithm hold them back either.
+                 */
+                socket.setSendBufferSize(WRITE_SOCKET_BUFFER_SIZE);
+                socket.setTcpNoDelay(true);
                 writer = new PrintWriter(
                         new OutputStreamWriter(socket.getOutputStream()));
                 reader = new BufferedReader(
                         new InputStreamReader(socket.getInputStream()));
                 new ReaderThread().start();
+                new WriterThread().start();
             }
         }
         
@@ -196,16 +436,58 @@ public abstract class MultipleSocketWriter extends SocketBase
     }
     
     private void addListener(SocketListener listener) {
-        updateListeners.add((MultipleSocketWriterListener) listener);
+        synchronized (this) {
+            updateListeners.add((MultipleSocketWriterListener) listener);
+        }
+        updateSnapshots();
         listener.onClosedStatus(false);
     }
+
+    private synchronized void updateSnapshots() {
+        listenerSnapshot = updateListeners.toArray(
+                new MultipleSocketWriterListener[updateListeners.size()]);
+        Map<String, List<MultipleSocketWriterListener>> byChannel =
+                new HashMap<String, List<MultipleSocketWriterListener>>();
+        for (MultipleSocketWriterListener l : updateListeners) {
+            List<MultipleSocketWriterListener> listeners =
+                    byChannel.get(l.channel);
+            if (listeners == null) {
+                listeners = new ArrayList<MultipleSocketWriterListener>();
+                byChannel.put(l.channel, listeners);
+            }
+            listeners.add(l);
+        }
+        Map<String, MultipleSocketWriterListener[]> snapshot =
+                new HashMap<String, MultipleSocketWriterListener[]>();
+        for (Map.Entry<String, List<MultipleSocketWriterListener>> entry :
+                byChannel.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().toArray(
+                    new MultipleSocketWriterListener[
+                    entry.getValue().size()]));
+        }
+        channelSnapshot = snapshot;
+    }
     
     private void removeListener(SocketListener listener) {
-        updateListeners.remove((MultipleSocketWriterListener) listener);
+        MultipleSocketWriterListener l =
+                (MultipleSocketWriterListener) listener;
+        if (l.closeQueue()) {
+            subscribersDisconnected.incrementAndGet();
+            closedMessagesSent.addAndGet(l.messagesSent);
+            closedBytesSent.addAndGet(l.bytesSent);
+            closedUpdatesFiltered.addAndGet(l.updatesFiltered);
+        }
+        synchronized (this) {
+            updateListeners.remove((MultipleSocketWriterListener) listener);
+        }
+        updateSnapshots();
         listener.onClosedStatus(true);
     }
     
     public void shutdown() {
+        MBeans.unregister(mbeanName);
+        mbeanName = null;
+        MetricsServer.unregister(this);
         try {
             serverSocket.close();
         } catch (IOException e) {
@@ -218,6 +500,10 @@ public abstract class MultipleSocketWriter extends SocketBase
         try {
             new MultipleSocketWriterListener(null).onClosedStatus(true);
             serverSocket = new ServerSocket(listenerPort);
+            mbeanName = MBeans.register(this, "SocketWriter",
+                    "port=" + listenerPort);
+            MetricsServer.register(this, "port",
+                    Integer.toString(listenerPort));
             while(true) {
                 Socket acceptSocket = serverSocket.accept();
                 addListener(new MultipleSocketWriterListener(acceptSocket));
@@ -228,36 +514,197 @@ public abstract class MultipleSocketWriter extends SocketBase
     }
     
     /*
-     * Use ExecutorService to post updates.  Each individual socket will
-     * get its own thread.  This construct seems to avoid a
-     * ConcurrentModificationException, which happens if the updateListener
-     * list is modified while iterating over it.
+     * Queue an update of PRIORITY_EVENT for every listener
      */
-    private ExecutorService executor = new ScheduledThreadPoolExecutor(10);
-    
-    public void postUpdate(final String line) {
-        
+    public void postUpdate(String line) {
+        postUpdate(line, PRIORITY_EVENT);
+    }
+
+    /*
+     * Queue an update for every listener, whatever it subscribed to
+     */
+    public void postUpdate(String line, int priority) {
+        postUpdate(line, priority, null);
+    }
+
+    /*
+     * Queue an update to the variable called name for every listener on
+     * the default channel subscribed to it
+     */
+    public void postUpdate(String line, int priority, String name) {
+        postUpdate(line, priority, name, DEFAULT_CHANNEL);
+    }
+
+    /*
+     * Queue an update to the variable called name for every listener on
+     * the channel subscribed to it.  Each listener writes its own queue,
+     * most urgent priority first, on its own WriterThread.  This doesn't
+     * allocate or block, no matter how many listeners there are.  A
+     * listener whose queue is full is disconnected.
+     */
+    public void postUpdate(final String line, final int priority,
+            final String name, final String channel) {
+        final long postTime = UpdateTracer.now();
+        MultipleSocketWriterListener[] channelListeners =
+                channelSnapshot.get(channel);
         final MultipleSocketWriterListener[] listeners =
-                this.updateListeners.toArray(
-                new MultipleSocketWriterListener[this.updateListeners.size()]);
-        
+                channelListeners != null ? channelListeners : NO_LISTENERS;
+        updatesPosted.incrementAndGet();
         for (int i = 0; i < listeners.length; i++) {
-            final MultipleSocketWriterListener listener = listeners[i];
-            executor.submit(new Runnable() {
-                @Override
-                public void run() {
-                    listener.sendMessage(line);
+            if (!listeners[i].post(line, priority, postTime, name,
+                    channel)) {
+                if (debugFlagIsSet(DEBUG_STATUS)) {
+                    DebugLog.status(listeners[i].address,
+                            "Listener fell behind, disconnecting");
                 }
-            });    
+                listeners[i].close();
+            } else if (Globals.jfr) {
+                PipelineEvents.Enqueue event = new PipelineEvents.Enqueue();
+                event.subscriber = listeners[i].address;
+                event.queued = listeners[i].getQueued();
+                event.commit();
+            }
         }
     }
     
+    /*
+     * Number of listeners on a channel, e.g. for the status row of the
+     * scoreboard sending on it
+     */
+    public int getSubscriberCount(String channel) {
+        MultipleSocketWriterListener[] listeners =
+                channelSnapshot.get(channel);
+        return listeners != null ? listeners.length : 0;
+    }
+
+    /*
+     * SocketWriterMXBean implementation
+     */
+    public int getPort() {
+        return listenerPort;
+    }
+
+    public int getSubscriberCount() {
+        return listenerSnapshot.length;
+    }
+
+    public long getUpdatesPosted() {
+        return updatesPosted.get();
+    }
+
+    public long getMessagesSent() {
+        long total = closedMessagesSent.get();
+        for (MultipleSocketWriterListener listener : listenerSnapshot) {
+            total += listener.messagesSent;
+        }
+        return total;
+    }
+
+    public long getBytesSent() {
+        long total = closedBytesSent.get();
+        for (MultipleSocketWriterListener listener : listenerSnapshot) {
+            total += listener.bytesSent;
+        }
+        return total;
+    }
+
+    public long getSubscribersDisconnected() {
+        return subscribersDisconnected.get();
+    }
+
+    public String[] getChannels() {
+        Map<String, MultipleSocketWriterListener[]> snapshot =
+                channelSnapshot;
+        List<String> channels = new ArrayList<String>();
+        for (Map.Entry<String, MultipleSocketWriterListener[]> entry :
+                snapshot.entrySet()) {
+            channels.add(entry.getKey() + " subscribers=" +
+                    entry.getValue().length);
+        }
+        return channels.toArray(new String[channels.size()]);
+    }
+
+    public long getUpdatesFiltered() {
+        long total = closedUpdatesFiltered.get();
+        for (MultipleSocketWriterListener listener : listenerSnapshot) {
+            total += listener.updatesFiltered;
+        }
+        return total;
+    }
+
+    public String[] getWriteLatency() {
+        String[] latency = new String[NUM_PRIORITIES];
+        for (int i = 0; i < NUM_PRIORITIES; i++) {
+            latency[i] = writeLatency[i].toString();
+        }
+        return latency;
+    }
+
+    public String[] getSubscribers() {
+        MultipleSocketWriterListener[] listeners = listenerSnapshot;
+        String[] subscribers = new String[listeners.length];
+        for (int i = 0; i < listeners.length; i++) {
+            MultipleSocketWriterListener l = listeners[i];
+            Subscription s = l.subscription;
+            subscribers[i] = l.address +
+                    " channel=" + l.channel +
+                    " subscribed=" + (s == null ? "all" : s.size()) +
+                    " messages=" + l.messagesSent +
+                    " bytes=" + l.bytesSent +
+                    " queued=" + l.getQueued() +
+                    " filtered=" + l.updatesFiltered;
+        }
+        return subscribers;
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        MultipleSocketWriterListener[] listeners = listenerSnapshot;
+        long queued = 0;
+        for (MultipleSocketWriterListener listener : listeners) {
+            queued += listener.getQueued();
+        }
+        out.gauge("scoreboard_writer_subscribers",
+                "Slaves currently subscribed", listeners.length);
+        for (Map.Entry<String, MultipleSocketWriterListener[]> entry :
+                channelSnapshot.entrySet()) {
+            out.gauge("scoreboard_writer_channel_subscribers",
+                    "Slaves currently subscribed, by channel",
+                    MetricsWriter.label("channel", entry.getKey()),
+                    entry.getValue().length);
+        }
+        out.gauge("scoreboard_writer_queued_updates",
+                "Updates queued for all subscribers", queued);
+        out.counter("scoreboard_writer_updates_posted_total",
+                "Updates posted for sending", getUpdatesPosted());
+        out.counter("scoreboard_writer_messages_sent_total",
+                "Updates written to subscribers", getMessagesSent());
+        out.counter("scoreboard_writer_bytes_sent_total",
+                "Bytes written to subscribers", getBytesSent());
+        out.counter("scoreboard_writer_updates_filtered_total",
+                "Updates not sent to subscribers not displaying them",
+                getUpdatesFiltered());
+        out.counter("scoreboard_writer_subscribers_disconnected_total",
+                "Subscribers disconnected", getSubscribersDisconnected());
+        for (int i = 0; i < NUM_PRIORITIES; i++) {
+            out.histogram("scoreboard_writer_latency_microseconds",
+                    "Time from posting an update until written, by priority",
+                    MetricsWriter.label("class", PRIORITY_NAMES[i]),
+                    writeLatency[i]);
+        }
+    }
+
     private void init() {
         /*
          * Avoid "leaking this in constructor" warning by moving the
          * following assignment outside the constructor into this method.
          */
         multipleSocketWriterRef = this;    
+        for (int i = 0; i < NUM_PRIORITIES; i++) {
+            writeLatency[i] = new Histogram(PRIORITY_NAMES[i]);
+        }
     }
     
     public MultipleSocketWriter () {
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static scoreboard.common.networking.SharedMemoryWriter.*;
+
+/*
+ * Follows a file published by a SharedMemoryWriter on this host.
+ * readState() gives the latest update to every variable, and poll() the
+ * updates published since, in order, without blocking or a system call.
+ * An update can show up in both, which does no harm as every update
+ * carries a variable's whole value.  A reader more than a ring's worth of
+ * updates behind skips to the oldest still there, counting the rest as
+ * lost.  If the writer restarts, the reader starts over from its first
+ * update.
+ *
+ * A reader is for one thread.  Use one per thread to follow the file
+ * from several.
+ */
+public class SharedMemoryReader {
+
+    /*
+     * A slot being written is read again, up to this many times
+     */
+    private static final int MAX_RETRIES = 1000;
+
+    private final MappedByteBuffer buffer;
+    private final int ringSlots;
+    private final int stateSlots;
+    private final int slotSize;
+    private final int ringOffset;
+    private final byte[] lineBuffer;
+    private long next;
+    private long lost = 0;
+
+    /*
+     * See SharedMemoryWriter
+     */
+    private volatile long fence;
+
+    public SharedMemoryReader(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(new File(path), "r");
+        try {
+            if (file.length() < HEADER_SIZE) {
+                throw new IOException(path + ": not a scoreboard file");
+            }
+            MappedByteBuffer header = file.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(MAGIC_OFFSET) != MAGIC ||
+                    header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException(path + ": not a scoreboard file");
+            }
+            ringSlots = header.getInt(RING_SLOTS_OFFSET);
+            stateSlots = header.getInt(STATE_SLOTS_OFFSET);
+            slotSize = header.getInt(SLOT_SIZE_OFFSET);
+            ringOffset = HEADER_SIZE + stateSlots * slotSize;
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    0, ringOffset + (long) ringSlots * slotSize);
+        } finally {
+            file.close();
+        }
+        lineBuffer = new byte[getMaxLineLength()];
+        next = buffer.getLong(PUBLISHED_OFFSET) + 1;
+    }
+
+    /*
+     * Longest update poll(byte[]) can return
+     */
+    public int getMaxLineLength() {
+        return slotSize - RING_LINE;
+    }
+
+    /*
+     * The latest update to each variable, by name, in the order the
+     * variables were first posted
+     */
+    public Map<String, String> readState() {
+        Map<String, String> state = new LinkedHashMap<String, String>();
+        int count = Math.min(buffer.getInt(STATE_COUNT_OFFSET), stateSlots);
+        fence = count;
+        for (int i = 0; i < count; i++) {
+            int slot = HEADER_SIZE + i * slotSize;
+            String name = readAscii(slot + STATE_NAME,
+                    buffer.getInt(slot + STATE_NAME_LENGTH));
+            String line = readStateLine(slot);
+            if (line != null) {
+                state.put(name, line);
+            }
+        }
+        return state;
+    }
+
+    /*
+     * The latest update to the variable called name, or null if there
+     * hasn't been one
+     */
+    public String readState(String name) {
+        int count = Math.min(buffer.getInt(STATE_COUNT_OFFSET), stateSlots);
+        fence = count;
+        for (int i = 0; i < count; i++) {
+            int slot = HEADER_SIZE + i * slotSize;
+            if (name.equals(readAscii(slot + STATE_NAME,
+                    buffer.getInt(slot + STATE_NAME_LENGTH)))) {
+                return readStateLine(slot);
+            }
+        }
+        return null;
+    }
+
+    private String readStateLine(int slot) {
+        for (int retry = 0; retry < MAX_RETRIES; retry++) {
+            long version = buffer.getLong(slot + STATE_VERSION);
+            fence = version;
+            if ((version & 1) != 0) {
+                continue;
+            }
+            int length = buffer.getInt(slot + STATE_LINE_LENGTH);
+            if (length < 0 || length > slotSize - STATE_LINE) {
+                continue;
+            }
+            String line = readAscii(slot + STATE_LINE, length);
+            fence = version;
+            if (buffer.getLong(slot + STATE_VERSION) == version) {
+                return version == 0 ? null : line;
+            }
+        }
+        return null;
+    }
+
+    private String readAscii(int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            lineBuffer[i] = buffer.get(offset + i);
+        }
+        return new String(lineBuffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /*
+     * Copies the next update into dst, which must hold
+     * getMaxLineLength() bytes.  Returns its length, or 0 if there is
+     * nothing new.  Doesn't allocate.
+     */
+    public int poll(byte[] dst) {
+        while (true) {
+            long published = buffer.getLong(PUBLISHED_OFFSET);
+            fence = published;
+            if (published < next - 1) {
+                // The writer has restarted
+                next = 1;
+            }
+            if (next > published) {
+                return 0;
+            }
+            if (published - next >= ringSlots) {
+                lost += published - ringSlots + 1 - next;
+                next = published - ringSlots + 1;
+            }
+            int slot = ringOffset + (int) (next & (ringSlots - 1)) *
+                    slotSize;
+            long seq = buffer.getLong(slot + RING_SEQ);
+            fence = seq;
+            if (seq != next) {
+                if (Math.abs(seq) < next) {
+                    return 0;
+                }
+                // Overwritten before we got to it
+                lost++;
+                next++;
+                continue;
+            }
+            int length = buffer.getInt(slot + RING_LENGTH);
+            if (length <= 0 || length > getMaxLineLength()) {
+                // Only possible if overwritten while being read
+                lost++;
+                next++;
+                continue;
+            }
+            for (int i = 0; i < length; i++) {
+                dst[i] = buffer.get(slot + RING_LINE + i);
+            }
+            fence = seq;
+            if (buffer.getLong(slot + RING_SEQ) != seq) {
+                // Overwritten while being copied
+                lost++;
+                next++;
+                continue;
+            }
+            next++;
+            return length;
+        }
+    }
+
+    /*
+     * The next update, or null if there is nothing new
+     */
+    public String poll() {
+        int length = poll(lineBuffer);
+        return length == 0 ? null :
+                new String(lineBuffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /*
+     * Number of the last update published
+     */
+    public long getPublished() {
+        return buffer.getLong(PUBLISHED_OFFSET);
+    }
+
+    /*
+     * Updates missed for falling more than a ring's worth behind
+     */
+    public long getLost() {
+        return lost;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import static scoreboard.common.Constants.SHM_NAME_SIZE;
+import static scoreboard.common.Constants.SHM_RING_SLOTS;
+import static scoreboard.common.Constants.SHM_SLOT_SIZE;
+import static scoreboard.common.Constants.SHM_STATE_SLOTS;
+
+/*
+ * Publishes updates to processes on the same host through a memory mapped
+ * file, which they read with a SharedMemoryReader without a system call
+ * per update.  The file is laid out as:
+ *
+ *   header  MAGIC, VERSION, ring slots, state slots and slot size, then
+ *           on a cache line of its own the number of the last update
+ *           published and the number of state slots in use
+ *   state   one slot per variable, in the order first posted, holding
+ *           its name and latest update, guarded by a version which is odd
+ *           while the slot is being written
+ *   ring    the last SHM_RING_SLOTS updates, update n in slot
+ *           n % SHM_RING_SLOTS, numbered -n while being written and n once
+ *           written
+ *
+ * There is one writer, e.g. the FX thread of a master posting or a slave
+ * applying updates.  Readers never write to the file, so any number can
+ * follow it.  Updates longer than a slot are counted and dropped.
+ */
+public class SharedMemoryWriter implements MetricsSource {
+
+    static final int MAGIC = 0x53434231;   // "SCB1"
+    static final int VERSION = 1;
+    /*
+     * Header offsets
+     */
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int RING_SLOTS_OFFSET = 8;
+    static final int STATE_SLOTS_OFFSET = 12;
+    static final int SLOT_SIZE_OFFSET = 16;
+    static final int PUBLISHED_OFFSET = 64;
+    static final int STATE_COUNT_OFFSET = 72;
+    static final int HEADER_SIZE = 128;
+    /*
+     * State slot offsets
+     */
+    static final int STATE_VERSION = 0;
+    static final int STATE_NAME_LENGTH = 8;
+    static final int STATE_LINE_LENGTH = 12;
+    static final int STATE_NAME = 16;
+    static final int STATE_LINE = STATE_NAME + SHM_NAME_SIZE;
+    /*
+     * Ring slot offsets
+     */
+    static final int RING_SEQ = 0;
+    static final int RING_LENGTH = 8;
+    static final int RING_LINE = 12;
+
+    static final int STATE_OFFSET = HEADER_SIZE;
+    static final int RING_OFFSET = STATE_OFFSET +
+            SHM_STATE_SLOTS * SHM_SLOT_SIZE;
+    static final int FILE_SIZE = RING_OFFSET + SHM_RING_SLOTS * SHM_SLOT_SIZE;
+
+    private final String path;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> stateSlots =
+            new HashMap<String, Integer>();
+    private volatile long published = 0;
+    private volatile long updatesTooLong = 0;
+    private volatile long statesDropped = 0;
+
+    /*
+     * Java 8 has no ordered or fenced access to a MappedByteBuffer.
+     * HotSpot makes a volatile write a full fence, for both the compiler
+     * and the CPU, so one between two buffer writes keeps them in order.
+     */
+    private volatile long fence;
+
+    /*
+     * Creates, or clears, the file at path
+     */
+    public SharedMemoryWriter(String path) throws IOException {
+        this.path = path;
+        RandomAccessFile file = new RandomAccessFile(new File(path), "rw");
+        try {
+            file.setLength(FILE_SIZE);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    0, FILE_SIZE);
+        } finally {
+            file.close();
+        }
+        /*
+         * Rather than truncating the file, which would pull it out from
+         * under readers still mapping it, clear it, starting with the
+         * number of the last update, so that they start over
+         */
+        buffer.putLong(PUBLISHED_OFFSET, 0);
+        fence = 0;
+        for (int offset = 0; offset < FILE_SIZE; offset += 8) {
+            buffer.putLong(offset, 0);
+        }
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(RING_SLOTS_OFFSET, SHM_RING_SLOTS);
+        buffer.putInt(STATE_SLOTS_OFFSET, SHM_STATE_SLOTS);
+        buffer.putInt(SLOT_SIZE_OFFSET, SHM_SLOT_SIZE);
+        fence = 0;
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /*
+     * Publish an update to the variable called name, or, with a null name,
+     * one that isn't kept in the state block.  Must only be called by one
+     * thread.  Doesn't allocate, except the first time a name is posted.
+     */
+    public void post(String name, String line) {
+        if (line.length() > SHM_SLOT_SIZE - STATE_LINE) {
+            updatesTooLong++;
+            return;
+        }
+        if (name != null) {
+            writeState(name, line);
+        }
+        long seq = published + 1;
+        int slot = RING_OFFSET + (int) (seq & (SHM_RING_SLOTS - 1)) *
+                SHM_SLOT_SIZE;
+        buffer.putLong(slot + RING_SEQ, -seq);
+        fence = seq;
+        buffer.putInt(slot + RING_LENGTH, line.length());
+        putAscii(slot + RING_LINE, line);
+        fence = seq;
+        buffer.putLong(slot + RING_SEQ, seq);
+        fence = seq;
+        buffer.putLong(PUBLISHED_OFFSET, seq);
+        published = seq;
+    }
+
+    private void writeState(String name, String line) {
+        Integer index = stateSlots.get(name);
+        if (index == null) {
+            if (stateSlots.size() == SHM_STATE_SLOTS ||
+                    name.length() > SHM_NAME_SIZE) {
+                statesDropped++;
+                return;
+            }
+            index = stateSlots.size();
+            stateSlots.put(name, index);
+            int slot = STATE_OFFSET + index * SHM_SLOT_SIZE;
+            buffer.putInt(slot + STATE_NAME_LENGTH, name.length());
+            putAscii(slot + STATE_NAME, name);
+            fence = index;
+            buffer.putInt(STATE_COUNT_OFFSET, index + 1);
+        }
+        int slot = STATE_OFFSET + index * SHM_SLOT_SIZE;
+        long version = buffer.getLong(slot + STATE_VERSION);
+        buffer.putLong(slot + STATE_VERSION, version + 1);
+        fence = version;
+        buffer.putInt(slot + STATE_LINE_LENGTH, line.length());
+        putAscii(slot + STATE_LINE, line);
+        fence = version;
+        buffer.putLong(slot + STATE_VERSION, version + 2);
+    }
+
+    /*
+     * Updates are plain ASCII XML
+     */
+    private void putAscii(int offset, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            buffer.put(offset + i, (byte) s.charAt(i));
+        }
+    }
+
+    public long getUpdatesPublished() {
+        return published;
+    }
+
+    public long getUpdatesTooLong() {
+        return updatesTooLong;
+    }
+
+    public void writeMetrics(MetricsWriter out) {
+        String labels = MetricsWriter.label("path", path);
+        out.counter("scoreboard_shm_updates_published_total",
+                "Updates published to the shared memory file", labels,
+                published);
+        out.counter("scoreboard_shm_updates_too_long_total",
+                "Updates dropped for not fitting a slot", labels,
+                updatesTooLong);
+        out.counter("scoreboard_shm_states_dropped_total",
+                "Updates left out of the full state block", labels,
+                statesDropped);
+    }
+}
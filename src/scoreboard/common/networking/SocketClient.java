@@ -31,6 +31,7 @@
 
 package scoreboard.common.networking;
 
+import scoreboard.common.DebugLog;
 import java.net.*;
 import static scoreboard.common.Constants.DEFAULT_HOST;
 import static scoreboard.common.Constants.DEFAULT_PORT;
@@ -92,12 +93,11 @@ public class SocketClient extends GenericSocket
              */
             socketConnection.connect(new InetSocketAddress(host, port));
             if (debugFlagIsSet(DEBUG_STATUS)) {
-                System.out.println("Connected to " + host
-                        + "at port " + port);
+                DebugLog.status(host + ":" + port, "Connected");
             }
         } catch (Exception e) {
             if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                e.printStackTrace();
+                DebugLog.exception(host + ":" + port, e);
             }
             throw new SocketException();
         }
@@ -31,6 +31,7 @@
 
 package scoreboard.common.networking;
 
+import scoreboard.common.DebugLog;
 import scoreboard.fx2.networking.*;
 import java.net.*;
 import static scoreboard.common.Constants.DEFAULT_HOST;
@@ -94,16 +95,17 @@ public class SocketServer extends GenericSocket
              * Wait for connection
              */
             if (debugFlagIsSet(DEBUG_STATUS)) {
-                System.out.println("Waiting for connection");
+                DebugLog.status(null, "Waiting for connection on port " + port);
             }
             socketConnection = serverSocket.accept();
             if (debugFlagIsSet(DEBUG_STATUS)) {
-                System.out.println("Connection received from "
-                        + socketConnection.getInetAddress().getHostName());
+                DebugLog.status(socketConnection.getInetAddress()
+                        .getHostAddress() + ":" + socketConnection.getPort(),
+                        "Connection received");
             }
         } catch (Exception e) {
             if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                e.printStackTrace();
+                DebugLog.exception(peer, e);
             }
             throw new SocketException();
         }
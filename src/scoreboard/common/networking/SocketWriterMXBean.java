@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+/*
+ * Management interface of a MultipleSocketWriter, registered as
+ * scoreboard:type=SocketWriter,port=PORT
+ */
+public interface SocketWriterMXBean {
+
+    public int getPort();
+
+    public int getSubscriberCount();
+
+    /*
+     * Updates handed to postUpdate()
+     */
+    public long getUpdatesPosted();
+
+    /*
+     * Totals over all subscribers, including those since disconnected
+     */
+    public long getMessagesSent();
+
+    public long getBytesSent();
+
+    public long getSubscribersDisconnected();
+
+    /*
+     * Updates not sent to subscribers, totalled over all of them, because
+     * their Subscription left the variable out
+     */
+    public long getUpdatesFiltered();
+
+    /*
+     * One line per channel with subscribers: "channel subscribers=N"
+     */
+    public String[] getChannels();
+
+    /*
+     * One line per priority class, critical first, summarizing the
+     * microseconds from postUpdate() until written
+     */
+    public String[] getWriteLatency();
+
+    /*
+     * One line per connected subscriber:
+     * "address:port channel=NAME subscribed=N messages=N bytes=N queued=N
+     * filtered=N",
+     * subscribed being the number of variables or "all"
+     */
+    public String[] getSubscribers();
+}
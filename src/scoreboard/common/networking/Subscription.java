@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import static scoreboard.common.Constants.MAX_CHANNEL_NAME_LENGTH;
+
+/*
+ * The update variables a slave displays, so that its master's socket
+ * writer need only send it updates to those.  A slave whose config only
+ * places the clock, say, shouldn't have to read and parse every score,
+ * shots and penalty update as well.
+ *
+ * The slave sends <subscribe>NAME,NAME,...</subscribe> each time it
+ * connects, before anything else.  Until that is read the master sends it
+ * everything, as it does to a slave that never subscribes.  Anything that
+ * isn't an update to a named variable, e.g. a ClockSync pong, is always
+ * sent.
+ *
+ * A master can host several games on one port, each on its own channel.
+ * A slave following anything but DEFAULT_CHANNEL first sends
+ * <channel>NAME</channel>.  The master moves it onto that channel, drops
+ * whatever it still had queued for it from the old one, and echoes the
+ * line back; the slave ignores everything read before the echo.
+ */
+public class Subscription {
+
+    private static final String START_SUBSCRIBE = "<subscribe>";
+    private static final String END_SUBSCRIBE = "</subscribe>";
+    private static final String START_CHANNEL = "<channel>";
+    private static final String END_CHANNEL = "</channel>";
+
+    private final Set<String> names;
+
+    private Subscription(Set<String> names) {
+        this.names = names;
+    }
+
+    public static boolean isSubscribe(String line) {
+        return line.startsWith(START_SUBSCRIBE);
+    }
+
+    public static String subscribeStr(Collection<String> names) {
+        StringBuilder sb = new StringBuilder(START_SUBSCRIBE);
+        boolean first = true;
+        for (String name : names) {
+            if (!first) {
+                sb.append(',');
+            }
+            sb.append(name);
+            first = false;
+        }
+        return sb.append(END_SUBSCRIBE).toString();
+    }
+
+    /*
+     * Returns null if the subscription is malformed
+     */
+    public static Subscription parse(String line) {
+        if (!isSubscribe(line) || !line.endsWith(END_SUBSCRIBE)) {
+            return null;
+        }
+        Set<String> names = new HashSet<String>();
+        String list = line.substring(START_SUBSCRIBE.length(),
+                line.length() - END_SUBSCRIBE.length());
+        for (String name : list.split(",")) {
+            if (name.length() > 0) {
+                names.add(name);
+            }
+        }
+        return new Subscription(names);
+    }
+
+    public static boolean isChannel(String line) {
+        return line.startsWith(START_CHANNEL);
+    }
+
+    public static String channelStr(String channel) {
+        return START_CHANNEL + channel + END_CHANNEL;
+    }
+
+    /*
+     * Returns the channel named, or null if the line is malformed
+     */
+    public static String parseChannel(String line) {
+        if (!isChannel(line) || !line.endsWith(END_CHANNEL)) {
+            return null;
+        }
+        String channel = line.substring(START_CHANNEL.length(),
+                line.length() - END_CHANNEL.length());
+        return isValidChannel(channel) ? channel : null;
+    }
+
+    public static boolean isValidChannel(String channel) {
+        if (channel.length() == 0 ||
+                channel.length() > MAX_CHANNEL_NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < channel.length(); i++) {
+            char c = channel.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Whether an update to the named variable is to be sent.  A null name
+     * is anything other than a variable update.
+     */
+    public boolean includes(String name) {
+        return name == null || names.contains(name);
+    }
+
+    public int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.common.networking;
+
+import static scoreboard.common.Constants.NUM_PRIORITIES;
+
+/*
+ * A bounded FIFO of updates for each priority class (see
+ * Constants.PRIORITY_CRITICAL and friends).  poll() always takes from the
+ * most urgent class that has anything queued, so a horn or a goal goes
+ * ahead of any clock ticks still waiting.  Order is kept within a class.
+ * Each update carries a long stamp, typically the time it was queued.
+ *
+ * The rings are preallocated, so queueing an update doesn't allocate.
+ * Not thread safe: callers synchronize.
+ */
+public class UpdateQueue {
+
+    private final String[][] lines;
+    private final long[][] stamps;
+    private final int[] heads = new int[NUM_PRIORITIES];
+    private final int[] counts = new int[NUM_PRIORITIES];
+    private int size = 0;
+    private int polledPriority;
+    private long polledStamp;
+
+    /*
+     * capacity is per priority class
+     */
+    public UpdateQueue(int capacity) {
+        lines = new String[NUM_PRIORITIES][capacity];
+        stamps = new long[NUM_PRIORITIES][capacity];
+    }
+
+    /*
+     * Returns false, having queued nothing, if the priority's queue is full
+     */
+    public boolean offer(String line, int priority, long stamp) {
+        String[] lane = lines[priority];
+        if (counts[priority] == lane.length) {
+            return false;
+        }
+        int tail = (heads[priority] + counts[priority]) % lane.length;
+        lane[tail] = line;
+        stamps[priority][tail] = stamp;
+        counts[priority]++;
+        size++;
+        return true;
+    }
+
+    /*
+     * Removes and returns the oldest update of the most urgent priority,
+     * or null if nothing is queued.  Its priority and stamp can then be
+     * had from getPolledPriority() and getPolledStamp().
+     */
+    public String poll() {
+        if (size == 0) {
+            return null;
+        }
+        int priority = 0;
+        while (counts[priority] == 0) {
+            priority++;
+        }
+        String[] lane = lines[priority];
+        int head = heads[priority];
+        String line = lane[head];
+        lane[head] = null;
+        polledPriority = priority;
+        polledStamp = stamps[priority][head];
+        heads[priority] = (head + 1) % lane.length;
+        counts[priority]--;
+        size--;
+        return line;
+    }
+
+    public int getPolledPriority() {
+        return polledPriority;
+    }
+
+    public long getPolledStamp() {
+        return polledStamp;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int size(int priority) {
+        return counts[priority];
+    }
+
+    public void clear() {
+        for (int priority = 0; priority < NUM_PRIORITIES; priority++) {
+            while (counts[priority] > 0) {
+                lines[priority][heads[priority]] = null;
+                heads[priority] = (heads[priority] + 1) % lines[priority].length;
+                counts[priority]--;
+            }
+        }
+        size = 0;
+    }
+}
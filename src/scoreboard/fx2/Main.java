@@ -38,20 +38,43 @@ import javafx.stage.Stage;
 import scoreboard.common.Constants;
 import scoreboard.fx2.impl.bulb.BulbHockeyScoreboard;
 import scoreboard.common.Globals;
+import scoreboard.fx2.framework.ScoreboardContext;
+import scoreboard.fx2.networking.FxMultipleSocketWriter;
 
 public class Main extends Application {
 
     @Override
     public void start(Stage stage) {
+        if (Globals.channels == null || Globals.isSlave) {
+            showScoreboard(stage, new ScoreboardContext());
+            return;
+        }
+        /*
+         * One master window per game, all sent from the same port
+         */
+        FxMultipleSocketWriter multipleSocketWriter = null;
+        for (int i = 0; i < Globals.channels.length; i++) {
+            Stage channelStage = i == 0 ? stage : new Stage();
+            ScoreboardContext context = new ScoreboardContext();
+            context.channel = Globals.channels[i];
+            context.multipleSocketWriter = multipleSocketWriter;
+            showScoreboard(channelStage, context);
+            multipleSocketWriter = context.multipleSocketWriter;
+            channelStage.setTitle(Globals.channels[i]);
+        }
+    }
+
+    private BulbHockeyScoreboard showScoreboard(Stage stage,
+            ScoreboardContext context) {
         Group group = new Group();
         BulbHockeyScoreboard bulbScoreboard =
-                new BulbHockeyScoreboard(711, 400, Globals.isSlave);
-        Globals.hockeyScoreboardRef = bulbScoreboard;
+                new BulbHockeyScoreboard(context, 711, 400, Globals.isSlave);
         group.getChildren().add(bulbScoreboard);
         Scene scene = new Scene(group, group.getLayoutBounds().getWidth(),
                 group.getLayoutBounds().getHeight());
         stage.setScene(scene);
         stage.show();
+        return bulbScoreboard;
     }
 
     public static void main(String[] args) {
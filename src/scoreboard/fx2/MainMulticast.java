@@ -45,7 +45,6 @@ public class MainMulticast extends Application {
         Group group = new Group();
         BulbHockeyScoreboard bulbScoreboard =
                 new BulbHockeyScoreboard(711, 400, Globals.isSlave);
-        Globals.hockeyScoreboardRef = bulbScoreboard;
         group.getChildren().add(bulbScoreboard);
         Scene scene = new Scene(group, group.getLayoutBounds().getWidth(),
                 group.getLayoutBounds().getHeight());
@@ -47,7 +47,6 @@ public class MainMulticastRemote extends Application {
         BulbHockeyScoreboard bulbScoreboard =
                 new BulbHockeyScoreboard(711, 400, Globals.isSlave);
 //                new BulbHockeyScoreboard(1280, 700, Globals.isSlave);
-        Globals.hockeyScoreboardRef = bulbScoreboard;
         group.getChildren().add(bulbScoreboard);
         Scene scene = new Scene(group, group.getLayoutBounds().getWidth(),
                 group.getLayoutBounds().getHeight());
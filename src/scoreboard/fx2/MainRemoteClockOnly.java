@@ -46,7 +46,6 @@ public class MainRemoteClockOnly extends Application {
         Group group = new Group();
         BulbHockeyScoreboard bulbScoreboard =
                 new BulbHockeyScoreboard(711, 400, Globals.isSlave);
-        Globals.hockeyScoreboardRef = bulbScoreboard;
         group.getChildren().add(bulbScoreboard);
         Scene scene = new Scene(group, group.getLayoutBounds().getWidth(),
                 group.getLayoutBounds().getHeight());
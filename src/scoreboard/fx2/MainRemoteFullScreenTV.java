@@ -54,7 +54,6 @@ public class MainRemoteFullScreenTV extends Application {
         System.out.println("FullScreen: width = " +
                 Screen.getPrimary().getBounds().getWidth() +
                 ", height = "  + Screen.getPrimary().getBounds().getHeight());
-        Globals.hockeyScoreboardRef = bulbScoreboard;
         group.getChildren().add(bulbScoreboard);
         Scene scene = new Scene(group, group.getLayoutBounds().getWidth(),
                 group.getLayoutBounds().getHeight());
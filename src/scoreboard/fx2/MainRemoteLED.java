@@ -47,7 +47,6 @@ public class MainRemoteLED extends Application {
         LEDHockeyScoreboard bulbScoreboard =
 //                new LEDHockeyScoreboard(711, 400, Globals.isSlave);
                 new LEDHockeyScoreboard(1280, 700, Globals.isSlave);
-        Globals.hockeyScoreboardRef = bulbScoreboard;
         group.getChildren().add(bulbScoreboard);
         Scene scene = new Scene(group, group.getLayoutBounds().getWidth(),
                 group.getLayoutBounds().getHeight());
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.application.Application;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.stage.Screen;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import scoreboard.fx2.framework.ScoreboardContext;
+import scoreboard.fx2.impl.bulb.BulbHockeyScoreboard;
+import scoreboard.common.Globals;
+
+/*
+ * Video wall: one slave driving a full screen scoreboard on each monitor,
+ * each laid out by its own -wallConfigURL, or by -configURL on every
+ * monitor if none are given.  Only the first screen connects to the
+ * master, subscribing to what any of the screens displays, and every
+ * update it decodes is applied to all of them.
+ */
+public class MainVideoWall extends Application {
+
+    @Override
+    public void start(Stage stage) {
+        List<Screen> screens = Screen.getScreens();
+        List<String> configURLs = new ArrayList<String>(
+                Globals.wallConfigURLs);
+        if (configURLs.isEmpty()) {
+            for (int i = 0; i < screens.size(); i++) {
+                configURLs.add(Globals.configURL);
+            }
+        }
+        /*
+         * The first screen's context reads for the wall, so the other
+         * screens are built first, for it to subscribe to what they show
+         */
+        ScoreboardContext feed = new ScoreboardContext();
+        feed.configURL = configURLs.get(0);
+        for (int i = configURLs.size() - 1; i >= 0; i--) {
+            ScoreboardContext context = feed;
+            if (i > 0) {
+                context = new ScoreboardContext();
+                context.configURL = configURLs.get(i);
+                context.feed = feed;
+            }
+            Stage screenStage = i == 0 ? stage : new Stage();
+            showScreen(screenStage, screens.get(i % screens.size()),
+                    context);
+        }
+    }
+
+    private void showScreen(Stage stage, Screen screen,
+            ScoreboardContext context) {
+        Rectangle2D bounds = screen.getBounds();
+        Group group = new Group();
+        stage.initStyle(StageStyle.TRANSPARENT);
+        stage.setX(bounds.getMinX());
+        stage.setY(bounds.getMinY());
+        stage.setFullScreen(true);
+        BulbHockeyScoreboard bulbScoreboard = new BulbHockeyScoreboard(
+                context, bounds.getWidth(), bounds.getHeight(),
+                Globals.isSlave);
+        System.out.println("Wall screen: width = " + bounds.getWidth() +
+                ", height = " + bounds.getHeight());
+        group.getChildren().add(bulbScoreboard);
+        Scene scene = new Scene(group, group.getLayoutBounds().getWidth(),
+                group.getLayoutBounds().getHeight());
+        stage.setScene(scene);
+        stage.show();
+    }
+
+    public static void main(String[] args) {
+        Globals.isSlave = true;
+        Globals.isTV = true;
+        Globals.unlitOpacity = 0.05;
+        Globals.useIPSocket = true;
+        Globals.displaySocket = true;
+        
+        Globals.parseArgs(args);
+        
+        Application.launch(MainVideoWall.class, args);
+    }
+}
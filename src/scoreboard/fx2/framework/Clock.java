@@ -31,7 +31,6 @@
 
 package scoreboard.fx2.framework;
 
-import scoreboard.common.Globals;
 import javafx.scene.Group;
 import javafx.scene.shape.Circle;
 import javafx.scene.input.KeyCode;
@@ -209,7 +208,7 @@ public abstract class Clock extends DisplayableWithDigits {
 
     protected void refreshOnOverallValueChange(int overallValue) {
         setDigits();
-        sendMessageToSocket(varName, String.valueOf(overallValue));
+        sendMessageToSocket(varName, overallValue);
     }
 
     /*
@@ -309,13 +308,13 @@ public abstract class Clock extends DisplayableWithDigits {
             ((getOverallValue() + increment) < 600)) {
             if (focusedDigit == secondsDigit) {
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = minutesDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = minutesDigit;
+                getContext().lastFocused.showFocusHint();
                 return getOverallValue() + increment;
             } else if (focusedDigit == tenSecondsDigit) {
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = tenMinutesDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = tenMinutesDigit;
+                getContext().lastFocused.showFocusHint();
                 return getOverallValue() + increment;
             }
         }
@@ -346,20 +345,20 @@ public abstract class Clock extends DisplayableWithDigits {
             ((getOverallValue() + alternateIncrement) >= 600)) {
             if (focusedDigit == tenMinutesDigit) {
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = tenSecondsDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = tenSecondsDigit;
+                getContext().lastFocused.showFocusHint();
                 return getOverallValue() + alternateIncrement;
             }
             if (focusedDigit == minutesDigit) {
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = secondsDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = secondsDigit;
+                getContext().lastFocused.showFocusHint();
                 return getOverallValue() + alternateIncrement;
             }
             if (focusedDigit == tenSecondsDigit) {
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = secondsDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = secondsDigit;
+                getContext().lastFocused.showFocusHint();
                 return getOverallValue() + alternateIncrement;
             }
         }
@@ -394,12 +393,12 @@ public abstract class Clock extends DisplayableWithDigits {
             if ((focusedDigit == tenSecondsDigit) ||
                 (focusedDigit == minutesDigit)) {
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = tenSecondsDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = tenSecondsDigit;
+                getContext().lastFocused.showFocusHint();
             } else if (focusedDigit == tenMinutesDigit) {
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = tenSecondsDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = tenSecondsDigit;
+                getContext().lastFocused.showFocusHint();
             }
             return 0;
         }
@@ -429,19 +428,19 @@ public abstract class Clock extends DisplayableWithDigits {
             ((getOverallValue() - increment) < 600)) {
             if (focusedDigit == secondsDigit) {
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = tenSecondsDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = tenSecondsDigit;
+                getContext().lastFocused.showFocusHint();
                 return 599;
             } else if (focusedDigit == tenSecondsDigit) {
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = minutesDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = minutesDigit;
+                getContext().lastFocused.showFocusHint();
                 return ((getOverallValue() - increment) -
                         (getOverallValue() - increment) % 10);
             } else if (focusedDigit == minutesDigit) {
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = minutesDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = minutesDigit;
+                getContext().lastFocused.showFocusHint();
                 return ((getOverallValue() - increment) -
                         (getOverallValue() - increment) % 10);
             } else if (focusedDigit == tenMinutesDigit) {
@@ -449,8 +448,8 @@ public abstract class Clock extends DisplayableWithDigits {
                     return -1;
                 }
                 focusedDigit.unShowFocusHint();
-                Globals.lastFocused = minutesDigit;
-                Globals.lastFocused.showFocusHint();
+                getContext().lastFocused = minutesDigit;
+                getContext().lastFocused.showFocusHint();
                 return ((getOverallValue() - increment) -
                         (getOverallValue() - increment) % 10);
             }
@@ -599,7 +598,7 @@ public abstract class Clock extends DisplayableWithDigits {
         decimalPoint.setVisible(false);
 
         positionDigits();
-        getChildren().add(createKeyPads());
+        addKeyPads();
 
         /*
          * Set up Arrow Key Traversal
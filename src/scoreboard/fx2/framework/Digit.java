@@ -268,6 +268,9 @@ public abstract class Digit extends FocusableParent {
      * and either the user (1) mouse clicks (2) types a keyboard <ENTER>
      */
     public void displayKeyPad() {
+        if (keyPad == null) {  // display only instances have no KeyPads
+            return;
+        }
         keyPad.setLayoutX(getLayoutX() + (getLayoutBounds().getWidth() -
              keyPad.getLayoutBounds().getWidth()) / 2);
         keyPad.setLayoutY(getLayoutY() + (getLayoutBounds().getHeight() -
@@ -48,6 +48,12 @@ import javafx.scene.Group;
 import javafx.scene.input.KeyCode;
 import javafx.scene.paint.Color;
 import scoreboard.common.DigitsDisplayStates;
+import scoreboard.common.metrics.PipelineEvents;
+import scoreboard.common.metrics.UpdateTracer;
+import scoreboard.fx2.networking.FxMulticastWriter;
+import scoreboard.fx2.networking.FxMultipleSocketWriter;
+import static scoreboard.common.Constants.PRIORITY_CLOCK;
+import static scoreboard.common.Constants.PRIORITY_CRITICAL;
 
 /*
  * DisplayableWithDigits encapsulates the common behavior that classes with one
@@ -187,7 +193,7 @@ public abstract class DisplayableWithDigits extends Displayable {
                 getChildren().remove(d.keyPad);
             }
         }
-        getChildren().add(createKeyPads());
+        addKeyPads();
     }
 
     public final void setDigitHeight(double value) {
@@ -286,9 +292,30 @@ public abstract class DisplayableWithDigits extends Displayable {
     public final void setOverallValue(int value) {
         if ((value <= maxOverallValue) &&
             (value >= minOverallValue)) {
+            if (Globals.updateTracer != null) {
+                traceStamp = UpdateTracer.now();
+            }
+            PipelineEvents.ValueChange event = null;
+            if (Globals.jfr) {
+                event = new PipelineEvents.ValueChange();
+                event.begin();
+            }
             prevOverallValue = getOverallValue();
             overallValueProperty().setValue(value);
             refreshOnOverallValueChange(value);
+            /*
+             * A video wall screen applies an update its feed already
+             * counted
+             */
+            if (FxGlobals.scoreboardStats != null && context.feed == null) {
+                FxGlobals.scoreboardStats.updateApplied(varName);
+            }
+            if (event != null) {
+                event.name = varName;
+                event.previous = prevOverallValue;
+                event.value = value;
+                event.commit();
+            }
         }
     }
 
@@ -336,25 +363,141 @@ public abstract class DisplayableWithDigits extends Displayable {
      * be inserted into the digitArr List.
      */
     protected ArrayList<Digit> digitArr = new ArrayList<Digit>();
+
+    /*
+     * Time setOverallValue() was last called, when update tracing is
+     * enabled.  Carried in the next update sent by sendMessageToSocket().
+     */
+    private long traceStamp;
+    /*
+     * Context of the scoreboard this variable is part of, holding the
+     * writers its updates are sent over and the channel they are sent on
+     */
+    private ScoreboardContext context = ScoreboardContext.DETACHED;
+
+    /*
+     * Called by the scoreboard this variable is added to
+     */
+    public void setContext(ScoreboardContext context) {
+        this.context = context;
+    }
+
+    public ScoreboardContext getContext() {
+        return context;
+    }
     
     /*
      * This method gets called by all DisplayableWithDigits instances that
      * want to send update message on to a socket.
      */
     public void sendMessageToSocket(String varName, String valueStr) {
-        if (Globals.useIPSocket) {
-            if (FxGlobals.multipleSocketWriter != null) {
-                FxGlobals.multipleSocketWriter.postUpdate(
-                        XMLSpec.updateStr(varName, valueStr));
-            }
+        if (!hasWriter()) {
+            return;
+        }
+        UpdateTracer updateTracer = Globals.updateTracer;
+        if (updateTracer == null) {
+            postUpdate(XMLSpec.updateStr(varName, valueStr), varName);
+        } else {
+            long stamp = takeTraceStamp();
+            postUpdate(XMLSpec.updateStr(varName, valueStr, stamp),
+                    varName);
+            updateTracer.updatePosted(stamp);
+        }
+    }
+
+    /*
+     * Same as above for an integer value.  Used on the clock tick path,
+     * where it saves building a String for the value on every tick.
+     */
+    public void sendMessageToSocket(String varName, int value) {
+        if (!hasWriter()) {
+            return;
+        }
+        UpdateTracer updateTracer = Globals.updateTracer;
+        if (updateTracer == null) {
+            postUpdate(XMLSpec.updateStr(varName, value), varName);
         } else {
-            if (FxGlobals.multicastWriter != null) {
-                FxGlobals.multicastWriter.sendMessage(
-                        XMLSpec.updateStr(varName, valueStr));
+            long stamp = takeTraceStamp();
+            postUpdate(XMLSpec.updateStr(varName, value, stamp), varName);
+            updateTracer.updatePosted(stamp);
+        }
+    }
+
+    private boolean hasWriter() {
+        if (context.sharedMemoryWriter != null ||
+                context.journalWriter != null) {
+            return true;
+        }
+        if (Globals.dualTransport) {
+            return context.multipleSocketWriter != null ||
+                    context.multicastWriter != null;
+        }
+        return Globals.useIPSocket ? context.multipleSocketWriter != null :
+                context.multicastWriter != null;
+    }
+
+    /*
+     * Updates not originating from setOverallValue() (e.g. the horn) are
+     * stamped here.
+     */
+    private long takeTraceStamp() {
+        long stamp = traceStamp != 0 ? traceStamp : UpdateTracer.now();
+        traceStamp = 0;
+        return stamp;
+    }
+
+    /*
+     * Multicast updates are sent right away, on this thread, so there is
+     * no queue for the horn to jump, other than the packer's linger, which
+     * it cuts short.  Anything but a clock tick is sent acknowledged, as a
+     * lost one stays wrong until the next change.  With dual transport
+     * the same update, carrying the same id, goes out both ways, multicast
+     * first as it is usually the quicker.  Each context has a multicast
+     * writer of its own, but may share its socket writer with other
+     * contexts, on other channels.
+     */
+    private void postUpdate(String update, String varName) {
+        int priority = XMLSpec.getPriority(varName);
+        FxMultipleSocketWriter socketWriter = context.multipleSocketWriter;
+        FxMulticastWriter multicastWriter = context.multicastWriter;
+        if (multicastWriter != null &&
+                (!Globals.useIPSocket || Globals.dualTransport)) {
+            if (priority == PRIORITY_CLOCK) {
+                multicastWriter.sendMessage(update);
+            } else {
+                multicastWriter.sendMessage(update, priority, varName);
+                if (priority == PRIORITY_CRITICAL) {
+                    multicastWriter.flush();
+                }
+            }
+        }
+        if (socketWriter != null &&
+                (Globals.useIPSocket || Globals.dualTransport)) {
+            socketWriter.postUpdate(update, priority, varName,
+                    context.channel);
+        }
+        if (context.sharedMemoryWriter != null ||
+                context.journalWriter != null) {
+            String plain = XMLSpec.unstamped(update);
+            if (context.sharedMemoryWriter != null) {
+                context.sharedMemoryWriter.post(varName, plain);
+            }
+            if (context.journalWriter != null) {
+                context.journalWriter.append(varName, priority, plain);
             }
         }
     }
 
+    /*
+     * Adds the KeyPads built by createKeyPads() to this node.  Display only
+     * (slave) instances never take input, so their KeyPads are not built.
+     */
+    protected void addKeyPads() {
+        if (!Globals.isDisplayOnly()) {
+            getChildren().add(createKeyPads());
+        }
+    }
+
     /********************************************************************
      * The following abstract methods must be defined by implementing   *
      * subclasses.                                                      *
@@ -396,8 +539,8 @@ public abstract class DisplayableWithDigits extends Displayable {
          * get propagated both to the KeyPad and here.  Why?  This kludge
          * will prevent the key event from being processed twice.
          */
-        if (Globals.keyEventAlreadyProcessed) {
-            Globals.keyEventAlreadyProcessed = false;
+        if (context.keyEventAlreadyProcessed) {
+            context.keyEventAlreadyProcessed = false;
             return;
         }
         /*
@@ -432,15 +575,24 @@ public abstract class DisplayableWithDigits extends Displayable {
                 setOverallValue(calculateKeyDownValue((Digit)focusedDigit));
                 break;
             case LEFT:
-                if (Globals.lastFocused != Globals.lastFocused.getKeyLeftNode()) {
-                    Globals.lastFocused.unShowFocusHint();
-                    Globals.lastFocused.getKeyLeftNode().showFocusHint();
+                FocusableParent left = context.lastFocused.getKeyLeftNode();
+                if (context.lastFocused != left) {
+                    context.lastFocused.unShowFocusHint();
+                    left.showFocusHint();
+                    /*
+                     * The node may not be in the scene graph, e.g. a
+                     * Penalty's transitionKludge, so can't find its own
+                     * context.
+                     */
+                    context.lastFocused = left;
                 }
                 break;
             case RIGHT:
-                if (Globals.lastFocused != Globals.lastFocused.getKeyRightNode()) {
-                    Globals.lastFocused.unShowFocusHint();
-                    Globals.lastFocused.getKeyRightNode().showFocusHint();
+                FocusableParent right = context.lastFocused.getKeyRightNode();
+                if (context.lastFocused != right) {
+                    context.lastFocused.unShowFocusHint();
+                    right.showFocusHint();
+                    context.lastFocused = right;
                 }
                 break;
             case ENTER:
@@ -456,10 +608,12 @@ public abstract class DisplayableWithDigits extends Displayable {
         boundingRect = new Rectangle();  // dimensions set by subclasses
         boundingRect.setFill(Color.TRANSPARENT);
         boundingRect.setVisible(false);
-        setOnKeyPressed(new EventHandler<KeyEvent>() {
-            public void handle(KeyEvent ke) {
-                processKeyEvent(ke.getCode());
-            }
-        });
+        if (!Globals.isDisplayOnly()) {
+            setOnKeyPressed(new EventHandler<KeyEvent>() {
+                public void handle(KeyEvent ke) {
+                    processKeyEvent(ke.getCode());
+                }
+            });
+        }
     }
 }
@@ -68,6 +68,13 @@ public class FocusableParent extends Parent {
     private FocusableParent thisObject = this;
 
     public FocusableParent() {
+        /*
+         * A display only (slave) scoreboard never takes focus, so don't
+         * bother creating the transitions and input handlers.
+         */
+        if (Globals.isDisplayOnly()) {
+            return;
+        }
         scaleOut = new ScaleTransition(SCALE_DURATION, this);
         scaleOut.setFromX(1.0f);
         scaleOut.setFromY(1.0f);
@@ -76,9 +83,10 @@ public class FocusableParent extends Parent {
 
         setOnMouseEntered(new EventHandler<MouseEvent>() {
             public void handle(MouseEvent event) {
-                if ((Globals.lastFocused != null) &&
-                        (Globals.lastFocused != thisObject)) {
-                    Globals.lastFocused.unShowFocusHint();
+                ScoreboardContext context = ScoreboardContext.of(thisObject);
+                if ((context.lastFocused != null) &&
+                        (context.lastFocused != thisObject)) {
+                    context.lastFocused.unShowFocusHint();
                 }
                 showFocusHint();
             }
@@ -137,19 +145,23 @@ public class FocusableParent extends Parent {
 
     public void showFocusHint() {
         focusHintDisplayed = true;
-        Globals.lastFocused = this;
-        scaleOut.stop();
-        scaleOut.setFromX(getScaleX());
-        scaleOut.setFromY(getScaleY());
-        scaleOut.playFromStart();
-        requestFocus();
+        ScoreboardContext.of(this).lastFocused = this;
+        if (scaleOut != null) {
+            scaleOut.stop();
+            scaleOut.setFromX(getScaleX());
+            scaleOut.setFromY(getScaleY());
+            scaleOut.playFromStart();
+            requestFocus();
+        }
     }
    
     public void unShowFocusHint() {
         focusHintDisplayed = false;
-        scaleIn.stop();
-        scaleIn.setFromX(getScaleX());
-        scaleIn.setFromY(getScaleY());
-        scaleIn.playFromStart();
+        if (scaleIn != null) {
+            scaleIn.stop();
+            scaleIn.setFromX(getScaleX());
+            scaleIn.setFromY(getScaleY());
+            scaleIn.playFromStart();
+        }
     }
 }
\ No newline at end of file
@@ -30,32 +30,27 @@
  */
 package scoreboard.fx2.framework;
 
-import scoreboard.fx2.networking.FxMulticastReader;
-import scoreboard.fx2.networking.FxMulticastWriter;
-import scoreboard.fx2.networking.FxMultipleSocketWriter;
-import scoreboard.fx2.networking.FxSocketReader;
-
 /*
- * Global variables that are JavaFX 2.x specific
+ * Global variables that are JavaFX 2.x specific.  Networking, like the
+ * rest of a scoreboard's runtime state, is in its ScoreboardContext.
  */
 public class FxGlobals {    
     /*
-     * Multicast socket to send XML updates over
-     */
-    public static FxMulticastWriter multicastWriter;
-    
-    /*
-     * Multicast socket to receive XML updates over
+     * Pulse and per-stage timing monitor, only non-null when the
+     * performance overlay has been requested on the command-line
      */
-    public static FxMulticastReader multicastReader;
-    
+    public static PulseMonitor pulseMonitor;
+
     /*
-     * IP socket to send XML updates over
+     * Runtime statistics exposed over JMX, only non-null when JMX has not
+     * been disabled on the command-line
      */
-    public static FxMultipleSocketWriter multipleSocketWriter;
-    
+    public static ScoreboardStats scoreboardStats;
+
     /*
-     * IP socket to send XML updates over
+     * Source of ticks for every Timer created without an explicit
+     * TimeSource.  Replace before the scoreboard is built to run it in
+     * virtual time.
      */
-    public static FxSocketReader socketReader;   
+    public static TimeSource timeSource = new FxTimeSource();
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2.framework;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.util.Duration;
+
+/*
+ * Real time TimeSource, each Ticker is an indefinitely cycling JavaFX
+ * Timeline with a single KeyFrame.  Ticks are run on the JavaFX
+ * application thread.
+ */
+public class FxTimeSource implements TimeSource {
+
+    public static class TimelineTicker implements Ticker {
+
+        private Timeline timeline;
+        private final long periodNanos;
+        /*
+         * Schedule of the next tick, for the tick lateness statistic
+         */
+        private long nextTickNanos;
+
+        TimelineTicker(Duration period, final FunctionPtr tick) {
+            periodNanos = Math.round(period.toMillis() * 1000000);
+            timeline = new Timeline();
+            timeline.setCycleCount(Timeline.INDEFINITE);
+            final KeyFrame kf = new KeyFrame(period,
+                new EventHandler<ActionEvent>() {
+                    public void handle(ActionEvent event) {
+                        ScoreboardStats stats = FxGlobals.scoreboardStats;
+                        if (stats != null) {
+                            stats.timerTicked(
+                                    (System.nanoTime() - nextTickNanos) / 1000);
+                        }
+                        nextTickNanos += periodNanos;
+                        tick.invoke();
+                    }
+                }
+            );
+            timeline.getKeyFrames().add(kf);
+        }
+
+        public Timeline getTimeline() {
+            return timeline;
+        }
+
+        public void start() {
+            if (timeline.getStatus() != Animation.Status.RUNNING) {
+                nextTickNanos = System.nanoTime() + periodNanos;
+            }
+            timeline.play();
+        }
+
+        public void stop() {
+            timeline.stop();
+        }
+    }
+
+    public Ticker createTicker(Duration period, FunctionPtr tick) {
+        return new TimelineTicker(period, tick);
+    }
+}
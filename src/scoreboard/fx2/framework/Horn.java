@@ -34,8 +34,6 @@ package scoreboard.fx2.framework;
 import java.net.URL;
 import javafx.scene.Group;
 import javafx.scene.input.KeyCode;
-import javafx.scene.media.Media;
-import javafx.scene.media.MediaPlayer;
 import scoreboard.common.Globals;
 import static scoreboard.common.Constants.DEFAULT_HORN_FILE;
 
@@ -47,10 +45,13 @@ import static scoreboard.common.Constants.DEFAULT_HORN_FILE;
  */
 public class Horn extends DisplayableWithDigits {
     
-    private MediaPlayer mediaPlayer;
+    private HornPlayer hornPlayer;
     
-    public MediaPlayer getMediaPlayer() {
-        return mediaPlayer;
+    /*
+     * null for a horn that never sounds
+     */
+    public HornPlayer getHornPlayer() {
+        return hornPlayer;
     }
 
 /****************************************************************************
@@ -91,8 +92,20 @@ public class Horn extends DisplayableWithDigits {
      * Constructors
      */
     public Horn(String varName, String url) {
+        this(varName, url, true);
+    }
+
+    /*
+     * A horn built with sound false, e.g. for a video wall screen fed by
+     * one that sounds it for the whole wall, has no player, so no sound is
+     * decoded or audio line opened for it
+     */
+    public Horn(String varName, String url, boolean sound) {
         super();  // Must call superclass constructor first
         this.varName = varName;
+        if (!sound) {
+            return;
+        }
         URL resource = null;
         boolean hornURLFound = false;
         /*
@@ -137,7 +150,11 @@ public class Horn extends DisplayableWithDigits {
             resource = getClass().getResource(DEFAULT_HORN_FILE);
         }
 
-        final Media media = new Media(resource.toString());
-        mediaPlayer = new MediaPlayer(media);
+        /*
+         * Decode the horn now, in the background, so that sounding it
+         * doesn't have to
+         */
+        hornPlayer = new HornPlayer(resource);
+        hornPlayer.preload();
     }    
 }
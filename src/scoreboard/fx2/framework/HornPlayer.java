@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2.framework;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import javafx.scene.media.AudioClip;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import scoreboard.common.DebugLog;
+import scoreboard.common.metrics.Histogram;
+import static scoreboard.common.Constants.HORN_CHUNK_MILLIS;
+
+/*
+ * Plays the horn with as little delay as possible between play() and the
+ * first sample reaching the audio device, since the horn is sounded at
+ * the very moment the clock runs out.
+ *
+ * preload() decodes the horn resource on a background thread at startup
+ * and picks the fastest way of playing it that works:
+ *
+ *   PCM   - the resource is decoded into PCM with javax.sound (WAV, AIFF
+ *           and AU, or MP3 and others if a decoder is installed) and
+ *           written to an AudioSink which is kept open; a dedicated
+ *           playback thread waits for play() and starts writing at once.
+ *   CLIP  - a JavaFX AudioClip, which JavaFX decodes fully into memory
+ *           when it is created.
+ *   MEDIA - a JavaFX MediaPlayer, as the horn was originally played.
+ *
+ * play() and stop() may be called from any thread.  A play() before the
+ * preload has finished sounds the horn as soon as it has.
+ */
+public class HornPlayer {
+
+    public static final int NONE = 0;
+    public static final int PCM = 1;
+    public static final int CLIP = 2;
+    public static final int MEDIA = 3;
+    private static final String[] MODE_NAMES = {
+        "none", "PCM", "AudioClip", "MediaPlayer"
+    };
+
+    private final URL resource;
+    private final AudioSink sink;
+    private volatile int mode = NONE;
+
+    private byte[] pcm;
+    private int chunkSize;
+    private AudioClip audioClip;
+    private MediaPlayer mediaPlayer;
+
+    /*
+     * Trigger to first sample handed to the sink, in microseconds; only
+     * recorded for PCM playback
+     */
+    private final Histogram latencyHistogram = new Histogram("horn");
+
+    /*
+     * Playback thread state, guarded by this
+     */
+    private boolean playRequested = false;
+    private boolean stopRequested = false;
+    private long triggerNanos;
+    private volatile boolean playing = false;
+
+    public HornPlayer(URL resource) {
+        this(resource, new JavaSoundSink());
+    }
+
+    public HornPlayer(URL resource, AudioSink sink) {
+        this.resource = resource;
+        this.sink = sink;
+    }
+
+    /*
+     * Decodes the horn on a background thread
+     */
+    public void preload() {
+        Thread preloadThread = new Thread("HornPreload") {
+            @Override
+            public void run() {
+                load();
+            }
+        };
+        preloadThread.setDaemon(true);
+        preloadThread.start();
+    }
+
+    /*
+     * Decodes the horn on the calling thread, returns the mode chosen
+     */
+    public int load() {
+        int loadedMode;
+        if (loadPCM()) {
+            loadedMode = PCM;
+            Thread playbackThread = new PlaybackThread();
+            playbackThread.setDaemon(true);
+            playbackThread.setPriority(Thread.MAX_PRIORITY);
+            playbackThread.start();
+        } else {
+            try {
+                audioClip = new AudioClip(resource.toString());
+                loadedMode = CLIP;
+            } catch (Throwable t) {
+                DebugLog.exception(null, t);
+                mediaPlayer = new MediaPlayer(new Media(resource.toString()));
+                loadedMode = MEDIA;
+            }
+        }
+        DebugLog.status(null, "Horn " + resource + " preloaded for " +
+                MODE_NAMES[loadedMode] + " playback");
+        boolean pending;
+        synchronized (this) {
+            mode = loadedMode;
+            pending = playRequested;
+            if (loadedMode != PCM) {
+                playRequested = false;
+            }
+        }
+        if (pending && loadedMode != PCM) {
+            play();
+        }
+        return loadedMode;
+    }
+
+    private boolean loadPCM() {
+        try {
+            AudioInputStream in = AudioSystem.getAudioInputStream(resource);
+            AudioFormat format = in.getFormat();
+            if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED &&
+                    format.getEncoding() !=
+                    AudioFormat.Encoding.PCM_UNSIGNED) {
+                format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                        format.getSampleRate(), 16, format.getChannels(),
+                        format.getChannels() * 2, format.getSampleRate(),
+                        false);
+                in = AudioSystem.getAudioInputStream(format, in);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            in.close();
+            pcm = out.toByteArray();
+            int frameSize = format.getFrameSize();
+            chunkSize = Math.max(1, (int) (format.getFrameRate() *
+                    HORN_CHUNK_MILLIS / 1000)) * frameSize;
+            sink.open(format);
+            return true;
+        } catch (Exception e) {
+            /*
+             * Not decodable by javax.sound (e.g. MP3 without a decoder
+             * installed) or no audio line available
+             */
+            return false;
+        }
+    }
+
+    public void play() {
+        switch (mode) {
+            case PCM:
+                synchronized (this) {
+                    triggerNanos = System.nanoTime();
+                    playRequested = true;
+                    stopRequested = false;
+                    notify();
+                }
+                break;
+            case CLIP:
+                audioClip.stop();
+                audioClip.play();
+                break;
+            case MEDIA:
+                mediaPlayer.stop();
+                mediaPlayer.play();
+                break;
+            default:
+                synchronized (this) {
+                    if (mode == NONE) {
+                        triggerNanos = System.nanoTime();
+                        playRequested = true;
+                        return;
+                    }
+                }
+                play();
+        }
+    }
+
+    public void stop() {
+        switch (mode) {
+            case PCM:
+                synchronized (this) {
+                    stopRequested = true;
+                    playRequested = false;
+                }
+                break;
+            case CLIP:
+                audioClip.stop();
+                break;
+            case MEDIA:
+                mediaPlayer.stop();
+                break;
+            default:
+                synchronized (this) {
+                    playRequested = false;
+                }
+        }
+    }
+
+    public boolean isPlaying() {
+        switch (mode) {
+            case PCM:
+                return playing;
+            case CLIP:
+                return audioClip.isPlaying();
+            case MEDIA:
+                return mediaPlayer.getStatus() == MediaPlayer.Status.PLAYING;
+            default:
+                return false;
+        }
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public Histogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /*
+     * Writes the PCM to the sink, a chunk at a time so that stop() or a
+     * new play() takes effect within a chunk
+     */
+    class PlaybackThread extends Thread {
+
+        PlaybackThread() {
+            super("HornPlayback");
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long trigger;
+                synchronized (HornPlayer.this) {
+                    while (!playRequested) {
+                        try {
+                            HornPlayer.this.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    playRequested = false;
+                    trigger = triggerNanos;
+                    playing = true;
+                }
+                boolean interrupted = false;
+                for (int pos = 0; pos < pcm.length; pos += chunkSize) {
+                    sink.write(pcm, pos, Math.min(chunkSize, pcm.length - pos));
+                    if (pos == 0) {
+                        latencyHistogram.record(
+                                (System.nanoTime() - trigger) / 1000);
+                    }
+                    synchronized (HornPlayer.this) {
+                        if (stopRequested || playRequested) {
+                            stopRequested = false;
+                            interrupted = true;
+                            break;
+                        }
+                    }
+                }
+                if (interrupted) {
+                    sink.flush();
+                }
+                playing = false;
+            }
+        }
+    }
+}
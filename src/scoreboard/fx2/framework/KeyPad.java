@@ -31,7 +31,6 @@
 
 package scoreboard.fx2.framework;
 
-import scoreboard.common.Globals;
 import javafx.event.EventHandler;
 import javafx.scene.Group;
 import javafx.scene.Parent;
@@ -406,7 +405,10 @@ public class KeyPad extends Parent {
         if (validKey) {
             lastHighlightedNumberNode.unShowFocusHint();
             ((NumberNode)highlight).showFocusHint();
-            Globals.keyEventAlreadyProcessed = true;
+            ScoreboardContext context = displayableWithDigits != null ?
+                    displayableWithDigits.getContext() :
+                    ScoreboardContext.of(this);
+            context.keyEventAlreadyProcessed = true;
         }
         if (selected) {
             if ((key == KeyCode.ENTER) ||
@@ -155,7 +155,7 @@ public abstract class Penalty extends DisplayableWithDigits {
      * number cannot be set until a penalty time is specified.
      */
     private String tipStr = "Penalty time must be\nset prior to player number";
-    private final Tooltip tooltip = new Tooltip(tipStr);
+    private Tooltip tooltip;  // not created for display only instances
     /*
      * Mechanism to block playerNumber when not in use.
      */
@@ -261,7 +261,7 @@ public abstract class Penalty extends DisplayableWithDigits {
     protected void refreshOnOverallValueChange(int overallValue) {
         tenthsRemaining = overallValue * 10;
         setDigits();
-        sendMessageToSocket(varName, String.valueOf(overallValue));
+        sendMessageToSocket(varName, overallValue);
     }
 
     protected int calculateKeyNumValue(Digit focusedDigit, KeyCode keyCode) {
@@ -378,11 +378,14 @@ public abstract class Penalty extends DisplayableWithDigits {
         playerNumber.setAllowTrailingZeroes(true);
         playerNumber.setDigitsDisplayState(DigitsDisplayStates.BLANK);
         positionDigits();
-        Tooltip.install(playerNumberMouseBlocker, tooltip);
+        if (!Globals.isDisplayOnly()) {
+            tooltip = new Tooltip(tipStr);
+            Tooltip.install(playerNumberMouseBlocker, tooltip);
+        }
         playerNumberMouseBlocker.setVisible(true);
         setDigits();
 
-        getChildren().add(createKeyPads());
+        addKeyPads();
 
         /*
          * Set up Arrow Key Traversals.  Insert the transitionKludge
@@ -455,8 +458,8 @@ public abstract class Penalty extends DisplayableWithDigits {
                 return digit;
             }
         }
-        if (Globals.lastFocused == transitionKludge) {
-            return Globals.lastFocused;
+        if (getContext().lastFocused == transitionKludge) {
+            return transitionKludge;
         }
         return null;
     }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2.framework;
+
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.geometry.VPos;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.metrics.RollingHistogram;
+
+/*
+ * On-screen overlay showing the numbers gathered by a PulseMonitor.  The
+ * min/p50/p99 columns cover the last completed PulseMonitor window, all
+ * times in milliseconds.  The overlay is transparent to the mouse so it
+ * never gets in the way of the scoreboard UI.
+ */
+public class PerfOverlay extends Parent {
+
+    private PulseMonitor pulseMonitor;
+    private Parent root;
+    private Text text;
+    private Rectangle background;
+
+    private static int countNodes(Node node) {
+        int count = 1;
+        if (node instanceof Parent) {
+            for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
+    private static void appendRow(StringBuilder sb, RollingHistogram rh) {
+        Histogram h = rh.getWindow();
+        sb.append(String.format("%-7s%8.2f%8.2f%8.2f%8d%n", rh.getName(),
+                h.getMin() / 1000d, h.getPercentile(50) / 1000d,
+                h.getPercentile(99) / 1000d, h.getCount()));
+    }
+
+    private void refresh() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-7s%8s%8s%8s%8s%n",
+                "ms", "min", "p50", "p99", "n"));
+        appendRow(sb, pulseMonitor.getPulseHistogram());
+        appendRow(sb, pulseMonitor.getQueueHistogram());
+        appendRow(sb, pulseMonitor.getDecodeHistogram());
+        appendRow(sb, pulseMonitor.getApplyHistogram());
+        sb.append(String.format("dropped frames  %d%n",
+                pulseMonitor.getDroppedFrames()));
+        sb.append(String.format("runLater depth  %d%n",
+                pulseMonitor.getRunLaterDepth()));
+        sb.append(String.format("msgs/sec        %.1f%n",
+                pulseMonitor.getMessagesPerSecond()));
+        sb.append(String.format("nodes           %d",
+                countNodes(root)));
+        text.setText(sb.toString());
+        background.setWidth(text.getLayoutBounds().getWidth());
+        background.setHeight(text.getLayoutBounds().getHeight());
+    }
+
+    public PerfOverlay(PulseMonitor pulseMonitor, Parent root,
+            double fontSize) {
+        this.pulseMonitor = pulseMonitor;
+        this.root = root;
+        background = new Rectangle();
+        background.setFill(Color.BLACK);
+        background.setOpacity(0.7d);
+        text = new Text();
+        text.setFont(Font.font("Monospaced", fontSize));
+        text.setFill(Color.LIME);
+        text.setTextOrigin(VPos.TOP);
+        getChildren().addAll(background, text);
+        setMouseTransparent(true);
+        pulseMonitor.addRefreshHandler(new FunctionPtr() {
+            public void invoke() {
+                refresh();
+            }
+        });
+    }
+}
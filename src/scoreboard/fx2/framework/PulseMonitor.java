@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2.framework;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javafx.animation.AnimationTimer;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import scoreboard.common.metrics.RollingHistogram;
+
+/*
+ * Collects per-stage timing for the path an update takes through a
+ * scoreboard, so that a stuttering display can be identified as being
+ * network, parse or render bound:
+ *
+ *   queue  - time an update waited between the network thread's
+ *            Platform.runLater() call and being run on the FX thread
+ *   decode - time spent parsing the XML update
+ *   apply  - time spent applying the update to the scene graph
+ *   pulse  - interval between successive FX pulses
+ *
+ * All times are recorded in microseconds into RollingHistograms which roll
+ * over every WINDOW_NANOS.  A PulseMonitor is only created when requested
+ * on the command-line (see Globals.perfOverlay and Globals.metricsPort);
+ * every hook checks FxGlobals.pulseMonitor for null first, so there is no
+ * cost otherwise.
+ */
+public class PulseMonitor extends AnimationTimer implements MetricsSource {
+
+    public static final long EXPECTED_PULSE_NANOS = 1000000000L / 60;
+    private static final long WINDOW_NANOS = 5000000000L;
+    private static final long REFRESH_NANOS = 1000000000L;
+
+    private final RollingHistogram pulseHistogram =
+            new RollingHistogram("pulse");
+    private final RollingHistogram queueHistogram =
+            new RollingHistogram("queue");
+    private final RollingHistogram decodeHistogram =
+            new RollingHistogram("decode");
+    private final RollingHistogram applyHistogram =
+            new RollingHistogram("apply");
+
+    /*
+     * Incremented by network threads, decremented on the FX thread
+     */
+    private final AtomicInteger runLaterDepth = new AtomicInteger();
+    /*
+     * Updates applied (slave) or sent (master)
+     */
+    private final AtomicLong messageCount = new AtomicLong();
+
+    /*
+     * Only written on the FX thread
+     */
+    private volatile long droppedFrames = 0;
+
+    /*
+     * The following are only touched on the FX thread
+     */
+    private long lastPulse = 0;
+    private long lastRefresh = 0;
+    private long lastRoll = 0;
+    private long lastMessageCount = 0;
+    private double messagesPerSecond = 0;
+    private long decodedTime = 0;
+
+    private ArrayList<FunctionPtr> refreshHandlers =
+            new ArrayList<FunctionPtr>();
+
+    /*
+     * Refresh handlers are invoked on the FX thread about once a second
+     */
+    public void addRefreshHandler(FunctionPtr handler) {
+        refreshHandlers.add(handler);
+    }
+
+    @Override
+    public void handle(long now) {
+        if (lastPulse != 0) {
+            long interval = now - lastPulse;
+            pulseHistogram.record(interval / 1000);
+            if (interval > EXPECTED_PULSE_NANOS * 3 / 2) {
+                droppedFrames += (interval + EXPECTED_PULSE_NANOS / 2) /
+                        EXPECTED_PULSE_NANOS - 1;
+            }
+        } else {
+            lastRefresh = now;
+            lastRoll = now;
+        }
+        lastPulse = now;
+        if (now - lastRefresh >= REFRESH_NANOS) {
+            long count = messageCount.get();
+            messagesPerSecond = (count - lastMessageCount) * 1e9d /
+                    (now - lastRefresh);
+            lastMessageCount = count;
+            lastRefresh = now;
+            for (FunctionPtr handler : refreshHandlers) {
+                handler.invoke();
+            }
+        }
+        if (now - lastRoll >= WINDOW_NANOS) {
+            pulseHistogram.roll();
+            queueHistogram.roll();
+            decodeHistogram.roll();
+            applyHistogram.roll();
+            lastRoll = now;
+        }
+    }
+
+    /*
+     * Called on a network thread immediately before Platform.runLater().
+     * The returned value must be handed to messageDispatched().
+     */
+    public long messageQueued() {
+        runLaterDepth.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /*
+     * Called on the FX thread at the start of the runLater() Runnable
+     */
+    public void messageDispatched(long queuedTime) {
+        runLaterDepth.decrementAndGet();
+        queueHistogram.record((System.nanoTime() - queuedTime) / 1000);
+    }
+
+    /*
+     * The next three methods bracket the handling of one update on the FX
+     * thread.  updateDecoded() is called once the XML has been parsed and
+     * the variable is about to be updated.
+     */
+    public long updateStarted() {
+        decodedTime = 0;
+        return System.nanoTime();
+    }
+
+    public void updateDecoded() {
+        decodedTime = System.nanoTime();
+    }
+
+    public void updateApplied(long startTime) {
+        long endTime = System.nanoTime();
+        if (decodedTime == 0) {
+            decodeHistogram.record((endTime - startTime) / 1000);
+        } else {
+            decodeHistogram.record((decodedTime - startTime) / 1000);
+            applyHistogram.record((endTime - decodedTime) / 1000);
+        }
+        messageCount.incrementAndGet();
+    }
+
+    /*
+     * Called by a master for every update sent out, from any thread
+     */
+    public void messageSent() {
+        messageCount.incrementAndGet();
+    }
+
+    public RollingHistogram getPulseHistogram() {
+        return pulseHistogram;
+    }
+
+    public RollingHistogram getQueueHistogram() {
+        return queueHistogram;
+    }
+
+    public RollingHistogram getDecodeHistogram() {
+        return decodeHistogram;
+    }
+
+    public RollingHistogram getApplyHistogram() {
+        return applyHistogram;
+    }
+
+    public int getRunLaterDepth() {
+        return runLaterDepth.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    /*
+     * MetricsSource implementation, reads nothing which is only safe to
+     * read on the FX thread
+     */
+    public void writeMetrics(MetricsWriter out) {
+        out.histogram("scoreboard_fx_pulse_interval_microseconds",
+                "Interval between successive FX pulses",
+                pulseHistogram.getTotal());
+        out.counter("scoreboard_fx_dropped_frames_total",
+                "Frames missed because a pulse came late", droppedFrames);
+        out.gauge("scoreboard_fx_runlater_depth",
+                "Updates waiting to run on the FX thread",
+                runLaterDepth.get());
+        out.histogram("scoreboard_fx_queue_microseconds",
+                "Time updates waited to run on the FX thread",
+                queueHistogram.getTotal());
+        out.histogram("scoreboard_fx_decode_microseconds",
+                "Time spent parsing updates on the FX thread",
+                decodeHistogram.getTotal());
+        out.histogram("scoreboard_fx_apply_microseconds",
+                "Time spent applying updates to the scene graph",
+                applyHistogram.getTotal());
+    }
+}
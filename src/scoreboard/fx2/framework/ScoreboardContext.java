@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2.framework;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javafx.scene.Node;
+import scoreboard.common.Globals;
+import scoreboard.common.networking.JournalWriter;
+import scoreboard.common.networking.SharedMemoryWriter;
+import scoreboard.fx2.framework.hockey.HockeyScoreboard;
+import scoreboard.fx2.networking.DuplicateFilter;
+import scoreboard.fx2.networking.FxMulticastReader;
+import scoreboard.fx2.networking.FxMulticastWriter;
+import scoreboard.fx2.networking.FxMultipleSocketWriter;
+import scoreboard.fx2.networking.FxSocketReader;
+
+/*
+ * Runtime state of one scoreboard: its networking, keyboard focus and
+ * connection status.  Each HockeyScoreboard has its own, handed to the
+ * DisplayableWithDigits it owns and to the Fx networking classes it sets
+ * up, so one process can run several scoreboards side by side.  What is
+ * still in Globals and FxGlobals is either configuration from the
+ * command line or shared by the whole process, like the FX pulse.
+ *
+ * Masters hosting several games (see Subscription) can share one
+ * multipleSocketWriter between their contexts, each on its own channel.
+ */
+public class ScoreboardContext {
+    /*
+     * Context of nodes not (yet) part of a scoreboard
+     */
+    public static final ScoreboardContext DETACHED = new ScoreboardContext();
+
+    /*
+     * The scoreboard this is the context of
+     */
+    public HockeyScoreboard hockeyScoreboard;
+
+    /*
+     * Game, of those sharing the master's port, this scoreboard sends or
+     * follows
+     */
+    public String channel = Globals.channel;
+
+    /*
+     * Config file describing the layout of a slave scoreboard
+     */
+    public String configURL = Globals.configURL;
+
+    /*
+     * On a video wall (see MainVideoWall), the context whose readers feed
+     * this scoreboard, or null for a scoreboard with readers of its own
+     */
+    public ScoreboardContext feed;
+
+    /*
+     * On a video wall, the scoreboards on the other screens, which are
+     * handed every update this context's readers decode
+     */
+    public final List<HockeyScoreboard> wallScreens =
+            new CopyOnWriteArrayList<HockeyScoreboard>();
+
+    /*
+     * Kludge needed to prevent multiple nodes handling the same keyboard
+     * input more than once.
+     */
+    public boolean keyEventAlreadyProcessed = false;
+
+    /*
+     * With respect to keyboard focus, this points to the last focused
+     * node.
+     */
+    public FocusableParent lastFocused = null;
+
+    /*
+     * Closed status of the IP socket, updated as status changes
+     */
+    public volatile boolean socketClosed = true;
+
+    /*
+     * Multicast socket to send XML updates over
+     */
+    public FxMulticastWriter multicastWriter;
+
+    /*
+     * Multicast socket to receive XML updates over
+     */
+    public FxMulticastReader multicastReader;
+
+    /*
+     * IP socket to send XML updates over
+     */
+    public FxMultipleSocketWriter multipleSocketWriter;
+
+    /*
+     * IP socket to receive XML updates over
+     */
+    public FxSocketReader socketReader;
+
+    /*
+     * With dual transport, picks the first copy of each update to arrive
+     * over socketReader and multicastReader
+     */
+    public DuplicateFilter duplicateFilter;
+
+    /*
+     * Memory mapped file the updates sent or applied are published to for
+     * local processes
+     */
+    public SharedMemoryWriter sharedMemoryWriter;
+
+    /*
+     * Append-only record of the updates sent or applied, for replay
+     */
+    public JournalWriter journalWriter;
+
+    /**
+     * Find the context of the scoreboard a node is part of, e.g. for a
+     * Digit or KeyPad handling input.
+     * @param node node in a scoreboard's scene graph
+     * @return the context, or DETACHED if the node isn't in a scoreboard
+     */
+    public static ScoreboardContext of(Node node) {
+        for (Node n = node; n != null; n = n.getParent()) {
+            if (n instanceof DisplayableWithDigits) {
+                return ((DisplayableWithDigits) n).getContext();
+            }
+            if (n instanceof HockeyScoreboard) {
+                return ((HockeyScoreboard) n).getContext();
+            }
+        }
+        return DETACHED;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2.framework;
+
+import java.util.Map;
+
+/*
+ * Management interface of the scoreboard runtime, registered as
+ * scoreboard:type=Scoreboard,role=[master|slave]
+ */
+public interface ScoreboardMXBean {
+
+    /*
+     * Updates applied, keyed by variable name.  On a master these are the
+     * changes made by the operator and the timers, on a slave the updates
+     * received from the master.
+     */
+    public Map<String, Long> getUpdatesApplied();
+
+    public long getUpdatesAppliedTotal();
+
+    /*
+     * Update messages which could not be decoded
+     */
+    public long getDecodeErrors();
+
+    /*
+     * Timer ticks and how late they ran against their schedule,
+     * in microseconds
+     */
+    public long getTimerTicks();
+
+    public long getTimerLatenessP50();
+
+    public long getTimerLatenessP99();
+
+    public long getTimerLatenessMax();
+
+    /*
+     * How far behind (positive) or ahead of its schedule the most recent
+     * tick ran, in microseconds.  As a Timer's schedule never slips, this
+     * is how far a running game clock has drifted from the wall clock.
+     */
+    public long getTimerDrift();
+
+    public void resetStatistics();
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2.framework;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+
+/*
+ * Runtime statistics of a scoreboard, exposed over JMX as a
+ * ScoreboardMXBean and over HTTP as a MetricsSource.  Held in
+ * FxGlobals.scoreboardStats, which is only non-null when JMX or the
+ * metrics endpoint is enabled, so callers skip every hook otherwise.
+ * Recording allocates nothing once each variable has been seen.
+ */
+public class ScoreboardStats implements ScoreboardMXBean, MetricsSource {
+
+    private final ConcurrentHashMap<String, AtomicLong> updatesApplied =
+            new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong decodeErrors = new AtomicLong();
+    private final Histogram timerLateness = new Histogram("timerLateness");
+    private volatile long timerDrift = 0;
+
+    public void updateApplied(String name) {
+        if (name == null) {
+            return;
+        }
+        AtomicLong count = updatesApplied.get(name);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = updatesApplied.putIfAbsent(name, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    public void decodeError() {
+        decodeErrors.incrementAndGet();
+    }
+
+    /*
+     * latenessMicros is negative if the tick ran early
+     */
+    public void timerTicked(long latenessMicros) {
+        timerLateness.record(Math.max(0, latenessMicros));
+        timerDrift = latenessMicros;
+    }
+
+    /*
+     * ScoreboardMXBean implementation
+     */
+    public Map<String, Long> getUpdatesApplied() {
+        Map<String, Long> map = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : updatesApplied.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().get());
+        }
+        return map;
+    }
+
+    public long getUpdatesAppliedTotal() {
+        long total = 0;
+        for (AtomicLong count : updatesApplied.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    public long getDecodeErrors() {
+        return decodeErrors.get();
+    }
+
+    public long getTimerTicks() {
+        return timerLateness.getCount();
+    }
+
+    public long getTimerLatenessP50() {
+        return timerLateness.getPercentile(50);
+    }
+
+    public long getTimerLatenessP99() {
+        return timerLateness.getPercentile(99);
+    }
+
+    public long getTimerLatenessMax() {
+        return timerLateness.getMax();
+    }
+
+    public long getTimerDrift() {
+        return timerDrift;
+    }
+
+    public void resetStatistics() {
+        updatesApplied.clear();
+        decodeErrors.set(0);
+        timerLateness.reset();
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        for (Map.Entry<String, AtomicLong> entry : updatesApplied.entrySet()) {
+            out.counter("scoreboard_updates_applied_total",
+                    "Updates applied, by variable",
+                    MetricsWriter.label("variable", entry.getKey()),
+                    entry.getValue().get());
+        }
+        out.counter("scoreboard_decode_errors_total",
+                "Update messages which could not be decoded",
+                decodeErrors.get());
+        out.histogram("scoreboard_timer_lateness_microseconds",
+                "How late timer ticks ran against their schedule",
+                timerLateness);
+        out.gauge("scoreboard_timer_drift_microseconds",
+                "Drift of the game clock from the wall clock at the last tick",
+                timerDrift);
+    }
+}
@@ -158,7 +158,7 @@ public abstract class SingleDigit extends DisplayableWithDigits {
         singleDigit.setIncrementValue(1);
         digitArr.add(singleDigit);
         positionDigits();
-        getChildren().add(createKeyPads());
+        addKeyPads();
         /*
          * Set up Arrow Key Traversal, or lack thereof, in this case
          */
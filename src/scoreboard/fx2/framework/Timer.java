@@ -31,11 +31,10 @@
 
 package scoreboard.fx2.framework;
 
-import javafx.event.ActionEvent;
-import javafx.event.EventHandler;
 import java.util.ArrayList;
-import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.util.Duration;
 import static scoreboard.fx2.framework.FxConstants.ONE_TENTH_SECOND;
 
@@ -46,11 +45,14 @@ import static scoreboard.fx2.framework.FxConstants.ONE_TENTH_SECOND;
  *   - At the end of each clock tick, defined by the duration argument of the
  *     Timer constructor (default 1/10th second), all associated handlers
  *     will be invoked.
+ *   - Ticks come from a TimeSource, by default FxGlobals.timeSource.  Tests
+ *     can supply a VirtualTimeSource to run the Timer in virtual time.
  */
 public class Timer {
 
-    private Timeline timeline;
+    private TimeSource.Ticker ticker;
     private Duration duration;
+    private ReadOnlyBooleanWrapper running = new ReadOnlyBooleanWrapper(false);
     /*
      * All handlers associated with the Timer are placed in this ArrayList
      */
@@ -61,20 +63,23 @@ public class Timer {
     }
 
     public Timer(Duration duration) {
+        this(duration, FxGlobals.timeSource);
+    }
+
+    public Timer(Duration duration, TimeSource timeSource) {
         this.duration = duration;
         handlers = new ArrayList<FunctionPtr>();
-        timeline = new Timeline();
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        final KeyFrame kf = new KeyFrame(duration,
-            new EventHandler<ActionEvent>() {
-                public void handle(ActionEvent event) {
-                    for (FunctionPtr handler : handlers) {
-                        handler.invoke();
-                    }
+        ticker = timeSource.createTicker(duration, new FunctionPtr() {
+            public void invoke() {
+                /*
+                 * Indexed rather than for-each so a tick allocates no
+                 * Iterator
+                 */
+                for (int i = 0; i < handlers.size(); i++) {
+                    handlers.get(i).invoke();
                 }
             }
-        );
-        timeline.getKeyFrames().add(kf);
+        });
     }
 
     /*
@@ -111,15 +116,33 @@ public class Timer {
         return duration;
     }
 
+    /*
+     * Returns the underlying Timeline, or null if this Timer is not driven
+     * by an FxTimeSource.  Use runningProperty() to follow the state of
+     * the Timer independent of its TimeSource.
+     */
     public Timeline getTimeline() {
-        return timeline;
+        if (ticker instanceof FxTimeSource.TimelineTicker) {
+            return ((FxTimeSource.TimelineTicker) ticker).getTimeline();
+        }
+        return null;
+    }
+
+    public ReadOnlyBooleanProperty runningProperty() {
+        return running.getReadOnlyProperty();
+    }
+
+    public boolean isRunning() {
+        return running.get();
     }
 
     public void start() {
-        timeline.play();
+        ticker.start();
+        running.set(true);
     }
 
     public void stop() {
-        timeline.stop();
+        ticker.stop();
+        running.set(false);
     }
-}
\ No newline at end of file
+}
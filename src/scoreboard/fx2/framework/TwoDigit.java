@@ -276,7 +276,7 @@ public abstract class TwoDigit extends DisplayableWithDigits {
         setAllowTrailingZeroes(false);
         setDigitsDisplayState(DigitsDisplayStates.REGULAR);
         positionDigits();
-        getChildren().add(createKeyPads());
+        addKeyPads();
         /*
          * Set up Arrow Key Traversal
          */
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2.framework;
+
+import java.util.ArrayList;
+import javafx.util.Duration;
+
+/*
+ * Deterministic TimeSource for tests and benchmarks.  Time stands still
+ * until advance() is called, which then runs every tick that falls due,
+ * in time order, on the calling thread.  Tickers due at the same instant
+ * tick in the order they were created, so a run always plays out the
+ * same way regardless of machine speed.
+ *
+ * Virtual time is kept in whole microseconds to avoid drift from adding
+ * up fractional milliseconds.
+ */
+public class VirtualTimeSource implements TimeSource {
+
+    private class VirtualTicker implements Ticker {
+
+        private final long period;
+        private final FunctionPtr tick;
+        private boolean running = false;
+        private long due;
+
+        VirtualTicker(Duration period, FunctionPtr tick) {
+            this.period = Math.max(1, Math.round(period.toMillis() * 1000));
+            this.tick = tick;
+        }
+
+        public void start() {
+            if (!running) {
+                running = true;
+                due = now + period;
+            }
+        }
+
+        public void stop() {
+            running = false;
+        }
+    }
+
+    private ArrayList<VirtualTicker> tickers = new ArrayList<VirtualTicker>();
+    private long now = 0;
+    private long tickCount = 0;
+
+    public Ticker createTicker(Duration period, FunctionPtr tick) {
+        VirtualTicker ticker = new VirtualTicker(period, tick);
+        tickers.add(ticker);
+        return ticker;
+    }
+
+    /*
+     * Returns the running Ticker with the earliest due time not past
+     * limit, or null if there is none.
+     */
+    private VirtualTicker nextDue(long limit) {
+        VirtualTicker next = null;
+        for (VirtualTicker ticker : tickers) {
+            if (ticker.running && ticker.due <= limit &&
+                    (next == null || ticker.due < next.due)) {
+                next = ticker;
+            }
+        }
+        return next;
+    }
+
+    /*
+     * Run, in time order, every tick due up to and including limit.
+     * Tickers started or stopped by a tick take effect immediately.
+     */
+    private void runUntil(long limit) {
+        VirtualTicker ticker;
+        while ((ticker = nextDue(limit)) != null) {
+            now = ticker.due;
+            ticker.due += ticker.period;
+            tickCount++;
+            ticker.tick.invoke();
+        }
+    }
+
+    /*
+     * Move virtual time forward by duration, running every tick that
+     * falls due on the way.
+     */
+    public void advance(Duration duration) {
+        long limit = now + Math.round(duration.toMillis() * 1000);
+        runUntil(limit);
+        now = limit;
+    }
+
+    /*
+     * Advance until no Ticker is running any more, or until limit has
+     * passed.  Returns the virtual time spent.
+     */
+    public Duration advanceUntilIdle(Duration limit) {
+        long start = now;
+        long end = now + Math.round(limit.toMillis() * 1000);
+        runUntil(end);
+        if (!isIdle()) {
+            now = end;
+        }
+        return Duration.millis((now - start) / 1000d);
+    }
+
+    public boolean isIdle() {
+        for (VirtualTicker ticker : tickers) {
+            if (ticker.running) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Duration getTime() {
+        return Duration.millis(now / 1000d);
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+}
@@ -45,6 +45,8 @@ import org.w3c.dom.NodeList;
 import scoreboard.common.ScoreboardInputInterface;
 import static scoreboard.common.Constants.DEFAULT_CONFIG_FILE;
 import scoreboard.common.Globals;
+import scoreboard.common.metrics.PipelineEvents;
+import scoreboard.common.metrics.UpdateTracer;
 
 /*
  * This base class is used by Scoreboard implementations to read scoreboard
@@ -102,6 +104,14 @@ public abstract class XMLInput {
     }
 
     public void readConfigFile() {
+        readConfigFile(Globals.configURL);
+    }
+
+    /*
+     * Reads the layout in configURL, or the default config file if it is
+     * null or can't be read
+     */
+    public void readConfigFile(String configURL) {
         try {
             boolean configURLFound = false;
             URL fileURL = null;
@@ -110,16 +120,16 @@ public abstract class XMLInput {
              * First try reading the user-defined configURL, that is, if it's
              * defined.
              */
-            if (Globals.configURL != null) {
+            if (configURL != null) {
                 System.out.println("Reading remote config file: " +
-                        Globals.configURL);
+                        configURL);
                 /*
                  * If the configURL starts with '/', then treat this as
                  * a file inside the Scoreboard.jar archive
                  */
-                if (Globals.configURL.charAt(0) == '/') {
+                if (configURL.charAt(0) == '/') {
                     try {
-                        fileURL = getClass().getResource(Globals.configURL);
+                        fileURL = getClass().getResource(configURL);
                         in = fileURL.openStream();
                         configURLFound = true;
                     } catch (Exception e) {
@@ -132,7 +142,7 @@ public abstract class XMLInput {
                  */
                 } else {
                     try {
-                        fileURL = new URL(Globals.configURL);
+                        fileURL = new URL(configURL);
                         in = fileURL.openStream();
                         configURLFound = true;
                     } catch (Exception e) {
@@ -190,13 +200,128 @@ public abstract class XMLInput {
             Element element = (Element) node;
             String name = XMLSpec.getTagValue(XMLSpec.TAG_NAME, element);
             if (XMLSpec.isUpdateVariable(name)) {
-                scoreboardInputInterface.updateVariable(name,
-                        XMLSpec.getTagValue(XMLSpec.TAG_OVERALLVALUE, element));
+                UpdateTracer updateTracer = Globals.updateTracer;
+                String overallValueStr =
+                        XMLSpec.getTagValue(XMLSpec.TAG_OVERALLVALUE, element);
+                String traceStr = updateTracer == null ? null :
+                        XMLSpec.getOptionalTagValue(XMLSpec.TAG_TRACE,
+                        element);
+                if (traceStr == null) {
+                    scoreboardInputInterface.updateVariable(name,
+                            overallValueStr);
+                } else {
+                    updateTracer.updateDecoded(Long.parseLong(traceStr));
+                    scoreboardInputInterface.updateVariable(name,
+                            overallValueStr);
+                    updateTracer.updateApplied();
+                }
             }
         }
     }
 
+    private static final String FAST_UPDATE_START =
+            XMLSpec.START_UPDATE + XMLSpec.START_NAME;
+    private static final String FAST_NAME_END =
+            XMLSpec.END_NAME + XMLSpec.START_OVERALLVALUE;
+
+    /*
+     * Decodes an update in exactly the form XMLSpec.updateStr() builds it,
+     * without a DOM parse.  The only allocation is the value String handed
+     * to the ScoreboardInputInterface.  Returns false, having done nothing,
+     * for anything else (unknown variable, whitespace, entities...) so the
+     * caller can fall back to the DOM parser.
+     */
+    private boolean readUpdateFast(String msg) {
+        if (!msg.startsWith(FAST_UPDATE_START)) {
+            return false;
+        }
+        int nameStart = FAST_UPDATE_START.length();
+        int nameEnd = msg.indexOf(FAST_NAME_END, nameStart);
+        if (nameEnd < 0) {
+            return false;
+        }
+        String name = XMLSpec.findUpdateVariable(msg, nameStart, nameEnd);
+        if (name == null) {
+            return false;
+        }
+        int valueStart = nameEnd + FAST_NAME_END.length();
+        int valueEnd = valueStart;
+        while (valueEnd < msg.length() &&
+                (Character.isDigit(msg.charAt(valueEnd)) ||
+                (valueEnd == valueStart && msg.charAt(valueEnd) == '-'))) {
+            valueEnd++;
+        }
+        /*
+         * A lone '-' is left to the DOM parser, which reports it
+         */
+        if (valueEnd == valueStart ||
+                !Character.isDigit(msg.charAt(valueEnd - 1)) ||
+                !msg.startsWith(XMLSpec.END_OVERALLVALUE, valueEnd)) {
+            return false;
+        }
+        int next = valueEnd + XMLSpec.END_OVERALLVALUE.length();
+        long traceStamp = -1;
+        if (msg.startsWith(XMLSpec.START_TRACE, next)) {
+            next += XMLSpec.START_TRACE.length();
+            traceStamp = 0;
+            int digits = 0;
+            while (next < msg.length() && Character.isDigit(msg.charAt(next))) {
+                traceStamp = traceStamp * 10 + (msg.charAt(next++) - '0');
+                digits++;
+            }
+            if (digits == 0 || !msg.startsWith(XMLSpec.END_TRACE, next)) {
+                return false;
+            }
+            next += XMLSpec.END_TRACE.length();
+        }
+        /*
+         * The id and presentation time have already been acted on, before
+         * the update was handed to the FX thread
+         */
+        if (msg.startsWith(XMLSpec.START_ID, next)) {
+            next = msg.indexOf(XMLSpec.END_ID, next);
+            if (next < 0) {
+                return false;
+            }
+            next += XMLSpec.END_ID.length();
+        }
+        if (msg.startsWith(XMLSpec.START_AT, next)) {
+            next = msg.indexOf(XMLSpec.END_AT, next);
+            if (next < 0) {
+                return false;
+            }
+            next += XMLSpec.END_AT.length();
+        }
+        if (!msg.startsWith(XMLSpec.END_UPDATE, next) ||
+                next + XMLSpec.END_UPDATE.length() != msg.length()) {
+            return false;
+        }
+        String overallValueStr = msg.substring(valueStart, valueEnd);
+        UpdateTracer updateTracer = Globals.updateTracer;
+        if (updateTracer == null || traceStamp < 0) {
+            scoreboardInputInterface.updateVariable(name, overallValueStr);
+        } else {
+            updateTracer.updateDecoded(traceStamp);
+            scoreboardInputInterface.updateVariable(name, overallValueStr);
+            updateTracer.updateApplied();
+        }
+        return true;
+    }
+
     public void readUpdateStr(String msg) {
+        PipelineEvents.Decode event = null;
+        if (Globals.jfr) {
+            event = new PipelineEvents.Decode();
+            event.length = msg.length();
+            event.begin();
+        }
+        if (readUpdateFast(msg)) {
+            if (event != null) {
+                event.fastPath = true;
+                event.commit();
+            }
+            return;
+        }
         try {
             InputStream msgStream = new
                     ByteArrayInputStream(msg.getBytes("UTF-8"));
@@ -205,7 +330,16 @@ public abstract class XMLInput {
             NodeList nodeLst = doc.getElementsByTagName("update");
             readUpdateNode(nodeLst.item(0));
         } catch (Exception e) {
+            if (FxGlobals.scoreboardStats != null) {
+                FxGlobals.scoreboardStats.decodeError();
+            }
+            if (event != null) {
+                event.failed = true;
+            }
             e.printStackTrace();
         }
+        if (event != null) {
+            event.commit();
+        }
     }
 }
@@ -32,11 +32,18 @@
 package scoreboard.fx2.framework;
 
 import java.util.ArrayList;
+import scoreboard.common.Globals;
 import scoreboard.common.LayoutXOptions;
+import scoreboard.common.metrics.PipelineEvents;
+import scoreboard.common.networking.ClockSync;
 import java.util.Formatter;
+import java.util.concurrent.atomic.AtomicLong;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import static scoreboard.common.Constants.PRIORITY_CLOCK;
+import static scoreboard.common.Constants.PRIORITY_CRITICAL;
+import static scoreboard.common.Constants.PRIORITY_EVENT;
 
 /*
  * This class contains the constants, rules and methods used to 
@@ -66,6 +73,19 @@ public abstract class XMLSpec {
     public final static String END_ALIGNOBJECT =
             "</" + TAG_ALIGNOBJECT + ">";
     
+    /*
+     * With -syncDelay, a master ends every update with the time, on its
+     * ClockSync clock, at which slaves should apply it, e.g.
+     *
+     *     <update><name>clock</name><overallValue>11999</overallValue>
+     *     <at>81726354</at></update>
+     *
+     * (all on one line).  It follows the trace and id stamps, if any.
+     */
+    public final static String TAG_AT = "at";
+    public final static String START_AT = "<" + TAG_AT + ">";
+    public final static String END_AT = "</" + TAG_AT + ">";
+    
     public final static String TAG_BACKGROUNDCOLOR = "backgroundColor";
     public final static String START_BACKGROUNDCOLOR =
             "<" + TAG_BACKGROUNDCOLOR + ">";
@@ -106,6 +126,15 @@ public abstract class XMLSpec {
     public final static String START_FONTSIZE = "<" + TAG_FONTSIZE + ">";
     public final static String END_FONTSIZE = "</" + TAG_FONTSIZE + ">";
     
+    /*
+     * Identifies an update sent over more than one transport, as
+     * EPOCH.N, so that a slave applies only the first copy to arrive (see
+     * DuplicateFilter)
+     */
+    public final static String TAG_ID = "id";
+    public final static String START_ID = "<" + TAG_ID + ">";
+    public final static String END_ID = "</" + TAG_ID + ">";
+    
     public final static String TAG_LAYOUTX = "layoutX";
     public final static String START_LAYOUTX = "<" + TAG_LAYOUTX + ">";
     public final static String END_LAYOUTX = "</" + TAG_LAYOUTX + ">";
@@ -136,6 +165,15 @@ public abstract class XMLSpec {
     public final static String END_TOPLEFTOBJECT =
             "</" + TAG_TOPLEFTOBJECT + ">";
     
+    /*
+     * Optional trace stamp on an update (see
+     * scoreboard.common.metrics.UpdateTracer).  Slaves which don't know
+     * about tracing simply ignore the extra element.
+     */
+    public final static String TAG_TRACE = "trace";
+    public final static String START_TRACE = "<" + TAG_TRACE + ">";
+    public final static String END_TRACE = "</" + TAG_TRACE + ">";
+    
     public final static String TAG_UPDATE = "update";
     public final static String START_UPDATE = "<" + TAG_UPDATE + ">";
     public final static String END_UPDATE = "</" + TAG_UPDATE + ">";
@@ -273,6 +311,13 @@ public abstract class XMLSpec {
     public static ArrayList<String> DisplayableWithDigitsNames;
     public static ArrayList<String> ConfigVariableNames;
     public static ArrayList<String> UpdateVariableNames;
+    /*
+     * Update variables whose updates are PRIORITY_CRITICAL (e.g. the horn)
+     * or PRIORITY_CLOCK (those updated as a timer ticks).  All other
+     * updates are PRIORITY_EVENT.
+     */
+    public static ArrayList<String> CriticalVariableNames;
+    public static ArrayList<String> TickingVariableNames;
 /****************************************************************************
  *  End ArrayList declarations                                              *
  ****************************************************************************/
@@ -338,6 +383,64 @@ public abstract class XMLSpec {
         return false;
     }
 
+    /*
+     * Returns the update variable name equal to the characters of str
+     * between start and end, or null if there is none.  Lets a decoder
+     * identify a variable without extracting the name as a new String.
+     */
+    public static String findUpdateVariable(String str, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < UpdateVariableNames.size(); i++) {
+            String n = UpdateVariableNames.get(i);
+            if (n.length() == length &&
+                    str.regionMatches(start, n, 0, length)) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines the priority class (see scoreboard.common.Constants) of
+     * updates to the variable named by the name argument
+     */
+    public static int getPriority(String name) {
+        if (CriticalVariableNames != null) {
+            for (String n : CriticalVariableNames) {
+                if (name.equals(n)) {
+                    return PRIORITY_CRITICAL;
+                }
+            }
+        }
+        if (TickingVariableNames != null) {
+            for (String n : TickingVariableNames) {
+                if (name.equals(n)) {
+                    return PRIORITY_CLOCK;
+                }
+            }
+        }
+        return PRIORITY_EVENT;
+    }
+
+    private static final String UPDATE_NAME_START = START_UPDATE + START_NAME;
+
+    /*
+     * Determines the priority class of an update message from the variable
+     * it names, without parsing the XML.  Anything unrecognized is
+     * PRIORITY_EVENT.
+     */
+    public static int getUpdatePriority(String update) {
+        if (!update.startsWith(UPDATE_NAME_START) ||
+                UpdateVariableNames == null) {
+            return PRIORITY_EVENT;
+        }
+        int nameStart = UPDATE_NAME_START.length();
+        int nameEnd = update.indexOf(END_NAME, nameStart);
+        String name = nameEnd < 0 ? null :
+                findUpdateVariable(update, nameStart, nameEnd);
+        return name == null ? PRIORITY_EVENT : getPriority(name);
+    }
+
     /**
      * Determines if the name argument is the name of a variable that
      * can be updated
@@ -360,6 +463,19 @@ public abstract class XMLSpec {
         return ((Node)nodeList.item(0)).getNodeValue();
     }
 
+    /**
+     * Get the String value associated with the XML tag, or null if the
+     * element has no such tag
+     */
+    public static String getOptionalTagValue(String tag, Element element) {
+        NodeList tagList = element.getElementsByTagName(tag);
+        if (tagList.getLength() == 0) {
+            return null;
+        }
+        Node valueNode = tagList.item(0).getFirstChild();
+        return valueNode == null ? null : valueNode.getNodeValue();
+    }
+
     /**
      * Creates an xml string for the <config> element, relevant for
      * variables of type TextNode
@@ -389,15 +505,173 @@ public abstract class XMLSpec {
         return stringBuilder.toString();
     }
 
+    /*
+     * Updates are sent on every clock tick, so they are built directly
+     * into a per-thread StringBuilder rather than through a Formatter.
+     * The output is the same as formatting UPDATE_DisplayableWithDigits_ss,
+     * followed by any stamps, and the returned String is the only
+     * allocation.
+     */
+    private static final ThreadLocal<StringBuilder> updateBuilder =
+            new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(128);
+        }
+    };
+
+    /*
+     * Encode event in progress on this thread, only used with -JFR:true
+     */
+    private static final ThreadLocal<PipelineEvents.Encode> encodeEvent =
+            new ThreadLocal<PipelineEvents.Encode>();
+
+    private static StringBuilder startUpdate(String varName) {
+        if (Globals.jfr) {
+            PipelineEvents.Encode event = new PipelineEvents.Encode();
+            event.name = varName;
+            event.begin();
+            encodeEvent.set(event);
+        }
+        StringBuilder stringBuilder = updateBuilder.get();
+        stringBuilder.setLength(0);
+        return stringBuilder.append(START_UPDATE).append(START_NAME).
+                append(varName).append(END_NAME).append(START_OVERALLVALUE);
+    }
+
+    private static String endUpdate(StringBuilder stringBuilder) {
+        return encoded(appendStamps(
+                stringBuilder.append(END_OVERALLVALUE)).
+                append(END_UPDATE).toString());
+    }
+
+    private static String endUpdate(StringBuilder stringBuilder,
+            long traceStamp) {
+        return encoded(appendStamps(
+                stringBuilder.append(END_OVERALLVALUE).
+                append(START_TRACE).append(traceStamp).append(END_TRACE)).
+                append(END_UPDATE).toString());
+    }
+
+    /*
+     * Start time of this master, and the number of the last update it
+     * stamped, for TAG_ID
+     */
+    private final static long ID_EPOCH = System.currentTimeMillis();
+    private final static AtomicLong lastId = new AtomicLong();
+
+    /*
+     * Appends the id, for dual transport, and the presentation time, in
+     * that order: getPresentationTime() expects the latter last.
+     */
+    private static StringBuilder appendStamps(StringBuilder stringBuilder) {
+        if (Globals.dualTransport) {
+            stringBuilder.append(START_ID).append(ID_EPOCH).append('.').
+                    append(lastId.incrementAndGet()).append(END_ID);
+        }
+        if (Globals.syncDelay > 0) {
+            stringBuilder.append(START_AT).
+                    append(ClockSync.now() + Globals.syncDelay * 1000L).
+                    append(END_AT);
+        }
+        return stringBuilder;
+    }
+
+    /*
+     * Extracts the presentation time from an update message without
+     * parsing the XML, so that it can be held before being handed to the
+     * FX thread.  Returns -1 if the update carries none.
+     */
+    public static long getPresentationTime(String update) {
+        int end = update.length() - END_UPDATE.length() - END_AT.length();
+        if (end <= 0 || !update.startsWith(END_AT, end) ||
+                !update.endsWith(END_UPDATE)) {
+            return -1;
+        }
+        int start = update.lastIndexOf(START_AT, end);
+        if (start < 0 || start + START_AT.length() == end) {
+            return -1;
+        }
+        long at = 0;
+        for (int i = start + START_AT.length(); i < end; i++) {
+            char c = update.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            at = at * 10 + (c - '0');
+        }
+        return at;
+    }
+
+    private static String encoded(String update) {
+        if (Globals.jfr) {
+            PipelineEvents.Encode event = encodeEvent.get();
+            if (event != null) {
+                event.length = update.length();
+                event.commit();
+                encodeEvent.set(null);
+            }
+        }
+        return update;
+    }
+
     /**
      * Creates an xml string for the <update> element.
      */
     public static String updateStr(String varName,
             String overallValueStr) {
-        StringBuilder stringBuilder = new StringBuilder();
-        Formatter formatter = new Formatter(stringBuilder);
-        formatter.format(UPDATE_DisplayableWithDigits_ss, varName,
-                overallValueStr);
-        return stringBuilder.toString();
+        return endUpdate(startUpdate(varName).append(overallValueStr));
+    }
+
+    public static String updateStr(String varName, int overallValue) {
+        return endUpdate(startUpdate(varName).append(overallValue));
+    }
+
+    /**
+     * Creates an xml string for the <update> element including a
+     * trace stamp
+     */
+    public static String updateStr(String varName,
+            String overallValueStr, long traceStamp) {
+        return endUpdate(startUpdate(varName).append(overallValueStr),
+                traceStamp);
+    }
+
+    public static String updateStr(String varName, int overallValue,
+            long traceStamp) {
+        return endUpdate(startUpdate(varName).append(overallValue),
+                traceStamp);
+    }
+
+    /**
+     * Creates an xml string for the <update> element with none of the
+     * stamps a master sends it with, e.g. for a slave to publish an update
+     * it applied to local processes
+     */
+    public static String plainUpdateStr(String varName,
+            String overallValueStr) {
+        StringBuilder stringBuilder = updateBuilder.get();
+        stringBuilder.setLength(0);
+        return stringBuilder.append(START_UPDATE).append(START_NAME).
+                append(varName).append(END_NAME).append(START_OVERALLVALUE).
+                append(overallValueStr).append(END_OVERALLVALUE).
+                append(END_UPDATE).toString();
+    }
+
+    /*
+     * Returns update without its trace, id and presentation time stamps,
+     * which mean nothing outside the run that sent it, or update itself if
+     * it carries none
+     */
+    public static String unstamped(String update) {
+        int end = update.indexOf(END_OVERALLVALUE);
+        if (end < 0) {
+            return update;
+        }
+        end += END_OVERALLVALUE.length();
+        if (update.length() == end + END_UPDATE.length()) {
+            return update;
+        }
+        return update.substring(0, end) + END_UPDATE;
     }
 }
@@ -40,29 +40,42 @@ import javafx.scene.text.FontWeight;
 import javafx.application.Platform;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javafx.event.EventHandler;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
-import javafx.animation.Animation;
+import javafx.animation.AnimationTimer;
 import javafx.scene.input.KeyCode;
 import javafx.scene.shape.Line;
 import javafx.scene.shape.Rectangle;
-import javafx.scene.media.MediaPlayer;
 import javafx.scene.paint.Color;
 import scoreboard.common.ScoreboardOutputInterface;
 import scoreboard.common.ScoreboardInputInterface;
 import scoreboard.common.XMLReaderInterface;
 import scoreboard.common.LayoutXOptions;
+import scoreboard.common.metrics.MBeans;
+import scoreboard.common.metrics.MetricsServer;
+import scoreboard.common.metrics.PipelineEvents;
+import scoreboard.common.metrics.UpdateTracer;
 import scoreboard.fx2.framework.XMLInput;
 import scoreboard.fx2.framework.Displayable;
 import scoreboard.fx2.framework.DisplayableWithDigits;
 import scoreboard.fx2.framework.FxGlobals;
 import scoreboard.fx2.framework.Horn;
 import scoreboard.fx2.framework.Penalty;
+import scoreboard.fx2.framework.PerfOverlay;
+import scoreboard.fx2.framework.PulseMonitor;
+import scoreboard.fx2.framework.ScoreboardContext;
+import scoreboard.fx2.framework.ScoreboardStats;
 import scoreboard.fx2.framework.ScoreboardWithClock;
 import scoreboard.fx2.framework.SingleDigit;
 import scoreboard.fx2.framework.TextNode;
@@ -70,6 +83,7 @@ import scoreboard.fx2.framework.Timer;
 import scoreboard.fx2.framework.TwoDigit;
 import scoreboard.fx2.networking.FxSocketReader;
 import scoreboard.fx2.util.FXUtils;
+import static scoreboard.common.Constants.DEFAULT_CHANNEL;
 import static scoreboard.common.Constants.DEFAULT_SCOREBOARD_WIDTH;
 import static scoreboard.common.Constants.DEFAULT_SCOREBOARD_HEIGHT;
 import static scoreboard.fx2.framework.FxConstants.DEFAULT_TEXT_COLOR;
@@ -79,9 +93,13 @@ import static scoreboard.fx2.framework.FxConstants.
 import static scoreboard.common.Constants.DEFAULT_HORN_FILE;
 import static scoreboard.common.Constants.HORN_OFF;
 import static scoreboard.common.Constants.HORN_ON;
+import static scoreboard.common.Constants.TRACE_DUMP_INTERVAL;
 import scoreboard.common.DigitsDisplayStates;
 import scoreboard.fx2.framework.XMLSpec;
+import scoreboard.common.networking.JournalWriter;
+import scoreboard.common.networking.SharedMemoryWriter;
 import scoreboard.fx2.networking.FxMulticastReader;
+import scoreboard.fx2.networking.DuplicateFilter;
 import scoreboard.fx2.networking.FxMulticastWriter;
 import scoreboard.fx2.networking.FxMultipleSocketWriter;
 
@@ -259,6 +277,11 @@ implements XMLReaderInterface {
      * (true) or the UI version of the Scoreboard (false)
      */
     private boolean remoteDisplay = false;
+
+    /*
+     * This scoreboard's networking, keyboard focus and connection status
+     */
+    private ScoreboardContext context;
     
     /*
      * Mapping between String name of a configurable scoreboard variable to
@@ -285,6 +308,18 @@ implements XMLReaderInterface {
 
     public HockeyScoreboard(double width, double height,
             boolean remoteDisplay) {
+        this(new ScoreboardContext(), width, height, remoteDisplay);
+    }
+
+    /*
+     * Use this one to set up the context, e.g. its channel or a socket
+     * writer shared with another scoreboard, before the scoreboard starts
+     * its networking in init()
+     */
+    public HockeyScoreboard(ScoreboardContext context, double width,
+            double height, boolean remoteDisplay) {
+        this.context = context;
+        context.hockeyScoreboard = this;
         this.width = width;
         this.height = height;
         this.remoteDisplay = remoteDisplay;
@@ -345,16 +380,59 @@ implements XMLReaderInterface {
             e.printStackTrace();
         }
        
+        /*
+         * Start tracing and metrics before any networking is set up in
+         * positionNodes().  They are process-wide, so only the first of
+         * several scoreboards sharing the JVM (e.g. with -Channels, or on a
+         * video wall) sets them up.
+         */
+        if (Globals.metricsPort != 0) {
+            MetricsServer.start(Globals.metricsPort);
+        }
+        if (Globals.trace && Globals.updateTracer == null) {
+            Globals.updateTracer = new UpdateTracer(TRACE_DUMP_INTERVAL);
+            Globals.updateTracer.start();
+            MetricsServer.register(Globals.updateTracer);
+            if (remoteDisplay) {
+                // Updates applied on a slave are painted on the next pulse
+                new AnimationTimer() {
+                    @Override
+                    public void handle(long now) {
+                        Globals.updateTracer.pulse();
+                    }
+                }.start();
+            }
+        }
+        String role = remoteDisplay ? "slave" : "master";
+        if ((Globals.jmx || Globals.metricsPort != 0) &&
+                FxGlobals.scoreboardStats == null) {
+            FxGlobals.scoreboardStats = new ScoreboardStats();
+            MBeans.register(FxGlobals.scoreboardStats, "Scoreboard",
+                    "role=" + role);
+            MetricsServer.register(FxGlobals.scoreboardStats, "role", role);
+        }
         positionNodes();
+        if ((Globals.perfOverlay || Globals.metricsPort != 0) &&
+                FxGlobals.pulseMonitor == null) {
+            FxGlobals.pulseMonitor = new PulseMonitor();
+            MetricsServer.register(FxGlobals.pulseMonitor, "role", role);
+            FxGlobals.pulseMonitor.start();
+        }
+        if (Globals.perfOverlay) {
+            getChildren().add(new PerfOverlay(FxGlobals.pulseMonitor,
+                    this, fontSize / 2));
+        }
         hockeyScoreboardXMLOutput = new HockeyScoreboardXMLOutput
                 (new ScoreboardOutputInterfaceImpl());
-        setOnKeyPressed(new EventHandler<KeyEvent>() {
-            public void handle(KeyEvent ke) {
-                processKeyEvent(ke.getCode());
-            }
-        });
-        setFocusTraversable(true);
-        requestFocus();
+        if (!Globals.isDisplayOnly()) {
+            setOnKeyPressed(new EventHandler<KeyEvent>() {
+                public void handle(KeyEvent ke) {
+                    processKeyEvent(ke.getCode());
+                }
+            });
+            setFocusTraversable(true);
+            requestFocus();
+        }
 
         if (Globals.dumpConfig) {
             hockeyScoreboardXMLOutput.dumpDisplayableNodes();
@@ -420,7 +498,16 @@ implements XMLReaderInterface {
         mouseBlocker.setWidth(getLayoutBounds().getWidth());
         mouseBlocker.setFill(Color.TRANSPARENT);
         
-        horn = new Horn("horn", DEFAULT_HORN_FILE);
+        /*
+         * Only the screen feeding a video wall sounds the horn
+         */
+        horn = new Horn("horn", DEFAULT_HORN_FILE, context.feed == null);
+        for (String name : XMLSpec.UpdateVariableNames) {
+            DisplayableWithDigits updateVar = getUpdateVariable(name);
+            if (updateVar != null) {
+                updateVar.setContext(context);
+            }
+        }
 
         if (!remoteDisplay) {
             setupClockRow();
@@ -442,22 +529,42 @@ implements XMLReaderInterface {
             mouseBlocker.setHeight(controlRowOffset);
             mouseBlocker.setVisible(false);
             getChildren().add(mouseBlocker);
-            if (Globals.useIPSocket) {
-                FxGlobals.multipleSocketWriter = 
-                        new FxMultipleSocketWriter(2011, Globals.debugFlags);
-                new Thread(FxGlobals.multipleSocketWriter).start();
-            } else {
-                FxGlobals.multicastWriter =
-                        new FxMulticastWriter(Globals.sessionAddr,
-                        Globals.port, Globals.debugFlags);
-                new Thread(FxGlobals.multicastWriter).start();
+            /*
+             * A master hosting several games (see Subscription) shares
+             * one socket writer between the contexts of its scoreboards
+             */
+            if (Globals.useIPSocket || Globals.dualTransport) {
+                if (context.multipleSocketWriter == null) {
+                    context.multipleSocketWriter = new FxMultipleSocketWriter(
+                            Globals.port, Globals.debugFlags);
+                    new Thread(context.multipleSocketWriter).start();
+                }
+                context.multipleSocketWriter.addContext(context);
+            }
+            if ((!Globals.useIPSocket || Globals.dualTransport) &&
+                    context.multicastWriter == null) {
+                context.multicastWriter = new FxMulticastWriter(context,
+                        Globals.sessionAddr, Globals.port, Globals.debugFlags);
+                context.multicastWriter.setChannel(context.channel);
+                new Thread(context.multicastWriter).start();
             }
+            openSharedMemory();
+            openJournal();
         } else {
             setupRemoteDisplay();
-            // Block entire remote display
-            mouseBlocker.setHeight(getLayoutBounds().getHeight());
-            mouseBlocker.setVisible(true);
-            getChildren().add(mouseBlocker);
+            if (Globals.isDisplayOnly()) {
+                /*
+                 * Nothing on a display only scoreboard handles input, so
+                 * rather than covering it with a mouseBlocker, take the
+                 * whole scene graph out of mouse picking.
+                 */
+                setMouseTransparent(true);
+            } else {
+                // Block entire remote display
+                mouseBlocker.setHeight(getLayoutBounds().getHeight());
+                mouseBlocker.setVisible(true);
+                getChildren().add(mouseBlocker);
+            }
         }
     }
 
@@ -642,8 +749,7 @@ implements XMLReaderInterface {
         hornButton.setLayoutX(horizontalBorder);
         hornButton.setOnMouseEntered(new EventHandler<MouseEvent>() {
             public void handle(MouseEvent event) {
-                if (horn.getMediaPlayer().getStatus() ==
-                        MediaPlayer.Status.PLAYING) {
+                if (horn.getHornPlayer().isPlaying()) {
                     hornButton.setTextColor(Color.BLUE);    
                 } else {
                     hornButton.setTextColor(Color.RED);
@@ -668,7 +774,7 @@ implements XMLReaderInterface {
                 } else {
                     hornButton.setTextColor(Color.GRAY);
                 }
-                horn.getMediaPlayer().stop();
+                horn.getHornPlayer().stop();
                 /*
                  * Send out a packet to turn off the horn.  If the entire
                  * media file has not played, this will stop it prematurely
@@ -702,12 +808,10 @@ implements XMLReaderInterface {
             }
         });
 
-        clockTimer.getTimeline().statusProperty().addListener(
+        clockTimer.runningProperty().addListener(
                 new InvalidationListener() {
                     public void invalidated(Observable ov) {
-                        Animation.Status status =
-                                clockTimer.getTimeline().getStatus();
-                        if (status == Animation.Status.RUNNING) {
+                        if (clockTimer.isRunning()) {
                             startStopButton.setContent("Stop");
                             if (homePenalty1.getOverallValue() == 0) {
                                 homePenalty1.getPlayerNumber().
@@ -762,7 +866,7 @@ implements XMLReaderInterface {
             sb.append(Integer.toString(Globals.port));
             sb.append("  (");
             if (remoteDisplay) {
-                if (Globals.socketClosed) {
+                if (context.socketClosed) {
                     sb.append("not ");
                 }
                 sb.append("connected)");
@@ -774,7 +878,11 @@ implements XMLReaderInterface {
                 }
                 sb.append(")");
             }
-        } else {
+        }
+        if (Globals.dualTransport) {
+            sb.append("  +  ");
+        }
+        if (!Globals.useIPSocket || Globals.dualTransport) {
             sb.append("IP Multicast " + Globals.sessionAddr + 
                     "  Port " + Globals.port);   
         }
@@ -800,6 +908,10 @@ implements XMLReaderInterface {
     }
     
     public void updateStatusRow(int numConnections) {
+        for (HockeyScoreboard screen : context.wallScreens) {
+            screen.getContext().socketClosed = context.socketClosed;
+            screen.updateStatusRow(numConnections);
+        }
         String displaySocketStr = updateStatusString(numConnections);
         if (displaySocketText != null) {
             displaySocketText.setContent(displaySocketStr);
@@ -815,25 +927,132 @@ implements XMLReaderInterface {
     private void setupRemoteDisplay() {
         hockeyScoreboardXMLInput = new HockeyScoreboardXMLInput(
                 new ScoreboardInputInterfaceImpl());
-        hockeyScoreboardXMLInput.readConfigFile();
+        hockeyScoreboardXMLInput.readConfigFile(context.configURL);
         hockeyScoreboardXMLInput.initStringXMLDocumentBuilder();
-        if (Globals.useIPSocket) {
-            FxGlobals.socketReader = new FxSocketReader(this,
+        /*
+         * A video wall screen is fed by the screen whose context reads
+         * the updates, which must be built after this one
+         */
+        if (context.feed != null) {
+            context.feed.wallScreens.add(this);
+            return;
+        }
+        openSharedMemory();
+        openJournal();
+        if (Globals.dualTransport) {
+            context.duplicateFilter = new DuplicateFilter();
+            MBeans.register(context.duplicateFilter, "DuplicateFilter",
+                    "channel=" + context.channel);
+            MetricsServer.register(context.duplicateFilter,
+                    "channel", context.channel);
+        }
+        if (Globals.useIPSocket || Globals.dualTransport) {
+            context.socketReader = new FxSocketReader(this,
                     Globals.host, Globals.port, Globals.debugFlags);
-            FxGlobals.socketReader.connect();
-        } else {
-            FxGlobals.multicastReader =
-                    new FxMulticastReader(Globals.sessionAddr,
-                    Globals.port, Globals.debugFlags);
-            new Thread(FxGlobals.multicastReader).start();
+            context.socketReader.setDuplicateFilter(context.duplicateFilter);
+            context.socketReader.setChannel(context.channel);
+            if (Globals.subscribe) {
+                context.socketReader.setSubscription(
+                        getWallVariables());
+            }
+            context.socketReader.connect();
+        }
+        if (!Globals.useIPSocket || Globals.dualTransport) {
+            context.multicastReader = new FxMulticastReader(context,
+                    Globals.sessionAddr, Globals.port, Globals.debugFlags);
+            context.multicastReader.setDuplicateFilter(
+                    context.duplicateFilter);
+            context.multicastReader.setChannel(context.channel);
+            new Thread(context.multicastReader).start();
         }
     }
-    
+
+    public ScoreboardContext getContext() {
+        return context;
+    }
+
+    /*
+     * With -SharedMemory, publish the updates this scoreboard sends or
+     * applies to local processes
+     */
+    private void openSharedMemory() {
+        if (Globals.sharedMemoryFile == null ||
+                context.sharedMemoryWriter != null) {
+            return;
+        }
+        try {
+            context.sharedMemoryWriter = new SharedMemoryWriter(
+                    channelPath(Globals.sharedMemoryFile));
+            MetricsServer.register(context.sharedMemoryWriter,
+                    "channel", context.channel);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+     * With -Journal, record the updates this scoreboard sends or applies,
+     * for JournalReplayer
+     */
+    private void openJournal() {
+        if (Globals.journalFile == null || context.journalWriter != null) {
+            return;
+        }
+        try {
+            context.journalWriter = new JournalWriter(
+                    channelPath(Globals.journalFile));
+            MetricsServer.register(context.journalWriter,
+                    "channel", context.channel);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+     * A master hosting several games gives each channel but the default a
+     * file of its own, path suffixed with the channel name
+     */
+    private String channelPath(String path) {
+        return context.channel.equals(DEFAULT_CHANNEL) ? path :
+                path + "." + context.channel;
+    }
+
+    /*
+     * Names of the update variables the config file placed on this
+     * display, plus the horn, which every display has
+     */
+    private List<String> getDisplayedVariables() {
+        List<String> names = new ArrayList<String>();
+        for (String name : XMLSpec.UpdateVariableNames) {
+            if (getUpdateVariable(name) != null) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /*
+     * Names of the update variables displayed on this scoreboard or any
+     * of the video wall screens it feeds
+     */
+    private Collection<String> getWallVariables() {
+        Set<String> names = new LinkedHashSet<String>(
+                getDisplayedVariables());
+        for (HockeyScoreboard screen : context.wallScreens) {
+            names.addAll(screen.getDisplayedVariables());
+        }
+        return names;
+    }
+
     public HockeyScoreboard getHockeyScoreboard(String name) {
         return hockeyScoreboard;
     }
 
-    private DisplayableWithDigits getUpdateVariable(String name) {
+    /*
+     * Maps an update variable name to its DisplayableWithDigits.  Protected
+     * so that the dispatch cost can be measured from a subclass.
+     */
+    protected DisplayableWithDigits getUpdateVariable(String name) {
         if (name.equals(HockeyScoreboardXMLSpec.NAME_clock)) {
             return clock;
         } else if(name.equals(HockeyScoreboardXMLSpec.NAME_homeShotsOnGoal)) {
@@ -918,8 +1137,7 @@ implements XMLReaderInterface {
     }
     
     private void startStopAction() {
-        Animation.Status status = clockTimer.getTimeline().getStatus();
-        if (status == Animation.Status.RUNNING) {
+        if (clockTimer.isRunning()) {
             clock.getTimer().stop();
             homePenalty1Timer.stop();
             homePenalty2Timer.stop();
@@ -939,11 +1157,10 @@ implements XMLReaderInterface {
     @Override
     public void soundHorn() {
         /*
-         * Call stop() method first to insure media file is played from
-         * the beginning every time. 
+         * play() always starts the horn from the beginning, even if it is
+         * still sounding
          */
-        horn.getMediaPlayer().stop();     
-        horn.getMediaPlayer().play();
+        horn.getHornPlayer().play();
         /*
          * For this method, play the entire media file associated with the horn,
          * where the assumption is the length of the sound is a few seconds.
@@ -960,6 +1177,28 @@ implements XMLReaderInterface {
             }
         }
     }
+
+    private void applyUpdate(String name, String overallValueStr,
+            boolean soundHorn) {
+        DisplayableWithDigits updateVar = getUpdateVariable(name);
+        if (updateVar == null) {
+            return;
+        }
+        if (updateVar == horn) {
+            if (!soundHorn) {
+                return;
+            }
+            int overallValue = Integer.parseInt(overallValueStr);
+            if (overallValue == HORN_ON) {
+                soundHorn();
+            } else if (overallValue == HORN_OFF) {
+                horn.getHornPlayer().stop();
+            }
+        } else {
+            updateVar.setOverallValueViaUpdate(overallValueStr);
+        }
+    }
+
 /* 
  ****************************************************************************
  *  XMLReaderInterface implementation method                                *
@@ -967,7 +1206,14 @@ implements XMLReaderInterface {
     
     @Override
     public void handleUpdate(String msg) {
-        hockeyScoreboardXMLInput.readUpdateStr(msg);
+        PulseMonitor pulseMonitor = FxGlobals.pulseMonitor;
+        if (pulseMonitor == null) {
+            hockeyScoreboardXMLInput.readUpdateStr(msg);
+        } else {
+            long startTime = pulseMonitor.updateStarted();
+            hockeyScoreboardXMLInput.readUpdateStr(msg);
+            pulseMonitor.updateApplied(startTime);
+        }
     }
 /*   
  ****************************************************************************
@@ -1111,19 +1357,43 @@ implements XMLReaderInterface {
         }
 
         public void updateVariable(String name, String overallValueStr) {
-            DisplayableWithDigits updateVar = getUpdateVariable(name);
-            int overallValue = Integer.parseInt(overallValueStr);
-            if (updateVar != null) {
-                if (updateVar == horn) {
-                    if (overallValue == HORN_ON) {
-                        soundHorn();
-                    } else if (overallValue == HORN_OFF) {
-                        horn.getMediaPlayer().stop();
-                    }
-                } else {
-                    updateVar.setOverallValueViaUpdate(overallValueStr);
+            if (FxGlobals.pulseMonitor != null) {
+                FxGlobals.pulseMonitor.updateDecoded();
+            }
+            PipelineEvents.Apply event = null;
+            if (Globals.jfr) {
+                event = new PipelineEvents.Apply();
+                event.begin();
+            }
+            applyUpdate(name, overallValueStr, true);
+            /*
+             * Decoded once for every screen of a video wall.  The horn
+             * sounds here only, the screens sharing one sound card.
+             */
+            for (HockeyScoreboard screen : context.wallScreens) {
+                screen.applyUpdate(name, overallValueStr, false);
+            }
+            if (context.sharedMemoryWriter != null ||
+                    context.journalWriter != null) {
+                /*
+                 * Built once, without stamps, which mean nothing to local
+                 * processes or a replay
+                 */
+                String update = XMLSpec.plainUpdateStr(name,
+                        overallValueStr);
+                if (context.sharedMemoryWriter != null) {
+                    context.sharedMemoryWriter.post(name, update);
+                }
+                if (context.journalWriter != null) {
+                    context.journalWriter.append(name,
+                            XMLSpec.getPriority(name), update);
                 }
             }
+            if (event != null) {
+                event.name = name;
+                event.value = overallValueStr;
+                event.commit();
+            }
         }
 
         public void resolveXlocations() {
@@ -249,6 +249,21 @@ public class HockeyScoreboardXMLSpec extends XMLSpec {
         for (String s : HornVariableNames) {
             UpdateVariableNames.add(s);
         }    
+    /*
+     * The horn must never wait behind anything; the clock and penalty
+     * timers send an update every time they tick.
+     */
+        XMLSpec.CriticalVariableNames = new ArrayList<String>();
+        for (String s : HornVariableNames) {
+            CriticalVariableNames.add(s);
+        }
+        XMLSpec.TickingVariableNames = new ArrayList<String>();
+        for (String s : ClockVariableNames) {
+            TickingVariableNames.add(s);
+        }
+        for (String s : PenaltyVariableNames) {
+            TickingVariableNames.add(s);
+        }
     }
 
     /**
@@ -31,6 +31,7 @@
 
 package scoreboard.fx2.impl.led;
 
+import scoreboard.fx2.framework.ScoreboardContext;
 import scoreboard.fx2.framework.hockey.HockeyScoreboard;
 import static scoreboard.common.Constants.DEFAULT_SCOREBOARD_WIDTH;
 import static scoreboard.common.Constants.DEFAULT_SCOREBOARD_HEIGHT;
@@ -65,7 +66,12 @@ public class LEDHockeyScoreboard extends HockeyScoreboard {
 
     public LEDHockeyScoreboard(double width, double height,
             boolean remoteDisplay) {
-        super(width, height, remoteDisplay);
+        this(new ScoreboardContext(), width, height, remoteDisplay);
+    }
+
+    public LEDHockeyScoreboard(ScoreboardContext context, double width,
+            double height, boolean remoteDisplay) {
+        super(context, width, height, remoteDisplay);
         /*
          * The following variables are implementation specific and must
          * be changed for each implementation of this class.
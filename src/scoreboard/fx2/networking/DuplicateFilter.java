@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2.networking;
+
+import java.util.HashMap;
+import java.util.Map;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import scoreboard.fx2.framework.XMLSpec;
+import static scoreboard.common.Constants.DEDUP_WINDOW;
+
+/*
+ * With dual transport, a master sends every update over both IP sockets
+ * and multicast, stamped <id>EPOCH.N</id> (see XMLSpec.TAG_ID), and a
+ * slave reads both.  Multicast is usually first, while TCP never loses
+ * anything, so between them the slave gets each update as early as
+ * either can deliver it.
+ *
+ * Both readers' update queues (see FxUpdateQueue) pass each update through
+ * the same DuplicateFilter just before applying it.  That is on the FX
+ * thread, so updates from the two queues are seen in the order they are
+ * applied; filtering as they are read, on two reader threads, would let an
+ * older copy slip in behind a newer one.  An update is accepted if its id
+ * is newer than the last accepted for the same variable, so the second
+ * copy of an update is dropped, and so is a late copy of one already
+ * superseded, which would otherwise put an old value back.
+ *
+ * Which transport won each update is counted, and for the last
+ * DEDUP_WINDOW updates the arrival time of the winner is kept, so that
+ * when the loser turns up the winner's lead can be recorded.
+ */
+public class DuplicateFilter implements DuplicateFilterMXBean, MetricsSource {
+
+    public static final int PATH_SOCKET = 0;
+    public static final int PATH_MULTICAST = 1;
+    public static final String[] PATH_NAMES = { "socket", "multicast" };
+
+    private long epoch = -1;
+    /*
+     * Last id accepted for each variable
+     */
+    private final Map<String, long[]> lastIds = new HashMap<String, long[]>();
+    private final long[] windowIds = new long[DEDUP_WINDOW];
+    private final long[] windowTimes = new long[DEDUP_WINDOW];
+    private final int[] windowPaths = new int[DEDUP_WINDOW];
+    /*
+     * Statistics
+     */
+    private final long[] wins = new long[PATH_NAMES.length];
+    private final long[] duplicates = new long[PATH_NAMES.length];
+    private final Histogram[] lead = new Histogram[PATH_NAMES.length];
+
+    public DuplicateFilter() {
+        for (int i = 0; i < PATH_NAMES.length; i++) {
+            lead[i] = new Histogram(PATH_NAMES[i]);
+        }
+    }
+
+    /**
+     * Decide whether to apply an update.
+     * @param update update read
+     * @param path PATH_SOCKET or PATH_MULTICAST
+     * @return true if the update is to be applied, false if it is a copy
+     * of one already applied or superseded
+     */
+    public synchronized boolean accept(String update, int path) {
+        int idStart = update.lastIndexOf(XMLSpec.START_ID);
+        if (idStart < 0) {
+            return true;
+        }
+        int nameStart = XMLSpec.START_UPDATE.length() +
+                XMLSpec.START_NAME.length();
+        int nameEnd = update.indexOf(XMLSpec.END_NAME, nameStart);
+        String name = nameEnd < 0 ? null :
+                XMLSpec.findUpdateVariable(update, nameStart, nameEnd);
+        int dot = update.indexOf('.', idStart);
+        int idEnd = update.indexOf(XMLSpec.END_ID, idStart);
+        if (name == null || dot < 0 || idEnd < dot) {
+            return true;
+        }
+        long updateEpoch = parse(update, idStart + XMLSpec.START_ID.length(),
+                dot);
+        long id = parse(update, dot + 1, idEnd);
+        if (updateEpoch > epoch) {
+            /*
+             * A new master, numbering from 1 again
+             */
+            epoch = updateEpoch;
+            lastIds.clear();
+        } else if (updateEpoch < epoch) {
+            duplicates[path]++;
+            return false;
+        }
+        long now = System.nanoTime();
+        int slot = (int) (id % DEDUP_WINDOW);
+        long[] lastId = lastIds.get(name);
+        if (lastId == null) {
+            lastId = new long[1];
+            lastIds.put(name, lastId);
+        } else if (id <= lastId[0]) {
+            duplicates[path]++;
+            if (windowIds[slot] == id && windowPaths[slot] != path) {
+                lead[windowPaths[slot]].record(
+                        (now - windowTimes[slot]) / 1000);
+            }
+            return false;
+        }
+        lastId[0] = id;
+        wins[path]++;
+        windowIds[slot] = id;
+        windowTimes[slot] = now;
+        windowPaths[slot] = path;
+        return true;
+    }
+
+    private static long parse(String s, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /*
+     * DuplicateFilterMXBean implementation
+     */
+    public synchronized long getSocketWins() {
+        return wins[PATH_SOCKET];
+    }
+
+    public synchronized long getMulticastWins() {
+        return wins[PATH_MULTICAST];
+    }
+
+    public synchronized long getDuplicates() {
+        return duplicates[PATH_SOCKET] + duplicates[PATH_MULTICAST];
+    }
+
+    /*
+     * Time by which the winning transport beat the other, in usec, for
+     * updates which both delivered
+     */
+    public Histogram getLead(int path) {
+        return lead[path];
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public synchronized void writeMetrics(MetricsWriter out) {
+        for (int i = 0; i < PATH_NAMES.length; i++) {
+            String labels = MetricsWriter.label("path", PATH_NAMES[i]);
+            out.counter("scoreboard_dual_transport_wins_total",
+                    "Updates whose first copy came by this transport",
+                    labels, wins[i]);
+            out.counter("scoreboard_dual_transport_duplicates_total",
+                    "Copies dropped as already applied or superseded",
+                    labels, duplicates[i]);
+            out.histogram("scoreboard_dual_transport_lead_microseconds",
+                    "Time by which this transport beat the other", labels,
+                    lead[i]);
+        }
+    }
+}
@@ -31,30 +31,50 @@
 
 package scoreboard.fx2.networking;
 
+import java.util.List;
 import javafx.application.Platform;
 import scoreboard.common.networking.MulticastConnection;
-import scoreboard.common.Globals;
+import scoreboard.common.metrics.MetricsServer;
+import scoreboard.fx2.framework.ScoreboardContext;
 import static scoreboard.common.Constants.DEFAULT_SESSION_ADDR;
 import static scoreboard.common.Constants.DEFAULT_PORT;
 import static scoreboard.common.Constants.DEBUG_NONE;
 
 public class FxMulticastReader extends MulticastConnection {
+
+    /*
+     * Context of the scoreboard the updates read are applied to
+     */
+    private final ScoreboardContext context;
     
+    /*
+     * Updates are applied from here on the FX thread, most urgent first
+     */
+    private final FxUpdateQueue updateQueue = new FxUpdateQueue() {
+        @Override
+        public void apply(String line) {
+            context.hockeyScoreboard.handleUpdate(line);
+        }
+    };
+
     /**
-     * Called whenever a message is read from the socket.
-     * In JavaFX 2.0, this method must be run on the
-     * main thread.  This is accomplished by the Platform.runLater() call.
-     * Failure to do so *will* result in strange errors and exceptions.
+     * Called whenever a message is read from the socket.  The update is
+     * handed to the FX thread by way of the update queue.
      * @param line Line of text read from the socket.
      */
     @Override
-    public void onMessage(final String line) {
-        Platform.runLater(new Runnable() {
-            @Override
-            public void run() {
-                Globals.hockeyScoreboardRef.handleUpdate(line);
-            }
-        });
+    public void onMessage(String line) {
+        updateQueue.post(line);
+    }
+
+    /**
+     * Called with the updates read in one datagram, which are applied
+     * together.
+     * @param lines Updates read from the socket.
+     */
+    @Override
+    public void onMessages(List<String> lines) {
+        updateQueue.post(lines);
     }
 
     /**
@@ -69,20 +89,31 @@ public class FxMulticastReader extends MulticastConnection {
         Platform.runLater(new Runnable() {
             @Override
             public void run() {
-                Globals.hockeyScoreboardRef.updateStatusRow(isClosed ? 0 : 1);
+                context.hockeyScoreboard.updateStatusRow(isClosed ? 0 : 1);
             }
         });
     }
     
-    public FxMulticastReader() {
-        super(DEFAULT_SESSION_ADDR, DEFAULT_PORT, DEBUG_NONE);
+    /*
+     * With dual transport, drop updates already read over the IP socket
+     */
+    public void setDuplicateFilter(DuplicateFilter filter) {
+        updateQueue.setDuplicateFilter(filter, DuplicateFilter.PATH_MULTICAST);
+    }
+
+    public FxMulticastReader(ScoreboardContext context) {
+        this(context, DEFAULT_SESSION_ADDR, DEFAULT_PORT, DEBUG_NONE);
     }
 
-    public FxMulticastReader(int portNum) {
-        super(DEFAULT_SESSION_ADDR, portNum, DEBUG_NONE);
+    public FxMulticastReader(ScoreboardContext context, int portNum) {
+        this(context, DEFAULT_SESSION_ADDR, portNum, DEBUG_NONE);
     }
 
-    public FxMulticastReader(String addr, int portNum, int debugFlags) {
+    public FxMulticastReader(ScoreboardContext context, String addr,
+            int portNum, int debugFlags) {
         super(addr, portNum, debugFlags);
+        this.context = context;
+        MetricsServer.register(updateQueue, "address", addr,
+                "port", Integer.toString(portNum));
     }
 }
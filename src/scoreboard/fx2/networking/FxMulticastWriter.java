@@ -33,12 +33,18 @@ package scoreboard.fx2.networking;
 
 import javafx.application.Platform;
 import scoreboard.common.networking.MulticastConnection;
-import scoreboard.common.Globals;
+import scoreboard.fx2.framework.FxGlobals;
+import scoreboard.fx2.framework.ScoreboardContext;
 import static scoreboard.common.Constants.DEFAULT_SESSION_ADDR;
 import static scoreboard.common.Constants.DEFAULT_PORT;
 import static scoreboard.common.Constants.DEBUG_NONE;
 
 public class FxMulticastWriter extends MulticastConnection {
+
+    /*
+     * Context of the scoreboard whose updates are sent
+     */
+    private final ScoreboardContext context;
     
     /**
      * Called whenever a message is read from the socket.
@@ -64,20 +70,53 @@ public class FxMulticastWriter extends MulticastConnection {
         Platform.runLater(new Runnable() {
             @Override
             public void run() {
-                Globals.hockeyScoreboardRef.updateStatusRow(isClosed ? 0 : 1);
+                context.hockeyScoreboard.updateStatusRow(isClosed ? 0 : 1);
             }
         });
     }
     
-    public FxMulticastWriter() {
-        super(DEFAULT_SESSION_ADDR, DEFAULT_PORT, DEBUG_NONE);
+    /**
+     * Counts updates sent for the performance overlay, if enabled.
+     * @param msg XML update to send
+     */
+    @Override
+    public void sendMessage(String msg) {
+        if (FxGlobals.pulseMonitor != null) {
+            FxGlobals.pulseMonitor.messageSent();
+        }
+        super.sendMessage(msg);
+    }
+
+    /**
+     * Counts acknowledged updates sent for the performance overlay too.
+     * @param msg XML update to send
+     * @param priority priority class of the update
+     * @param key name of the variable updated
+     */
+    @Override
+    public void sendMessage(String msg, int priority, String key) {
+        if (FxGlobals.pulseMonitor != null) {
+            FxGlobals.pulseMonitor.messageSent();
+        }
+        super.sendMessage(msg, priority, key);
+    }
+
+    @Override
+    protected boolean isWriter() {
+        return true;
+    }
+
+    public FxMulticastWriter(ScoreboardContext context) {
+        this(context, DEFAULT_SESSION_ADDR, DEFAULT_PORT, DEBUG_NONE);
     }
 
-    public FxMulticastWriter(int portNum) {
-        super(DEFAULT_SESSION_ADDR, portNum, DEBUG_NONE);
+    public FxMulticastWriter(ScoreboardContext context, int portNum) {
+        this(context, DEFAULT_SESSION_ADDR, portNum, DEBUG_NONE);
     }
 
-    public FxMulticastWriter(String addr, int portNum, int debugFlags) {
+    public FxMulticastWriter(ScoreboardContext context, String addr,
+            int portNum, int debugFlags) {
         super(addr, portNum, debugFlags);
+        this.context = context;
     }
 }
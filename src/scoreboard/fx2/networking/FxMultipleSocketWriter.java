@@ -31,10 +31,27 @@
 
 package scoreboard.fx2.networking;
 
+import java.util.concurrent.CopyOnWriteArrayList;
 import scoreboard.common.networking.*;
-import scoreboard.common.Globals;
+import scoreboard.fx2.framework.FxGlobals;
+import scoreboard.fx2.framework.ScoreboardContext;
 
 public class FxMultipleSocketWriter extends MultipleSocketWriter {
+
+    /*
+     * Contexts of the scoreboards sending over this writer, one per
+     * channel
+     */
+    private final CopyOnWriteArrayList<ScoreboardContext> contexts =
+            new CopyOnWriteArrayList<ScoreboardContext>();
+
+    /*
+     * Have the status of a scoreboard's context kept up to date with the
+     * connections on its channel
+     */
+    public void addContext(ScoreboardContext context) {
+        contexts.addIfAbsent(context);
+    }
     
     /**
      * Called whenever a message is read from the socket.
@@ -60,12 +77,35 @@ public class FxMultipleSocketWriter extends MultipleSocketWriter {
         javafx.application.Platform.runLater(new Runnable() {
             @Override
             public void run() {
-                int numConnections = updateListeners.size();
-                Globals.socketClosed = numConnections <= 0 ? true : false;
-                Globals.hockeyScoreboardRef.updateStatusRow(numConnections);
+                for (ScoreboardContext context : contexts) {
+                    int numConnections = getSubscriberCount(context.channel);
+                    context.socketClosed = numConnections <= 0;
+                    if (context.hockeyScoreboard != null) {
+                        context.hockeyScoreboard.updateStatusRow(
+                                numConnections);
+                    }
+                }
             }
         });
     }
+    /**
+     * Counts updates sent for the performance overlay, if enabled.
+     * @param line XML update to send to all listeners
+     * @param priority One of the PRIORITY_ classes in
+     * scoreboard.common.Constants
+     * @param name Variable updated, or null to send to all listeners
+     * whatever they subscribed to
+     * @param channel Channel of the game updated
+     */
+    @Override
+    public void postUpdate(String line, int priority, String name,
+            String channel) {
+        if (FxGlobals.pulseMonitor != null) {
+            FxGlobals.pulseMonitor.messageSent();
+        }
+        super.postUpdate(line, priority, name, channel);
+    }
+
     public FxMultipleSocketWriter () {
         super();
     }
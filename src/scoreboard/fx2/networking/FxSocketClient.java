@@ -31,9 +31,13 @@
 
 package scoreboard.fx2.networking;
 
+import scoreboard.common.DebugLog;
 import java.net.*;
+import scoreboard.common.networking.ClockSync;
 import scoreboard.common.networking.GenericSocket;
+import scoreboard.common.networking.JitterBuffer;
 import scoreboard.common.networking.SocketListener;
+import scoreboard.fx2.framework.XMLSpec;
 import static scoreboard.common.Constants.DEFAULT_HOST;
 import static scoreboard.common.Constants.DEFAULT_PORT;
 import static scoreboard.common.Constants.DEBUG_STATUS;
@@ -45,22 +49,70 @@ public class FxSocketClient extends GenericSocket
 
     public String host;
     private SocketListener fxListener;
+    /*
+     * Updates are applied from here on the FX thread, most urgent first
+     */
+    private final FxUpdateQueue updateQueue;
+    /*
+     * Only set for a slave which synchronizes presentation with its
+     * master.  Once the master sends presentation times, every update
+     * goes through the jitter buffer so that they stay in order.
+     */
+    private ClockSync clockSync;
+    private JitterBuffer jitterBuffer;
+    private boolean buffering = false;
+    /*
+     * Set while waiting for the master to echo the channel asked for, up
+     * to which anything read is from the channel before
+     */
+    private volatile String channelEcho;
 
     /**
-     * Called whenever a message is read from the socket.  In
-     * JavaFX, this method must be run on the main thread and
-     * is accomplished by the Entry.deferAction() call.  Failure to do so
-     * *will* result in strange errors and exceptions.
+     * Called whenever a message is read from the socket.  Answers to
+     * ClockSync pings are handled right here, so that the time they are
+     * read is as accurate as possible.  Updates with a presentation time
+     * are held in the jitter buffer until they are due.
      * @param line Line of text read from the socket.
      */
     @Override
-    public void onMessage(final String line) {
-        javafx.application.Platform.runLater(new Runnable() {
-            @Override
-            public void run() {
-                fxListener.onMessage(line);
+    public void onMessage(String line) {
+        if (channelEcho != null) {
+            if (line.equals(channelEcho)) {
+                channelEcho = null;
             }
-        });
+            return;
+        }
+        if (clockSync != null) {
+            if (ClockSync.isPong(line)) {
+                clockSync.pongReceived(line, ClockSync.now());
+                return;
+            }
+            long at = XMLSpec.getPresentationTime(line);
+            if (at >= 0 || buffering) {
+                buffering = true;
+                jitterBuffer.post(line, at >= 0 && clockSync.isSynced() ?
+                        clockSync.toLocal(at) : 0);
+                return;
+            }
+        }
+        dispatch(line);
+    }
+
+    /**
+     * Ignore everything read until the master echoes this channel line
+     * (see Subscription).  Must be called before connect().
+     * @param channelStr channel line the slave sends on connecting
+     */
+    public void awaitChannel(String channelStr) {
+        channelEcho = channelStr;
+    }
+
+    /**
+     * Hands an update to the FX thread by way of the update queue.
+     * @param line Line of text read from the socket.
+     */
+    public void dispatch(String line) {
+        updateQueue.post(line);
     }
 
     /**
@@ -98,12 +150,11 @@ public class FxSocketClient extends GenericSocket
              */
             socketConnection.connect(new InetSocketAddress(host, port));
             if (debugFlagIsSet(DEBUG_STATUS)) {
-                System.out.println("Connected to " + host
-                        + "at port " + port);
+                DebugLog.status(host + ":" + port, "Connected");
             }
         } catch (Exception e) {
             if (debugFlagIsSet(DEBUG_EXCEPTIONS)) {
-                e.printStackTrace();
+                DebugLog.exception(host + ":" + port, e);
             }
             throw new SocketException();
         }
@@ -116,11 +167,28 @@ public class FxSocketClient extends GenericSocket
     @Override
     public void closeAdditionalSockets() {}
     
-    public FxSocketClient(SocketListener fxListener,
+    public FxSocketClient(final SocketListener fxListener,
             String host, int port, int debugFlags) {
         super(port, debugFlags);
         this.host = host;
         this.fxListener = fxListener;
+        this.updateQueue = new FxUpdateQueue() {
+            @Override
+            public void apply(String line) {
+                fxListener.onMessage(line);
+            }
+        };
+    }
+
+    public FxSocketClient(SocketListener fxListener,
+            String host, int port, int debugFlags, FxUpdateQueue updateQueue,
+            ClockSync clockSync, JitterBuffer jitterBuffer) {
+        super(port, debugFlags);
+        this.host = host;
+        this.fxListener = fxListener;
+        this.updateQueue = updateQueue;
+        this.clockSync = clockSync;
+        this.jitterBuffer = jitterBuffer;
     }
 
     public FxSocketClient(SocketListener fxListener) {
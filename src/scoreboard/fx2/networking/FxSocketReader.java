@@ -31,33 +31,76 @@
 
 package scoreboard.fx2.networking;
 
+import scoreboard.common.DebugLog;
+import java.util.Collection;
+import javax.management.ObjectName;
+import scoreboard.common.metrics.MBeans;
+import scoreboard.common.metrics.MetricsServer;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import scoreboard.common.networking.ClockSync;
+import scoreboard.common.networking.JitterBuffer;
 import scoreboard.common.networking.SocketListener;
+import scoreboard.common.networking.Subscription;
+import scoreboard.fx2.framework.ScoreboardContext;
 import scoreboard.fx2.framework.hockey.HockeyScoreboard;
+import static scoreboard.common.Constants.DEFAULT_CHANNEL;
 import static scoreboard.common.Constants.DEFAULT_HOST;
 import static scoreboard.common.Constants.DEFAULT_PORT;
 import static scoreboard.common.Constants.DEBUG_STATUS;
 import static scoreboard.common.Constants.DEBUG_ALL;
 import static scoreboard.common.Constants.DEBUG_NONE;
-import scoreboard.common.Globals;
 
-public class FxSocketReader {
+public class FxSocketReader implements SocketReaderMXBean, MetricsSource {
 
     private HockeyScoreboard hockeyScoreboard;
-    private FxSocketClient fxSocketClient;
+    private volatile FxSocketClient fxSocketClient;
+    /*
+     * Kept across reconnects, though the master's clock offset is
+     * estimated afresh on each connection
+     */
+    private final ClockSync clockSync = new ClockSync();
+    private final FxUpdateQueue updateQueue = new FxUpdateQueue() {
+        @Override
+        public void apply(String line) {
+            messagesReceived++;
+            hockeyScoreboard.handleUpdate(line);
+        }
+    };
+    private final JitterBuffer jitterBuffer = new JitterBuffer() {
+        @Override
+        public void present(String line) {
+            fxSocketClient.dispatch(line);
+        }
+    };
+    /*
+     * Sent to the master on every connect, if set
+     */
+    private volatile String subscribeStr;
+    /*
+     * Game followed, of those sharing the master's port
+     */
+    private volatile String channel = DEFAULT_CHANNEL;
     private String host;
     private int port;
     private int debugFlags;
+    /*
+     * Statistics for SocketReaderMXBean, only updated on the main thread
+     */
+    private volatile boolean connected = false;
+    private volatile long connectAttempts = 0;
+    private volatile long connections = 0;
+    private volatile long messagesReceived = 0;
     
 
     class FxSocketReaderListener implements SocketListener {
 
         /*
-         * This method is already on the main thread via FxSocketClient's
-         * call to onMessage().
+         * Updates are applied by the updateQueue, which FxSocketClient
+         * hands them to directly.
          */
         @Override
         public void onMessage(String msg) {
-            hockeyScoreboard.handleUpdate(msg);
         }
 
         /*
@@ -66,16 +109,29 @@ public class FxSocketReader {
          */
         @Override
         public void onClosedStatus(boolean isClosed) {
+            ScoreboardContext context = hockeyScoreboard.getContext();
             if ((debugFlags & DEBUG_STATUS) != 0) {
-                if (isClosed != Globals.socketClosed) {
-                    System.out.println("Socket status changed: isClosed = "
-                        + isClosed);    
+                if (isClosed != context.socketClosed) {
+                    DebugLog.status(host + ":" + port,
+                            "Socket status changed: isClosed = " + isClosed);
                 }
             }
-            Globals.socketClosed = isClosed;
-            if (hockeyScoreboard != null) {
-                hockeyScoreboard.updateStatusRow(isClosed ? 0 : 1);   
+            context.socketClosed = isClosed;
+            connected = !isClosed;
+            if (!isClosed) {
+                connections++;
+                if (!channel.equals(DEFAULT_CHANNEL)) {
+                    fxSocketClient.sendMessage(
+                            Subscription.channelStr(channel));
+                }
+                if (subscribeStr != null) {
+                    fxSocketClient.sendMessage(subscribeStr);
+                }
+                clockSync.start(fxSocketClient);
+            } else {
+                clockSync.stop();
             }
+            hockeyScoreboard.updateStatusRow(isClosed ? 0 : 1);
             if (isClosed) {
                 try {
                     Thread.sleep(3000);
@@ -88,11 +144,49 @@ public class FxSocketReader {
     
 
     public void connect() {
-        fxSocketClient = new FxSocketClient(
-                new FxSocketReaderListener(), host, port, debugFlags);
+        if (connectAttempts++ == 0) {
+            MBeans.register(this, "SocketReader",
+                    "host=" + ObjectName.quote(host) + ",port=" + port);
+            MetricsServer.register(this, "host", host,
+                    "port", Integer.toString(port));
+            MetricsServer.register(clockSync, "host", host,
+                    "port", Integer.toString(port));
+            MetricsServer.register(jitterBuffer, "host", host,
+                    "port", Integer.toString(port));
+            MetricsServer.register(updateQueue, "host", host,
+                    "port", Integer.toString(port));
+        }
+        fxSocketClient = new FxSocketClient(new FxSocketReaderListener(),
+                host, port, debugFlags, updateQueue, clockSync, jitterBuffer);
+        if (!channel.equals(DEFAULT_CHANNEL)) {
+            fxSocketClient.awaitChannel(Subscription.channelStr(channel));
+        }
         fxSocketClient.connect();
     }
 
+    /*
+     * Follow the game on this channel of the master's port (see
+     * Subscription).  Must be called before connect().
+     */
+    public void setChannel(String channel) {
+        this.channel = channel;
+    }
+
+    /*
+     * Only have the master send updates to these variables (see
+     * Subscription)
+     */
+    public void setSubscription(Collection<String> names) {
+        subscribeStr = Subscription.subscribeStr(names);
+    }
+
+    /*
+     * With dual transport, drop updates already read over multicast
+     */
+    public void setDuplicateFilter(DuplicateFilter filter) {
+        updateQueue.setDuplicateFilter(filter, DuplicateFilter.PATH_SOCKET);
+    }
+
     public FxSocketReader(HockeyScoreboard hockeyScoreboard) {
         this(hockeyScoreboard, DEFAULT_HOST, DEFAULT_PORT, DEBUG_NONE);
     }
@@ -111,6 +205,49 @@ public class FxSocketReader {
         this.debugFlags = debugFlags;
     }
 
+    /*
+     * SocketReaderMXBean implementation
+     */
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public long getReconnectAttempts() {
+        return connectAttempts > 0 ? connectAttempts - 1 : 0;
+    }
+
+    public long getConnections() {
+        return connections;
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        out.gauge("scoreboard_reader_connected",
+                "1 if connected to the master, otherwise 0",
+                connected ? 1 : 0);
+        out.counter("scoreboard_reader_reconnect_attempts_total",
+                "Attempts to reconnect to the master",
+                getReconnectAttempts());
+        out.counter("scoreboard_reader_connections_total",
+                "Connections made to the master", connections);
+        out.counter("scoreboard_reader_messages_received_total",
+                "Updates received from the master", messagesReceived);
+    }
+
     /**
      * Send a message in the form of a String to the socket.
      *
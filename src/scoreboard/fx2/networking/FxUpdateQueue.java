@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package scoreboard.fx2.networking;
+
+import java.util.List;
+import javafx.application.Platform;
+import scoreboard.common.Globals;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.metrics.MetricsSource;
+import scoreboard.common.metrics.MetricsWriter;
+import scoreboard.common.metrics.PipelineEvents;
+import scoreboard.common.metrics.UpdateTracer;
+import scoreboard.common.networking.UpdateQueue;
+import scoreboard.fx2.framework.FxGlobals;
+import scoreboard.fx2.framework.PulseMonitor;
+import scoreboard.fx2.framework.XMLSpec;
+import static scoreboard.common.Constants.APPLY_BATCH_SIZE;
+import static scoreboard.common.Constants.APPLY_QUEUE_SIZE;
+import static scoreboard.common.Constants.NUM_PRIORITIES;
+import static scoreboard.common.Constants.PRIORITY_NAMES;
+
+/*
+ * A slave's queue of updates waiting for the FX thread.  Rather than a
+ * Platform.runLater() per update, which the FX thread would work through
+ * strictly in order, updates are queued by priority (see UpdateQueue) and
+ * a single runLater() applies them, most urgent first.  So a horn read
+ * behind a backlog of clock ticks is applied before them.
+ *
+ * At most APPLY_BATCH_SIZE updates are applied per runLater(), so a long
+ * backlog doesn't hold up pulses.  The time from post() until applied is
+ * kept for each priority.
+ *
+ * This class is abstract and requires implementation of apply().
+ */
+public abstract class FxUpdateQueue implements MetricsSource {
+
+    private final UpdateQueue queue = new UpdateQueue(APPLY_QUEUE_SIZE);
+    private boolean scheduled = false;
+    /*
+     * With dual transport, copies of updates already applied from the
+     * other transport's queue are dropped on the way out
+     */
+    private volatile DuplicateFilter duplicateFilter;
+    private int path;
+    private final Histogram[] applyLatency = new Histogram[NUM_PRIORITIES];
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /*
+     * Called on the FX thread for each update, in priority order
+     */
+    abstract public void apply(String line);
+
+    public FxUpdateQueue() {
+        for (int i = 0; i < NUM_PRIORITIES; i++) {
+            applyLatency[i] = new Histogram(PRIORITY_NAMES[i]);
+        }
+    }
+
+    /*
+     * Queues an update read off the network.  Waits if the queue for its
+     * priority is full, which only happens if the FX thread is far behind.
+     */
+    public void post(String line) {
+        boolean schedule;
+        synchronized (this) {
+            if (!offer(line)) {
+                return;
+            }
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            Platform.runLater(drainer);
+        }
+    }
+
+    /*
+     * Queues updates read together, e.g. packed in one datagram, so that
+     * they are applied in the same runLater(), and so show up in the same
+     * frame.
+     */
+    public void post(List<String> lines) {
+        boolean schedule;
+        synchronized (this) {
+            for (int i = 0; i < lines.size(); i++) {
+                if (!offer(lines.get(i))) {
+                    return;
+                }
+            }
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            Platform.runLater(drainer);
+        }
+    }
+
+    /*
+     * Called holding the lock.  Returns false if interrupted while waiting.
+     */
+    private boolean offer(String line) {
+        int priority = XMLSpec.getUpdatePriority(line);
+        PulseMonitor pulseMonitor = FxGlobals.pulseMonitor;
+        long queuedTime = pulseMonitor == null ? System.nanoTime() :
+                pulseMonitor.messageQueued();
+        while (!queue.offer(line, priority, queuedTime)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void drain() {
+        PulseMonitor pulseMonitor = FxGlobals.pulseMonitor;
+        UpdateTracer updateTracer = Globals.updateTracer;
+        DuplicateFilter filter = duplicateFilter;
+        for (int i = 0; i < APPLY_BATCH_SIZE; i++) {
+            String line;
+            int priority;
+            long queuedTime;
+            synchronized (this) {
+                line = queue.poll();
+                if (line == null) {
+                    scheduled = false;
+                    return;
+                }
+                priority = queue.getPolledPriority();
+                queuedTime = queue.getPolledStamp();
+                notify();
+            }
+            long queuedMicros = (System.nanoTime() - queuedTime) / 1000;
+            if (pulseMonitor != null) {
+                pulseMonitor.messageDispatched(queuedTime);
+            }
+            if (updateTracer != null) {
+                updateTracer.updateDispatched(
+                        UpdateTracer.now() - queuedMicros);
+            }
+            if (Globals.jfr) {
+                PipelineEvents.Dispatch event = new PipelineEvents.Dispatch();
+                event.queuedMicros = queuedMicros;
+                event.commit();
+            }
+            if (filter != null && !filter.accept(line, path)) {
+                continue;
+            }
+            apply(line);
+            applyLatency[priority].record(
+                    (System.nanoTime() - queuedTime) / 1000);
+        }
+        Platform.runLater(drainer);
+    }
+
+    /*
+     * Drops updates this filter has already passed from the other
+     * transport
+     */
+    public void setDuplicateFilter(DuplicateFilter filter, int path) {
+        this.path = path;
+        duplicateFilter = filter;
+    }
+
+    public synchronized int getDepth(int priority) {
+        return queue.size(priority);
+    }
+
+    public Histogram getApplyLatency(int priority) {
+        return applyLatency[priority];
+    }
+
+    /*
+     * MetricsSource implementation
+     */
+    public void writeMetrics(MetricsWriter out) {
+        for (int i = 0; i < NUM_PRIORITIES; i++) {
+            String labels = MetricsWriter.label("class", PRIORITY_NAMES[i]);
+            out.gauge("scoreboard_apply_queue_depth",
+                    "Updates waiting for the FX thread, by priority",
+                    labels, getDepth(i));
+            out.histogram("scoreboard_apply_latency_microseconds",
+                    "Time from reading an update until applied, by priority",
+                    labels, applyLatency[i]);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.bench;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.concurrent.locks.LockSupport;
+import scoreboard.common.metrics.UpdateTracer;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.fx2.framework.XMLSpec;
+import scoreboard.fx2.framework.hockey.HockeyScoreboardXMLInput;
+import scoreboard.fx2.framework.hockey.HockeyScoreboardXMLSpec;
+
+/*
+ * Per-update allocation budgets for the steady-state clock tick path,
+ * measured with ThreadMXBean.getThreadAllocatedBytes() on the thread that
+ * runs each step.  Exits with status 1 if any step is over its budget, so
+ * it can be run as a gate after changes to the update path:
+ *
+ *     java -cp <classes> test.scoreboard.bench.AllocationBudget
+ *
+ * Master side, per tick:
+ *   encode   - XMLSpec.updateStr() for the clock; only the update String
+ *              itself may be allocated
+ *   post     - MultipleSocketWriter.postUpdate() to LISTENERS loopback
+ *              listeners; must not allocate at all
+ * Slave side, per update:
+ *   decode   - XMLInput.readUpdateStr(); only the value String handed to
+ *              the ScoreboardInputInterface may be allocated
+ *
+ * Allocations in the JavaFX pieces of the path (Timeline tick,
+ * Platform.runLater(), scene graph updates) and in reading a line off the
+ * socket are outside this project's code and not covered.
+ */
+public class AllocationBudget {
+
+    private static final int LISTENERS = 10;
+    private static final int WARMUP = 20000;
+    private static final int MEASURE = 20000;
+    private static final int POST_RATE = 2000;
+
+    /*
+     * Budgets in bytes per update.  A String of an update is ~80 chars, a
+     * value String at most 5; the budgets allow for Java 8's 2 byte chars.
+     */
+    private static final double ENCODE_BUDGET = 256;
+    private static final double POST_BUDGET = 1;
+    private static final double DECODE_BUDGET = 64;
+
+    private static final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+    private static boolean ok = true;
+    public static volatile int sink;
+
+    interface Step {
+        void run(int i);
+    }
+
+    private static long allocatedBytes() {
+        return threadMXBean.getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    private static void measure(String name, double budget, Step step) {
+        for (int i = 0; i < WARMUP; i++) {
+            step.run(i);
+        }
+        long startBytes = allocatedBytes();
+        for (int i = 0; i < MEASURE; i++) {
+            step.run(i);
+        }
+        double bytesPerOp = (double) (allocatedBytes() - startBytes) / MEASURE;
+        boolean pass = bytesPerOp <= budget;
+        System.out.println(String.format("%-5s %-28s %8.1f B/op  (budget %.0f)",
+                pass ? "ok" : "FAIL", name, bytesPerOp, budget));
+        ok &= pass;
+    }
+
+    static class Writer extends MultipleSocketWriter {
+        Writer(int port) {
+            super(port);
+        }
+
+        @Override
+        public void onMessage(String msg) {
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+        }
+    }
+
+    /*
+     * Reads and discards everything sent to it
+     */
+    static class Drain extends Thread {
+        private final Socket socket;
+
+        Drain(Socket socket) {
+            this.socket = socket;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream()));
+                while (reader.readLine() != null) {
+                }
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        HockeyScoreboardXMLSpec.init();
+        final String clock = HockeyScoreboardXMLSpec.NAME_clock;
+
+        measure("encode", ENCODE_BUDGET, new Step() {
+            public void run(int i) {
+                sink += XMLSpec.updateStr(clock, 12000 - i % 12000).length();
+            }
+        });
+        measure("encode (traced)", ENCODE_BUDGET, new Step() {
+            public void run(int i) {
+                sink += XMLSpec.updateStr(clock, 12000 - i % 12000,
+                        UpdateTracer.now()).length();
+            }
+        });
+
+        int port = 24000 + (int) (System.nanoTime() % 1000);
+        final Writer writer = new Writer(port);
+        Thread writerThread = new Thread(writer);
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Thread.sleep(200);
+        for (int i = 0; i < LISTENERS; i++) {
+            new Drain(new Socket("localhost", port)).start();
+        }
+        Thread.sleep(500);
+        final String update = XMLSpec.updateStr(clock, 12000);
+        final long interval = 1000000000L / POST_RATE;
+        measure("post (" + LISTENERS + " listeners)", POST_BUDGET,
+                new Step() {
+            public void run(int i) {
+                writer.postUpdate(update);
+                LockSupport.parkNanos(interval);
+            }
+        });
+
+        final CodecBench.NullInputInterface nullInput =
+                new CodecBench.NullInputInterface();
+        final HockeyScoreboardXMLInput xmlInput =
+                new HockeyScoreboardXMLInput(nullInput);
+        xmlInput.initStringXMLDocumentBuilder();
+        final String[] updates = new String[100];
+        final String[] tracedUpdates = new String[100];
+        for (int i = 0; i < updates.length; i++) {
+            updates[i] = XMLSpec.updateStr(clock, 12000 - i);
+            tracedUpdates[i] = XMLSpec.updateStr(clock, 12000 - i,
+                    UpdateTracer.now());
+        }
+        measure("decode", DECODE_BUDGET, new Step() {
+            public void run(int i) {
+                xmlInput.readUpdateStr(updates[i % updates.length]);
+            }
+        });
+        measure("decode (traced)", DECODE_BUDGET, new Step() {
+            public void run(int i) {
+                xmlInput.readUpdateStr(tracedUpdates[i % updates.length]);
+            }
+        });
+
+        System.out.println(ok ? "PASS" : "FAIL");
+        System.exit(ok ? 0 : 1);
+    }
+}
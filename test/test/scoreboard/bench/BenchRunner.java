@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/*
+ * Minimal microbenchmark runner, in the spirit of JMH's throughput mode
+ * with the gc profiler, for a project built with plain Ant.  Each Bench
+ * is run for a number of warmup iterations followed by measurement
+ * iterations of a fixed duration.  For every Bench the runner reports:
+ *
+ *   ops/s   - mean throughput over the measurement iterations
+ *   +-      - standard deviation of the throughput between iterations
+ *   B/op    - bytes allocated by the benchmark thread per operation,
+ *             from com.sun.management.ThreadMXBean
+ *
+ * Results of invoke() are folded into a sink so the JIT can't discard
+ * the work being measured.
+ */
+public class BenchRunner {
+
+    public static abstract class Bench {
+        private final String name;
+
+        public Bench(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /*
+         * Performs one operation and returns its result (may be null)
+         */
+        public abstract Object invoke() throws Exception;
+    }
+
+    public static class Result {
+        public final String name;
+        public final double opsPerSecond;
+        public final double error;
+        public final double bytesPerOp;
+
+        Result(String name, double opsPerSecond, double error,
+                double bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-36s %14.0f %12.0f %10.1f",
+                    name, opsPerSecond, error, bytesPerOp);
+        }
+    }
+
+    public static final String HEADER = String.format(
+            "%-36s %14s %12s %10s", "Benchmark", "ops/s", "+-", "B/op");
+
+    private static final int BATCH = 256;
+
+    private final int warmupIterations;
+    private final int measureIterations;
+    private final long iterationMillis;
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+    private final ArrayList<Result> results = new ArrayList<Result>();
+    private Object lastResult;
+    public static volatile int sink;
+
+    public BenchRunner(int warmupIterations, int measureIterations,
+            long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measureIterations = measureIterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    /*
+     * Recognizes "-quick" to shorten runs while developing a benchmark
+     */
+    public static BenchRunner fromArgs(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("-quick")) {
+                return new BenchRunner(2, 3, 200);
+            }
+        }
+        return new BenchRunner(5, 10, 1000);
+    }
+
+    private long allocatedBytes() {
+        return threadMXBean.getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    /*
+     * Runs one iteration, returning {ops, nanos, allocated bytes}
+     */
+    private long[] iteration(Bench bench) throws Exception {
+        long ops = 0;
+        long deadline = System.nanoTime() + iterationMillis * 1000000L;
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        long now;
+        do {
+            for (int i = 0; i < BATCH; i++) {
+                lastResult = bench.invoke();
+            }
+            ops += BATCH;
+            now = System.nanoTime();
+        } while (now < deadline);
+        long bytes = allocatedBytes() - startBytes;
+        if (lastResult != null) {
+            sink += lastResult.hashCode();
+        }
+        return new long[] { ops, now - startTime, bytes };
+    }
+
+    public Result run(Bench bench) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(bench);
+        }
+        double[] rates = new double[measureIterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < measureIterations; i++) {
+            long[] r = iteration(bench);
+            rates[i] = r[0] * 1e9d / r[1];
+            totalOps += r[0];
+            totalBytes += r[2];
+        }
+        double mean = 0;
+        for (double rate : rates) {
+            mean += rate;
+        }
+        mean /= rates.length;
+        double variance = 0;
+        for (double rate : rates) {
+            variance += (rate - mean) * (rate - mean);
+        }
+        double error = rates.length > 1 ?
+                Math.sqrt(variance / (rates.length - 1)) : 0;
+        Result result = new Result(bench.getName(), mean, error,
+                (double) totalBytes / totalOps);
+        results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    public ArrayList<Result> getResults() {
+        return results;
+    }
+
+    public static void printEnvironment() {
+        System.out.println("# " + System.getProperty("java.vm.name") + " " +
+                System.getProperty("java.version") + ", " +
+                Runtime.getRuntime().availableProcessors() + " cpus, " +
+                System.getProperty("os.name") + " " +
+                System.getProperty("os.arch"));
+        System.out.println(HEADER);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.bench;
+
+import java.io.ByteArrayInputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Element;
+import scoreboard.common.LayoutXOptions;
+import scoreboard.common.ScoreboardInputInterface;
+import scoreboard.fx2.framework.XMLSpec;
+import scoreboard.fx2.framework.hockey.HockeyScoreboardXMLInput;
+import scoreboard.fx2.framework.hockey.HockeyScoreboardXMLSpec;
+
+/*
+ * Benchmarks for the update codec.  None of these need the JavaFX
+ * toolkit, so this can be run headless:
+ *
+ *     java -cp <classes> test.scoreboard.bench.CodecBench [-quick]
+ *
+ * The results for the reference machine are kept in baseline.txt in this
+ * directory; compare against it before and after changing the codec.
+ */
+public class CodecBench {
+
+    /*
+     * Counts updates delivered, otherwise does nothing
+     */
+    static class NullInputInterface implements ScoreboardInputInterface {
+        int updates;
+
+        public void setupTextNode(String name, double layoutY,
+                LayoutXOptions layoutXoption, String alignWithStr,
+                double fontSize, String content) {
+        }
+
+        public void setupDisplayableWithDigits(String name, double layoutY,
+                LayoutXOptions layoutXoption, String alignWithStr,
+                double digitHeight, int overallValue) {
+        }
+
+        public void setupScoreboard(String name, int backgroundColorVal) {
+        }
+
+        public void setupImageView(String name, String url,
+                LayoutXOptions layoutXoption,
+                String topLeftObjStr, String bottomRightObjStr) {
+        }
+
+        public void updateVariable(String name, String overallValueStr) {
+            updates++;
+        }
+
+        public void resolveXlocations() {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        HockeyScoreboardXMLSpec.init();
+        final String[] names = XMLSpec.UpdateVariableNames.toArray(
+                new String[XMLSpec.UpdateVariableNames.size()]);
+        final String clockUpdate = XMLSpec.updateStr(
+                HockeyScoreboardXMLSpec.NAME_clock, "12000");
+        final String tracedUpdate = XMLSpec.updateStr(
+                HockeyScoreboardXMLSpec.NAME_clock, "12000", 1L << 50);
+        final NullInputInterface nullInput = new NullInputInterface();
+        final HockeyScoreboardXMLInput xmlInput =
+                new HockeyScoreboardXMLInput(nullInput);
+        xmlInput.initStringXMLDocumentBuilder();
+        final Element element = DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder().parse(new ByteArrayInputStream(
+                clockUpdate.getBytes("UTF-8"))).getDocumentElement();
+
+        BenchRunner runner = BenchRunner.fromArgs(args);
+        BenchRunner.printEnvironment();
+
+        runner.run(new BenchRunner.Bench("XMLSpec.updateStr") {
+            int i = 0;
+            public Object invoke() {
+                return XMLSpec.updateStr(names[i++ % names.length], "42");
+            }
+        });
+        runner.run(new BenchRunner.Bench("XMLSpec.updateStr(traced)") {
+            long stamp = 1L << 50;
+            public Object invoke() {
+                return XMLSpec.updateStr(HockeyScoreboardXMLSpec.NAME_clock,
+                        "12000", stamp++);
+            }
+        });
+        runner.run(new BenchRunner.Bench("XMLInput.readUpdateStr") {
+            public Object invoke() {
+                xmlInput.readUpdateStr(clockUpdate);
+                return null;
+            }
+        });
+        runner.run(new BenchRunner.Bench("XMLInput.readUpdateStr(traced)") {
+            public Object invoke() {
+                xmlInput.readUpdateStr(tracedUpdate);
+                return null;
+            }
+        });
+        runner.run(new BenchRunner.Bench("XMLSpec.isUpdateVariable") {
+            int i = 0;
+            public Object invoke() {
+                return XMLSpec.isUpdateVariable(names[i++ % names.length]);
+            }
+        });
+        runner.run(new BenchRunner.Bench("XMLSpec.isUpdateVariable(miss)") {
+            public Object invoke() {
+                return XMLSpec.isUpdateVariable("notAVariable");
+            }
+        });
+        runner.run(new BenchRunner.Bench("XMLSpec.getTagValue") {
+            public Object invoke() {
+                return XMLSpec.getTagValue(XMLSpec.TAG_OVERALLVALUE, element);
+            }
+        });
+        System.out.println("# updates delivered: " + nullInput.updates);
+    }
+}
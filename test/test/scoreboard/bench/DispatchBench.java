@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.bench;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+import scoreboard.common.DigitsDisplayStates;
+import scoreboard.fx2.framework.DisplayableWithDigits;
+import scoreboard.fx2.framework.XMLSpec;
+import scoreboard.fx2.framework.hockey.HockeyScoreboardXMLSpec;
+import scoreboard.fx2.impl.bulb.BulbHockeyScoreboard;
+import scoreboard.fx2.impl.bulb.BulbTwoDigit;
+
+/*
+ * Benchmarks for the parts of the update path which need JavaFX nodes and
+ * therefore a running FX toolkit (and a display):
+ *
+ *   - HockeyScoreboard update variable name dispatch
+ *   - TwoDigit.sendMessageToSocket() value massaging
+ *
+ * Benchmarks run on the FX application thread, which then exits.
+ *
+ *     java -cp <classes> test.scoreboard.bench.DispatchBench [-quick]
+ */
+public class DispatchBench extends Application {
+
+    private static String[] cmdLineArgs = new String[0];
+
+    /*
+     * Exposes the name dispatch used when a slave applies an update
+     */
+    static class DispatchScoreboard extends BulbHockeyScoreboard {
+        DispatchScoreboard() {
+            super(711, 400, false);
+        }
+
+        DisplayableWithDigits findUpdateVariable(String name) {
+            return getUpdateVariable(name);
+        }
+    }
+
+    /*
+     * Penalty player number set up the way Penalty uses it, with
+     * trailing zeros allowed so that every value goes through the
+     * massaging in sendMessageToSocket().
+     */
+    static class PlayerNumber extends BulbTwoDigit {
+        PlayerNumber(DigitsDisplayStates state) {
+            super(HockeyScoreboardXMLSpec.NAME_homePenalty1playerNumber);
+            setAllowTrailingZeroes(true);
+            setDigitsDisplayState(state);
+        }
+    }
+
+    private void runBenchmarks() throws Exception {
+        BenchRunner runner = BenchRunner.fromArgs(cmdLineArgs);
+        BenchRunner.printEnvironment();
+
+        /*
+         * No socket writer has been created yet, so sendMessageToSocket()
+         * measures only the massaging and the check for a writer.
+         */
+        final PlayerNumber blank =
+                new PlayerNumber(DigitsDisplayStates.BLANK);
+        final PlayerNumber special =
+                new PlayerNumber(DigitsDisplayStates.SPECIAL_CASE);
+        runner.run(new BenchRunner.Bench("TwoDigit.sendMessageToSocket(BLANK)") {
+            public Object invoke() {
+                blank.sendMessageToSocket(
+                        HockeyScoreboardXMLSpec.NAME_homePenalty1playerNumber,
+                        "0");
+                return null;
+            }
+        });
+        runner.run(new BenchRunner.Bench("TwoDigit.sendMessageToSocket(0N)") {
+            public Object invoke() {
+                special.sendMessageToSocket(
+                        HockeyScoreboardXMLSpec.NAME_homePenalty1playerNumber,
+                        "7");
+                return null;
+            }
+        });
+
+        final DispatchScoreboard scoreboard = new DispatchScoreboard();
+        final String[] names = XMLSpec.UpdateVariableNames.toArray(
+                new String[XMLSpec.UpdateVariableNames.size()]);
+        runner.run(new BenchRunner.Bench("HockeyScoreboard.dispatch") {
+            int i = 0;
+            public Object invoke() {
+                return scoreboard.findUpdateVariable(names[i++ % names.length]);
+            }
+        });
+        runner.run(new BenchRunner.Bench("HockeyScoreboard.dispatch(clock)") {
+            public Object invoke() {
+                return scoreboard.findUpdateVariable(HockeyScoreboardXMLSpec.NAME_clock);
+            }
+        });
+        runner.run(new BenchRunner.Bench("HockeyScoreboard.dispatch(last)") {
+            final String last = names[names.length - 1];
+            public Object invoke() {
+                return scoreboard.findUpdateVariable(last);
+            }
+        });
+    }
+
+    @Override
+    public void start(Stage stage) {
+        try {
+            runBenchmarks();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        Platform.exit();
+        System.exit(0);
+    }
+
+    public static void main(String[] args) {
+        cmdLineArgs = args;
+        launch(args);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import scoreboard.common.DebugLog;
+import scoreboard.common.metrics.Histogram;
+
+/*
+ * Floods DebugLog from several threads, as DEBUG_IO would on a master
+ * with many subscribers, while the log's output goes to a stream which
+ * counts lines.  Checks that every entry is either printed or counted as
+ * dropped, that sequence numbers are printed in order, that update
+ * fields are extracted, and reports how long log() takes the caller.
+ *
+ *     java test.scoreboard.common.TestDebugLog [-threads:N] [-entries:N]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestDebugLog {
+
+    /*
+     * Counts printed entries and checks their sequence numbers ascend
+     */
+    static class CountingStream extends OutputStream {
+        final AtomicLong lines = new AtomicLong();
+        final AtomicLong droppedReported = new AtomicLong();
+        boolean ordered = true;
+        boolean fields = true;
+        private long lastSeq = -1;
+        private final StringBuilder line = new StringBuilder();
+
+        @Override
+        public synchronized void write(int b) {
+            if (b != '\n') {
+                line.append((char) b);
+                return;
+            }
+            String s = line.toString();
+            line.setLength(0);
+            if (s.startsWith("DebugLog: ")) {
+                droppedReported.addAndGet(Long.parseLong(s.split(" ")[1]));
+                return;
+            }
+            int seqStart = s.indexOf(" seq=") + 5;
+            long seq = Long.parseLong(s.substring(seqStart,
+                    s.indexOf(' ', seqStart)));
+            ordered &= seq > lastSeq;
+            lastSeq = seq;
+            fields &= s.contains(" send peer=10.0.0.7:2011 variable=clock " +
+                    "value=");
+            lines.incrementAndGet();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = 4;
+        int entries = 250000;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-threads") && subarg.length > 1) {
+                threads = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-entries") && subarg.length > 1) {
+                entries = Integer.parseInt(subarg[1]);
+            }
+        }
+        PrintStream console = System.out;
+        CountingStream counter = new CountingStream();
+        System.setOut(new PrintStream(counter, false));
+
+        final Histogram latency = new Histogram("log");
+        final int perThread = entries;
+        Thread[] loggers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            loggers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        String msg = "<update><name>clock</name>" +
+                                "<overallValue>" + i + "</overallValue>" +
+                                "</update>";
+                        long start = System.nanoTime();
+                        DebugLog.send("10.0.0.7:2011", msg);
+                        latency.record(System.nanoTime() - start);
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread logger : loggers) {
+            logger.start();
+        }
+        for (Thread logger : loggers) {
+            logger.join();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Thread.sleep(1000);
+        System.out.flush();
+        System.setOut(console);
+
+        long logged = (long) threads * entries;
+        boolean accounted = DebugLog.getLogged() == logged &&
+                counter.lines.get() + DebugLog.getDropped() == logged &&
+                counter.droppedReported.get() == DebugLog.getDropped();
+        System.out.println("logged          = " + logged + " in " +
+                elapsedMillis + " ms");
+        System.out.println("printed         = " + counter.lines.get());
+        System.out.println("dropped         = " + DebugLog.getDropped() +
+                " (reported " + counter.droppedReported.get() + ")");
+        System.out.println("log() nsec      = " + latency.summary());
+        System.out.println((accounted ? "ok   " : "FAIL ") +
+                "every entry printed or counted as dropped");
+        System.out.println((counter.ordered ? "ok   " : "FAIL ") +
+                "sequence numbers printed in order");
+        System.out.println((counter.fields ? "ok   " : "FAIL ") +
+                "peer, variable and value fields");
+        boolean ok = accounted && counter.ordered && counter.fields;
+        System.out.println(ok ? "PASS" : "FAIL");
+        System.exit(ok ? 0 : 1);
+    }
+}
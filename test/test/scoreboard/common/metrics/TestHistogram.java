@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.metrics;
+
+import java.util.Random;
+import scoreboard.common.metrics.Histogram;
+
+/*
+ * Sanity check for Histogram: records known distributions from several
+ * threads and compares the reported percentiles with the exact ones.
+ * Reported values must be within the 12.5% bucket precision.
+ */
+public class TestHistogram {
+
+    private static boolean check(String what, long expected, long actual) {
+        boolean ok = actual >= expected &&
+                actual <= expected + Math.max(1, expected / 8);
+        System.out.println((ok ? "ok   " : "FAIL ") + what + ": expected " +
+                expected + ", got " + actual);
+        return ok;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean ok = true;
+        final Histogram h = new Histogram("uniform");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = offset; i < 100000; i += 4) {
+                        h.record(i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        ok &= check("count", 100000, h.getCount());
+        ok &= check("min", 0, h.getMin());
+        ok &= check("max", 99999, h.getMax());
+        ok &= check("p50", 49999, h.getPercentile(50));
+        ok &= check("p99", 98999, h.getPercentile(99));
+
+        Histogram small = new Histogram("small");
+        Random random = new Random(27);
+        for (int i = 0; i < 1000; i++) {
+            small.record(random.nextInt(10));
+        }
+        ok &= check("small max", 9, small.getPercentile(100));
+        small.reset();
+        ok &= check("after reset", 0, small.getCount());
+        System.out.println(h);
+        System.out.println(ok ? "PASSED" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+}
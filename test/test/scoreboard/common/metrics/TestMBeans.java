@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.metrics;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import scoreboard.common.metrics.MBeans;
+import scoreboard.common.networking.MulticastConnection;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.fx2.framework.ScoreboardStats;
+
+/*
+ * Registers the transport and scoreboard MBeans the way a running
+ * scoreboard does, drives some traffic over loopback and reads the
+ * attributes back through the platform MBeanServer, as JConsole would.
+ * Registration also checks each interface is a compliant MXBean.
+ *
+ *     java test.scoreboard.common.metrics.TestMBeans [-port:PORT_NUMBER]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestMBeans {
+
+    private static final int SUBSCRIBERS = 3;
+    private static final int UPDATES = 100;
+    private static final String MULTICAST_ADDR = "227.27.27.27";
+
+    private static MBeanServer server =
+            ManagementFactory.getPlatformMBeanServer();
+    private static boolean ok = true;
+
+    private static void check(String what, long expected, long actual) {
+        boolean pass = expected == actual;
+        System.out.println((pass ? "ok   " : "FAIL ") + what + ": expected " +
+                expected + ", got " + actual);
+        ok &= pass;
+    }
+
+    private static long getLong(String name, String attribute)
+            throws Exception {
+        return ((Number) server.getAttribute(new ObjectName(name),
+                attribute)).longValue();
+    }
+
+    static class Writer extends MultipleSocketWriter {
+        Writer(int port) {
+            super(port);
+        }
+
+        @Override
+        public void onMessage(String msg) {
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+        }
+    }
+
+    static class Endpoint extends MulticastConnection {
+        final AtomicLong received = new AtomicLong();
+
+        Endpoint(int port) {
+            super(MULTICAST_ADDR, port, 0);
+        }
+
+        @Override
+        public void onMessage(String line) {
+            received.incrementAndGet();
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+        }
+    }
+
+    /*
+     * Reads and discards everything sent to it
+     */
+    static class Drain extends Thread {
+        private final Socket socket;
+
+        Drain(Socket socket) {
+            this.socket = socket;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream()));
+                while (reader.readLine() != null) {
+                }
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 24111;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-port") && subarg.length > 1) {
+                port = Integer.parseInt(subarg[1]);
+            }
+        }
+
+        Writer writer = new Writer(port);
+        Thread writerThread = new Thread(writer);
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Thread.sleep(200);
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            new Drain(new Socket("localhost", port)).start();
+        }
+        Thread.sleep(500);
+        for (int i = 0; i < UPDATES; i++) {
+            writer.postUpdate("<update>" + i + "</update>");
+        }
+        Thread.sleep(500);
+        String writerName = "scoreboard:type=SocketWriter,port=" + port;
+        check("SubscriberCount", SUBSCRIBERS,
+                getLong(writerName, "SubscriberCount"));
+        check("UpdatesPosted", UPDATES, getLong(writerName, "UpdatesPosted"));
+        check("MessagesSent", SUBSCRIBERS * UPDATES,
+                getLong(writerName, "MessagesSent"));
+        String[] subscribers = (String[]) server.getAttribute(
+                new ObjectName(writerName), "Subscribers");
+        check("Subscribers", SUBSCRIBERS, subscribers.length);
+        for (String subscriber : subscribers) {
+            System.out.println("     " + subscriber);
+        }
+
+        Endpoint sender = new Endpoint(port + 1);
+        Endpoint receiver = new Endpoint(port + 1);
+        sender.run();
+        receiver.run();
+        Thread.sleep(200);
+        for (int i = 0; i < UPDATES; i++) {
+            sender.sendMessage("<update>" + i + "</update>");
+        }
+        Thread.sleep(500);
+        String multicastName = "scoreboard:type=Multicast,address=" +
+                MULTICAST_ADDR + ",port=" + (port + 1);
+        check("PacketsSent", UPDATES, getLong(multicastName, "PacketsSent"));
+        check("PacketsReceived (second instance)", receiver.received.get(),
+                getLong(multicastName + ",instance=2", "PacketsReceived"));
+
+        ScoreboardStats stats = new ScoreboardStats();
+        MBeans.register(stats, "Scoreboard", "role=master");
+        for (int i = 0; i < UPDATES; i++) {
+            stats.updateApplied("clock");
+        }
+        stats.updateApplied("homeScore");
+        stats.timerTicked(100);
+        String statsName = "scoreboard:type=Scoreboard,role=master";
+        check("UpdatesAppliedTotal", UPDATES + 1,
+                getLong(statsName, "UpdatesAppliedTotal"));
+        TabularData perVariable = (TabularData) server.getAttribute(
+                new ObjectName(statsName), "UpdatesApplied");
+        check("UpdatesApplied variables", 2, perVariable.size());
+        check("TimerTicks", 1, getLong(statsName, "TimerTicks"));
+
+        System.out.println(ok ? "PASS" : "FAIL");
+        System.exit(ok ? 0 : 1);
+    }
+}
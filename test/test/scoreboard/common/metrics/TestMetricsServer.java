@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.metrics;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import scoreboard.common.Globals;
+import scoreboard.common.metrics.MetricsServer;
+import scoreboard.common.metrics.UpdateTracer;
+import scoreboard.fx2.framework.ScoreboardStats;
+import test.scoreboard.Checks;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Starts the metrics endpoint, feeds a ScoreboardStats and an UpdateTracer
+ * while a second thread scrapes http://localhost:PORT/metrics as fast as
+ * it can, then checks the last scrape: one HELP and TYPE line per family,
+ * every histogram's +Inf bucket equal to its _count, and the expected
+ * counter values.
+ *
+ *     java test.scoreboard.common.metrics.TestMetricsServer
+ *             [-metricsPort:PORT_NUMBER]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestMetricsServer {
+
+    private static final int ROUND = 1000;
+    private static final int MIN_SCRAPES = 50;
+
+    private static String get(URL url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), "UTF-8"));
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            sb.append(line).append('\n');
+        }
+        reader.close();
+        return sb.toString();
+    }
+
+    /*
+     * True if a scrape has one TYPE per family and no two samples with the
+     * same name and labels, which a Prometheus server would reject it for.
+     * Also used by the tests running several scoreboards in one JVM.
+     */
+    public static boolean uniqueSeries(String text) {
+        Set<String> typed = new HashSet<String>();
+        Set<String> keys = new HashSet<String>();
+        boolean formatOk = true;
+        for (String line : text.split("\n")) {
+            if (line.startsWith("# TYPE ")) {
+                formatOk &= typed.add(line.split(" ")[2]);
+            } else if (!line.startsWith("#") && line.length() > 0) {
+                formatOk &= keys.add(line.substring(0, line.lastIndexOf(' ')));
+            }
+        }
+        return formatOk;
+    }
+
+    /*
+     * Checks the exposition format rules a Prometheus server would reject
+     * a scrape for, returns the samples by name{labels}
+     */
+    private static Map<String, String> parse(String text) {
+        Map<String, String> samples = new HashMap<String, String>();
+        Map<String, String> infBuckets = new HashMap<String, String>();
+        for (String line : text.split("\n")) {
+            if (!line.startsWith("#") && line.length() > 0) {
+                int space = line.lastIndexOf(' ');
+                String key = line.substring(0, space);
+                samples.put(key, line.substring(space + 1));
+                if (key.contains("_bucket{") && key.contains("le=\"+Inf\"")) {
+                    infBuckets.put(key, line.substring(space + 1));
+                }
+            }
+        }
+        check("one TYPE per family, no duplicate samples", uniqueSeries(text));
+        boolean countsOk = !infBuckets.isEmpty();
+        for (Map.Entry<String, String> entry : infBuckets.entrySet()) {
+            String key = entry.getKey();
+            String countKey = key.replace("_bucket{", "_count{")
+                    .replace(",le=\"+Inf\"", "").replace("le=\"+Inf\"", "")
+                    .replace("{}", "");
+            countsOk &= entry.getValue().equals(samples.get(countKey));
+        }
+        check("+Inf bucket equals _count for " + infBuckets.size() +
+                " histograms", countsOk);
+        return samples;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Globals.metricsPort = 24180;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-metricsPort") && subarg.length > 1) {
+                Globals.metricsPort = Integer.parseInt(subarg[1]);
+            }
+        }
+        MetricsServer.start(Globals.metricsPort);
+        final URL url = new URL("http://localhost:" + Globals.metricsPort +
+                MetricsServer.PATH);
+
+        ScoreboardStats stats = new ScoreboardStats();
+        MetricsServer.register(stats, "role", "master");
+        UpdateTracer tracer = new UpdateTracer(60);
+        MetricsServer.register(tracer);
+
+        /*
+         * Scrape MIN_SCRAPES times while recording, then stop both
+         */
+        final AtomicInteger scrapes = new AtomicInteger();
+        Thread scraper = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (scrapes.get() < MIN_SCRAPES) {
+                        get(url);
+                        scrapes.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    scrapes.set(MIN_SCRAPES);
+                }
+            }
+        };
+        scraper.start();
+        int updates = 0;
+        while (scrapes.get() < MIN_SCRAPES) {
+            for (int i = 0; i < ROUND; i++) {
+                stats.updateApplied(i % 2 == 0 ? "clock" : "homeScore");
+                stats.timerTicked(i % 500);
+                tracer.updatePosted(UpdateTracer.now() - i);
+            }
+            updates += ROUND;
+        }
+        stats.timerTicked(-250);
+        scraper.join();
+        System.out.println("     " + scrapes.get() + " scrapes while " +
+                "recording " + updates + " updates");
+
+        String text = get(url);
+        Map<String, String> samples = parse(text);
+        check("updates applied",
+                String.valueOf(updates / 2).equals(samples.get(
+                "scoreboard_updates_applied_total{role=\"master\"," +
+                "variable=\"clock\"}")));
+        check("timer lateness count",
+                String.valueOf(updates + 1).equals(samples.get(
+                "scoreboard_timer_lateness_microseconds_count" +
+                "{role=\"master\"}")));
+        check("timer lateness under 16 usec",
+                String.valueOf(updates / 500 * 16 + 1).equals(samples.get(
+                "scoreboard_timer_lateness_microseconds_bucket" +
+                "{role=\"master\",le=\"16\"}")));
+        check("timer drift", "-250".equals(samples.get(
+                "scoreboard_timer_drift_microseconds{role=\"master\"}")));
+        check("post stage count",
+                String.valueOf(updates).equals(samples.get(
+                "scoreboard_update_stage_microseconds_count" +
+                "{stage=\"post\"}")));
+
+        MetricsServer.stop();
+        Checks.exit();
+    }
+}
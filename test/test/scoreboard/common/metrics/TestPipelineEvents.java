@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.metrics;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import scoreboard.common.Globals;
+import scoreboard.common.LayoutXOptions;
+import scoreboard.common.ScoreboardInputInterface;
+import scoreboard.common.networking.MulticastConnection;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.fx2.framework.XMLSpec;
+import scoreboard.fx2.framework.hockey.HockeyScoreboardXMLInput;
+import scoreboard.fx2.framework.hockey.HockeyScoreboardXMLSpec;
+
+/*
+ * Records the update pipeline events emitted outside the FX thread
+ * (encode, enqueue, write, multicast send and receive, decode) with a
+ * Flight Recorder Recording, once with -JFR off and once with it on, and
+ * counts them in the dumped recording.  ValueChange, Dispatch and Apply
+ * need the JavaFX toolkit and aren't covered here.
+ *
+ *     java test.scoreboard.common.metrics.TestPipelineEvents
+ *             [-port:PORT_NUMBER]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestPipelineEvents {
+
+    private static final int UPDATES = 200;
+    private static final String MULTICAST_ADDR = "227.27.27.27";
+
+    private static boolean ok = true;
+    private static long parseErrors = 0;
+
+    private static void check(String what, long expected, Long actual) {
+        long value = actual == null ? 0 : actual;
+        boolean pass = expected == value;
+        System.out.println((pass ? "ok   " : "FAIL ") + what + ": expected " +
+                expected + ", got " + value);
+        ok &= pass;
+    }
+
+    static class NullInputInterface implements ScoreboardInputInterface {
+        public void setupTextNode(String name, double layoutY,
+                LayoutXOptions layoutXoption, String alignWithStr,
+                double fontSize, String content) {
+        }
+
+        public void setupDisplayableWithDigits(String name, double layoutY,
+                LayoutXOptions layoutXoption, String alignWithStr,
+                double digitHeight, int overallValue) {
+        }
+
+        public void setupScoreboard(String name, int backgroundColorVal) {
+        }
+
+        public void setupImageView(String name, String url,
+                LayoutXOptions layoutXoption,
+                String topLeftObjStr, String bottomRightObjStr) {
+        }
+
+        public void updateVariable(String name, String overallValueStr) {
+        }
+
+        public void resolveXlocations() {
+        }
+    }
+
+    static class Writer extends MultipleSocketWriter {
+        Writer(int port) {
+            super(port);
+        }
+
+        @Override
+        public void onMessage(String msg) {
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+        }
+    }
+
+    static class Endpoint extends MulticastConnection {
+        Endpoint(int port) {
+            super(MULTICAST_ADDR, port, 0);
+        }
+
+        @Override
+        public void onMessage(String line) {
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+        }
+    }
+
+    /*
+     * Runs each stage UPDATES times, with one undecodable update
+     */
+    private static void runPipeline(Writer writer, Endpoint multicast,
+            HockeyScoreboardXMLInput xmlInput) throws Exception {
+        for (int i = 0; i < UPDATES; i++) {
+            String update = XMLSpec.updateStr(
+                    HockeyScoreboardXMLSpec.NAME_clock, i);
+            writer.postUpdate(update);
+            multicast.sendMessage(update);
+            xmlInput.readUpdateStr(update);
+        }
+        /*
+         * The parser reports the bad update on System.err, as expected
+         */
+        PrintStream err = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errors));
+        try {
+            xmlInput.readUpdateStr("<update><name>clock</name>");
+        } finally {
+            System.setErr(err);
+        }
+        parseErrors += errors.toString().contains("SAXParseException") ?
+                1 : 0;
+        Thread.sleep(500);
+    }
+
+    private static Map<String, Long> countEvents(Recording recording)
+            throws Exception {
+        File file = File.createTempFile("pipeline", ".jfr");
+        file.deleteOnExit();
+        recording.dump(file.toPath());
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(
+                file.toPath())) {
+            String name = event.getEventType().getName();
+            if (name.startsWith("scoreboard.")) {
+                Long count = counts.get(name);
+                counts.put(name, count == null ? 1 : count + 1);
+            }
+        }
+        return counts;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 24121;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-port") && subarg.length > 1) {
+                port = Integer.parseInt(subarg[1]);
+            }
+        }
+        Globals.jmx = false;
+        HockeyScoreboardXMLSpec.init();
+        HockeyScoreboardXMLInput xmlInput =
+                new HockeyScoreboardXMLInput(new NullInputInterface());
+        xmlInput.initStringXMLDocumentBuilder();
+
+        Writer writer = new Writer(port);
+        Thread writerThread = new Thread(writer);
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Thread.sleep(200);
+        final Socket socket = new Socket("localhost", port);
+        Thread drain = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream()));
+                    while (reader.readLine() != null) {
+                    }
+                } catch (Exception e) {
+                }
+            }
+        };
+        drain.setDaemon(true);
+        drain.start();
+        Endpoint multicast = new Endpoint(port + 1);
+        multicast.run();
+        Thread.sleep(500);
+
+        Recording recording = new Recording();
+        recording.start();
+        Globals.jfr = false;
+        runPipeline(writer, multicast, xmlInput);
+        recording.stop();
+        Map<String, Long> counts = countEvents(recording);
+        check("events with -JFR:false", 0, (long) counts.size());
+        recording.close();
+
+        recording = new Recording();
+        recording.start();
+        Globals.jfr = true;
+        runPipeline(writer, multicast, xmlInput);
+        Globals.jfr = false;
+        recording.stop();
+        counts = countEvents(recording);
+        check("scoreboard.Encode", UPDATES, counts.get("scoreboard.Encode"));
+        check("scoreboard.Enqueue", UPDATES, counts.get("scoreboard.Enqueue"));
+        check("scoreboard.Write", UPDATES, counts.get("scoreboard.Write"));
+        check("scoreboard.MulticastSend", UPDATES,
+                counts.get("scoreboard.MulticastSend"));
+        check("scoreboard.MulticastReceive", UPDATES,
+                counts.get("scoreboard.MulticastReceive"));
+        check("scoreboard.Decode", UPDATES + 1,
+                counts.get("scoreboard.Decode"));
+        recording.close();
+        check("undecodable updates reported", 2, parseErrors);
+
+        System.out.println(ok ? "PASS" : "FAIL");
+        System.exit(ok ? 0 : 1);
+    }
+}
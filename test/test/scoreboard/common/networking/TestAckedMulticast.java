@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import scoreboard.common.networking.AckedMulticastReceiver;
+import scoreboard.common.networking.AckedMulticastSender;
+import scoreboard.fx2.framework.XMLSpec;
+import test.scoreboard.Checks;
+import static scoreboard.common.Constants.DEFAULT_SESSION_ADDR;
+import static scoreboard.common.Constants.MAX_DATAGRAM_MSG_SIZE;
+import static scoreboard.common.Constants.PRIORITY_CRITICAL;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Multicasts a stream of acknowledged score and period updates to a
+ * number of slaves, each of which drops a share of the datagrams it
+ * reads, beacons and retransmissions included.  Checks that every slave
+ * ends up with the master's final values, that no update is applied
+ * twice, and that slaves send far fewer acks than they receive updates.
+ * A horn going on and straight off again must reach every slave as two
+ * updates, neither superseding the other, and every datagram the sender sends must be counted.
+ *
+ *     java test.scoreboard.common.networking.TestAckedMulticast
+ *         [-port:N] [-slaves:N] [-updates:N] [-loss:PERCENT]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestAckedMulticast {
+
+    private static final String[] KEYS =
+            { "homeScore", "guestScore", "period", "homeShots" };
+
+    /*
+     * A slave losing loss percent of what it reads
+     */
+    private static class Slave extends Thread {
+        final MulticastSocket socket;
+        final AckedMulticastReceiver receiver;
+        final Map<String, String> values = new HashMap<String, String>();
+        final Map<String, Integer> applied = new HashMap<String, Integer>();
+        final StringBuilder horn = new StringBuilder();
+        final Random random;
+        final int loss;
+        volatile int dropped = 0;
+
+        Slave(InetAddress group, int port, int loss, long seed)
+                throws Exception {
+            socket = new MulticastSocket(port);
+            socket.joinGroup(new InetSocketAddress(group, port), null);
+            receiver = new AckedMulticastReceiver("slave");
+            this.loss = loss;
+            random = new Random(seed);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            byte[] buf = new byte[MAX_DATAGRAM_MSG_SIZE];
+            DatagramPacket packet = new DatagramPacket(buf, buf.length);
+            try {
+                while (true) {
+                    socket.receive(packet);
+                    if (random.nextInt(100) < loss) {
+                        dropped++;
+                        continue;
+                    }
+                    String msg = receiver.received(new String(buf, 0,
+                            packet.getLength()), packet.getSocketAddress());
+                    if (msg != null && msg.startsWith("<update>")) {
+                        apply(msg);
+                    }
+                }
+            } catch (Exception e) {
+            }
+        }
+
+        private synchronized void apply(String msg) {
+            String name = between(msg, "<name>", "</name>");
+            String value = between(msg, "<overallValue>", "</overallValue>");
+            /*
+             * Horn updates are events, seen in whatever order they get
+             * through, rather than a value
+             */
+            if (name.equals("horn")) {
+                horn.append(value);
+            } else {
+                values.put(name, value);
+            }
+            Integer count = applied.get(msg);
+            applied.put(msg, count == null ? 1 : count + 1);
+        }
+
+        synchronized boolean matches(Map<String, String> expected) {
+            return values.equals(expected);
+        }
+
+        synchronized String hornValues() {
+            return horn.toString();
+        }
+
+        synchronized boolean noneTwice() {
+            for (Integer count : applied.values()) {
+                if (count > 1) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static String between(String s, String start, String end) {
+        int from = s.indexOf(start) + start.length();
+        return s.substring(from, s.indexOf(end, from));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 2314;
+        int numSlaves = 20;
+        int numUpdates = 200;
+        int loss = 30;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-port")) {
+                port = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-slaves")) {
+                numSlaves = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-updates")) {
+                numUpdates = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-loss")) {
+                loss = Integer.parseInt(subarg[1]);
+            }
+        }
+        InetAddress group = InetAddress.getByName(DEFAULT_SESSION_ADDR);
+        Slave[] slaves = new Slave[numSlaves];
+        for (int i = 0; i < numSlaves; i++) {
+            slaves[i] = new Slave(group, port, loss, i);
+            slaves[i].start();
+        }
+        final AtomicLong datagramsCounted = new AtomicLong();
+        AckedMulticastSender sender = new AckedMulticastSender(group, port,
+                null, 0) {
+            @Override
+            protected void sent(int len) {
+                datagramsCounted.incrementAndGet();
+            }
+        };
+
+        /*
+         * Beacons are lost too, so it can take a few for every slave to
+         * make itself known
+         */
+        long deadline = System.currentTimeMillis() + 15000;
+        while (sender.getKnownSlaves() < numSlaves &&
+                System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        check("all " + numSlaves + " slaves known",
+                sender.getKnownSlaves() == numSlaves);
+
+        Map<String, String> expected = new HashMap<String, String>();
+        for (int i = 0; i < numUpdates; i++) {
+            String key = KEYS[i % KEYS.length];
+            String value = Integer.toString(i / KEYS.length);
+            expected.put(key, value);
+            sender.send(XMLSpec.updateStr(key, i / KEYS.length), key);
+            Thread.sleep(5);
+        }
+        sender.send(XMLSpec.updateStr("horn", 1), PRIORITY_CRITICAL, "horn");
+        sender.send(XMLSpec.updateStr("horn", 0), PRIORITY_CRITICAL, "horn");
+        deadline = System.currentTimeMillis() + 10000;
+        while (sender.getPendingFrames() > 0 &&
+                System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        int matching = 0;
+        int hornOnOff = 0;
+        boolean noneTwice = true;
+        long received = 0;
+        long acksSent = 0;
+        long dropped = 0;
+        for (Slave slave : slaves) {
+            if (slave.matches(expected)) {
+                matching++;
+            }
+            noneTwice &= slave.noneTwice();
+            String horn = slave.hornValues();
+            if (horn.equals("10") || horn.equals("01")) {
+                hornOnOff++;
+            }
+            received += slave.receiver.getFramesReceived();
+            acksSent += slave.receiver.getAcksSent();
+            dropped += slave.dropped;
+        }
+        System.out.println("datagrams dropped  = " + dropped);
+        System.out.println("updates sent       = " + sender.getFramesSent());
+        System.out.println("retransmissions    = " +
+                sender.getRetransmissions());
+        System.out.println("acked by all       = " + sender.getFramesAcked());
+        System.out.println("abandoned          = " +
+                sender.getFramesAbandoned());
+        System.out.println("updates received   = " + received);
+        System.out.println("acks sent          = " + acksSent);
+        System.out.println("ack latency (usec) = " + sender.getAckLatency());
+        check("nothing left pending", sender.getPendingFrames() == 0);
+        check("nothing abandoned", sender.getFramesAbandoned() == 0);
+        check(matching + " of " + numSlaves + " slaves have the final values",
+                matching == numSlaves);
+        check("no update applied twice", noneTwice);
+        check(hornOnOff + " of " + numSlaves + " slaves saw the horn on " +
+                "and off", hornOnOff == numSlaves);
+        /*
+         * Without linger every frame, retransmission and beacon is a
+         * datagram of its own, beacons making up the difference
+         */
+        check("every datagram counted", datagramsCounted.get() >
+                sender.getFramesSent() + sender.getRetransmissions());
+        check("fewer than one ack per 2 updates received",
+                acksSent * 2 < received);
+        sender.close();
+        Checks.exit();
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import scoreboard.common.Globals;
+import scoreboard.common.networking.MulticastConnection;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.common.networking.Subscription;
+import scoreboard.fx2.framework.XMLSpec;
+import test.scoreboard.Checks;
+import static scoreboard.common.Constants.DEFAULT_CHANNEL;
+import static scoreboard.common.Constants.DEFAULT_SESSION_ADDR;
+import static scoreboard.common.Constants.PRIORITY_CLOCK;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Runs three games at once, on the default channel and channels rink1
+ * and rink2, first from one MultipleSocketWriter and then from three
+ * multicast writers sharing a group and port, with forward error
+ * correction and acknowledged delivery on.  One slave follows each game.
+ * The games post clock updates whose values say which game they belong
+ * to, from before the slaves have joined until after.  Checks that every
+ * slave sees every update of its own game after joining, and nothing of
+ * any other.
+ *
+ *     java test.scoreboard.common.networking.TestChannels
+ *         [-port:N] [-updates:N]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestChannels {
+
+    private static final String[] CHANNELS =
+            { DEFAULT_CHANNEL, "rink1", "rink2" };
+    /*
+     * Values of game g are g * GAME_VALUES + i
+     */
+    private static final int GAME_VALUES = 10000;
+
+    /*
+     * What a slave of one game read
+     */
+    private static class Seen {
+        final int game;
+        int own = 0;
+        int foreign = 0;
+        int last = -1;
+        boolean inOrder = true;
+
+        Seen(int game) {
+            this.game = game;
+        }
+
+        synchronized void update(String line) {
+            if (!line.startsWith(XMLSpec.START_UPDATE)) {
+                return;
+            }
+            int from = line.indexOf(XMLSpec.START_OVERALLVALUE) +
+                    XMLSpec.START_OVERALLVALUE.length();
+            int value = Integer.parseInt(line.substring(from,
+                    line.indexOf(XMLSpec.END_OVERALLVALUE, from)));
+            if (value / GAME_VALUES != game) {
+                foreign++;
+                return;
+            }
+            own++;
+            if (value <= last) {
+                inOrder = false;
+            }
+            last = value;
+        }
+    }
+
+    private static class SocketSlave extends Thread {
+        final Socket socket = new Socket();
+        final Seen seen;
+        final String channelStr;
+        volatile boolean joined;
+
+        SocketSlave(int port, int game) throws Exception {
+            seen = new Seen(game);
+            channelStr = game == 0 ? null :
+                    Subscription.channelStr(CHANNELS[game]);
+            joined = channelStr == null;
+            socket.connect(new InetSocketAddress("localhost", port));
+            if (channelStr != null) {
+                PrintWriter writer = new PrintWriter(socket.getOutputStream());
+                writer.println(channelStr);
+                writer.flush();
+            }
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream()));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!joined) {
+                        joined = line.equals(channelStr);
+                    } else {
+                        seen.update(line);
+                    }
+                }
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    private static void checkSocket(int port, int updates) throws Exception {
+        MultipleSocketWriter master = new MultipleSocketWriter(port) {
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+        };
+        new Thread(master).start();
+        Thread.sleep(200);
+        SocketSlave[] slaves = new SocketSlave[CHANNELS.length];
+        int[] postedAfterJoin = new int[CHANNELS.length];
+        for (int i = 0; i < updates; i++) {
+            if (i == updates / 10) {
+                for (int g = 0; g < CHANNELS.length; g++) {
+                    slaves[g] = new SocketSlave(port, g);
+                }
+                /*
+                 * Connected, though rink1 and rink2 may not have joined
+                 * yet, so they are still sent the default game for now
+                 */
+                while (master.getSubscriberCount() < CHANNELS.length) {
+                    Thread.sleep(1);
+                }
+            }
+            for (int g = 0; g < CHANNELS.length; g++) {
+                master.postUpdate(XMLSpec.updateStr("clock",
+                        g * GAME_VALUES + i), PRIORITY_CLOCK, "clock",
+                        CHANNELS[g]);
+                if (slaves[g] != null && slaves[g].joined) {
+                    postedAfterJoin[g]++;
+                }
+            }
+            if (i % 50 == 49) {
+                Thread.sleep(5);
+            }
+        }
+        Thread.sleep(500);
+        System.out.println("     channels: " +
+                Arrays.toString(master.getChannels()));
+        for (int g = 0; g < CHANNELS.length; g++) {
+            Seen seen = slaves[g].seen;
+            synchronized (seen) {
+                check("socket " + CHANNELS[g] + ": " + seen.own +
+                        " own updates in order, " + seen.foreign + " foreign",
+                        seen.foreign == 0 && seen.inOrder &&
+                        seen.own >= postedAfterJoin[g]);
+            }
+            slaves[g].socket.close();
+        }
+        master.shutdown();
+    }
+
+    private static class Writer extends MulticastConnection {
+        Writer(int port, String channel) {
+            super(DEFAULT_SESSION_ADDR, port, 0);
+            setChannel(channel);
+        }
+
+        @Override
+        protected boolean isWriter() {
+            return true;
+        }
+
+        @Override
+        public void onMessage(String msg) {
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+        }
+    }
+
+    private static class Reader extends MulticastConnection {
+        final Seen seen;
+
+        Reader(int port, int game) {
+            super(DEFAULT_SESSION_ADDR, port, 0);
+            seen = new Seen(game);
+            setChannel(CHANNELS[game]);
+        }
+
+        @Override
+        public void onMessage(String msg) {
+            seen.update(msg);
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+        }
+    }
+
+    private static void checkMulticast(int port, int updates)
+            throws Exception {
+        Globals.fecGroupSize = 4;
+        Globals.ackedMulticast = true;
+        Writer[] writers = new Writer[CHANNELS.length];
+        Reader[] readers = new Reader[CHANNELS.length];
+        for (int g = 0; g < CHANNELS.length; g++) {
+            writers[g] = new Writer(port, CHANNELS[g]);
+            readers[g] = new Reader(port, g);
+            new Thread(writers[g]).start();
+            new Thread(readers[g]).start();
+        }
+        Thread.sleep(500);
+        for (int i = 0; i < updates; i++) {
+            for (int g = 0; g < CHANNELS.length; g++) {
+                /*
+                 * Every tenth update acknowledged, the rest best effort
+                 */
+                String update = XMLSpec.updateStr("clock",
+                        g * GAME_VALUES + i);
+                if (i % 10 == 0) {
+                    writers[g].sendMessage(update, "clock");
+                } else {
+                    writers[g].sendMessage(update);
+                }
+            }
+            Thread.sleep(1);
+        }
+        Thread.sleep(1000);
+        for (int g = 0; g < CHANNELS.length; g++) {
+            Seen seen = readers[g].seen;
+            int slaves = writers[g].getAckedSlaves();
+            synchronized (seen) {
+                check("multicast " + CHANNELS[g] + ": " + seen.own +
+                        " own updates, " + seen.foreign + " foreign, " +
+                        slaves + " acking slave", seen.foreign == 0 &&
+                        seen.own >= updates && slaves == 1);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 2318;
+        int updates = 2000;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg.length < 2) {
+                continue;
+            }
+            if (subarg[0].equals("-port")) {
+                port = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-updates")) {
+                updates = Integer.parseInt(subarg[1]);
+            }
+        }
+        check("channel line round trip", "rink1".equals(
+                Subscription.parseChannel(Subscription.channelStr("rink1"))));
+        check("bad channel names rejected",
+                Subscription.parseChannel("<channel>a,b</channel>") == null &&
+                Subscription.parseChannel(Subscription.channelStr(
+                "a-channel-name-too-long")) == null);
+        checkSocket(port, updates);
+        checkMulticast(port + 1, updates);
+        Checks.exit();
+    }
+}
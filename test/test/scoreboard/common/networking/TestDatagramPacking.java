@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import scoreboard.common.Globals;
+import scoreboard.common.networking.DatagramPacker;
+import scoreboard.common.networking.MulticastConnection;
+import scoreboard.fx2.framework.XMLSpec;
+import test.scoreboard.Checks;
+import static scoreboard.common.Constants.DEFAULT_SESSION_ADDR;
+import static scoreboard.common.Constants.MAX_PACKED_SIZE;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Sends a period reset sized burst of updates over multicast with a
+ * linger window, once best-effort and once acknowledged, and checks that
+ * a reader gets every update, in order, in far fewer datagrams than
+ * updates, and is handed each datagram's updates as one batch.  The
+ * datagram count includes any beacon that happens to go out meanwhile.
+ *
+ *     java test.scoreboard.common.networking.TestDatagramPacking
+ *         [-port:N] [-updates:N] [-linger:MSEC]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestDatagramPacking {
+
+    private static class Writer extends MulticastConnection {
+        Writer(int port) {
+            super(DEFAULT_SESSION_ADDR, port, 0);
+        }
+
+        @Override
+        protected boolean isWriter() {
+            return true;
+        }
+
+        @Override
+        public void onMessage(String msg) {
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+        }
+    }
+
+    private static class Reader extends MulticastConnection {
+        final List<String> received = new ArrayList<String>();
+        int batches = 0;
+        volatile boolean open = false;
+
+        Reader(int port) {
+            super(DEFAULT_SESSION_ADDR, port, 0);
+        }
+
+        @Override
+        public synchronized void onMessages(List<String> msgs) {
+            batches++;
+            super.onMessages(msgs);
+        }
+
+        @Override
+        public synchronized void onMessage(String msg) {
+            if (msg.startsWith(XMLSpec.START_UPDATE)) {
+                received.add(msg);
+            }
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+            open = !isClosed;
+        }
+
+        synchronized int size() {
+            return received.size();
+        }
+    }
+
+    private static void checkUnpack() {
+        List<String> msgs = new ArrayList<String>();
+        DatagramPacker.unpack("one", msgs);
+        DatagramPacker.unpack("two\nthree\n\nfour", msgs);
+        check("unpack splits on newlines",
+                msgs.toString().equals("[one, two, three, four]"));
+    }
+
+    private static void run(String what, int port, int updates,
+            boolean acked) throws Exception {
+        Globals.ackedMulticast = acked;
+        Reader reader = new Reader(port);
+        new Thread(reader).start();
+        Writer writer = new Writer(port);
+        new Thread(writer).start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!reader.open && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        long packetsBefore = reader.getPacketsReceived();
+        int batchesBefore = reader.batches;
+        List<String> sent = new ArrayList<String>();
+        int bytes = 0;
+        for (int i = 0; i < updates; i++) {
+            String update = XMLSpec.updateStr("var" + i, i);
+            sent.add(update);
+            bytes += update.length() + 1;
+            if (acked) {
+                bytes += ("<seq>" + System.currentTimeMillis() + "." + i +
+                        "</seq>").length();
+            }
+            if (acked) {
+                writer.sendMessage(update, "var" + i);
+            } else {
+                writer.sendMessage(update);
+            }
+        }
+        deadline = System.currentTimeMillis() + 5000;
+        while (reader.size() < updates &&
+                System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        long datagrams = reader.getPacketsReceived() - packetsBefore;
+        int batches = reader.batches - batchesBefore;
+        int fewest = (bytes + MAX_PACKED_SIZE - 1) / MAX_PACKED_SIZE;
+        System.out.println(what + ": " + updates + " updates in " +
+                datagrams + " datagrams, " + batches + " batches");
+        check(what + " every update received in order",
+                reader.received.equals(sent));
+        check(what + " packed into at most " + (fewest + 1) + " datagrams",
+                datagrams <= fewest + 1);
+        check(what + " at most one batch per datagram", batches <= datagrams);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 2315;
+        int updates = 60;
+        int linger = 5;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-port")) {
+                port = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-updates")) {
+                updates = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-linger")) {
+                linger = Integer.parseInt(subarg[1]);
+            }
+        }
+        Globals.multicastLinger = linger;
+        checkUnpack();
+        run("best-effort", port, updates, false);
+        run("acknowledged", port + 1, updates, true);
+        Checks.exit();
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import scoreboard.common.Globals;
+import scoreboard.common.networking.ClockSync;
+import scoreboard.common.networking.JournalReader;
+import scoreboard.common.networking.JournalReplayer;
+import scoreboard.common.networking.JournalWriter;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.fx2.framework.XMLSpec;
+import test.scoreboard.Checks;
+import static scoreboard.common.Constants.DEFAULT_CHANNEL;
+import static scoreboard.common.Constants.PRIORITY_CLOCK;
+import static scoreboard.common.Constants.PRIORITY_CRITICAL;
+import static scoreboard.common.Constants.PRIORITY_EVENT;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Checks the update journal (see JournalWriter) through a temporary file:
+ * that updates recorded across many small regions read back intact and in
+ * order, that a reader following a journal still being written sees each
+ * update as it is appended, and that JournalReplayer sends a recording to
+ * a slave of a MultipleSocketWriter in order, at the pace it was recorded
+ * scaled by the replay speed, and faster still flat out.  Also checks
+ * that the id, trace and presentation time stamps of the recording run
+ * are not replayed, and that with -syncDelay the replayer stamps a
+ * presentation time of its own.
+ *
+ *     java test.scoreboard.common.networking.TestJournal
+ *         [-port:N] [-updates:N]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestJournal {
+
+    private static final String[] NAMES =
+            { "clock", "homeScore", "guestScore", "horn" };
+    private static final int[] PRIORITIES =
+            { PRIORITY_CLOCK, PRIORITY_EVENT, PRIORITY_EVENT,
+              PRIORITY_CRITICAL };
+    /*
+     * Small, so the recording spans many regions
+     */
+    private static final int REGION_SIZE = 4096;
+    private static final int PACED_UPDATES = 40;
+    private static final int PACED_INTERVAL = 10;
+
+    /*
+     * A slave collecting the lines it reads
+     */
+    private static class Slave extends Thread {
+        final Socket socket = new Socket();
+        final List<String> lines = new ArrayList<String>();
+
+        Slave(int port) throws Exception {
+            socket.connect(new InetSocketAddress("localhost", port));
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream()));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    synchronized (this) {
+                        lines.add(line);
+                        notifyAll();
+                    }
+                }
+            } catch (Exception e) {
+            }
+        }
+
+        synchronized boolean await(int count, long millis)
+                throws InterruptedException {
+            long deadline = System.currentTimeMillis() + millis;
+            long wait;
+            while (lines.size() < count &&
+                    (wait = deadline - System.currentTimeMillis()) > 0) {
+                wait(wait);
+            }
+            return lines.size() >= count;
+        }
+    }
+
+    /*
+     * Times a replay of the journal at path, at speed, to slave
+     */
+    private static long replay(String path, double speed,
+            MultipleSocketWriter master, Slave slave) throws Exception {
+        synchronized (slave) {
+            slave.lines.clear();
+        }
+        JournalReader reader = new JournalReader(path);
+        long start = System.nanoTime();
+        long sent = new JournalReplayer(reader, speed).replay(master,
+                DEFAULT_CHANNEL);
+        long millis = (System.nanoTime() - start) / 1000000;
+        reader.close();
+        check("replay at " + (speed == 0 ? "max" : speed + "x") +
+                " sent every update", sent == PACED_UPDATES &&
+                slave.await(PACED_UPDATES, 5000));
+        boolean inOrder;
+        synchronized (slave) {
+            inOrder = slave.lines.size() == PACED_UPDATES;
+            for (int i = 0; i < slave.lines.size(); i++) {
+                inOrder &= XMLSpec.updateStr("clock", i).equals(
+                        slave.lines.get(i));
+            }
+        }
+        check("replay at " + (speed == 0 ? "max" : speed + "x") +
+                " in order", inOrder);
+        System.out.println("     took " + millis + " msec");
+        return millis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 2322;
+        int updates = 10000;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg.length < 2) {
+                continue;
+            }
+            if (subarg[0].equals("-port")) {
+                port = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-updates")) {
+                updates = Integer.parseInt(subarg[1]);
+            }
+        }
+        File file = File.createTempFile("scoreboard", ".journal");
+        file.deleteOnExit();
+        String path = file.getPath();
+
+        JournalWriter writer = new JournalWriter(path, REGION_SIZE);
+        JournalReader follower = new JournalReader(path);
+        check("empty journal has no updates", !follower.next());
+        writer.append("homeScore", PRIORITY_EVENT,
+                XMLSpec.updateStr("homeScore", 1));
+        check("follower sees an update as it is appended",
+                follower.next() && "homeScore".equals(follower.getName()) &&
+                XMLSpec.updateStr("homeScore", 1).equals(
+                        follower.getLine()) && !follower.next());
+        for (int i = 0; i < updates; i++) {
+            int n = i % NAMES.length;
+            writer.append(n == 3 ? null : NAMES[n], PRIORITIES[n],
+                    XMLSpec.updateStr(NAMES[n], i));
+        }
+        writer.close();
+        check("writer counted every update",
+                writer.getRecords() == updates + 1);
+        check("file spans many regions",
+                file.length() > 10 * REGION_SIZE);
+
+        JournalReader reader = new JournalReader(path);
+        boolean intact = reader.next() &&
+                XMLSpec.updateStr("homeScore", 1).equals(reader.getLine());
+        long lastTime = reader.getTime();
+        int read = 0;
+        while (reader.next()) {
+            int n = read % NAMES.length;
+            intact &= (n == 3 ? reader.getName() == null :
+                    NAMES[n].equals(reader.getName())) &&
+                    reader.getPriority() == PRIORITIES[n] &&
+                    XMLSpec.updateStr(NAMES[n], read).equals(
+                            reader.getLine()) &&
+                    reader.getTime() >= lastTime;
+            lastTime = reader.getTime();
+            read++;
+        }
+        reader.close();
+        follower.close();
+        check("every update read back intact and in order",
+                intact && read == updates);
+
+        /*
+         * A game's worth of clock ticks, sped up
+         */
+        File pacedFile = File.createTempFile("scoreboard", ".journal");
+        pacedFile.deleteOnExit();
+        JournalWriter paced = new JournalWriter(pacedFile.getPath(),
+                REGION_SIZE);
+        long recordStart = System.nanoTime();
+        for (int i = 0; i < PACED_UPDATES; i++) {
+            paced.append("clock", PRIORITY_CLOCK,
+                    XMLSpec.updateStr("clock", i));
+            Thread.sleep(PACED_INTERVAL);
+        }
+        long recorded = (System.nanoTime() - recordStart) / 1000000 -
+                PACED_INTERVAL;
+        paced.close();
+
+        MultipleSocketWriter master = new MultipleSocketWriter(port) {
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+        };
+        new Thread(master).start();
+        Thread.sleep(200);
+        Slave slave = new Slave(port);
+        Thread.sleep(300);
+
+        long atOne = replay(pacedFile.getPath(), 1, master, slave);
+        long atFour = replay(pacedFile.getPath(), 4, master, slave);
+        long atMax = replay(pacedFile.getPath(), 0, master, slave);
+        System.out.println("     recorded over " + recorded + " msec");
+        check("replay at 1x takes as long as the recording",
+                atOne >= recorded - 5);
+        check("replay at 4x takes a quarter as long",
+                atFour >= recorded / 4 - 5 && atFour < atOne);
+        check("replay flat out faster still", atMax < atFour);
+
+        /*
+         * Stamped as by a master long gone
+         */
+        File stampedFile = File.createTempFile("scoreboard", ".journal");
+        stampedFile.deleteOnExit();
+        JournalWriter stamped = new JournalWriter(stampedFile.getPath(),
+                REGION_SIZE);
+        String plain = XMLSpec.plainUpdateStr("homeScore", "3");
+        String stale = plain.substring(0,
+                plain.length() - XMLSpec.END_UPDATE.length()) +
+                XMLSpec.START_TRACE + 42 + XMLSpec.END_TRACE +
+                XMLSpec.START_ID + 1 + "." + 7 + XMLSpec.END_ID +
+                XMLSpec.START_AT + 1000 + XMLSpec.END_AT + XMLSpec.END_UPDATE;
+        stamped.append("homeScore", PRIORITY_EVENT, stale);
+        stamped.append("homeScore", PRIORITY_EVENT, stale);
+        stamped.close();
+        synchronized (slave) {
+            slave.lines.clear();
+        }
+        JournalReader staleReader = new JournalReader(stampedFile.getPath());
+        new JournalReplayer(staleReader, 0).replay(master, DEFAULT_CHANNEL);
+        staleReader.close();
+        boolean unstamped = slave.await(1, 5000);
+        synchronized (slave) {
+            unstamped &= plain.equals(slave.lines.get(0));
+        }
+        check("recorded stamps not replayed", unstamped);
+
+        Globals.syncDelay = 100;
+        staleReader = new JournalReader(stampedFile.getPath());
+        long before = ClockSync.now();
+        new JournalReplayer(staleReader, 0).replay(master, DEFAULT_CHANNEL);
+        long after = ClockSync.now();
+        staleReader.close();
+        Globals.syncDelay = 0;
+        boolean restamped = slave.await(3, 5000);
+        synchronized (slave) {
+            String line = slave.lines.get(2);
+            long at = XMLSpec.getPresentationTime(line);
+            restamped &= !line.contains(XMLSpec.START_ID) &&
+                    !line.contains(XMLSpec.START_TRACE) &&
+                    at >= before + 100000 && at <= after + 100000;
+        }
+        check("fresh presentation time stamped with -syncDelay", restamped);
+
+        slave.socket.close();
+        master.shutdown();
+        Checks.exit();
+    }
+}
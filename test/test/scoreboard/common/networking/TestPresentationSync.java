@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking;
+
+import java.util.Random;
+import scoreboard.common.Globals;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.networking.ClockSync;
+import scoreboard.common.networking.JitterBuffer;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.common.networking.SocketClient;
+import scoreboard.common.networking.SocketListener;
+import scoreboard.fx2.framework.XMLSpec;
+import test.scoreboard.Checks;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Checks synchronized presentation end to end over loopback: a master
+ * MultipleSocketWriter stamps updates with a presentation time (as with
+ * -syncDelay) and several slaves, each with its own ClockSync and
+ * JitterBuffer, present them.  Every slave delays each update by a random
+ * amount before it reaches the buffer, to stand in for network and
+ * scheduling jitter.  For each update the spread between the first and
+ * the last slave is reported both at arrival and at presentation.
+ *
+ * The ClockSync estimator is also checked against pings answered by a
+ * simulated master whose clock is skewed and whose answers are delayed
+ * asymmetrically, and against a reconnection to a master with another
+ * clock.
+ *
+ *     java test.scoreboard.common.networking.TestPresentationSync
+ *         [-port:N] [-slaves:N] [-updates:N] [-syncDelay:MSEC]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestPresentationSync {
+
+    private static final int MAX_JITTER_MILLIS = 20;
+    /*
+     * Within one frame at 60 fps, for the worst updates, and well within
+     * for the typical one.  All the slaves share this host's CPUs here;
+     * on real slaves, one to a host, the spread is down to scheduling.
+     */
+    private static final long MAX_SPREAD_MICROS = 16667;
+    private static final long MAX_MEDIAN_SPREAD_MICROS = 1000;
+
+    static class Slave implements SocketListener {
+        final ClockSync clockSync = new ClockSync();
+        final SocketClient socketClient;
+        final long[] arrived;
+        final long[] presented;
+        final Random random;
+        final JitterBuffer jitterBuffer = new JitterBuffer() {
+            @Override
+            public void present(String line) {
+                presented[index(line)] = ClockSync.now();
+            }
+        };
+
+        Slave(int port, int updates, long seed) {
+            arrived = new long[updates];
+            presented = new long[updates];
+            random = new Random(seed);
+            socketClient = new SocketClient(this, "localhost", port);
+        }
+
+        public void onMessage(String line) {
+            long readTime = ClockSync.now();
+            if (ClockSync.isPong(line)) {
+                clockSync.pongReceived(line, readTime);
+                return;
+            }
+            try {
+                Thread.sleep(random.nextInt(MAX_JITTER_MILLIS + 1));
+            } catch (InterruptedException e) {
+            }
+            arrived[index(line)] = ClockSync.now();
+            jitterBuffer.post(line,
+                    clockSync.toLocal(XMLSpec.getPresentationTime(line)));
+        }
+
+        public void onClosedStatus(boolean isClosed) {
+            if (!isClosed) {
+                clockSync.start(socketClient);
+            } else {
+                clockSync.stop();
+            }
+        }
+    }
+
+    /*
+     * The updates' values are their indexes
+     */
+    private static int index(String line) {
+        int start = line.indexOf(XMLSpec.START_OVERALLVALUE) +
+                XMLSpec.START_OVERALLVALUE.length();
+        return Integer.parseInt(line.substring(start,
+                line.indexOf(XMLSpec.END_OVERALLVALUE)));
+    }
+
+    private static void checkEstimator() {
+        Random random = new Random(1);
+        long skew = 3000000;
+        ClockSync clockSync = new ClockSync();
+        long maxAsymmetry = 0;
+        long slave = 1000000;
+        for (int i = 0; i < 8; i++) {
+            long out = 200 + random.nextInt(5000);
+            long back = 200 + random.nextInt(5000);
+            maxAsymmetry = Math.max(maxAsymmetry, Math.abs(out - back));
+            String pong = ClockSync.pongStr(ClockSync.pingStr(slave),
+                    slave + skew + out);
+            clockSync.pongReceived(pong, slave + out + back);
+            slave += 100000;
+        }
+        long error = Math.abs(clockSync.getOffset() - skew);
+        System.out.println("     skew " + skew + " usec, estimated " +
+                clockSync.getOffset() + " usec, round trip " +
+                clockSync.getRoundTrip() + " usec");
+        check("offset within half the best round trip",
+                error <= clockSync.getRoundTrip() / 2);
+        check("offset taken from the shortest round trip",
+                error <= maxAsymmetry / 2);
+
+        /*
+         * A restarted master, further away: the old samples, with their
+         * shorter round trips, must not win
+         */
+        clockSync.reset();
+        check("not synced after a reconnection", !clockSync.isSynced());
+        long newSkew = -skew;
+        String pong = ClockSync.pongStr(ClockSync.pingStr(slave),
+                slave + newSkew + 20000);
+        clockSync.pongReceived(pong, slave + 40000);
+        check("offset taken from the new master",
+                clockSync.isSynced() && clockSync.getOffset() == newSkew);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 2311;
+        int numSlaves = 4;
+        int updates = 100;
+        Globals.syncDelay = 40;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg.length < 2) {
+                continue;
+            }
+            if (subarg[0].equals("-port")) {
+                port = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-slaves")) {
+                numSlaves = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-updates")) {
+                updates = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-syncDelay")) {
+                Globals.syncDelay = Integer.parseInt(subarg[1]);
+            }
+        }
+
+        checkEstimator();
+
+        MultipleSocketWriter master = new MultipleSocketWriter(port) {
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+        };
+        new Thread(master).start();
+        Thread.sleep(200);
+        Slave[] slaves = new Slave[numSlaves];
+        for (int i = 0; i < numSlaves; i++) {
+            slaves[i] = new Slave(port, updates, i);
+            slaves[i].socketClient.connect();
+        }
+        /*
+         * Long enough for the fast pings to have been answered
+         */
+        Thread.sleep(1500);
+        for (int i = 0; i < numSlaves; i++) {
+            ClockSync clockSync = slaves[i].clockSync;
+            check("slave " + i + " synced, offset " + clockSync.getOffset() +
+                    " usec, round trip " + clockSync.getRoundTrip() + " usec",
+                    clockSync.isSynced() && Math.abs(clockSync.getOffset()) <=
+                    clockSync.getRoundTrip());
+        }
+
+        for (int i = 0; i < updates; i++) {
+            master.postUpdate(XMLSpec.updateStr("clock", i));
+            Thread.sleep(MAX_JITTER_MILLIS * 2);
+        }
+        Thread.sleep(Globals.syncDelay + MAX_JITTER_MILLIS * 2);
+
+        Histogram arrivalSpread = new Histogram("arrival spread");
+        Histogram presentSpread = new Histogram("presentation spread");
+        long late = 0;
+        for (int u = 0; u < updates; u++) {
+            long firstArrival = Long.MAX_VALUE, lastArrival = 0;
+            long firstPresent = Long.MAX_VALUE, lastPresent = 0;
+            for (Slave slave : slaves) {
+                firstArrival = Math.min(firstArrival, slave.arrived[u]);
+                lastArrival = Math.max(lastArrival, slave.arrived[u]);
+                firstPresent = Math.min(firstPresent, slave.presented[u]);
+                lastPresent = Math.max(lastPresent, slave.presented[u]);
+            }
+            arrivalSpread.record(lastArrival - firstArrival);
+            presentSpread.record(lastPresent - firstPresent);
+        }
+        for (Slave slave : slaves) {
+            late += slave.jitterBuffer.getLate();
+            slave.socketClient.shutdown();
+        }
+        master.shutdown();
+        System.out.println("     usec " + arrivalSpread);
+        System.out.println("     usec " + presentSpread);
+        check("no update arrived after its presentation time", late == 0);
+        check("median presentation spread under " +
+                MAX_MEDIAN_SPREAD_MICROS + " usec",
+                presentSpread.getPercentile(50) < MAX_MEDIAN_SPREAD_MICROS);
+        check("p99 presentation spread under " + MAX_SPREAD_MICROS + " usec",
+                presentSpread.getPercentile(99) < MAX_SPREAD_MICROS);
+
+        Checks.exit();
+    }
+}
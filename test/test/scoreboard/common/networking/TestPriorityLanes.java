@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.common.networking.UpdateQueue;
+import scoreboard.fx2.framework.XMLSpec;
+import test.scoreboard.Checks;
+import static scoreboard.common.Constants.PRIORITY_CLOCK;
+import static scoreboard.common.Constants.PRIORITY_CRITICAL;
+import static scoreboard.common.Constants.PRIORITY_EVENT;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Checks that a horn posted behind a backlog of clock ticks reaches a
+ * slave ahead of them.  The slave reads one line a millisecond through a
+ * small receive buffer, like a slave on a slow link, so the master's
+ * listener queue backs up.  The same run is then repeated with the horn
+ * posted as a clock tick, i.e. strictly in order, for comparison.
+ *
+ *     java test.scoreboard.common.networking.TestPriorityLanes
+ *         [-port:N] [-backlog:N]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestPriorityLanes {
+
+    private static final String HORN = XMLSpec.updateStr("horn", 1);
+
+    private static void checkUpdateQueue() {
+        UpdateQueue queue = new UpdateQueue(2);
+        queue.offer("clock 1", PRIORITY_CLOCK, 1);
+        queue.offer("clock 2", PRIORITY_CLOCK, 2);
+        check("full priority refuses more",
+                !queue.offer("clock 3", PRIORITY_CLOCK, 3));
+        queue.offer("score", PRIORITY_EVENT, 4);
+        queue.offer("horn", PRIORITY_CRITICAL, 5);
+        StringBuilder order = new StringBuilder();
+        String line;
+        while ((line = queue.poll()) != null) {
+            order.append(line).append('/').append(queue.getPolledStamp()).
+                    append(' ');
+        }
+        check("most urgent first, in order within a priority: " + order,
+                order.toString().equals(
+                "horn/5 score/4 clock 1/1 clock 2/2 "));
+    }
+
+    /*
+     * Returns how many clock ticks reached the slave after the horn
+     */
+    private static int run(int port, int backlog, int hornPriority)
+            throws Exception {
+        MultipleSocketWriter master = new MultipleSocketWriter(port) {
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+        };
+        new Thread(master).start();
+        Thread.sleep(200);
+        Socket slave = new Socket();
+        slave.setReceiveBufferSize(4096);
+        slave.connect(new InetSocketAddress("localhost", port));
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(slave.getInputStream()));
+        while (master.getSubscriberCount() == 0) {
+            Thread.sleep(10);
+        }
+
+        for (int i = 0; i < backlog; i++) {
+            master.postUpdate(XMLSpec.updateStr("clock", i), PRIORITY_CLOCK);
+        }
+        Thread.sleep(50);
+        long hornPosted = System.nanoTime();
+        master.postUpdate(HORN, hornPriority);
+
+        long hornLatency = 0;
+        int ticksAfterHorn = 0;
+        for (int i = 0; i <= backlog; i++) {
+            String line = reader.readLine();
+            if (line.equals(HORN)) {
+                hornLatency = (System.nanoTime() - hornPosted) / 1000000;
+            } else if (hornLatency != 0) {
+                ticksAfterHorn++;
+            }
+            Thread.sleep(1);
+        }
+        String[] latency = master.getWriteLatency();
+        slave.close();
+        master.shutdown();
+
+        System.out.println("     horn " +
+                (hornPriority == PRIORITY_CRITICAL ? "critical" : "in order") +
+                ": reached slave after " + hornLatency + " msec, ahead of " +
+                ticksAfterHorn + " of " + backlog + " clock ticks");
+        for (String l : latency) {
+            System.out.println("       write usec " + l);
+        }
+        return ticksAfterHorn;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 2312;
+        int backlog = 800;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg.length < 2) {
+                continue;
+            }
+            if (subarg[0].equals("-port")) {
+                port = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-backlog")) {
+                backlog = Integer.parseInt(subarg[1]);
+            }
+        }
+        checkUpdateQueue();
+        int jumped = run(port, backlog, PRIORITY_CRITICAL);
+        int inOrder = run(port + 1, backlog, PRIORITY_CLOCK);
+        check("critical horn jumped most of the backlog",
+                jumped > backlog / 2);
+        check("horn in order jumped nothing", inOrder == 0);
+
+        Checks.exit();
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking;
+
+import java.io.File;
+import java.util.Map;
+import scoreboard.common.Globals;
+import scoreboard.common.networking.SharedMemoryReader;
+import scoreboard.common.networking.SharedMemoryWriter;
+import scoreboard.fx2.framework.XMLSpec;
+import test.scoreboard.Checks;
+import static scoreboard.common.Constants.SHM_RING_SLOTS;
+import static scoreboard.common.Constants.SHM_STATE_SLOTS;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Checks the shared memory transport (see SharedMemoryWriter) through a
+ * temporary file: that a reader sees the latest update to each variable
+ * in the state block, and every update posted after it opened in order,
+ * that one falling more than a ring's worth behind skips ahead and counts
+ * what it missed, that a reader following a writer on another thread gets
+ * every update intact, that a restarted writer is followed from its
+ * first update, and that what is published carries none of the stamps
+ * updates are sent with.
+ *
+ *     java test.scoreboard.common.networking.TestSharedMemory
+ *         [-updates:N]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestSharedMemory {
+
+    private static final String[] NAMES =
+            { "clock", "homeScore", "guestScore", "period" };
+
+    private static long id(String update) {
+        int start = update.indexOf('.', update.indexOf(XMLSpec.START_ID));
+        return Long.parseLong(update.substring(start + 1,
+                update.indexOf(XMLSpec.END_ID)));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int updates = 1000000;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-updates")) {
+                updates = Integer.parseInt(subarg[1]);
+            }
+        }
+        Globals.dualTransport = true;
+        Globals.syncDelay = 100;
+        String plain = XMLSpec.plainUpdateStr("clock", "600");
+        check("stamps stripped from a sent update",
+                plain.equals(XMLSpec.unstamped(
+                        XMLSpec.updateStr("clock", 600, 12345L))) &&
+                plain.equals(XMLSpec.unstamped(plain)));
+        String first = XMLSpec.updateStr("clock", 600);
+        XMLSpec.plainUpdateStr("clock", "600");
+        String second = XMLSpec.updateStr("clock", 600);
+        check("plain update takes no id",
+                !plain.contains(XMLSpec.START_ID) &&
+                !plain.contains(XMLSpec.START_AT) &&
+                id(second) == id(first) + 1);
+        Globals.dualTransport = false;
+        Globals.syncDelay = 0;
+
+        File file = File.createTempFile("scoreboard", ".shm");
+        file.deleteOnExit();
+        String path = file.getPath();
+
+        final SharedMemoryWriter writer = new SharedMemoryWriter(path);
+        writer.post("homeScore", XMLSpec.updateStr("homeScore", 1));
+        SharedMemoryReader reader = new SharedMemoryReader(path);
+        writer.post("homeScore", XMLSpec.updateStr("homeScore", 2));
+        writer.post("clock", XMLSpec.updateStr("clock", 600));
+        writer.post(null, XMLSpec.updateStr("horn", 1));
+
+        Map<String, String> state = reader.readState();
+        check("state has the latest of each variable",
+                state.size() == 2 &&
+                XMLSpec.updateStr("homeScore", 2).equals(
+                        state.get("homeScore")) &&
+                XMLSpec.updateStr("clock", 600).equals(state.get("clock")));
+        check("state looked up by name",
+                XMLSpec.updateStr("clock", 600).equals(
+                        reader.readState("clock")) &&
+                reader.readState("period") == null);
+        check("updates since opening, in order",
+                XMLSpec.updateStr("homeScore", 2).equals(reader.poll()) &&
+                XMLSpec.updateStr("clock", 600).equals(reader.poll()) &&
+                XMLSpec.updateStr("horn", 1).equals(reader.poll()) &&
+                reader.poll() == null);
+
+        for (int i = 0; i < SHM_RING_SLOTS + 10; i++) {
+            writer.post("clock", XMLSpec.updateStr("clock", i));
+        }
+        first = reader.poll();
+        check("reader lapped skips to the oldest update left",
+                XMLSpec.updateStr("clock", 10).equals(first) &&
+                reader.getLost() == 10);
+        while (reader.poll() != null) {
+        }
+
+        for (int i = 0; i < SHM_STATE_SLOTS + 1; i++) {
+            writer.post("var" + i, XMLSpec.updateStr("var" + i, i));
+        }
+        check("state block holds at most SHM_STATE_SLOTS variables",
+                reader.readState().size() == SHM_STATE_SLOTS);
+        while (reader.poll() != null) {
+        }
+
+        /*
+         * Concurrent: the reader must see every update, in order and
+         * intact, or count it lost
+         */
+        final int total = updates;
+        Thread writerThread = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < total; i++) {
+                    String name = NAMES[i % NAMES.length];
+                    writer.post(name, XMLSpec.updateStr(name, i));
+                }
+            }
+        });
+        long lostBefore = reader.getLost();
+        writerThread.start();
+        byte[] buf = new byte[reader.getMaxLineLength()];
+        int expected = 0;
+        int received = 0;
+        boolean intact = true;
+        while (expected < total) {
+            boolean writerDone = !writerThread.isAlive();
+            int length = reader.poll(buf);
+            if (length == 0) {
+                if (writerDone) {
+                    break;
+                }
+                continue;
+            }
+            String line = new String(buf, 0, length, "US-ASCII");
+            int value = value(line);
+            String name = NAMES[value % NAMES.length];
+            if (value < expected ||
+                    !line.equals(XMLSpec.updateStr(name, value))) {
+                intact = false;
+                break;
+            }
+            expected = value + 1;
+            received++;
+        }
+        writerThread.join();
+        long lost = reader.getLost() - lostBefore;
+        System.out.println("concurrent: received " + received + ", lost " +
+                lost + " of " + total);
+        check("concurrent updates intact and in order", intact);
+        check("concurrent updates received or counted lost",
+                received + lost == total);
+
+        SharedMemoryWriter restarted = new SharedMemoryWriter(path);
+        restarted.post("period", XMLSpec.updateStr("period", 2));
+        check("restarted writer followed from its first update",
+                XMLSpec.updateStr("period", 2).equals(reader.poll()) &&
+                reader.readState().size() == 1);
+
+        Checks.exit();
+    }
+
+    private static int value(String line) {
+        int from = line.indexOf(XMLSpec.START_OVERALLVALUE) +
+                XMLSpec.START_OVERALLVALUE.length();
+        return Integer.parseInt(line.substring(from,
+                line.indexOf(XMLSpec.END_OVERALLVALUE, from)));
+    }
+}
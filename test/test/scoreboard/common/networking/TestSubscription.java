@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.common.networking.Subscription;
+import scoreboard.fx2.framework.XMLSpec;
+import test.scoreboard.Checks;
+import static scoreboard.common.Constants.PRIORITY_CLOCK;
+import static scoreboard.common.Constants.PRIORITY_EVENT;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Connects three slaves to one master: a full display that sends no
+ * subscription, a clock-only display and a score-only display, each
+ * subscribing to what it shows.  A game's worth of clock ticks and score,
+ * shots and penalty updates is posted, plus the horn, and each slave's
+ * share of it counted.  Checks that the partial displays are sent exactly
+ * the updates they subscribed to, and prints the bytes each was sent.
+ *
+ *     java test.scoreboard.common.networking.TestSubscription
+ *         [-port:N] [-updates:N]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestSubscription {
+
+    private static final String[] NAMES = { "clock", "homeScore",
+        "guestScore", "homeShotsOnGoal", "guestShotsOnGoal",
+        "homePenalty1", "homePenalty1playerNumber", "horn" };
+
+    /*
+     * A slave counting the updates it reads to each variable
+     */
+    private static class Slave extends Thread {
+        final Socket socket = new Socket();
+        final int[] counts = new int[NAMES.length];
+        long bytes = 0;
+
+        Slave(int port, String subscribeStr) throws Exception {
+            socket.connect(new InetSocketAddress("localhost", port));
+            if (subscribeStr != null) {
+                PrintWriter writer = new PrintWriter(socket.getOutputStream());
+                writer.println(subscribeStr);
+                writer.flush();
+            }
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream()));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String name = line.substring(XMLSpec.START_UPDATE.length()
+                            + XMLSpec.START_NAME.length(),
+                            line.indexOf(XMLSpec.END_NAME));
+                    synchronized (this) {
+                        counts[Arrays.asList(NAMES).indexOf(name)]++;
+                        bytes += line.length() + 1;
+                    }
+                }
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 2317;
+        int updates = 12000;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg.length < 2) {
+                continue;
+            }
+            if (subarg[0].equals("-port")) {
+                port = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-updates")) {
+                updates = Integer.parseInt(subarg[1]);
+            }
+        }
+        Subscription parsed = Subscription.parse(
+                Subscription.subscribeStr(Arrays.asList("clock", "horn")));
+        check("subscription round trip", parsed != null &&
+                parsed.size() == 2 && parsed.includes("clock") &&
+                !parsed.includes("homeScore") && parsed.includes(null));
+        check("malformed subscription rejected",
+                Subscription.parse("<subscribe>clock") == null);
+
+        MultipleSocketWriter master = new MultipleSocketWriter(port) {
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+        };
+        new Thread(master).start();
+        Thread.sleep(200);
+        Slave full = new Slave(port, null);
+        Slave clockOnly = new Slave(port, Subscription.subscribeStr(
+                Arrays.asList("clock", "horn")));
+        Slave scoreOnly = new Slave(port, Subscription.subscribeStr(
+                Arrays.asList("homeScore", "guestScore", "horn")));
+        /*
+         * Give the master time to read the subscriptions
+         */
+        Thread.sleep(300);
+
+        int[] posted = new int[NAMES.length];
+        for (int i = 0; i < updates; i++) {
+            /*
+             * Mostly clock ticks, with the odd other update
+             */
+            int n = i % 10 == 0 ? 1 + (i / 10) % (NAMES.length - 1) : 0;
+            master.postUpdate(XMLSpec.updateStr(NAMES[n], i),
+                    n == 0 ? PRIORITY_CLOCK : PRIORITY_EVENT, NAMES[n]);
+            posted[n]++;
+            if (i % 100 == 99) {
+                /*
+                 * Stay within the listeners' queues
+                 */
+                Thread.sleep(5);
+            }
+        }
+        Thread.sleep(1000);
+        long filtered = master.getUpdatesFiltered();
+        long sent = master.getMessagesSent();
+        full.socket.close();
+        clockOnly.socket.close();
+        scoreOnly.socket.close();
+        master.shutdown();
+
+        int[] clockExpected = new int[NAMES.length];
+        int[] scoreExpected = new int[NAMES.length];
+        clockExpected[0] = posted[0];
+        clockExpected[7] = posted[7];
+        scoreExpected[1] = posted[1];
+        scoreExpected[2] = posted[2];
+        scoreExpected[7] = posted[7];
+        synchronized (full) {
+            check("full display sent everything",
+                    Arrays.equals(full.counts, posted));
+            System.out.println("     full display  " + full.bytes + " bytes");
+        }
+        synchronized (clockOnly) {
+            check("clock-only display sent clock and horn",
+                    Arrays.equals(clockOnly.counts, clockExpected));
+            System.out.println("     clock only    " + clockOnly.bytes +
+                    " bytes");
+        }
+        synchronized (scoreOnly) {
+            check("score-only display sent scores and horn",
+                    Arrays.equals(scoreOnly.counts, scoreExpected));
+            System.out.println("     score only    " + scoreOnly.bytes +
+                    " bytes");
+        }
+        check("filtered and sent add up",
+                filtered + sent == 3L * updates);
+        Checks.exit();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking.bench;
+
+import java.net.DatagramSocket;
+import java.util.Arrays;
+import java.util.Random;
+import scoreboard.common.networking.FecDecoder;
+import scoreboard.common.networking.FecEncoder;
+import scoreboard.fx2.framework.XMLSpec;
+import test.scoreboard.Checks;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Benchmarks forward error correction (see FecEncoder) against simulated
+ * loss, with no network involved: the encoder's datagrams go straight to
+ * a FecDecoder, through a channel that drops them either at random or in
+ * bursts (a two state Gilbert-Elliott model, with the same average loss).
+ * For each group size and interleave depth one line is printed:
+ *
+ *   K, D      - group size and interleave depth (K 0 means no FEC)
+ *   pkts%     - extra datagrams sent as parity, which is what costs
+ *               airtime on a slow multicast link
+ *   bytes%    - extra bytes sent, numbering and parity
+ *   lost%     - updates neither received nor rebuilt
+ *   rebuilt%  - share of the lost updates that were rebuilt
+ *   delay     - mean datagrams sent between a lost update and its rebuild
+ *
+ * Each update names a variable of its own, so no rebuilt update is
+ * dropped as superseded and every loss counts.  Checks that parity
+ * repairs most random losses, that interleaving repairs burst losses
+ * that plain parity cannot, and that a slave follows a restarted master
+ * numbering from 0 again.
+ *
+ *   java test.scoreboard.common.networking.bench.FecBench
+ *       [-updates:N] [-loss:PERCENT] [-burst:MEAN_BURST_LENGTH]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class FecBench {
+
+    private static final int[][] CONFIGS = {
+        { 0, 1 }, { 2, 1 }, { 4, 1 }, { 8, 1 }, { 4, 4 }, { 4, 8 }, { 8, 8 }
+    };
+
+    /*
+     * Gilbert-Elliott channel: in the bad state everything is lost, and a
+     * bad spell lasts burst datagrams on average
+     */
+    private static class Channel {
+        final Random random = new Random(42);
+        final double enterBad;
+        final double leaveBad;
+        final double randomLoss;
+        boolean bad = false;
+
+        Channel(double loss, double burst) {
+            if (burst <= 1) {
+                randomLoss = loss;
+                enterBad = 0;
+                leaveBad = 1;
+            } else {
+                randomLoss = 0;
+                leaveBad = 1 / burst;
+                enterBad = loss * leaveBad / (1 - loss);
+            }
+        }
+
+        boolean lose() {
+            if (randomLoss > 0) {
+                return random.nextDouble() < randomLoss;
+            }
+            bad = bad ? random.nextDouble() >= leaveBad :
+                    random.nextDouble() < enterBad;
+            return bad;
+        }
+    }
+
+    /*
+     * One run of updates through one encoder, channel and decoder
+     */
+    private static class Run extends FecEncoder {
+        final Channel channel;
+        final FecDecoder decoder = new FecDecoder();
+        final boolean[] got;
+        final long[] sentAt;
+        long sentBytes = 0;
+        long datagrams = 0;
+        long delaySum = 0;
+        int rebuilt = 0;
+
+        Run(int groupSize, int depth, Channel channel, int updates) {
+            super(null, null, 0, groupSize, depth);
+            close();
+            this.channel = channel;
+            got = new boolean[updates];
+            sentAt = new long[updates];
+        }
+
+        void sendUpdate(int i) throws Exception {
+            sentAt[i] = datagrams;
+            send(null, update(i).getBytes());
+        }
+
+        @Override
+        protected void transmit(DatagramSocket from, byte[] data,
+                int length) {
+            datagrams++;
+            sentBytes += length;
+            if (channel.lose()) {
+                return;
+            }
+            String msg = decoder.received(Arrays.copyOf(data, length),
+                    length);
+            if (msg != null) {
+                got[value(msg)] = true;
+            }
+            while ((msg = decoder.pollRecovered()) != null) {
+                int i = value(msg);
+                got[i] = true;
+                rebuilt++;
+                delaySum += datagrams - sentAt[i];
+            }
+        }
+
+        private static int value(String msg) {
+            int from = msg.indexOf(XMLSpec.START_OVERALLVALUE) +
+                    XMLSpec.START_OVERALLVALUE.length();
+            return Integer.parseInt(msg.substring(from,
+                    msg.indexOf(XMLSpec.END_OVERALLVALUE, from)));
+        }
+    }
+
+    /*
+     * An encoder feeding a decoder shared with others, without loss
+     */
+    private static class Relay extends FecEncoder {
+        final FecDecoder decoder;
+        int delivered = 0;
+
+        Relay(FecDecoder decoder) {
+            super(null, null, 0, 4, 1);
+            close();
+            this.decoder = decoder;
+        }
+
+        @Override
+        protected void transmit(DatagramSocket from, byte[] data,
+                int length) {
+            if (decoder.received(Arrays.copyOf(data, length),
+                    length) != null) {
+                delivered++;
+            }
+        }
+    }
+
+    /*
+     * Returns the number of a restarted master's updates its slave passes
+     * on, after the first run sent updates of its own
+     */
+    private static int restart(int updates) throws Exception {
+        FecDecoder decoder = new FecDecoder();
+        Relay first = new Relay(decoder);
+        for (int i = 0; i < updates; i++) {
+            first.send(null, update(i).getBytes());
+        }
+        /*
+         * Make sure the restarted master has a later epoch
+         */
+        Thread.sleep(2);
+        Relay restarted = new Relay(decoder);
+        for (int i = 0; i < updates; i++) {
+            restarted.send(null, update(i).getBytes());
+        }
+        return restarted.delivered;
+    }
+
+    private static String update(int i) {
+        return XMLSpec.updateStr("var" + i, i);
+    }
+
+    /*
+     * Returns { pkts%, lost% }
+     */
+    private static double[] run(int groupSize, int depth, double loss,
+            double burst, int updates, long plainBytes) throws Exception {
+        Channel channel = new Channel(loss, burst);
+        int lost = 0;
+        double packets = 0;
+        double bytes = 0;
+        double rebuiltPercent = 0;
+        double delay = 0;
+        if (groupSize == 0) {
+            for (int i = 0; i < updates; i++) {
+                if (channel.lose()) {
+                    lost++;
+                }
+            }
+        } else {
+            Run run = new Run(groupSize, depth, channel, updates);
+            for (int i = 0; i < updates; i++) {
+                run.sendUpdate(i);
+            }
+            run.flush();
+            for (boolean g : run.got) {
+                if (!g) {
+                    lost++;
+                }
+            }
+            packets = 100.0 * (run.datagrams - updates) / updates;
+            bytes = 100.0 * (run.sentBytes - plainBytes) / plainBytes;
+            if (run.rebuilt > 0) {
+                rebuiltPercent = 100.0 * run.rebuilt / (lost + run.rebuilt);
+                delay = (double) run.delaySum / run.rebuilt;
+            }
+        }
+        double lostPercent = 100.0 * lost / updates;
+        System.out.println(String.format(
+                "%3d %3d %6.1f %7.1f %7.2f %9.1f %6.1f", groupSize, depth,
+                packets, bytes, lostPercent, rebuiltPercent, delay));
+        return new double[] { packets, lostPercent };
+    }
+
+    public static void main(String[] args) throws Exception {
+        int updates = 100000;
+        double loss = 0.05;
+        double burst = 4;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-updates")) {
+                updates = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-loss")) {
+                loss = Double.parseDouble(subarg[1]) / 100;
+            } else if (subarg[0].equals("-burst")) {
+                burst = Double.parseDouble(subarg[1]);
+            }
+        }
+        long plainBytes = 0;
+        for (int i = 0; i < updates; i++) {
+            plainBytes += update(i).length();
+        }
+        double[][] random = new double[CONFIGS.length][];
+        double[][] bursty = new double[CONFIGS.length][];
+        System.out.println("random loss " + loss * 100 + "%");
+        System.out.println("  K   D  pkts%  bytes%   lost%  rebuilt%  delay");
+        for (int i = 0; i < CONFIGS.length; i++) {
+            random[i] = run(CONFIGS[i][0], CONFIGS[i][1], loss, 1, updates,
+                    plainBytes);
+        }
+        System.out.println("burst loss " + loss * 100 + "%, mean burst " +
+                burst);
+        System.out.println("  K   D  pkts%  bytes%   lost%  rebuilt%  delay");
+        for (int i = 0; i < CONFIGS.length; i++) {
+            bursty[i] = run(CONFIGS[i][0], CONFIGS[i][1], loss, burst,
+                    updates, plainBytes);
+        }
+        check("K=4 repairs at least 3/4 of random losses",
+                random[2][1] < random[0][1] / 4);
+        check("K=4 costs at most 1 datagram in 4", random[2][0] <= 25.01);
+        check("interleaving 8 deep repairs at least half of burst losses",
+                bursty[5][1] < bursty[0][1] / 2);
+        check("interleaving beats plain parity on burst losses",
+                bursty[5][1] < bursty[2][1]);
+        check("restarted master's updates all passed on",
+                restart(300) == 300);
+        Checks.exit();
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import scoreboard.common.Globals;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.metrics.UpdateTracer;
+import scoreboard.common.networking.MulticastConnection;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.common.networking.SocketClient;
+import scoreboard.common.networking.SocketListener;
+import scoreboard.fx2.framework.XMLSpec;
+import static scoreboard.common.Constants.DEFAULT_PORT;
+import static scoreboard.common.Constants.DEFAULT_SESSION_ADDR;
+
+/*
+ * Automated loopback benchmark for the scoreboard transports, meant as a
+ * regression gate for transport changes.  A MultipleSocketWriter (or a
+ * MulticastConnection) master is started on loopback, N reader clients
+ * are attached and the master sends real update messages at a fixed rate.
+ * Each message carries a trace stamp, so every client can measure its own
+ * delivery latency.  For each N in the sweep one line is printed:
+ *
+ *   clients     - number of reader clients
+ *   sent/s      - update rate the master achieved
+ *   deliv/s     - updates delivered per second, summed over all clients
+ *   deliv%      - percentage of the expected deliveries that arrived
+ *   p50,p99,max - delivery latency over all deliveries, microseconds
+ *   worst p99   - highest p99 of any single client, microseconds
+ *   threads     - live JVM threads while the clients were attached
+ *   heap MB     - heap in use after GC while the clients were attached
+ *
+ * Usage (all arguments optional):
+ *
+ *   java test.scoreboard.common.networking.bench.LoopbackBench
+ *       -transport:[socket|multicast]  (default socket)
+ *       -clients:1,10,100,1000         (sweep, default as shown)
+ *       -rate:UPDATES_PER_SECOND       (default 100)
+ *       -seconds:SECONDS_PER_STEP      (default 10)
+ *       -port:PORT_NUMBER              (default 2011)
+ *       -MulticastAddr:IP_ADDRESS      (default 227.27.27.27)
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class LoopbackBench {
+
+    private static final int CONNECT_BATCH = 50;
+    private static final long DRAIN_MILLIS = 5000;
+
+    private static String transport = "socket";
+    private static int[] clientSweep = { 1, 10, 100, 1000 };
+    private static int rate = 100;
+    private static int seconds = 10;
+    private static int port = DEFAULT_PORT;
+    private static String sessionAddr = DEFAULT_SESSION_ADDR;
+
+    /*
+     * Latency and delivery bookkeeping shared by both client types
+     */
+    static class Delivery {
+        final Histogram latency = new Histogram("latency");
+        final AtomicLong received = new AtomicLong();
+
+        void onUpdate(String line) {
+            long stamp = UpdateTracer.parseTraceStamp(line);
+            if (stamp >= 0) {
+                latency.record(UpdateTracer.now() - stamp);
+                received.incrementAndGet();
+            }
+        }
+    }
+
+    interface Transport {
+        void start() throws Exception;
+        void addClients(int count) throws Exception;
+        void send(String update);
+        ArrayList<Delivery> getDeliveries();
+        void stop();
+    }
+
+    /*
+     * MultipleSocketWriter master with SocketClient readers
+     */
+    static class SocketTransport implements Transport {
+
+        static class Writer extends MultipleSocketWriter {
+            Writer(int port) {
+                super(port);
+            }
+
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+
+            int getNumListeners() {
+                return updateListeners.size();
+            }
+        }
+
+        static class Reader extends Delivery implements SocketListener {
+            volatile boolean opened = false;
+            volatile boolean failed = false;
+
+            @Override
+            public void onMessage(String line) {
+                onUpdate(line);
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+                if (!isClosed) {
+                    opened = true;
+                } else if (!opened) {
+                    failed = true;
+                }
+            }
+        }
+
+        private final int port;
+        private Writer writer;
+        private ArrayList<Delivery> readers = new ArrayList<Delivery>();
+        private ArrayList<SocketClient> clients = new ArrayList<SocketClient>();
+
+        SocketTransport(int port) {
+            this.port = port;
+        }
+
+        public void start() throws Exception {
+            writer = new Writer(port);
+            Thread writerThread = new Thread(writer);
+            writerThread.setDaemon(true);
+            writerThread.start();
+            Thread.sleep(200);
+        }
+
+        private boolean connect(Reader reader) throws Exception {
+            SocketClient client =
+                    new SocketClient(reader, "localhost", port);
+            client.connect();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!reader.opened && !reader.failed &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            if (reader.opened) {
+                clients.add(client);
+                return true;
+            }
+            client.shutdown();
+            return false;
+        }
+
+        public void addClients(int count) throws Exception {
+            int target = readers.size() + count;
+            while (readers.size() < target) {
+                Reader reader = new Reader();
+                if (connect(reader)) {
+                    readers.add(reader);
+                }
+                if (readers.size() % CONNECT_BATCH == 0) {
+                    waitForListeners(readers.size());
+                }
+            }
+            waitForListeners(target);
+        }
+
+        private void waitForListeners(int count) throws Exception {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (writer.getNumListeners() < count &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        public void send(String update) {
+            writer.postUpdate(update);
+        }
+
+        public ArrayList<Delivery> getDeliveries() {
+            return readers;
+        }
+
+        public void stop() {
+            for (SocketClient client : clients) {
+                client.shutdown();
+            }
+            writer.shutdown();
+        }
+    }
+
+    /*
+     * MulticastConnection master with MulticastConnection readers
+     */
+    static class MulticastTransport implements Transport {
+
+        static class Endpoint extends MulticastConnection {
+            final Delivery delivery;
+            volatile boolean opened = false;
+
+            Endpoint(String addr, int port, Delivery delivery) {
+                super(addr, port, 0);
+                this.delivery = delivery;
+            }
+
+            @Override
+            public void onMessage(String line) {
+                if (delivery != null) {
+                    delivery.onUpdate(line);
+                }
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+                opened = !isClosed;
+            }
+        }
+
+        private final String addr;
+        private final int port;
+        private Endpoint master;
+        private ArrayList<Delivery> deliveries = new ArrayList<Delivery>();
+        private ArrayList<Endpoint> readers = new ArrayList<Endpoint>();
+
+        MulticastTransport(String addr, int port) {
+            this.addr = addr;
+            this.port = port;
+        }
+
+        private void open(Endpoint endpoint) throws Exception {
+            endpoint.run();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!endpoint.opened &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            if (!endpoint.opened) {
+                throw new Exception("multicast socket did not open");
+            }
+        }
+
+        public void start() throws Exception {
+            master = new Endpoint(addr, port, null);
+            open(master);
+        }
+
+        public void addClients(int count) throws Exception {
+            for (int i = 0; i < count; i++) {
+                Delivery delivery = new Delivery();
+                Endpoint reader = new Endpoint(addr, port, delivery);
+                open(reader);
+                readers.add(reader);
+                deliveries.add(delivery);
+            }
+        }
+
+        public void send(String update) {
+            master.sendMessage(update);
+        }
+
+        public ArrayList<Delivery> getDeliveries() {
+            return deliveries;
+        }
+
+        public void stop() {
+            /*
+             * MulticastConnection has no public close; the reader threads
+             * are daemon-less, so the benchmark ends with System.exit()
+             * and each step uses its own port.
+             */
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void runStep(int numClients, int stepPort)
+            throws Exception {
+        Transport t = transport.equals("multicast") ?
+                new MulticastTransport(sessionAddr, stepPort) :
+                new SocketTransport(stepPort);
+        t.start();
+        t.addClients(numClients);
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        long heap = usedHeap();
+
+        long intervalNanos = 1000000000L / rate;
+        long total = (long) rate * seconds;
+        long startTime = System.nanoTime();
+        long next = startTime;
+        for (long i = 0; i < total; i++) {
+            next += intervalNanos;
+            long delay = next - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            t.send(XMLSpec.updateStr("clock", String.valueOf(i % 60000),
+                    UpdateTracer.now()));
+        }
+        long sendNanos = System.nanoTime() - startTime;
+
+        ArrayList<Delivery> deliveries = t.getDeliveries();
+        long expected = total * deliveries.size();
+        long deadline = System.currentTimeMillis() + DRAIN_MILLIS;
+        long received;
+        do {
+            received = 0;
+            for (Delivery d : deliveries) {
+                received += d.received.get();
+            }
+            if (received >= expected) {
+                break;
+            }
+            Thread.sleep(10);
+        } while (System.currentTimeMillis() < deadline);
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        Histogram all = new Histogram("all");
+        long worstP99 = 0;
+        for (Delivery d : deliveries) {
+            all.add(d.latency);
+            worstP99 = Math.max(worstP99, d.latency.getPercentile(99));
+        }
+        System.out.println(String.format(
+                "%7d %9.1f %11.1f %7.2f %9d %9d %9d %10d %8d %8d",
+                deliveries.size(), total * 1e9d / sendNanos,
+                received * 1e9d / elapsedNanos,
+                expected == 0 ? 0 : 100d * received / expected,
+                all.getPercentile(50), all.getPercentile(99), all.getMax(),
+                worstP99, threads, heap / (1024 * 1024)));
+        t.stop();
+    }
+
+    private static void parseArgs(String[] args) {
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg.length < 2) {
+                continue;
+            }
+            if (subarg[0].equals("-transport")) {
+                transport = subarg[1];
+            } else if (subarg[0].equals("-clients")) {
+                String[] counts = subarg[1].split(",");
+                clientSweep = new int[counts.length];
+                for (int i = 0; i < counts.length; i++) {
+                    clientSweep[i] = Integer.parseInt(counts[i]);
+                }
+            } else if (subarg[0].equals("-rate")) {
+                rate = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-seconds")) {
+                seconds = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-port")) {
+                port = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-MulticastAddr")) {
+                sessionAddr = subarg[1];
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        /*
+         * Don't register an MBean for every client
+         */
+        Globals.jmx = false;
+        parseArgs(args);
+        System.out.println("# transport " + transport + ", " + rate +
+                " updates/s, " + seconds + " s per step, " +
+                Runtime.getRuntime().availableProcessors() + " cpus, " +
+                System.getProperty("java.version"));
+        System.out.println(String.format(
+                "%7s %9s %11s %7s %9s %9s %9s %10s %8s %8s",
+                "clients", "sent/s", "deliv/s", "deliv%", "p50", "p99",
+                "max", "worst p99", "threads", "heap MB"));
+        for (int i = 0; i < clientSweep.length; i++) {
+            runStep(clientSweep[i], port + i);
+        }
+        System.exit(0);
+    }
+}
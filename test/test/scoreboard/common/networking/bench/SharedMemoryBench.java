@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking.bench;
+
+import java.io.File;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.networking.SharedMemoryReader;
+import scoreboard.common.networking.SharedMemoryWriter;
+import scoreboard.fx2.framework.XMLSpec;
+import test.scoreboard.Checks;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Benchmarks the shared memory transport (see SharedMemoryWriter) with a
+ * writer and a reader thread, each with its own mapping of a temporary
+ * file, as two processes would have.  Prints:
+ *
+ *   post ns      - time the writer takes to post one update, alone
+ *   burst        - updates per second posted flat out with a reader
+ *                  polling, and the share of them the reader kept up with
+ *   latency      - post to poll latency at -rate updates per second, in
+ *                  nanoseconds, each update carrying the time it was posted
+ *
+ * The reader polls with poll(byte[]), which doesn't allocate.  Latency is
+ * only checked to be under a microsecond with a CPU for each thread.
+ *
+ *   java test.scoreboard.common.networking.bench.SharedMemoryBench
+ *       [-updates:N] [-rate:UPDATES_PER_SECOND]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class SharedMemoryBench {
+
+    /*
+     * Value of an update, parsed in place
+     */
+    private static long value(byte[] buf, int length) {
+        int i = 0;
+        while (i < length && (buf[i] < '0' || buf[i] > '9')) {
+            i++;
+        }
+        long value = 0;
+        while (i < length && buf[i] >= '0' && buf[i] <= '9') {
+            value = value * 10 + (buf[i++] - '0');
+        }
+        return value;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int updates = 2000000;
+        int rate = 100000;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-updates")) {
+                updates = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-rate")) {
+                rate = Integer.parseInt(subarg[1]);
+            }
+        }
+        File file = File.createTempFile("scoreboard", ".shm");
+        file.deleteOnExit();
+        final String path = file.getPath();
+        final SharedMemoryWriter writer = new SharedMemoryWriter(path);
+        /*
+         * Prebuilt, so that only the transport is timed
+         */
+        final String[] lines = new String[1000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = XMLSpec.updateStr("clock", i);
+        }
+
+        for (int i = 0; i < updates; i++) {
+            writer.post("clock", lines[i % lines.length]);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            writer.post("clock", lines[i % lines.length]);
+        }
+        double postNanos = (double) (System.nanoTime() - start) / updates;
+        System.out.println(String.format("post ns      %8.1f", postNanos));
+
+        final SharedMemoryReader reader = new SharedMemoryReader(path);
+        final int burstUpdates = updates;
+        Thread writerThread = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < burstUpdates; i++) {
+                    writer.post("clock", lines[i % lines.length]);
+                }
+            }
+        });
+        byte[] buf = new byte[reader.getMaxLineLength()];
+        long received = 0;
+        start = System.nanoTime();
+        writerThread.start();
+        while (true) {
+            boolean writerDone = !writerThread.isAlive();
+            if (reader.poll(buf) > 0) {
+                received++;
+            } else if (writerDone) {
+                break;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("burst        %8.0f/s, %.1f%% read",
+                burstUpdates / seconds, 100.0 * received / burstUpdates));
+
+        final int paced = Math.min(updates, rate * 5);
+        final long interval = 1000000000L / rate;
+        writerThread = new Thread(new Runnable() {
+            public void run() {
+                long next = System.nanoTime();
+                for (int i = 0; i < paced; i++) {
+                    while (System.nanoTime() < next) {
+                    }
+                    writer.post("clock", XMLSpec.updateStr("clock",
+                            Long.toString(System.nanoTime())));
+                    next += interval;
+                }
+            }
+        });
+        Histogram latency = new Histogram("latency");
+        long lostBefore = reader.getLost();
+        writerThread.start();
+        while (true) {
+            boolean writerDone = !writerThread.isAlive();
+            int length = reader.poll(buf);
+            if (length > 0) {
+                latency.record(System.nanoTime() - value(buf, length));
+            } else if (writerDone) {
+                break;
+            }
+        }
+        System.out.println(String.format(
+                "latency      p50 %d  p99 %d  p99.9 %d  max %d ns",
+                latency.getPercentile(50), latency.getPercentile(99),
+                latency.getPercentile(99.9), latency.getMax()));
+
+        check("post under a microsecond", postNanos < 1000);
+        check("every update read or counted lost",
+                latency.getCount() + reader.getLost() - lostBefore ==
+                paced);
+        if (Runtime.getRuntime().availableProcessors() > 1) {
+            check("p50 latency under a microsecond",
+                    latency.getPercentile(50) < 1000);
+        } else {
+            System.out.println("(one CPU: latency is the scheduler's)");
+        }
+        Checks.exit();
+    }
+}
@@ -0,0 +1,550 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking.loadgen;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import scoreboard.common.Globals;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.metrics.UpdateTracer;
+import scoreboard.common.networking.MulticastConnection;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.fx2.framework.XMLSpec;
+import scoreboard.fx2.framework.hockey.HockeyScoreboardXMLSpec;
+import static scoreboard.fx2.framework.hockey.HockeyScoreboardXMLSpec.*;
+
+/*
+ * Capacity planning tool: how many displays can one master drive?
+ *
+ * Synthetic slaves (see SyntheticSlave, no JavaFX) are attached to a
+ * master in steps.  Every slave decodes every update with the production
+ * decoder, and after each step the tool checks that the slaves have
+ * converged to the master's state.  The ramp stops at the first step
+ * where p99 delivery latency exceeds the threshold, delivery drops below
+ * the minimum, or a slave diverges; the capacity is the last slave count
+ * that passed.  For each step one line is printed:
+ *
+ *   slaves     - number of synthetic slaves attached
+ *   upd/s      - updates per second decoded by each slave
+ *   deliv%     - percentage of the expected updates that arrived
+ *   conv       - number of slaves holding the master's state
+ *   p50,p99,max - delivery latency, milliseconds
+ *   threads    - live JVM threads in the load generator
+ *   heap MB    - heap in use after GC in the load generator
+ *
+ * By default the slaves attach to a real master on -host/-port, e.g. the
+ * Main (or MainMulticast) scoreboard with its clock running.  That master
+ * must be started with -Trace:true for latency to be measured, and since
+ * the protocol has no state refresh on connect, convergence can only be
+ * checked against the majority of the slaves for the variables they have
+ * received.  With -EmbeddedMaster:true the tool runs a headless master of
+ * its own instead, playing a synthetic game with the clock and any running
+ * penalties updated at 10 Hz; convergence is then checked against the
+ * master's own state while the game is paused.
+ *
+ * Usage (all arguments optional):
+ *
+ *   java test.scoreboard.common.networking.loadgen.LoadGenerator
+ *       -host:HOSTNAME           (master to attach to, default localhost)
+ *       -port:PORT_NUMBER        (default 2011)
+ *       -MulticastAddr:IP_ADDR   (join the multicast session instead)
+ *       -EmbeddedMaster:true     (run a headless master, default false)
+ *       -step:SLAVES             (slaves added per step, default 50)
+ *       -maxSlaves:SLAVES        (stop the ramp here, default 1000)
+ *       -stepSeconds:SECONDS     (measurement time per step, default 10)
+ *       -p99:MILLISECONDS        (latency threshold, default 100)
+ *       -minDelivery:PERCENT     (delivery threshold, default 99)
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class LoadGenerator {
+
+    private static final long CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long DRAIN_MILLIS = 5000;
+    private static final long TICK_NANOS = 100000000L;
+
+    private static boolean embeddedMaster = false;
+    private static int step = 50;
+    private static int maxSlaves = 1000;
+    private static int stepSeconds = 10;
+    private static double p99Threshold = 100;
+    private static double minDelivery = 99;
+
+    private static ArrayList<SyntheticSlave> slaves =
+            new ArrayList<SyntheticSlave>();
+
+    /*
+     * Headless master sending a synthetic game.  The clock runs down at
+     * 10 Hz, and shots, goals and penalties happen at random.  Every
+     * update carries a trace stamp.
+     */
+    static class EmbeddedMaster implements Runnable {
+
+        static class Writer extends MultipleSocketWriter {
+            Writer(int port) {
+                super(port);
+            }
+
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+        }
+
+        static class Sender extends MulticastConnection {
+            volatile boolean opened = false;
+
+            Sender(String addr, int port) {
+                super(addr, port, 0);
+            }
+
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+                opened = !isClosed;
+            }
+        }
+
+        private final Map<String, String> state =
+                new LinkedHashMap<String, String>();
+        private final AtomicLong sent = new AtomicLong();
+        private final Random random = new Random(2011);
+        private Writer writer;
+        private Sender sender;
+        private boolean paused = false;
+
+        private int clock = 12000;
+        private int period = 1;
+        private int homeScore, guestScore;
+        private int homeShots, guestShots;
+        private int[] penalty = new int[4];
+        private final String[] penaltyNames = {
+            NAME_homePenalty1, NAME_guestPenalty1,
+            NAME_homePenalty2, NAME_guestPenalty2
+        };
+        private final String[] playerNumberNames = {
+            NAME_homePenalty1playerNumber, NAME_guestPenalty1playerNumber,
+            NAME_homePenalty2playerNumber, NAME_guestPenalty2playerNumber
+        };
+
+        void start() throws Exception {
+            if (Globals.useIPSocket) {
+                writer = new Writer(Globals.port);
+                Thread writerThread = new Thread(writer);
+                writerThread.setDaemon(true);
+                writerThread.start();
+            } else {
+                sender = new Sender(Globals.sessionAddr, Globals.port);
+                sender.run();
+            }
+            Thread.sleep(200);
+            set(NAME_clock, clock);
+            set(NAME_period, period);
+            set(NAME_homeScore, homeScore);
+            set(NAME_guestScore, guestScore);
+            set(NAME_homeShotsOnGoal, homeShots);
+            set(NAME_guestShotsOnGoal, guestShots);
+            for (int i = 0; i < penalty.length; i++) {
+                set(penaltyNames[i], 0);
+                set(playerNumberNames[i], 0);
+            }
+            Thread gameThread = new Thread(this, "EmbeddedMaster");
+            gameThread.setDaemon(true);
+            gameThread.start();
+        }
+
+        private synchronized void set(String name, int value) {
+            String valueStr = String.valueOf(value);
+            state.put(name, valueStr);
+            send(XMLSpec.updateStr(name, valueStr, UpdateTracer.now()));
+        }
+
+        private void send(String update) {
+            if (writer != null) {
+                writer.postUpdate(update);
+            } else {
+                sender.sendMessage(update);
+            }
+            sent.incrementAndGet();
+        }
+
+        /*
+         * The protocol has no state refresh for a slave that connects
+         * mid-game, so the whole state is sent again after each step's
+         * slaves have attached.
+         */
+        synchronized void refresh() {
+            for (Map.Entry<String, String> entry : state.entrySet()) {
+                send(XMLSpec.updateStr(entry.getKey(), entry.getValue(),
+                        UpdateTracer.now()));
+            }
+        }
+
+        synchronized Map<String, String> getState() {
+            return new HashMap<String, String>(state);
+        }
+
+        long getSent() {
+            return sent.get();
+        }
+
+        synchronized void setPaused(boolean paused) {
+            this.paused = paused;
+        }
+
+        private void tick() {
+            clock--;
+            if (clock < 0) {
+                clock = 12000;
+                period = period % 3 + 1;
+                set(NAME_period, period);
+            }
+            set(NAME_clock, clock);
+            for (int i = 0; i < penalty.length; i++) {
+                if (penalty[i] > 0) {
+                    set(penaltyNames[i], --penalty[i]);
+                }
+            }
+            int event = random.nextInt(1000);
+            if (event < 10) {
+                if (event % 2 == 0) {
+                    set(NAME_homeShotsOnGoal, ++homeShots % 100);
+                } else {
+                    set(NAME_guestShotsOnGoal, ++guestShots % 100);
+                }
+            } else if (event < 12) {
+                if (event % 2 == 0) {
+                    set(NAME_homeScore, ++homeScore % 100);
+                } else {
+                    set(NAME_guestScore, ++guestScore % 100);
+                }
+            } else if (event < 14) {
+                int i = random.nextInt(penalty.length);
+                if (penalty[i] == 0) {
+                    set(playerNumberNames[i], random.nextInt(99) + 1);
+                    penalty[i] = 1200;
+                    set(penaltyNames[i], penalty[i]);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            long next = System.nanoTime();
+            while (true) {
+                next += TICK_NANOS;
+                long delay = next - System.nanoTime();
+                if (delay > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                synchronized (this) {
+                    if (!paused) {
+                        tick();
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean addSlaves(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            SyntheticSlave slave = new SyntheticSlave();
+            boolean opened = Globals.useIPSocket ?
+                    slave.connect(Globals.host, Globals.port,
+                            CONNECT_TIMEOUT_MILLIS) :
+                    slave.join(Globals.sessionAddr, Globals.port,
+                            CONNECT_TIMEOUT_MILLIS);
+            if (!opened) {
+                return false;
+            }
+            slaves.add(slave);
+        }
+        return true;
+    }
+
+    /*
+     * Returns true if everything the slave holds for a variable in
+     * expected matches.  If requireAll is set the slave must hold every
+     * variable in expected.
+     */
+    private static boolean matches(SyntheticSlave slave,
+            Map<String, String> expected, boolean requireAll) {
+        Map<String, String> state = slave.getState();
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            String value = state.get(entry.getKey());
+            if (value == null ? requireAll :
+                    !value.equals(entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * The value held by most slaves for each variable.
+     */
+    private static Map<String, String> majorityState() {
+        Map<String, Map<String, Integer>> votes =
+                new HashMap<String, Map<String, Integer>>();
+        for (SyntheticSlave slave : slaves) {
+            for (Map.Entry<String, String> entry :
+                    slave.getState().entrySet()) {
+                Map<String, Integer> v = votes.get(entry.getKey());
+                if (v == null) {
+                    v = new HashMap<String, Integer>();
+                    votes.put(entry.getKey(), v);
+                }
+                Integer n = v.get(entry.getValue());
+                v.put(entry.getValue(), n == null ? 1 : n + 1);
+            }
+        }
+        Map<String, String> majority = new HashMap<String, String>();
+        for (Map.Entry<String, Map<String, Integer>> entry :
+                votes.entrySet()) {
+            String best = null;
+            int bestCount = 0;
+            for (Map.Entry<String, Integer> v : entry.getValue().entrySet()) {
+                if (v.getValue() > bestCount) {
+                    best = v.getKey();
+                    bestCount = v.getValue();
+                }
+            }
+            majority.put(entry.getKey(), best);
+        }
+        return majority;
+    }
+
+    /*
+     * Number of slaves that converged within DRAIN_MILLIS.  With the
+     * embedded master the game is paused so its state is final; with an
+     * external master the running clock can make a slave lag behind, so
+     * each snapshot is compared against the majority and a slave counts
+     * once it has matched any of them.
+     */
+    private static int countConverged(EmbeddedMaster master)
+            throws InterruptedException {
+        boolean[] converged = new boolean[slaves.size()];
+        int count = 0;
+        long deadline = System.currentTimeMillis() + DRAIN_MILLIS;
+        Map<String, String> expected = master == null ?
+                null : master.getState();
+        do {
+            if (master == null) {
+                expected = majorityState();
+            }
+            for (int i = 0; i < converged.length; i++) {
+                if (!converged[i] && matches(slaves.get(i), expected,
+                        master != null)) {
+                    converged[i] = true;
+                    count++;
+                }
+            }
+            if (count == converged.length) {
+                break;
+            }
+            Thread.sleep(50);
+        } while (System.currentTimeMillis() < deadline);
+        return count;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000d;
+    }
+
+    /*
+     * Measure the slaves attached so far.  Returns null if the step
+     * passed, or the reason it didn't.
+     */
+    private static String runStep(EmbeddedMaster master) throws Exception {
+        /*
+         * Start from a quiet, fully delivered state so that the counts
+         * below only cover this step.
+         */
+        if (master != null) {
+            master.setPaused(true);
+            master.refresh();
+        }
+        countConverged(master);
+        long[] baseline = new long[slaves.size()];
+        for (int i = 0; i < baseline.length; i++) {
+            slaves.get(i).getLatency().reset();
+            baseline[i] = slaves.get(i).getReceived();
+        }
+        long sentBaseline = 0;
+        if (master != null) {
+            sentBaseline = master.getSent();
+            master.setPaused(false);
+        }
+        long startTime = System.nanoTime();
+        Thread.sleep(stepSeconds * 1000L);
+        long elapsedNanos = System.nanoTime() - startTime;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        long sent = 0;
+        if (master != null) {
+            master.setPaused(true);
+            sent = master.getSent() - sentBaseline;
+        }
+        int converged = countConverged(master);
+        Histogram all = new Histogram("all");
+        long received = 0;
+        long mostReceived = 0;
+        for (int i = 0; i < baseline.length; i++) {
+            SyntheticSlave slave = slaves.get(i);
+            long delta = slave.getReceived() - baseline[i];
+            received += delta;
+            mostReceived = Math.max(mostReceived, delta);
+            all.add(slave.getLatency());
+        }
+        if (master != null) {
+            master.setPaused(false);
+        } else {
+            /*
+             * No view of what the master sent; the slave that got the
+             * most updates is taken as the reference.
+             */
+            sent = mostReceived;
+        }
+        long expected = sent * slaves.size();
+        double delivery = expected == 0 ? 0 : 100d * received / expected;
+        long heap = usedHeap();
+
+        boolean traced = all.getCount() > 0;
+        System.out.println(String.format(
+                "%7d %8.1f %7.2f %7d %9s %9s %9s %8d %8d",
+                slaves.size(),
+                received * 1e9d / elapsedNanos / slaves.size(),
+                delivery, converged,
+                traced ? String.format("%.1f",
+                        millis(all.getPercentile(50))) : "-",
+                traced ? String.format("%.1f",
+                        millis(all.getPercentile(99))) : "-",
+                traced ? String.format("%.1f", millis(all.getMax())) : "-",
+                threads, heap / (1024 * 1024)));
+
+        if (converged < slaves.size()) {
+            return (slaves.size() - converged) + " slaves diverged";
+        } else if (delivery < minDelivery) {
+            return String.format("delivery %.2f%% below %.2f%%",
+                    delivery, minDelivery);
+        } else if (traced && millis(all.getPercentile(99)) > p99Threshold) {
+            return String.format("p99 %.1f ms above %.1f ms",
+                    millis(all.getPercentile(99)), p99Threshold);
+        }
+        return null;
+    }
+
+    private static void parseArgs(String[] args) {
+        Globals.host = "localhost";
+        /*
+         * Hundreds of slaves would each register an MBean
+         */
+        Globals.jmx = false;
+        Globals.parseArgs(args);
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg.length < 2) {
+                continue;
+            }
+            if (subarg[0].equals("-EmbeddedMaster")) {
+                embeddedMaster = subarg[1].equals("true");
+            } else if (subarg[0].equals("-step")) {
+                step = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-maxSlaves")) {
+                maxSlaves = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-stepSeconds")) {
+                stepSeconds = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-p99")) {
+                p99Threshold = Double.parseDouble(subarg[1]);
+            } else if (subarg[0].equals("-minDelivery")) {
+                minDelivery = Double.parseDouble(subarg[1]);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        parseArgs(args);
+        HockeyScoreboardXMLSpec.init();
+        EmbeddedMaster master = null;
+        if (embeddedMaster) {
+            master = new EmbeddedMaster();
+            master.start();
+        }
+        System.out.println("# " + (embeddedMaster ? "embedded" : "external") +
+                " master, " + step + " slaves per step, " + stepSeconds +
+                " s per step, p99 limit " + p99Threshold + " ms, " +
+                Runtime.getRuntime().availableProcessors() + " cpus, " +
+                System.getProperty("java.version"));
+        System.out.println(String.format(
+                "%7s %8s %7s %7s %9s %9s %9s %8s %8s",
+                "slaves", "upd/s", "deliv%", "conv", "p50", "p99", "max",
+                "threads", "heap MB"));
+        int capacity = 0;
+        String reason = "reached -maxSlaves:" + maxSlaves;
+        while (slaves.size() < maxSlaves) {
+            if (!addSlaves(Math.min(step, maxSlaves - slaves.size()))) {
+                reason = "slave " + (slaves.size() + 1) +
+                        " could not connect";
+                break;
+            }
+            String failure = runStep(master);
+            if (failure != null) {
+                reason = failure;
+                break;
+            }
+            capacity = slaves.size();
+        }
+        System.out.println("# capacity: " + capacity + " slaves (" +
+                reason + ")");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.common.networking.loadgen;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import scoreboard.common.LayoutXOptions;
+import scoreboard.common.ScoreboardInputInterface;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.common.metrics.UpdateTracer;
+import scoreboard.common.networking.MulticastConnection;
+import scoreboard.common.networking.SocketClient;
+import scoreboard.common.networking.SocketListener;
+import scoreboard.fx2.framework.hockey.HockeyScoreboardXMLInput;
+
+/*
+ * A slave display without any JavaFX.  Every update read from the socket is
+ * decoded with the same HockeyScoreboardXMLInput the real slaves use, and
+ * the decoded value is kept in a name -> value map instead of being drawn,
+ * so the LoadGenerator can check that every slave ends up with the
+ * master's state.  If the update carries a trace stamp (master started
+ * with -Trace:true) its delivery latency is recorded as well.
+ *
+ * Each slave decodes on its own reader thread, so it needs its own
+ * decoder; Globals.updateTracer must stay null in the load generator as
+ * its hooks are meant for the JavaFX thread only.
+ */
+public class SyntheticSlave implements SocketListener,
+        ScoreboardInputInterface {
+
+    private final HockeyScoreboardXMLInput decoder;
+    private final Map<String, String> state =
+            new ConcurrentHashMap<String, String>();
+    private final Histogram latency = new Histogram("latency");
+    private final AtomicLong received = new AtomicLong();
+    private volatile boolean opened = false;
+    private volatile boolean failed = false;
+    private SocketClient socketClient;
+
+    /*
+     * MulticastConnection has to be subclassed; hand everything it reads
+     * to the enclosing slave.
+     */
+    private class MulticastReader extends MulticastConnection {
+        MulticastReader(String addr, int port) {
+            super(addr, port, 0);
+        }
+
+        @Override
+        public void onMessage(String line) {
+            SyntheticSlave.this.onMessage(line);
+        }
+
+        @Override
+        public void onClosedStatus(boolean isClosed) {
+            SyntheticSlave.this.onClosedStatus(isClosed);
+        }
+    }
+
+    public SyntheticSlave() {
+        decoder = new HockeyScoreboardXMLInput(this);
+        decoder.initStringXMLDocumentBuilder();
+    }
+
+    /*
+     * Connect to a MultipleSocketWriter master, waiting up to timeoutMillis
+     * for the connection to open.  Returns true if it did.
+     */
+    public boolean connect(String host, int port, long timeoutMillis)
+            throws InterruptedException {
+        socketClient = new SocketClient(this, host, port);
+        socketClient.connect();
+        if (waitForOpen(timeoutMillis)) {
+            return true;
+        }
+        socketClient.shutdown();
+        return false;
+    }
+
+    /*
+     * Join the multicast session, waiting up to timeoutMillis for the
+     * socket to be bound.  Returns true if it was.
+     */
+    public boolean join(String addr, int port, long timeoutMillis)
+            throws InterruptedException {
+        new MulticastReader(addr, port).run();
+        return waitForOpen(timeoutMillis);
+    }
+
+    private boolean waitForOpen(long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!opened && !failed &&
+                System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        return opened;
+    }
+
+    /*
+     * Multicast sockets can't be closed from the outside; those readers
+     * go away when the LoadGenerator exits.
+     */
+    public void shutdown() {
+        if (socketClient != null) {
+            socketClient.shutdown();
+        }
+    }
+
+    @Override
+    public void onMessage(String line) {
+        long stamp = UpdateTracer.parseTraceStamp(line);
+        decoder.readUpdateStr(line);
+        if (stamp >= 0) {
+            latency.record(UpdateTracer.now() - stamp);
+        }
+        received.incrementAndGet();
+    }
+
+    @Override
+    public void onClosedStatus(boolean isClosed) {
+        if (!isClosed) {
+            opened = true;
+        } else if (!opened) {
+            failed = true;
+        } else {
+            opened = false;
+        }
+    }
+
+    @Override
+    public void updateVariable(String name, String overallValueStr) {
+        state.put(name, overallValueStr);
+    }
+
+    /*
+     * A synthetic slave has no display, so the configuration callbacks
+     * have nothing to do.
+     */
+    @Override
+    public void setupTextNode(String name, double layoutY,
+            LayoutXOptions layoutXoption, String alignWithStr,
+            double fontSize, String content) {
+    }
+
+    @Override
+    public void setupDisplayableWithDigits(String name, double layoutY,
+            LayoutXOptions layoutXoption, String alignWithStr,
+            double digitHeight, int overallValue) {
+    }
+
+    @Override
+    public void setupScoreboard(String name, int backgroundColorVal) {
+    }
+
+    @Override
+    public void setupImageView(String name, String url,
+            LayoutXOptions layoutXoption,
+            String topLeftObjStr, String bottomRightObjStr) {
+    }
+
+    @Override
+    public void resolveXlocations() {
+    }
+
+    public Map<String, String> getState() {
+        return state;
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public boolean isOpened() {
+        return opened;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.fx2.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import scoreboard.common.metrics.Histogram;
+import scoreboard.fx2.framework.AudioSink;
+import scoreboard.fx2.framework.HornPlayer;
+import test.scoreboard.Checks;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Measures HornPlayer's trigger-to-first-sample latency against a mock
+ * AudioSink which timestamps the first PCM it is handed and consumes PCM
+ * at the real-time rate, like an audio line would.  The horn is a one
+ * second tone written to a temporary WAV file, so no audio device or
+ * JavaFX toolkit is needed.  Also checks that stop() silences the horn
+ * within a chunk and that play() while sounding restarts it.
+ *
+ *     java test.scoreboard.fx2.framework.TestHornPlayer [-plays:N]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestHornPlayer {
+
+    private static final float SAMPLE_RATE = 44100;
+    private static final long MAX_P99_MICROS = 5000;
+
+    /*
+     * Plays at real time: a write blocks for as long as the PCM lasts
+     */
+    static class MockSink implements AudioSink {
+        private double bytesPerNano;
+        volatile long firstWriteNanos = 0;
+        volatile long bytesWritten = 0;
+        volatile int flushes = 0;
+
+        public void open(AudioFormat format) {
+            bytesPerNano = format.getFrameRate() * format.getFrameSize() /
+                    1e9;
+        }
+
+        public void write(byte[] pcm, int offset, int length) {
+            if (firstWriteNanos == 0) {
+                firstWriteNanos = System.nanoTime();
+            }
+            bytesWritten += length;
+            long nanos = (long) (length / bytesPerNano);
+            try {
+                Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+            } catch (InterruptedException e) {
+            }
+        }
+
+        public void flush() {
+            flushes++;
+        }
+
+        public void close() {
+        }
+
+        void reset() {
+            firstWriteNanos = 0;
+            bytesWritten = 0;
+        }
+    }
+
+    private static File writeTone() throws Exception {
+        int frames = (int) SAMPLE_RATE;
+        byte[] pcm = new byte[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (Math.sin(2 * Math.PI * 440 * i /
+                    SAMPLE_RATE) * 16000);
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        File file = File.createTempFile("horn", ".wav");
+        file.deleteOnExit();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm),
+                format, frames), AudioFileFormat.Type.WAVE, file);
+        return file;
+    }
+
+    private static void waitWhilePlaying(HornPlayer player) throws Exception {
+        while (player.isPlaying()) {
+            Thread.sleep(5);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int plays = 20;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-plays") && subarg.length > 1) {
+                plays = Integer.parseInt(subarg[1]);
+            }
+        }
+        MockSink sink = new MockSink();
+        HornPlayer player = new HornPlayer(writeTone().toURI().toURL(), sink);
+        check("preloaded for PCM playback", player.load() == HornPlayer.PCM);
+
+        /*
+         * Let each play run 50 msec, then stop it
+         */
+        Histogram latency = new Histogram("trigger-to-first-sample");
+        for (int i = 0; i < plays; i++) {
+            sink.reset();
+            long trigger = System.nanoTime();
+            player.play();
+            while (sink.firstWriteNanos == 0) {
+                Thread.yield();
+            }
+            latency.record((sink.firstWriteNanos - trigger) / 1000);
+            Thread.sleep(50);
+            player.stop();
+            waitWhilePlaying(player);
+        }
+        System.out.println("     usec " + latency.toString());
+        check("p99 latency under " + MAX_P99_MICROS + " usec",
+                latency.getPercentile(99) < MAX_P99_MICROS);
+        check("stop() flushed the sink every time", sink.flushes == plays);
+
+        /*
+         * A stop() lets at most one more chunk through
+         */
+        sink.reset();
+        player.play();
+        Thread.sleep(100);
+        player.stop();
+        long atStop = sink.bytesWritten;
+        waitWhilePlaying(player);
+        long chunkBytes = (long) (SAMPLE_RATE * 2 * 5 / 1000);
+        check("stopped within a chunk", sink.bytesWritten - atStop <= chunkBytes);
+
+        /*
+         * play() while sounding starts over, so the whole tone is written
+         * after the restart
+         */
+        sink.reset();
+        player.play();
+        Thread.sleep(200);
+        long beforeRestart = sink.bytesWritten;
+        player.play();
+        Thread.sleep(50);
+        waitWhilePlaying(player);
+        check("restarted from the beginning",
+                sink.bytesWritten - beforeRestart >= SAMPLE_RATE * 2);
+
+        Checks.exit();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.fx2.framework;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import scoreboard.common.Globals;
+import scoreboard.common.metrics.MetricsServer;
+import scoreboard.common.networking.Subscription;
+import scoreboard.fx2.framework.ScoreboardContext;
+import scoreboard.fx2.framework.XMLSpec;
+import scoreboard.fx2.impl.bulb.BulbHockeyScoreboard;
+import test.scoreboard.common.metrics.TestMetricsServer;
+
+/*
+ * Runs two master scoreboards in one JVM, on channels rink1 and rink2 of
+ * one socket writer, each with its own ScoreboardContext.  Checks that
+ * every update variable was handed its scoreboard's context, that
+ * keyboard focus on one scoreboard leaves the other alone, that a slave
+ * joining rink2 only shows up in rink2's connection status, and that it
+ * gets rink2's score and not rink1's.  Metrics are served, and checked
+ * for series exported more than once by the two scoreboards.
+ *
+ *     java test.scoreboard.fx2.framework.TestScoreboardContexts [-port:N]
+ */
+public class TestScoreboardContexts extends Application {
+
+    private static final String[] CHANNELS = { "rink1", "rink2" };
+
+    private final ScoreboardContext[] contexts =
+            new ScoreboardContext[CHANNELS.length];
+    private final BulbHockeyScoreboard[] scoreboards =
+            new BulbHockeyScoreboard[CHANNELS.length];
+    private volatile boolean ok = true;
+
+    private void check(String what, boolean pass) {
+        System.out.println((pass ? "ok   " : "FAIL ") + what);
+        ok &= pass;
+    }
+
+    /*
+     * Runs r on the FX thread and waits for it
+     */
+    private void onFxThread(final Runnable r) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(new Runnable() {
+            public void run() {
+                r.run();
+                done.countDown();
+            }
+        });
+        done.await(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void start(Stage stage) {
+        for (int i = 0; i < CHANNELS.length; i++) {
+            Stage channelStage = i == 0 ? stage : new Stage();
+            contexts[i] = new ScoreboardContext();
+            contexts[i].channel = CHANNELS[i];
+            if (i > 0) {
+                contexts[i].multipleSocketWriter =
+                        contexts[0].multipleSocketWriter;
+            }
+            scoreboards[i] = new BulbHockeyScoreboard(contexts[i], 711, 400,
+                    false);
+            Group group = new Group(scoreboards[i]);
+            channelStage.setScene(new Scene(group));
+            channelStage.setTitle(CHANNELS[i]);
+            channelStage.show();
+        }
+
+        check("contexts point back at their scoreboards",
+                contexts[0].hockeyScoreboard == scoreboards[0] &&
+                contexts[1].hockeyScoreboard == scoreboards[1]);
+        check("socket writer shared",
+                contexts[0].multipleSocketWriter != null &&
+                contexts[0].multipleSocketWriter ==
+                contexts[1].multipleSocketWriter);
+        for (int i = 0; i < CHANNELS.length; i++) {
+            check(CHANNELS[i] + " variables have its context",
+                    scoreboards[i].clock.getContext() == contexts[i] &&
+                    scoreboards[i].homeScore.getContext() == contexts[i] &&
+                    scoreboards[i].homePenalty1.getPlayerNumber()
+                    .getContext() == contexts[i]);
+        }
+
+        check("one set of series per family and labels",
+                TestMetricsServer.uniqueSeries(MetricsServer.scrape()));
+
+        scoreboards[0].homeScore.getOnesDigit().showFocusHint();
+        check("focus kept to its own scoreboard",
+                contexts[0].lastFocused ==
+                scoreboards[0].homeScore.getOnesDigit() &&
+                contexts[1].lastFocused == null);
+
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    runSlave();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    ok = false;
+                }
+                System.out.println(ok ? "PASS" : "FAIL");
+                Platform.exit();
+                System.exit(ok ? 0 : 1);
+            }
+        }).start();
+    }
+
+    private void runSlave() throws Exception {
+        Socket socket = new Socket("localhost", Globals.port);
+        socket.setSoTimeout(5000);
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        String channelStr = Subscription.channelStr(CHANNELS[1]);
+        out.println(channelStr);
+        String line;
+        while (!(line = in.readLine()).equals(channelStr)) {
+        }
+        Thread.sleep(200);
+
+        onFxThread(new Runnable() {
+            public void run() {
+                check("rink1 not connected", contexts[0].socketClosed);
+                check("rink2 connected", !contexts[1].socketClosed);
+                scoreboards[0].homeScore.setOverallValue(3);
+                scoreboards[1].homeScore.setOverallValue(7);
+            }
+        });
+
+        String expected = XMLSpec.updateStr("homeScore", 7);
+        String unexpected = XMLSpec.updateStr("homeScore", 3);
+        boolean gotExpected = false;
+        boolean gotUnexpected = false;
+        long deadline = System.currentTimeMillis() + 2000;
+        socket.setSoTimeout(500);
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                line = in.readLine();
+            } catch (java.net.SocketTimeoutException e) {
+                continue;
+            }
+            if (line == null) {
+                break;
+            }
+            gotExpected |= line.equals(expected);
+            gotUnexpected |= line.equals(unexpected);
+        }
+        check("slave got rink2's score", gotExpected);
+        check("slave didn't get rink1's score", !gotUnexpected);
+        socket.close();
+    }
+
+    public static void main(String[] args) {
+        Globals.port = 2320;
+        Globals.metricsPort = 2324;
+        Globals.trace = true;
+        Globals.parseArgs(args);
+        launch(args);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.fx2.framework;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+import scoreboard.common.Globals;
+import scoreboard.common.metrics.MetricsServer;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.fx2.framework.FxGlobals;
+import scoreboard.fx2.framework.ScoreboardContext;
+import scoreboard.fx2.framework.XMLSpec;
+import scoreboard.fx2.impl.bulb.BulbHockeyScoreboard;
+import test.scoreboard.common.metrics.TestMetricsServer;
+import static scoreboard.common.Constants.PRIORITY_CLOCK;
+import static scoreboard.common.Constants.PRIORITY_EVENT;
+
+/*
+ * Builds a two screen video wall the way MainVideoWall does, one screen
+ * with the full layout and one showing only the clock, fed by a
+ * MultipleSocketWriter master.  Checks that the wall makes one connection
+ * to the master, that the screen without readers registered with the
+ * one that has them, that both screens show every update posted, and
+ * that the screens' metrics are exported once, counting each update once.
+ *
+ *     java test.scoreboard.fx2.framework.TestVideoWall [-port:N]
+ */
+public class TestVideoWall extends Application {
+
+    private final BulbHockeyScoreboard[] screens =
+            new BulbHockeyScoreboard[2];
+    private volatile boolean ok = true;
+
+    private void check(String what, boolean pass) {
+        System.out.println((pass ? "ok   " : "FAIL ") + what);
+        ok &= pass;
+    }
+
+    @Override
+    public void start(Stage stage) {
+        final MultipleSocketWriter master =
+                new MultipleSocketWriter(Globals.port) {
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+        };
+        new Thread(master).start();
+
+        ScoreboardContext feed = new ScoreboardContext();
+        ScoreboardContext clockOnly = new ScoreboardContext();
+        clockOnly.configURL = "/scoreboard/config/clock_only_config.xml";
+        clockOnly.feed = feed;
+        screens[1] = new BulbHockeyScoreboard(clockOnly, 711, 400, true);
+        screens[0] = new BulbHockeyScoreboard(feed, 711, 400, true);
+        check("clock only screen fed by the first",
+                feed.wallScreens.size() == 1 &&
+                feed.wallScreens.get(0) == screens[1]);
+        check("only the first screen reads",
+                feed.socketReader != null && clockOnly.socketReader == null);
+
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    runMaster(master);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    ok = false;
+                }
+                master.shutdown();
+                System.out.println(ok ? "PASS" : "FAIL");
+                Platform.exit();
+                System.exit(ok ? 0 : 1);
+            }
+        }).start();
+    }
+
+    private void runMaster(MultipleSocketWriter master) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (master.getSubscriberCount() < 1 &&
+                System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(300);
+        check("one connection for the wall",
+                master.getSubscriberCount() == 1);
+
+        FxGlobals.scoreboardStats.resetStatistics();
+        master.postUpdate(XMLSpec.updateStr("clock", 1234), PRIORITY_CLOCK,
+                "clock");
+        master.postUpdate(XMLSpec.updateStr("homeScore", 5), PRIORITY_EVENT,
+                "homeScore");
+        Thread.sleep(500);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(new Runnable() {
+            public void run() {
+                for (int i = 0; i < screens.length; i++) {
+                    check("screen " + i + " clock",
+                            screens[i].clock.getOverallValue() == 1234);
+                }
+                check("screen 0 home score",
+                        screens[0].homeScore.getOverallValue() == 5);
+                check("clock update counted once",
+                        Long.valueOf(1).equals(FxGlobals.scoreboardStats
+                        .getUpdatesApplied().get("clock")));
+                check("one set of series per family and labels",
+                        TestMetricsServer.uniqueSeries(
+                        MetricsServer.scrape()));
+                done.countDown();
+            }
+        });
+        done.await(5, TimeUnit.SECONDS);
+    }
+
+    public static void main(String[] args) {
+        Globals.isSlave = true;
+        Globals.port = 2321;
+        Globals.metricsPort = 2325;
+        Globals.trace = true;
+        Globals.parseArgs(args);
+        launch(args);
+    }
+}
@@ -0,0 +1,88 @@
+package test.scoreboard.fx2.impl.bulb;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import scoreboard.common.Globals;
+import scoreboard.fx2.impl.bulb.BulbHockeyScoreboard;
+
+/*
+ * Compares the footprint of a 1080p remote (slave) scoreboard, configured
+ * the same way as MainRemoteFullScreenTV, with and without the display only
+ * build mode.  Run it twice, e.g.:
+ *
+ *     java ... TestBulbDisplayOnlyFootprint -DisplayOnly:true
+ *     java ... TestBulbDisplayOnlyFootprint -DisplayOnly:false
+ *
+ * and compare the node count, retained heap and construction time printed.
+ * Each run uses its own JVM so that class loading and JIT state of the
+ * first build do not skew the second.
+ */
+public class TestBulbDisplayOnlyFootprint extends Application {
+
+    private static final double WIDTH = 1920;
+    private static final double HEIGHT = 1080;
+
+    private static int countNodes(Node node) {
+        int count = 1;
+        if (node instanceof Parent) {
+            for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    @Override
+    public void start(Stage stage) {
+        Group group = new Group();
+        long heapBefore = usedHeap();
+        long startTime = System.nanoTime();
+        BulbHockeyScoreboard bulbScoreboard =
+                new BulbHockeyScoreboard(WIDTH, HEIGHT, Globals.isSlave);
+        long constructMillis = (System.nanoTime() - startTime) / 1000000;
+        group.getChildren().add(bulbScoreboard);
+        Scene scene = new Scene(group, WIDTH, HEIGHT);
+        stage.setScene(scene);
+        stage.show();
+        long showMillis = (System.nanoTime() - startTime) / 1000000;
+        long heapAfter = usedHeap();
+
+        System.out.println("displayOnly     = " + Globals.isDisplayOnly());
+        System.out.println("nodes           = " + countNodes(bulbScoreboard));
+        System.out.println("retained heap   = " +
+                (heapAfter - heapBefore) / 1024 + " KB");
+        System.out.println("construct time  = " + constructMillis + " ms");
+        System.out.println("construct+show  = " + showMillis + " ms");
+        Platform.exit();
+        System.exit(0);
+    }
+
+    public static void main(String[] args) {
+        Globals.isSlave = true;
+        Globals.isTV = true;
+        Globals.unlitOpacity = 0.05;
+        Globals.useIPSocket = true;
+        Globals.displaySocket = true;
+
+        Globals.parseArgs(args);
+
+        launch(args);
+    }
+}
@@ -0,0 +1,155 @@
+package test.scoreboard.fx2.impl.bulb;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+import scoreboard.fx2.framework.Penalty;
+import scoreboard.fx2.framework.ScoreboardWithClock;
+import scoreboard.fx2.framework.Timer;
+import scoreboard.fx2.framework.VirtualTimeSource;
+import scoreboard.fx2.impl.bulb.BulbClock;
+import scoreboard.fx2.impl.bulb.BulbPenalty;
+import static scoreboard.fx2.framework.FxConstants.ONE_TENTH_SECOND;
+
+/*
+ * Plays a full 3 x 20 minute game, with penalties, in virtual time.  The
+ * clock and penalty timers are wired up the way HockeyScoreboard does it:
+ * all timers start together and the penalty timers stop whenever the
+ * clock stops.  Checks that each period lasts exactly 20 minutes plus the
+ * final tick that sounds the horn, that the horn sounds once per period,
+ * and that every penalty expires at the expected moment, including one
+ * carried over into the next period.  Takes a few hundred milliseconds
+ * instead of an hour, e.g. compare with TestBulbClockWithTimer and
+ * TestBulbPenaltyWithTimer.
+ */
+public class TestBulbGameVirtualTime extends Application {
+
+    private static final int PERIODS = 3;
+    private static final int PERIOD_TENTHS = 12000;
+
+    private VirtualTimeSource timeSource = new VirtualTimeSource();
+    private int horns = 0;
+    private boolean ok = true;
+
+    /*
+     * Only soundHorn() is of interest here
+     */
+    private class HornCounter extends ScoreboardWithClock {
+        @Override
+        public void soundHorn() {
+            horns++;
+        }
+
+        @Override
+        public void setBackgroundColor(Color backgroundColor) {
+        }
+    }
+
+    private void check(String what, double expected, double actual) {
+        boolean pass = Math.abs(expected - actual) < 1e-6;
+        System.out.println((pass ? "ok   " : "FAIL ") + what + ": expected " +
+                expected + ", got " + actual);
+        ok &= pass;
+    }
+
+    /*
+     * Records the virtual time, in seconds, at which a penalty expires
+     */
+    private double[] watchExpiry(final Penalty penalty) {
+        final double[] expiry = { -1 };
+        penalty.overallValueProperty().addListener(
+                new InvalidationListener() {
+            public void invalidated(Observable ov) {
+                if (penalty.getOverallValue() == 0) {
+                    expiry[0] = timeSource.getTime().toSeconds();
+                }
+            }
+        });
+        return expiry;
+    }
+
+    private void advanceTo(double periodStart, double seconds) {
+        double now = timeSource.getTime().toSeconds();
+        timeSource.advance(Duration.seconds(periodStart + seconds - now));
+    }
+
+    @Override
+    public void start(Stage stage) {
+        final Timer clockTimer = new Timer(ONE_TENTH_SECOND, timeSource);
+        final Timer homeTimer = new Timer(ONE_TENTH_SECOND, timeSource);
+        final Timer guestTimer = new Timer(ONE_TENTH_SECOND, timeSource);
+        final Timer carryTimer = new Timer(ONE_TENTH_SECOND, timeSource);
+        BulbClock clock = new BulbClock("clock", new HornCounter(),
+                clockTimer);
+        Penalty homePenalty = new BulbPenalty("homePenalty1", homeTimer);
+        Penalty guestPenalty = new BulbPenalty("guestPenalty1", guestTimer);
+        Penalty carryPenalty = new BulbPenalty("homePenalty2", carryTimer);
+        double[] homeExpiry = watchExpiry(homePenalty);
+        double[] guestExpiry = watchExpiry(guestPenalty);
+        double[] carryExpiry = watchExpiry(carryPenalty);
+
+        clockTimer.runningProperty().addListener(new InvalidationListener() {
+            public void invalidated(Observable ov) {
+                if (!clockTimer.isRunning()) {
+                    homeTimer.stop();
+                    guestTimer.stop();
+                    carryTimer.stop();
+                }
+            }
+        });
+
+        long startTime = System.nanoTime();
+        for (int period = 1; period <= PERIODS; period++) {
+            double periodStart = timeSource.getTime().toSeconds();
+            clock.setOverallValue(PERIOD_TENTHS);
+            clockTimer.start();
+            homeTimer.start();
+            guestTimer.start();
+            carryTimer.start();
+
+            advanceTo(periodStart, 120);
+            homePenalty.setOverallValue(120);
+            advanceTo(periodStart, 600);
+            guestPenalty.setOverallValue(300);
+            if (period == 1) {
+                advanceTo(periodStart, 1140);
+                carryPenalty.setOverallValue(120);
+            }
+            timeSource.advanceUntilIdle(Duration.hours(1));
+            double periodLength = timeSource.getTime().toSeconds() -
+                    periodStart;
+
+            String p = "period " + period + " ";
+            check(p + "length", 1200.1, periodLength);
+            check(p + "horns", period, horns);
+            check(p + "home penalty expiry", periodStart + 240,
+                    homeExpiry[0]);
+            check(p + "guest penalty expiry", periodStart + 900,
+                    guestExpiry[0]);
+            if (period == 1) {
+                check(p + "carried penalty left", 60,
+                        carryPenalty.getOverallValue());
+            } else if (period == 2) {
+                check(p + "carried penalty expiry", periodStart + 60,
+                        carryExpiry[0]);
+            }
+        }
+        long wallMillis = (System.nanoTime() - startTime) / 1000000;
+
+        System.out.println("virtual time    = " +
+                timeSource.getTime().toMinutes() + " minutes");
+        System.out.println("ticks           = " + timeSource.getTickCount());
+        System.out.println("wall time       = " + wallMillis + " ms");
+        System.out.println(ok ? "PASS" : "FAIL");
+        Platform.exit();
+        System.exit(ok ? 0 : 1);
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2013, Jim Connors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of this project nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test.scoreboard.fx2.networking;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import scoreboard.common.Globals;
+import scoreboard.common.networking.MulticastConnection;
+import scoreboard.common.networking.MultipleSocketWriter;
+import scoreboard.common.networking.SocketClient;
+import scoreboard.common.networking.SocketListener;
+import scoreboard.fx2.framework.XMLSpec;
+import scoreboard.fx2.framework.hockey.HockeyScoreboardXMLSpec;
+import scoreboard.fx2.networking.DuplicateFilter;
+import test.scoreboard.Checks;
+import static scoreboard.common.Constants.DEFAULT_SESSION_ADDR;
+import static scoreboard.fx2.networking.DuplicateFilter.PATH_MULTICAST;
+import static scoreboard.fx2.networking.DuplicateFilter.PATH_SOCKET;
+import static test.scoreboard.Checks.check;
+
+/*
+ * Sends updates over both an IP socket and multicast, as a dual transport
+ * master does, to a slave reading both through one DuplicateFilter.  The
+ * slave's multicast reader drops a share of what it reads, standing in
+ * for a lossy link.  Checks that the slave ends up with every variable's
+ * final value, never applies a copy of an update twice or an older update
+ * after a newer one, and that each transport wins some updates.
+ *
+ *     java test.scoreboard.fx2.networking.TestDualTransport
+ *         [-port:N] [-updates:N] [-loss:PERCENT]
+ *
+ * This class is meant for testing outside the JavaFX framework.
+ */
+public class TestDualTransport {
+
+    private static final String[] NAMES =
+            { "homeScore", "guestScore", "period", "homeShotsOnGoal",
+            "clock" };
+
+    /*
+     * What the slave applied.  Both readers filter and apply under one
+     * lock, as a slave does on its FX thread.
+     */
+    private static class Applied {
+        final Map<String, Integer> values = new HashMap<String, Integer>();
+        int count = 0;
+        boolean backwards = false;
+
+        synchronized void offer(DuplicateFilter filter, String update,
+                int path) {
+            if (filter.accept(update, path)) {
+                apply(update);
+            }
+        }
+
+        private void apply(String update) {
+            String name = between(update, XMLSpec.START_NAME,
+                    XMLSpec.END_NAME);
+            int value = Integer.parseInt(between(update,
+                    XMLSpec.START_OVERALLVALUE, XMLSpec.END_OVERALLVALUE));
+            Integer last = values.get(name);
+            if (last != null && value <= last) {
+                backwards = true;
+            }
+            values.put(name, value);
+            count++;
+        }
+    }
+
+    private static String between(String s, String start, String end) {
+        int from = s.indexOf(start) + start.length();
+        return s.substring(from, s.indexOf(end, from));
+    }
+
+    private static void checkFilter() {
+        DuplicateFilter filter = new DuplicateFilter();
+        String first = "<update><name>homeScore</name><overallValue>1" +
+                "</overallValue><id>5.1</id></update>";
+        String second = "<update><name>homeScore</name><overallValue>2" +
+                "</overallValue><id>5.2</id></update>";
+        String restarted = "<update><name>homeScore</name><overallValue>0" +
+                "</overallValue><id>6.1</id></update>";
+        check("first copy accepted", filter.accept(first, PATH_MULTICAST));
+        check("second copy dropped", !filter.accept(first, PATH_SOCKET));
+        check("newer update accepted", filter.accept(second, PATH_SOCKET));
+        check("late copy of older update dropped",
+                !filter.accept(first, PATH_MULTICAST));
+        check("restarted master accepted",
+                filter.accept(restarted, PATH_SOCKET));
+        check("old master dropped", !filter.accept(second, PATH_MULTICAST));
+        check("update without id accepted", filter.accept(
+                XMLSpec.updateStr("homeScore", 3), PATH_MULTICAST));
+        check("wins counted", filter.getMulticastWins() == 1 &&
+                filter.getSocketWins() == 2 && filter.getDuplicates() == 3);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 2316;
+        int updates = 500;
+        final int loss;
+        int lossArg = 20;
+        for (String arg : args) {
+            String[] subarg = arg.split(":");
+            if (subarg[0].equals("-port")) {
+                port = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-updates")) {
+                updates = Integer.parseInt(subarg[1]);
+            } else if (subarg[0].equals("-loss")) {
+                lossArg = Integer.parseInt(subarg[1]);
+            }
+        }
+        loss = lossArg;
+        HockeyScoreboardXMLSpec.init();
+        checkFilter();
+
+        Globals.dualTransport = true;
+        Globals.ackedMulticast = false;
+        final DuplicateFilter filter = new DuplicateFilter();
+        final Applied applied = new Applied();
+        final Random random = new Random(7);
+        final int[] dropped = { 0 };
+
+        MultipleSocketWriter socketWriter = new MultipleSocketWriter(port) {
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+        };
+        new Thread(socketWriter).start();
+        MulticastConnection multicastWriter = new MulticastConnection(
+                DEFAULT_SESSION_ADDR, port, 0) {
+            @Override
+            public void onMessage(String msg) {
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+        };
+        new Thread(multicastWriter).start();
+        MulticastConnection multicastReader = new MulticastConnection(
+                DEFAULT_SESSION_ADDR, port, 0) {
+            @Override
+            public void onMessage(String msg) {
+                if (random.nextInt(100) < loss) {
+                    dropped[0]++;
+                } else {
+                    applied.offer(filter, msg, PATH_MULTICAST);
+                }
+            }
+
+            @Override
+            public void onClosedStatus(boolean isClosed) {
+            }
+        };
+        new Thread(multicastReader).start();
+        Thread.sleep(200);
+        SocketClient socketReader = new SocketClient(new SocketListener() {
+            public void onMessage(String msg) {
+                applied.offer(filter, msg, PATH_SOCKET);
+            }
+
+            public void onClosedStatus(boolean isClosed) {
+            }
+        }, "localhost", port);
+        socketReader.connect();
+        Thread.sleep(500);
+
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        for (int i = 0; i < updates; i++) {
+            String name = NAMES[i % NAMES.length];
+            String update = XMLSpec.updateStr(name, i);
+            expected.put(name, i);
+            multicastWriter.sendMessage(update);
+            socketWriter.postUpdate(update);
+            Thread.sleep(2);
+        }
+        Thread.sleep(500);
+
+        long socketWins = filter.getSocketWins();
+        long multicastWins = filter.getMulticastWins();
+        System.out.println("multicast dropped = " + dropped[0]);
+        System.out.println("multicast wins    = " + multicastWins);
+        System.out.println("socket wins       = " + socketWins);
+        System.out.println("duplicates        = " + filter.getDuplicates());
+        System.out.println("multicast lead    = " +
+                filter.getLead(PATH_MULTICAST));
+        System.out.println("socket lead       = " +
+                filter.getLead(PATH_SOCKET));
+        synchronized (applied) {
+            check("final values applied", applied.values.equals(expected));
+            check("nothing applied twice or out of order",
+                    !applied.backwards);
+            check("every update applied counted as a win",
+                    applied.count == socketWins + multicastWins);
+        }
+        check("multicast won some", multicastWins > 0);
+        check("socket covered the multicast losses", socketWins > 0);
+        Checks.exit();
+    }
+}